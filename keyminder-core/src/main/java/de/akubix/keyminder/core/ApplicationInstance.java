@@ -21,6 +21,7 @@ package de.akubix.keyminder.core;
 import java.io.File;
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
@@ -28,6 +29,9 @@ import java.util.Locale;
 import java.util.Map;
 import java.util.ResourceBundle;
 import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 import java.util.function.Consumer;
 
 import javax.xml.transform.TransformerException;
@@ -38,19 +42,26 @@ import de.akubix.keyminder.core.encryption.EncryptionManager;
 import de.akubix.keyminder.core.events.Compliance;
 import de.akubix.keyminder.core.events.ComplianceEventHandler;
 import de.akubix.keyminder.core.events.DefaultEventHandler;
+import de.akubix.keyminder.core.events.EventDispatcher;
 import de.akubix.keyminder.core.events.EventTypes;
 import de.akubix.keyminder.core.events.EventTypes.ComplianceEvent;
 import de.akubix.keyminder.core.events.EventTypes.DefaultEvent;
 import de.akubix.keyminder.core.events.EventTypes.TreeNodeEvent;
+import de.akubix.keyminder.core.events.EventTypes.TreeNodesEvent;
 import de.akubix.keyminder.core.events.TreeNodeEventHandler;
+import de.akubix.keyminder.core.events.TreeNodesEventHandler;
 import de.akubix.keyminder.core.exceptions.IllegalCallException;
 import de.akubix.keyminder.core.exceptions.StorageException;
+import de.akubix.keyminder.core.exceptions.StorageExceptionType;
 import de.akubix.keyminder.core.exceptions.UserCanceledOperationException;
+import de.akubix.keyminder.core.io.FileOpenProgress;
+import de.akubix.keyminder.core.io.StorageHandler;
 import de.akubix.keyminder.core.io.StorageManager;
 import de.akubix.keyminder.core.io.XML;
 import de.akubix.keyminder.core.plugins.PluginLoader;
 import de.akubix.keyminder.core.tree.DefaultTreeNode;
 import de.akubix.keyminder.core.tree.TreeNode;
+import de.akubix.keyminder.core.tree.TreePosition;
 import de.akubix.keyminder.core.tree.TreeStore;
 import de.akubix.keyminder.locale.LocaleLoader;
 import de.akubix.keyminder.shell.AnsiColor;
@@ -80,6 +91,8 @@ public class ApplicationInstance implements ShellOutputWriter {
 	public static final String SETTINGS_KEY_BROWSER_PATH = "etc.browserpath";
 
 	private static final String DEFAULT_SETTINGS_FILE = "keyminder_settings.xml";
+	// The number of nodes that are copied at once for a background save, the user interface is not blocked between two steps
+	private static final int SAVE_SNAPSHOT_STEP_SIZE = 2000;
 
 	private File settingsFile;
 	private UserInterface ui;
@@ -87,7 +100,8 @@ public class ApplicationInstance implements ShellOutputWriter {
 	private final Map<String, String> settings = new HashMap<>();
 	private FileConfiguration currentFile = null;
 
-	private Map<String, List<Object>> eventCollection = new HashMap<>();
+	private final EventDispatcher eventDispatcher;
+	private final Map<String, List<Object>> eventCollection = new HashMap<>();
 
 	private TreeStore tree;
 	private final Shell shell;
@@ -98,6 +112,18 @@ public class ApplicationInstance implements ShellOutputWriter {
 
 	private final Set<ShellOutputWriter> outputWriter;
 
+	private ExecutorService backgroundSaveExecutor = null;
+	private CompletableFuture<Boolean> pendingBackgroundSave = null;
+	private FileConfiguration pendingBackgroundSaveFile = null;
+	private boolean backgroundSaveRequestedAgain = false;
+
+	// Serializes all write operations, a background save is skipped if a newer version of the same file has already been written
+	private final Object saveLock = new Object();
+	private long saveGeneration = 0;
+	private final Map<File, Long> savedGenerations = new HashMap<>();
+	private ExecutorService backgroundOpenExecutor = null;
+	private volatile CompletableFuture<Boolean> pendingBackgroundOpen = null;
+
 	public ApplicationInstance(UserInterface ui){
 		this(ui, false);
 	}
@@ -105,6 +131,7 @@ public class ApplicationInstance implements ShellOutputWriter {
 	public ApplicationInstance(UserInterface ui, boolean forceEnglishLocale) throws IllegalArgumentException {
 
 		this.ui = ui;
+		this.eventDispatcher = new EventDispatcher(ui);
 		this.userInterfaceInformation = ui.getClass().getAnnotation(KeyMinderUserInterface.class);
 
 		if(this.userInterfaceInformation == null){
@@ -175,6 +202,14 @@ public class ApplicationInstance implements ShellOutputWriter {
 		addEventHandler(TreeNodeEvent.OnNodeRemoved, (node) -> {
 			updatedQuicklinkListAfterNodeRemove(node);
 		});
+
+		addEventHandler(TreeNodesEvent.OnNodesChanged, (nodes) -> {
+			// The removed nodes are not part of the event, but their quicklinks refer to nodes that do not exist anymore
+			if(nodes.stream().anyMatch((node) -> node.hasAttribute(NODE_ATTRIBUTE_QUICKLINK)) ||
+			   quicklinks.values().stream().anyMatch((id) -> tree.getNodeById(id) == null)){
+				buildQuicklinkList();
+			}
+		});
 	}
 
 	public TreeStore getTree(){
@@ -414,13 +449,11 @@ public class ApplicationInstance implements ShellOutputWriter {
 	}
 
 	public synchronized boolean openFile(File file, String filepassword, String fileTypeIdentifier){
-		if(fileTypeIdentifier == null || fileTypeIdentifier.equals("")){
-			println("Warning: Unknown file type - assuming 'KeyMind XML file (" + StorageManager.DEFAULT_FILE_TYPE + ")'.");
-			fileTypeIdentifier = StorageManager.DEFAULT_FILE_TYPE;
-		}
+		// A file that is opened in background will be discarded
+		pendingBackgroundOpen = null;
 
-		if(!storageManager.hasStorageHandler(fileTypeIdentifier)){
-			println(String.format("Unknown file type identifier \"%s\". Canceling...", fileTypeIdentifier));
+		fileTypeIdentifier = resolveFileTypeIdentifier(fileTypeIdentifier);
+		if(fileTypeIdentifier == null){
 			return false;
 		}
 
@@ -448,6 +481,135 @@ public class ApplicationInstance implements ShellOutputWriter {
 		}
 	}
 
+	/**
+	 * Opens a file without blocking the thread of the user interface. The file is read (and decrypted) by a worker thread into a separate tree,
+	 * which replaces the nodes of the application tree at once as soon as the file has been read completely.
+	 * The file that is currently opened is closed before by the calling thread, a file that is still opened in background is canceled.
+	 * @param file the file
+	 * @param filepassword the password of the file, the user will be asked for it if the value is ""
+	 * @param fileTypeIdentifier the file type identifier
+	 * @param progress receives the progress, the operation is canceled as soon as its cancel flag is set
+	 * @return a future which is completed with the thread of the user interface, its value is {@code true} if the file has been opened
+	 */
+	public synchronized CompletableFuture<Boolean> openFileInBackground(File file, String filepassword, String fileTypeIdentifier, FileOpenProgress progress){
+		final CompletableFuture<Boolean> task = new CompletableFuture<>();
+		pendingBackgroundOpen = null;
+
+		final String fileType = resolveFileTypeIdentifier(fileTypeIdentifier);
+		if(fileType == null || (currentFile != null && !closeFile())){
+			task.complete(false);
+			return task;
+		}
+
+		// The task is canceled if another file is opened in the meantime
+		pendingBackgroundOpen = task;
+		final FileOpenProgress taskProgress = new FileOpenProgress() {
+			@Override
+			public void bytesRead(long bytesRead, long fileSize){
+				progress.bytesRead(bytesRead, fileSize);
+			}
+
+			@Override
+			public void nodesCreated(int nodeCount){
+				progress.nodesCreated(nodeCount);
+			}
+
+			@Override
+			public boolean isCanceled(){
+				return pendingBackgroundOpen != task || progress.isCanceled();
+			}
+		};
+
+		if(backgroundOpenExecutor == null){
+			backgroundOpenExecutor = Executors.newSingleThreadExecutor((runnable) -> {
+				Thread thread = new Thread(runnable, "KeyMinder background open");
+				thread.setDaemon(true);
+				return thread;
+			});
+		}
+
+		final StorageHandler storageHandler = storageManager.getStorageHandler(fileType);
+		if(KeyMinder.verbose_mode){log(String.format("Opening file \"%s\" (as \"%s\") in background...", file.getAbsoluteFile(), fileType));}
+
+		backgroundOpenExecutor.execute(() -> {
+			try {
+				final TreeStore loadedTree = TreeStore.createDetachedTree(this);
+				final FileConfiguration loadedFile = storageHandler.open(file, filepassword, loadedTree, this, taskProgress);
+				ui.runInUserInterfaceThread(() -> {
+					try {
+						task.complete(completeBackgroundOpen(task, taskProgress, loadedFile, loadedTree));
+					} catch (RuntimeException e) {
+						failBackgroundOpen(task, file, e.toString());
+					}
+				});
+
+			} catch (StorageException e) {
+				ui.runInUserInterfaceThread(() -> failBackgroundOpen(task, file, e.getReason() == StorageExceptionType.UserCancelation ? null : e.getMessage()));
+
+			} catch (RuntimeException e) {
+				// The task has to be completed in any case, otherwise the user interface would wait for it forever
+				ui.runInUserInterfaceThread(() -> failBackgroundOpen(task, file, e.toString()));
+			}
+		});
+
+		return task;
+	}
+
+	/**
+	 * Completes a task of {@link #openFileInBackground(File, String, String, FileOpenProgress)} that has failed
+	 * @param errorMessage the message that is shown to the user, {@code null} if the user canceled the operation
+	 */
+	private void failBackgroundOpen(CompletableFuture<Boolean> task, File file, String errorMessage){
+		if(pendingBackgroundOpen == task){
+			pendingBackgroundOpen = null;
+		}
+
+		if(errorMessage != null){
+			alert(String.format(locale.getString("application.unable_to_open_file"), file.getName(), errorMessage));
+		}
+		task.complete(false);
+	}
+
+	/**
+	 * Swaps the tree that has been loaded in background into the application tree, unless the task has been canceled in the meantime
+	 */
+	private synchronized boolean completeBackgroundOpen(CompletableFuture<Boolean> task, FileOpenProgress progress, FileConfiguration loadedFile, TreeStore loadedTree){
+		final boolean canceled = progress.isCanceled() || currentFile != null;
+		if(pendingBackgroundOpen == task){
+			pendingBackgroundOpen = null;
+		}
+
+		if(canceled){
+			if(loadedFile.getEncryptionManager() != null){loadedFile.getEncryptionManager().destroy();}
+			return false;
+		}
+
+		tree.replaceNodes(loadedTree);
+		currentFile = loadedFile;
+
+		prepareAppForFileOpened();
+
+		updateStatus(String.format(locale.getString("application.file_opened"), loadedFile.getFilepath().getName()));
+		return true;
+	}
+
+	/**
+	 * @return the file type identifier or {@code null} if there is no storage handler for this file type
+	 */
+	private String resolveFileTypeIdentifier(String fileTypeIdentifier){
+		if(fileTypeIdentifier == null || fileTypeIdentifier.equals("")){
+			println("Warning: Unknown file type - assuming 'KeyMind XML file (" + StorageManager.DEFAULT_FILE_TYPE + ")'.");
+			return StorageManager.DEFAULT_FILE_TYPE;
+		}
+
+		if(!storageManager.hasStorageHandler(fileTypeIdentifier)){
+			println(String.format("Unknown file type identifier \"%s\". Canceling...", fileTypeIdentifier));
+			return null;
+		}
+
+		return fileTypeIdentifier;
+	}
+
 	public synchronized void prepareAppForFileOpened(){
 
 		tree.setTreeChangedStatus(false);
@@ -470,7 +632,13 @@ public class ApplicationInstance implements ShellOutputWriter {
 	public synchronized boolean saveFile(){
 		try {
 			if(currentFile != null) {
-				storageManager.getStorageHandler(currentFile.getFileTypeIdentifier()).save(currentFile, tree, this);
+				StorageHandler storageHandler = storageManager.getStorageHandler(currentFile.getFileTypeIdentifier());
+
+				// If a background save is writing the same file right now, this save has to wait for it, because its data is older
+				synchronized (saveLock) {
+					storageHandler.save(currentFile, tree, this);
+					savedGenerations.put(currentFile.getFilepath().getAbsoluteFile(), ++saveGeneration);
+				}
 				tree.setTreeChangedStatus(false);
 				updateStatus(String.format(locale.getString("application.file_saved"), currentFile.getFilepath().getName()));
 			}
@@ -491,6 +659,143 @@ public class ApplicationInstance implements ShellOutputWriter {
 		}
 	}
 
+	/**
+	 * Saves the currently opened file without blocking the calling thread.
+	 * A snapshot of the tree is copied in small steps by the thread of the user interface, the serialization and encryption is done by a worker thread while the tree can be edited.
+	 * Afterwards the event {@link DefaultEvent#OnFileSaved} or {@link DefaultEvent#OnFileSaveFailed} is fired with the thread of the user interface.
+	 *
+	 * If the file is still being saved, no second save is started. Instead the file is saved once more as soon as the running save has been completed,
+	 * so any number of requests during a save results in only one more save.
+	 * @return a future which is completed with the thread of the user interface as soon as all requested saves have been completed,
+	 * its value is {@code false} if the last save failed
+	 */
+	public synchronized CompletableFuture<Boolean> saveFileInBackground(){
+		if(currentFile == null){
+			return CompletableFuture.completedFuture(true);
+		}
+
+		final StorageHandler storageHandler;
+		try{
+			storageHandler = storageManager.getStorageHandler(currentFile.getFileTypeIdentifier());
+		}
+		catch(IllegalArgumentException e){
+			// The user has to decide how to handle the unknown file type
+			return CompletableFuture.completedFuture(saveFile());
+		}
+
+		if(pendingBackgroundSave != null && pendingBackgroundSaveFile == currentFile){
+			backgroundSaveRequestedAgain = true;
+			return pendingBackgroundSave;
+		}
+
+		final CompletableFuture<Boolean> task = new CompletableFuture<>();
+		pendingBackgroundSave = task;
+		pendingBackgroundSaveFile = currentFile;
+		backgroundSaveRequestedAgain = false;
+		copySaveSnapshot(task, currentFile, storageHandler, tree.createSnapshotBuilder());
+		return task;
+	}
+
+	/**
+	 * @return the future of the background save that has not been completed yet (see {@link #saveFileInBackground()}), or {@code null} if there is none
+	 */
+	public synchronized CompletableFuture<Boolean> getPendingBackgroundSave(){
+		return pendingBackgroundSave;
+	}
+
+	/**
+	 * Copies the next part of the tree for a background save, each step is a separate task of the user interface thread.
+	 * As soon as the snapshot is complete, it is written by the worker thread.
+	 */
+	private synchronized void copySaveSnapshot(CompletableFuture<Boolean> task, FileConfiguration file, StorageHandler storageHandler, TreeStore.SnapshotBuilder builder){
+		if(currentFile != file){
+			// The file has been closed in the meantime, the user has been asked to save the changes
+			completeBackgroundSave(task, false);
+			return;
+		}
+
+		if(!builder.copyNext(SAVE_SNAPSHOT_STEP_SIZE)){
+			ui.runInUserInterfaceThread(() -> copySaveSnapshot(task, file, storageHandler, builder));
+			return;
+		}
+
+		final TreeStore treeSnapshot = builder.getSnapshot();
+		final FileConfiguration fileSnapshot = file.copy();
+		final File path = fileSnapshot.getFilepath().getAbsoluteFile();
+		final long generation;
+		synchronized (saveLock) {
+			generation = ++saveGeneration;
+		}
+
+		// Changes made during the save operation will set this flag again
+		tree.setTreeChangedStatus(false);
+
+		if(backgroundSaveExecutor == null){
+			backgroundSaveExecutor = Executors.newSingleThreadExecutor((runnable) -> {
+				Thread thread = new Thread(runnable, "KeyMinder background save");
+				thread.setDaemon(true);
+				return thread;
+			});
+		}
+
+		backgroundSaveExecutor.execute(() -> {
+			try {
+				synchronized (saveLock) {
+					if(savedGenerations.getOrDefault(path, 0L) < generation){
+						storageHandler.save(fileSnapshot, treeSnapshot, this);
+						savedGenerations.put(path, generation);
+					}
+				}
+
+				ui.runInUserInterfaceThread(() -> {
+					if(currentFile == file){
+						file.setFileFormatVersion(fileSnapshot.getFileFormatVersion());
+					}
+					updateStatus(String.format(locale.getString("application.file_saved"), fileSnapshot.getFilepath().getName()));
+					fireEvent(DefaultEvent.OnFileSaved);
+					continueBackgroundSave(task, file, storageHandler, true);
+				});
+
+			} catch (StorageException | RuntimeException e) {
+				ui.runInUserInterfaceThread(() -> {
+					if(currentFile == file){
+						tree.setTreeChangedStatus(true);
+					}
+					alert(String.format(locale.getString("application.unable_to_save_file"), e.getMessage()));
+					fireEvent(DefaultEvent.OnFileSaveFailed);
+					continueBackgroundSave(task, file, storageHandler, false);
+				});
+			}
+			finally {
+				if(fileSnapshot.getEncryptionManager() != null){
+					fileSnapshot.getEncryptionManager().destroy();
+				}
+			}
+		});
+	}
+
+	/**
+	 * Starts the next background save if it has been requested while the last one was running, otherwise the task is completed
+	 */
+	private synchronized void continueBackgroundSave(CompletableFuture<Boolean> task, FileConfiguration file, StorageHandler storageHandler, boolean saved){
+		if(pendingBackgroundSave == task && backgroundSaveRequestedAgain && currentFile == file){
+			backgroundSaveRequestedAgain = false;
+			copySaveSnapshot(task, file, storageHandler, tree.createSnapshotBuilder());
+		}
+		else{
+			completeBackgroundSave(task, saved);
+		}
+	}
+
+	private void completeBackgroundSave(CompletableFuture<Boolean> task, boolean saved){
+		if(pendingBackgroundSave == task){
+			pendingBackgroundSave = null;
+			pendingBackgroundSaveFile = null;
+			backgroundSaveRequestedAgain = false;
+		}
+		task.complete(saved);
+	}
+
 	/**
 	 * Closes the currently opened file
 	 * @return TRUE if the file has been closed, FALSE if the user canceled the action
@@ -499,7 +804,8 @@ public class ApplicationInstance implements ShellOutputWriter {
 		if(currentFile != null){
 			if(fireEvent(ComplianceEvent.AllowFileClosing) != Compliance.AGREE){return false;}
 
-			if(tree.hasUnsavedChanges()){
+			// A background save that has not been completed yet may still fail, so the user is asked to save the changes (the user interface usually waits for it before)
+			if(tree.hasUnsavedChanges() || pendingBackgroundSaveFile == currentFile){
 				Compliance discardChanges = fireEvent(ComplianceEvent.DiscardChanges);
 
 				if(discardChanges == Compliance.CANCEL){return false;}
@@ -532,6 +838,7 @@ public class ApplicationInstance implements ShellOutputWriter {
 	}
 
 	public synchronized boolean createNewFile(File file, String fileTypeIdentifier, boolean encryptFileWithDefaultCipher) {
+		pendingBackgroundOpen = null;
 		if(currentFile != null){
 			if(!closeFile()){return false;}
 		}
@@ -701,11 +1008,11 @@ public class ApplicationInstance implements ShellOutputWriter {
 	private synchronized void buildQuicklinkList(){
 		quicklinks.clear();
 		if(!getSettingsValueAsBoolean("nodes.disable_quicklinks", false)){
-			tree.allNodes((node) -> {
-				if(node.hasAttribute(NODE_ATTRIBUTE_QUICKLINK)){
-					quicklinks.put(node.getAttribute(NODE_ATTRIBUTE_QUICKLINK), node.getId());
-				}
-			});
+			// The nodes are processed in the order of the tree, so the last node with the same quicklink name still wins
+			for(TreePosition position: TreePosition.sort(tree.nodesWithAttribute(NODE_ATTRIBUTE_QUICKLINK))){
+				TreeNode node = position.getNode();
+				quicklinks.put(node.getAttribute(NODE_ATTRIBUTE_QUICKLINK), node.getId());
+			}
 		}
 		fireEvent(DefaultEvent.OnQuicklinksUpdated);
 	}
@@ -802,7 +1109,7 @@ public class ApplicationInstance implements ShellOutputWriter {
 	 * @param eventHandler the handler which will be execution when the event is triggered
 	 */
 	public void addEventHandler(DefaultEvent eventName, DefaultEventHandler eventHandler){
-		addEventHandler(eventName.toString(), eventHandler);
+		eventDispatcher.addHandler(eventName, eventHandler);
 	}
 
 	/**
@@ -811,7 +1118,7 @@ public class ApplicationInstance implements ShellOutputWriter {
 	 * @param eventHandler the handler which will be execution when the event is triggered
 	 */
 	public void addEventHandler(ComplianceEvent eventName, ComplianceEventHandler eventHandler){
-		addEventHandler(eventName.toString(), eventHandler);
+		eventDispatcher.addHandler(eventName, eventHandler);
 	}
 
 	/**
@@ -820,7 +1127,7 @@ public class ApplicationInstance implements ShellOutputWriter {
 	 * @param eventHandler the handler which will be execution when the event is triggered
 	 */
 	public void addEventHandler(TreeNodeEvent eventName, TreeNodeEventHandler eventHandler){
-		addEventHandler(eventName.toString(), eventHandler);
+		eventDispatcher.addHandler(eventName, eventHandler);
 	}
 
 	/**
@@ -828,7 +1135,16 @@ public class ApplicationInstance implements ShellOutputWriter {
 	 * @param eventName the name of the event
 	 * @param eventHandler the handler which will be execution when the event is triggered
 	 */
-	public void addEventHandler(String eventName, Object eventHandler){
+	public void addEventHandler(TreeNodesEvent eventName, TreeNodesEventHandler eventHandler){
+		eventDispatcher.addHandler(eventName, eventHandler);
+	}
+
+	/**
+	 * Adds a handler for an event which is defined by the user interface, these handlers can be requested using {@link #getEventHandler(String)}
+	 * @param eventName the name of the event
+	 * @param eventHandler the handler which will be execution when the event is triggered
+	 */
+	public synchronized void addEventHandler(String eventName, Object eventHandler){
 		if(eventCollection.containsKey(eventName)){
 			eventCollection.get(eventName).add(eventHandler);
 		}
@@ -842,19 +1158,13 @@ public class ApplicationInstance implements ShellOutputWriter {
 	/**
 	 * This method will fire an event, according to this all registered event handlers for this event will be called.
 	 * Note: If the any (graphical) user interface is been loaded, this method has to be called with the UI thread.
+	 * Other threads have to use {@link #postEvent(DefaultEvent)} instead.
 	 * @param event the event that should be triggered
 	 * @throws IllegalCallException If the JavaFX user interface is loaded, an this method is not called with JavaFX Thread.
 	 */
-	public synchronized void fireEvent(EventTypes.DefaultEvent event) throws IllegalCallException {
-		if(!ui.isUserInterfaceThread()){
-			throw new IllegalCallException("All events must be fired with the user interface thread.");
-		}
-
-		if(eventCollection.containsKey(event.toString())){
-			eventCollection.get(event.toString()).forEach((handler) -> {
-				((DefaultEventHandler) handler).eventFired();
-			});
-		}
+	public void fireEvent(EventTypes.DefaultEvent event) throws IllegalCallException {
+		checkUserInterfaceThread();
+		eventDispatcher.fire(event);
 	}
 
 	/**
@@ -865,47 +1175,71 @@ public class ApplicationInstance implements ShellOutputWriter {
 	 * @return the {@link Compliance} of all event handler
 	 * @throws IllegalCallException If the JavaFX user interface is loaded, an this method is not called with JavaFX Thread.
 	 */
-	public synchronized Compliance fireEvent(EventTypes.ComplianceEvent event) throws IllegalCallException {
-		if(!ui.isUserInterfaceThread()){
-			throw new IllegalCallException("All events must be fired with the user interface thread.");
-		}
-
-		Compliance returnValue = Compliance.AGREE;
-		if(eventCollection.containsKey(event.toString())) {
-			for(int i = 0; i < eventCollection.get(event.toString()).size(); i++){
-				Compliance c = ((ComplianceEventHandler) eventCollection.get(event.toString()).get(i)).eventFired();
-				if(c != Compliance.AGREE){
-					if(returnValue != Compliance.CANCEL){
-						returnValue = c;
-					}
-				}
-			}
-		}
-
-		return returnValue;
+	public Compliance fireEvent(EventTypes.ComplianceEvent event) throws IllegalCallException {
+		checkUserInterfaceThread();
+		return eventDispatcher.fire(event);
 	}
 
 	/**
 	 * This method will fire an event, according to this all registered event handlers for this event will be called.
 	 * Note: If the any (graphical) user interface is been loaded, this method has to be called with the UI thread.
+	 * Other threads have to use {@link #postEvent(TreeNodeEvent, TreeNode)} instead.
 	 * @param event the event that should be triggered
 	 * @param node the node that belongs to this event
 	 * @throws IllegalCallException If this method is not called by the thread of the user interface
 	 */
-	public synchronized void fireEvent(EventTypes.TreeNodeEvent event, TreeNode node) throws IllegalCallException {
+	public void fireEvent(EventTypes.TreeNodeEvent event, TreeNode node) throws IllegalCallException {
+		checkUserInterfaceThread();
+		eventDispatcher.fire(event, node);
+	}
+
+	/**
+	 * This method will fire an event, according to this all registered event handlers for this event will be called.
+	 * Note: If the any (graphical) user interface is been loaded, this method has to be called with the UI thread.
+	 * Other threads have to use {@link #postEvent(TreeNodesEvent, Set)} instead.
+	 * @param event the event that should be triggered
+	 * @param nodes the nodes that belong to this event
+	 * @throws IllegalCallException If this method is not called by the thread of the user interface
+	 */
+	public void fireEvent(EventTypes.TreeNodesEvent event, Set<TreeNode> nodes) throws IllegalCallException {
+		checkUserInterfaceThread();
+		eventDispatcher.fire(event, nodes);
+	}
+
+	private void checkUserInterfaceThread() throws IllegalCallException {
 		if(!ui.isUserInterfaceThread()){
 			throw new IllegalCallException("All events must be fired with the user interface thread.");
 		}
+	}
 
-		if(eventCollection.containsKey(event.toString())){
-			eventCollection.get(event.toString()).forEach((handler) -> {
-				((TreeNodeEventHandler) handler).eventFired(node);
-			});
-		}
+	/**
+	 * Posts an event, it will be fired by the thread of the user interface as soon as possible. This method can be called by any thread.
+	 * @param event the event that should be triggered
+	 */
+	public void postEvent(EventTypes.DefaultEvent event){
+		eventDispatcher.post(event);
+	}
+
+	/**
+	 * Posts an event, it will be fired by the thread of the user interface as soon as possible. This method can be called by any thread.
+	 * @param event the event that should be triggered
+	 * @param node the node that belongs to this event
+	 */
+	public void postEvent(EventTypes.TreeNodeEvent event, TreeNode node){
+		eventDispatcher.post(event, node);
+	}
+
+	/**
+	 * Posts an event, it will be fired by the thread of the user interface as soon as possible. This method can be called by any thread.
+	 * @param event the event that should be triggered
+	 * @param nodes the nodes that belong to this event
+	 */
+	public void postEvent(EventTypes.TreeNodesEvent event, Set<TreeNode> nodes){
+		eventDispatcher.post(event, nodes);
 	}
 
-	public List<Object> getEventHandler(String eventName){
-		return eventCollection.getOrDefault(eventName, new ArrayList<>(0));
+	public synchronized List<Object> getEventHandler(String eventName){
+		return new ArrayList<>(eventCollection.getOrDefault(eventName, Collections.emptyList()));
 	}
 
 	/*
@@ -19,6 +19,7 @@
 package de.akubix.keyminder.core;
 
 import java.io.File;
+import java.util.HashMap;
 import java.util.Map;
 
 import de.akubix.keyminder.core.encryption.EncryptionManager;
@@ -44,6 +45,16 @@ public class FileConfiguration {
 		this.fileSettings = fileSettings;
 	}
 
+	/**
+	 * Creates a copy of this file configuration, the file attributes, settings and the encryption manager are copied as well.
+	 * Note: The encryption manager of the copy has to be destroyed separately.
+	 * @return the copy of this file configuration
+	 */
+	public FileConfiguration copy(){
+		return new FileConfiguration(filepath, version, encrypt, fileTypeIdentifier, encryptionManager == null ? null : encryptionManager.copy(),
+									 new HashMap<>(fileAttributes), new HashMap<>(fileSettings));
+	}
+
 	/**
 	 * Get the file path of the currently opened file
 	 * @return the file path
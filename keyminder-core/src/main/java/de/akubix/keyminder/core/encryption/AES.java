@@ -18,6 +18,8 @@
  */
 package de.akubix.keyminder.core.encryption;
 
+import java.io.InputStream;
+import java.io.OutputStream;
 import java.io.UnsupportedEncodingException;
 import java.security.InvalidAlgorithmParameterException;
 import java.security.InvalidKeyException;
@@ -25,10 +27,11 @@ import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
 import java.security.SecureRandom;
 import java.security.spec.InvalidKeySpecException;
-import java.security.spec.KeySpec;
 
 import javax.crypto.BadPaddingException;
 import javax.crypto.Cipher;
+import javax.crypto.CipherInputStream;
+import javax.crypto.CipherOutputStream;
 import javax.crypto.IllegalBlockSizeException;
 import javax.crypto.NoSuchPaddingException;
 import javax.crypto.SecretKey;
@@ -42,6 +45,8 @@ public class AES {
 
 	private static final String AES_CIPHER_INSTANCE_PARAMETER = "AES/CBC/PKCS5Padding";
 	public static final int DEFAULT_HASH_ITERATION_COUNT = 16384;
+	// Upper limit for the iteration count, which is read from the (untrusted) file before the password is checked. It takes a few seconds to derive a key with it.
+	public static final int MAX_HASH_ITERATION_COUNT = 256 * DEFAULT_HASH_ITERATION_COUNT;
 
 	/**
 	 * Generates a SHA-256 hash
@@ -117,9 +122,28 @@ public class AES {
 	 */
 	public static byte[] getPBKDF2Hash(char[] key, byte[] salt, int keySizeInBit, int hashIterations) throws NoSuchAlgorithmException, InvalidKeySpecException {
 			SecretKeyFactory f = SecretKeyFactory.getInstance("PBKDF2WithHmacSHA1");
-			KeySpec ks = new PBEKeySpec(key, salt, hashIterations, keySizeInBit);
-			SecretKey s = f.generateSecret(ks);
-			return s.getEncoded();
+			PBEKeySpec ks = new PBEKeySpec(key, salt, hashIterations, keySizeInBit);
+			try{
+				SecretKey s = f.generateSecret(ks);
+				return s.getEncoded();
+			}
+			finally{
+				ks.clearPassword();
+			}
+	}
+
+	/**
+	 * Derives an AES key from a password using PBKDF2
+	 * @param key the password
+	 * @param salt the salt for this hash
+	 * @param keySizeInBit the size of the key in bit
+	 * @param hashIterations the number of iterations
+	 * @return the derived key, the key data will be wiped if {@link SecretKey#destroy()} is called
+	 * @throws NoSuchAlgorithmException if PBKDF2 cannot be used on this system
+	 * @throws InvalidKeySpecException if the key is invalid
+	 */
+	public static SecretKey getPBKDF2Key(char[] key, byte[] salt, int keySizeInBit, int hashIterations) throws NoSuchAlgorithmException, InvalidKeySpecException {
+		return new DerivedKey(getPBKDF2Hash(key, salt, keySizeInBit, hashIterations), "AES");
 	}
 
 	/**
@@ -190,9 +214,21 @@ public class AES {
 	 * @throws InvalidKeySpecException if the key is invalid
 	 */
 	public static String encryptAES(String text, byte[] key, byte[] iv) throws InvalidKeySpecException {
+		return encryptAES(text, new SecretKeySpec(key, "AES"), iv);
+	}
+
+	/**
+	 * Encrypts a string using AES
+	 * @param text the text you want to encrypt
+	 * @param key the key you want to use
+	 * @param iv the initial vector for the encryption
+	 * @return the encrypted text (BASE64 encoded)
+	 * @throws InvalidKeySpecException if the key is invalid
+	 */
+	public static String encryptAES(String text, SecretKey key, byte[] iv) throws InvalidKeySpecException {
 		try {
 			Cipher cipher = Cipher.getInstance(AES_CIPHER_INSTANCE_PARAMETER);
-			cipher.init(Cipher.ENCRYPT_MODE, new SecretKeySpec(key, "AES"), new IvParameterSpec(iv));
+			cipher.init(Cipher.ENCRYPT_MODE, key, new IvParameterSpec(iv));
 
 			byte[] encrypted = cipher.doFinal(text.getBytes("UTF8"));
 
@@ -213,9 +249,21 @@ public class AES {
 	 * @throws InvalidKeyException if the key is wrong or invalid
 	 */
 	public static String decryptAES(String text, byte[] key, byte[] iv) throws InvalidKeyException {
+		return decryptAES(text, new SecretKeySpec(key, "AES"), iv);
+	}
+
+	/**
+	 * Decrypts a string using AES
+	 * @param text the text you want to decrypt (the text has to be BASE64 encoded)
+	 * @param key the key you want to use
+	 * @param iv the initial vector for the encryption
+	 * @return the decrypted text
+	 * @throws InvalidKeyException if the key is wrong or invalid
+	 */
+	public static String decryptAES(String text, SecretKey key, byte[] iv) throws InvalidKeyException {
 		try{
 			Cipher cipher = Cipher.getInstance(AES_CIPHER_INSTANCE_PARAMETER);
-			cipher.init(Cipher.DECRYPT_MODE, new SecretKeySpec(key, "AES"), new IvParameterSpec(iv));
+			cipher.init(Cipher.DECRYPT_MODE, key, new IvParameterSpec(iv));
 
 			byte[] cipherData = cipher.doFinal(DatatypeConverter.parseBase64Binary(text));
 
@@ -225,4 +273,68 @@ public class AES {
 			throw new InvalidKeyException(e.getMessage(), e);
 		}
 	}
+
+	/**
+	 * Returns a stream which encrypts all data using AES. The encrypted data is written to {@code out}, closing the returned stream completes the encryption.
+	 * @param out the target for the encrypted (binary) data
+	 * @param key the key you want to use
+	 * @param iv the initial vector for the encryption
+	 * @return the stream for the data you want to encrypt
+	 * @throws InvalidKeySpecException if the key is invalid
+	 */
+	public static OutputStream encryptAES(OutputStream out, byte[] key, byte[] iv) throws InvalidKeySpecException {
+		return encryptAES(out, new SecretKeySpec(key, "AES"), iv);
+	}
+
+	/**
+	 * Returns a stream which encrypts all data using AES. The encrypted data is written to {@code out}, closing the returned stream completes the encryption.
+	 * @param out the target for the encrypted (binary) data
+	 * @param key the key you want to use
+	 * @param iv the initial vector for the encryption
+	 * @return the stream for the data you want to encrypt
+	 * @throws InvalidKeySpecException if the key is invalid
+	 */
+	public static OutputStream encryptAES(OutputStream out, SecretKey key, byte[] iv) throws InvalidKeySpecException {
+		try {
+			Cipher cipher = Cipher.getInstance(AES_CIPHER_INSTANCE_PARAMETER);
+			cipher.init(Cipher.ENCRYPT_MODE, key, new IvParameterSpec(iv));
+			return new CipherOutputStream(out, cipher);
+		}
+		catch(NoSuchAlgorithmException | NoSuchPaddingException | InvalidAlgorithmParameterException | InvalidKeyException e){
+			throw new InvalidKeySpecException(e.getMessage(), e);
+		}
+	}
+
+	/**
+	 * Returns a stream which decrypts the data of {@code in} using AES
+	 * Note: A wrong key is detected when the end of the stream is reached, in this case an {@link java.io.IOException} will be thrown.
+	 * @param in the encrypted (binary) data
+	 * @param key the key you want to use
+	 * @param iv the initial vector for the encryption
+	 * @return the stream of the decrypted data
+	 * @throws InvalidKeyException if the key is invalid
+	 */
+	public static InputStream decryptAES(InputStream in, byte[] key, byte[] iv) throws InvalidKeyException {
+		return decryptAES(in, new SecretKeySpec(key, "AES"), iv);
+	}
+
+	/**
+	 * Returns a stream which decrypts the data of {@code in} using AES
+	 * Note: A wrong key is detected when the end of the stream is reached, in this case an {@link java.io.IOException} will be thrown.
+	 * @param in the encrypted (binary) data
+	 * @param key the key you want to use
+	 * @param iv the initial vector for the encryption
+	 * @return the stream of the decrypted data
+	 * @throws InvalidKeyException if the key is invalid
+	 */
+	public static InputStream decryptAES(InputStream in, SecretKey key, byte[] iv) throws InvalidKeyException {
+		try{
+			Cipher cipher = Cipher.getInstance(AES_CIPHER_INSTANCE_PARAMETER);
+			cipher.init(Cipher.DECRYPT_MODE, key, new IvParameterSpec(iv));
+			return new CipherInputStream(in, cipher);
+		}
+		catch(NoSuchAlgorithmException | NoSuchPaddingException | InvalidAlgorithmParameterException e){
+			throw new InvalidKeyException(e.getMessage(), e);
+		}
+	}
 }
@@ -0,0 +1,296 @@
+/*	KeyMinder
+	Copyright (C) 2016 Bastian Kraemer
+
+	ChunkedAESGCM.java
+
+	This program is free software: you can redistribute it and/or modify
+	it under the terms of the GNU General Public License as published by
+	the Free Software Foundation, either version 3 of the License, or
+	(at your option) any later version.
+
+	This program is distributed in the hope that it will be useful,
+	but WITHOUT ANY WARRANTY; without even the implied warranty of
+	MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+	GNU General Public License for more details.
+
+	You should have received a copy of the GNU General Public License
+	along with this program.  If not, see <http://www.gnu.org/licenses/>.
+*/
+package de.akubix.keyminder.core.encryption;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.security.GeneralSecurityException;
+import java.security.InvalidKeyException;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+
+import javax.crypto.AEADBadTagException;
+import javax.crypto.Cipher;
+import javax.crypto.SecretKey;
+import javax.crypto.spec.GCMParameterSpec;
+
+/**
+ * AES-GCM encryption of a data stream which is split into chunks of a fixed size. Each chunk is encrypted with its own nonce and has its own authentication tag,
+ * so the chunks can be encrypted and decrypted in parallel using the common {@link ForkJoinPool}.
+ *
+ * The nonce of a chunk consists of the first eight bytes of the IV followed by the index of the chunk. The last chunk is marked using the additional authenticated data,
+ * it is always shorter than a complete chunk (and may be empty). This way reordered, removed or truncated chunks are detected as well.
+ */
+final class ChunkedAESGCM {
+
+	static final int CHUNK_SIZE = 64 * 1024;
+	private static final int TAG_LENGTH = 16;
+	private static final String CIPHER_INSTANCE_PARAMETER = "AES/GCM/NoPadding";
+
+	private ChunkedAESGCM(){}
+
+	/**
+	 * Returns a stream which encrypts all data written to it, closing the stream completes the encryption and closes {@code out}
+	 * @param out the target for the encrypted data
+	 * @param key the AES key
+	 * @param iv the initial vector (at least eight bytes)
+	 * @return the stream for the plain data
+	 */
+	static OutputStream encrypt(OutputStream out, SecretKey key, byte[] iv){
+		return new EncryptingOutputStream(out, copyKey(key), iv);
+	}
+
+	/**
+	 * Returns a stream which decrypts the data of {@code in}. The first chunk is decrypted immediately, so a wrong key is detected before any data is returned.
+	 * @param in the encrypted data
+	 * @param key the AES key
+	 * @param iv the initial vector (at least eight bytes)
+	 * @return the stream of the decrypted data
+	 * @throws InvalidKeyException if the key is wrong or the first chunk has been modified
+	 */
+	static InputStream decrypt(InputStream in, SecretKey key, byte[] iv) throws InvalidKeyException {
+		DecryptingInputStream stream = new DecryptingInputStream(in, copyKey(key), iv);
+		try {
+			stream.nextChunk();
+			return stream;
+		} catch (IOException e) {
+			stream.release();
+			if(e.getCause() instanceof AEADBadTagException){
+				throw new InvalidKeyException("Wrong password.", e);
+			}
+			throw new InvalidKeyException(e.getMessage(), e);
+		}
+	}
+
+	// The key must not be destroyed while the stream is in use, even if the original key is destroyed before
+	private static DerivedKey copyKey(SecretKey key){
+		return new DerivedKey(key.getEncoded(), "AES");
+	}
+
+	private static int getMaxPendingChunks(){
+		return Math.max(2, ForkJoinPool.commonPool().getParallelism() * 2);
+	}
+
+	private static byte[] crypt(int mode, SecretKey key, byte[] iv, int chunkIndex, boolean lastChunk, byte[] data, int length) throws GeneralSecurityException {
+		byte[] nonce = new byte[12];
+		System.arraycopy(iv, 0, nonce, 0, 8);
+		nonce[8] = (byte) (chunkIndex >>> 24);
+		nonce[9] = (byte) (chunkIndex >>> 16);
+		nonce[10] = (byte) (chunkIndex >>> 8);
+		nonce[11] = (byte) chunkIndex;
+
+		Cipher cipher = Cipher.getInstance(CIPHER_INSTANCE_PARAMETER);
+		cipher.init(mode, key, new GCMParameterSpec(TAG_LENGTH * 8, nonce));
+		cipher.updateAAD(new byte[]{(byte) (lastChunk ? 1 : 0)});
+		return cipher.doFinal(data, 0, length);
+	}
+
+	private static byte[] getResult(ForkJoinTask<byte[]> task) throws IOException {
+		try {
+			return task.get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IOException("Interrupted while waiting for the encryption.", e);
+		} catch (ExecutionException e) {
+			throw new IOException(e.getCause().getMessage(), e.getCause());
+		}
+	}
+
+	private static final class EncryptingOutputStream extends OutputStream {
+		private final OutputStream out;
+		private final DerivedKey key;
+		private final byte[] iv;
+		private final int maxPendingChunks = getMaxPendingChunks();
+		private final Deque<ForkJoinTask<byte[]>> pendingChunks = new ArrayDeque<>();
+
+		private byte[] buffer = new byte[CHUNK_SIZE];
+		private int count = 0;
+		private int chunkIndex = 0;
+		private boolean closed = false;
+
+		EncryptingOutputStream(OutputStream out, DerivedKey key, byte[] iv){
+			this.out = out;
+			this.key = key;
+			this.iv = iv.clone();
+		}
+
+		@Override
+		public void write(int b) throws IOException {
+			// A complete chunk is only submitted if there is more data, the last chunk has to be shorter
+			if(count == CHUNK_SIZE){submitChunk(false);}
+			buffer[count++] = (byte) b;
+		}
+
+		@Override
+		public void write(byte[] b, int off, int len) throws IOException {
+			while(len > 0){
+				if(count == CHUNK_SIZE){submitChunk(false);}
+				int n = Math.min(len, CHUNK_SIZE - count);
+				System.arraycopy(b, off, buffer, count, n);
+				count += n;
+				off += n;
+				len -= n;
+			}
+		}
+
+		private void submitChunk(boolean lastChunk) throws IOException {
+			final byte[] data = buffer;
+			final int length = count;
+			final int index = chunkIndex++;
+
+			pendingChunks.add(ForkJoinPool.commonPool().submit(() -> {
+				try{
+					return crypt(Cipher.ENCRYPT_MODE, key, iv, index, lastChunk, data, length);
+				}
+				finally{
+					Arrays.fill(data, (byte) 0);
+				}
+			}));
+
+			buffer = new byte[CHUNK_SIZE];
+			count = 0;
+
+			// Write all chunks that are already done, but limit the number of chunks in memory
+			while(!pendingChunks.isEmpty() && (pendingChunks.size() > maxPendingChunks || pendingChunks.peek().isDone())){
+				out.write(getResult(pendingChunks.poll()));
+			}
+		}
+
+		@Override
+		public void close() throws IOException {
+			if(closed){return;}
+			closed = true;
+
+			try{
+				if(count == CHUNK_SIZE){submitChunk(false);}
+				submitChunk(true);
+
+				while(!pendingChunks.isEmpty()){
+					out.write(getResult(pendingChunks.poll()));
+				}
+				out.close();
+			}
+			finally{
+				pendingChunks.forEach((task) -> task.cancel(false));
+				key.destroy();
+			}
+		}
+	}
+
+	private static final class DecryptingInputStream extends InputStream {
+		private final InputStream in;
+		private final DerivedKey key;
+		private final byte[] iv;
+		private final int maxPendingChunks = getMaxPendingChunks();
+		private final Deque<ForkJoinTask<byte[]>> pendingChunks = new ArrayDeque<>();
+
+		private byte[] current = new byte[0];
+		private int position = 0;
+		private int chunkIndex = 0;
+		private boolean lastChunkSubmitted = false;
+
+		DecryptingInputStream(InputStream in, DerivedKey key, byte[] iv){
+			this.in = in;
+			this.key = key;
+			this.iv = iv.clone();
+		}
+
+		/**
+		 * Replaces the current chunk by the next one
+		 * @return {@code false} if the end of the stream has been reached
+		 */
+		private boolean nextChunk() throws IOException {
+			Arrays.fill(current, (byte) 0);
+			position = 0;
+
+			while(!lastChunkSubmitted && pendingChunks.size() < maxPendingChunks){
+				submitChunk();
+			}
+
+			if(pendingChunks.isEmpty()){
+				current = new byte[0];
+				return false;
+			}
+
+			current = getResult(pendingChunks.poll());
+			return true;
+		}
+
+		private void submitChunk() throws IOException {
+			byte[] data = new byte[CHUNK_SIZE + TAG_LENGTH];
+			int length = 0;
+			for(int n = 0; n != -1 && length < data.length; n = in.read(data, length, data.length - length)){
+				length += n;
+			}
+
+			if(length < TAG_LENGTH){
+				throw new IOException("Unexpected end of the encrypted data.");
+			}
+
+			final int dataLength = length;
+			final int index = chunkIndex++;
+			final boolean lastChunk = length < data.length;
+			lastChunkSubmitted = lastChunk;
+
+			pendingChunks.add(ForkJoinPool.commonPool().submit(() -> crypt(Cipher.DECRYPT_MODE, key, iv, index, lastChunk, data, dataLength)));
+		}
+
+		@Override
+		public int read() throws IOException {
+			while(position == current.length){
+				if(!nextChunk()){return -1;}
+			}
+			return current[position++] & 0xFF;
+		}
+
+		@Override
+		public int read(byte[] b, int off, int len) throws IOException {
+			if(len == 0){return 0;}
+			while(position == current.length){
+				if(!nextChunk()){return -1;}
+			}
+
+			int n = Math.min(len, current.length - position);
+			System.arraycopy(current, position, b, off, n);
+			position += n;
+			return n;
+		}
+
+		@Override
+		public void close() throws IOException {
+			release();
+			in.close();
+		}
+
+		/**
+		 * Discards the remaining chunks and destroys the key
+		 */
+		private void release(){
+			pendingChunks.forEach((task) -> task.cancel(false));
+			pendingChunks.clear();
+			Arrays.fill(current, (byte) 0);
+			key.destroy();
+		}
+	}
+}
@@ -0,0 +1,72 @@
+/*	KeyMinder
+	Copyright (C) 2016 Bastian Kraemer
+
+	DerivedKey.java
+
+	This program is free software: you can redistribute it and/or modify
+	it under the terms of the GNU General Public License as published by
+	the Free Software Foundation, either version 3 of the License, or
+	(at your option) any later version.
+
+	This program is distributed in the hope that it will be useful,
+	but WITHOUT ANY WARRANTY; without even the implied warranty of
+	MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+	GNU General Public License for more details.
+
+	You should have received a copy of the GNU General Public License
+	along with this program.  If not, see <http://www.gnu.org/licenses/>.
+*/
+package de.akubix.keyminder.core.encryption;
+
+import javax.crypto.SecretKey;
+
+/**
+ * A secret key which has been derived from a password. In contrast to {@link javax.crypto.spec.SecretKeySpec} the key data is wiped if the key is destroyed.
+ */
+final class DerivedKey implements SecretKey {
+
+	private static final long serialVersionUID = 1L;
+
+	private final String algorithm;
+	private final byte[] key;
+	private boolean destroyed = false;
+
+	/**
+	 * Creates a new key, the key data will be owned (and later wiped) by this instance
+	 * @param key the key data
+	 * @param algorithm the name of the algorithm, for example "AES"
+	 */
+	DerivedKey(byte[] key, String algorithm){
+		this.key = key;
+		this.algorithm = algorithm;
+	}
+
+	@Override
+	public String getAlgorithm() {
+		return algorithm;
+	}
+
+	@Override
+	public String getFormat() {
+		return "RAW";
+	}
+
+	@Override
+	public synchronized byte[] getEncoded() {
+		if(destroyed){
+			throw new IllegalStateException("The key has already been destroyed.");
+		}
+		return key.clone();
+	}
+
+	@Override
+	public synchronized void destroy() {
+		for(int i = 0; i < key.length; i++){key[i] = 0;}
+		destroyed = true;
+	}
+
+	@Override
+	public synchronized boolean isDestroyed() {
+		return destroyed;
+	}
+}
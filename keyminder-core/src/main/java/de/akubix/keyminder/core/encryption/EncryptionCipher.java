@@ -18,12 +18,106 @@
 */
 package de.akubix.keyminder.core.encryption;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
 import java.security.InvalidKeyException;
 import java.security.spec.InvalidKeySpecException;
 
+import javax.crypto.SecretKey;
+
 public interface EncryptionCipher {
 	public String encrypt(String source, char[] password, byte[] iv, byte[] salt) throws InvalidKeySpecException;
 	public String decrypt(String enc, char[] password, byte[] iv, byte[] salt) throws InvalidKeyException;
 	public boolean areSaltedHashesSupported();
 	public String getCipherName();
+
+	/**
+	 * Returns a stream that encrypts all data written to it. The encrypted (binary) data is written to {@code out}.
+	 * Closing the returned stream completes the encryption and closes {@code out} as well.
+	 * The default implementation buffers all data and uses {@link #encrypt(String, char[], byte[], byte[])}, ciphers should override it if possible.
+	 * @param out the target for the encrypted data
+	 * @param password the password
+	 * @param iv the initial vector
+	 * @param salt the password salt
+	 * @return the stream for the plain data
+	 * @throws InvalidKeySpecException if the key can't be used for encryption
+	 */
+	public default OutputStream encrypt(OutputStream out, char[] password, byte[] iv, byte[] salt) throws InvalidKeySpecException {
+		return new ByteArrayOutputStream(){
+			@Override
+			public void close() throws IOException {
+				try {
+					out.write(AES.bytesFromBase64String(EncryptionCipher.this.encrypt(new String(buf, 0, count, StandardCharsets.UTF_8), password, iv, salt)));
+					out.close();
+				} catch (InvalidKeySpecException e) {
+					throw new IOException(e.getMessage(), e);
+				}
+			}
+		};
+	}
+
+	/**
+	 * Returns a stream that decrypts the data which is read from {@code in}.
+	 * The default implementation reads all data and uses {@link #decrypt(String, char[], byte[], byte[])}, ciphers should override it if possible.
+	 * @param in the encrypted (binary) data
+	 * @param password the password
+	 * @param iv the initial vector
+	 * @param salt the password salt
+	 * @return the stream of the decrypted data
+	 * @throws InvalidKeyException if the given password (respectively the key) is not correct
+	 */
+	public default InputStream decrypt(InputStream in, char[] password, byte[] iv, byte[] salt) throws InvalidKeyException {
+		try {
+			ByteArrayOutputStream enc = new ByteArrayOutputStream();
+			byte[] buffer = new byte[8192];
+			for(int n = in.read(buffer); n != -1; n = in.read(buffer)){
+				enc.write(buffer, 0, n);
+			}
+			return new ByteArrayInputStream(decrypt(AES.bytesToBase64String(enc.toByteArray()), password, iv, salt).getBytes(StandardCharsets.UTF_8));
+		} catch (IOException e) {
+			throw new InvalidKeyException(e.getMessage(), e);
+		}
+	}
+
+	/**
+	 * Ciphers that derive their key from the password with an expensive function (like PBKDF2) should return {@code true}.
+	 * In this case the {@link EncryptionManager} caches the result of {@link #deriveKey(char[], byte[], int)} and uses
+	 * {@link #encrypt(String, SecretKey, byte[])} and {@link #decrypt(String, SecretKey, byte[])} instead of the password based methods.
+	 * @return {@code true} if the derived key can be cached, {@code false} if not
+	 */
+	public default boolean isKeyDerivationSupported(){
+		return false;
+	}
+
+	/**
+	 * Derives the key from the password
+	 * @param password the file password
+	 * @param salt the password salt
+	 * @param iterations the number of iterations of the key derivation function
+	 * @return the derived key
+	 * @throws InvalidKeySpecException if the key cannot be derived
+	 */
+	public default SecretKey deriveKey(char[] password, byte[] salt, int iterations) throws InvalidKeySpecException {
+		throw new UnsupportedOperationException(getCipherName() + " does not support key derivation.");
+	}
+
+	public default String encrypt(String source, SecretKey key, byte[] iv) throws InvalidKeySpecException {
+		throw new UnsupportedOperationException(getCipherName() + " does not support key derivation.");
+	}
+
+	public default String decrypt(String enc, SecretKey key, byte[] iv) throws InvalidKeyException {
+		throw new UnsupportedOperationException(getCipherName() + " does not support key derivation.");
+	}
+
+	public default OutputStream encrypt(OutputStream out, SecretKey key, byte[] iv) throws InvalidKeySpecException {
+		throw new UnsupportedOperationException(getCipherName() + " does not support key derivation.");
+	}
+
+	public default InputStream decrypt(InputStream in, SecretKey key, byte[] iv) throws InvalidKeyException {
+		throw new UnsupportedOperationException(getCipherName() + " does not support key derivation.");
+	}
 }
@@ -18,13 +18,27 @@
 */
 package de.akubix.keyminder.core.encryption;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
 import java.security.InvalidKeyException;
+import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
 import java.security.spec.InvalidKeySpecException;
 import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.Map;
 import java.util.Set;
 
+import javax.crypto.Mac;
+import javax.crypto.SecretKey;
+import javax.crypto.spec.SecretKeySpec;
+import javax.security.auth.DestroyFailedException;
+
 import de.akubix.keyminder.core.ApplicationInstance;
 import de.akubix.keyminder.core.exceptions.UserCanceledOperationException;
 
@@ -36,6 +50,9 @@ public class EncryptionManager {
 	private static Map<String, EncryptionCipher> algorithms = new HashMap<>();
 	private static String defaultCipher;
 	private static byte defaultSaltLengthInByte = 16;
+	private static final int MAX_CACHED_KEYS = 4;
+	private static final byte[] KEY_CHECK_CONSTANT = "KeyMinder key check value".getBytes(StandardCharsets.US_ASCII);
+	private static final int KEY_CHECK_VALUE_LENGTH = 16;
 
 	private char[] password;
 	private EncryptionCipher cipher;
@@ -43,6 +60,24 @@ public class EncryptionManager {
 	private byte[] salt;
 	private byte[] iv;
 
+	private int hashIterations = AES.DEFAULT_HASH_ITERATION_COUNT;
+	private boolean keepPasswordSalt = true;
+	private boolean saltReusable;
+
+	// Derived keys, identified by cipher, salt and iteration count. The cache is cleared if the password changes.
+	private final Map<String, SecretKey> derivedKeys = new LinkedHashMap<String, SecretKey>(){
+		private static final long serialVersionUID = 1L;
+
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<String, SecretKey> eldest){
+			if(size() > MAX_CACHED_KEYS){
+				destroyKey(eldest.getValue());
+				return true;
+			}
+			return false;
+		}
+	};
+
 	/**
 	 * Create a encryption manager
 	 * Note: This constructor does not set the password. You have to call {@link #requestPasswordInputWithConfirm(ApplicationInstance, String, String, String)} after this manually.
@@ -53,6 +88,7 @@ public class EncryptionManager {
 		this.cipher = useDefaultCipher ? algorithms.get(defaultCipher) : algorithms.get("None");
 		this.iv = new byte[0];
 		this.salt = new byte[0];
+		this.saltReusable = false;
 	}
 
 	/**
@@ -72,6 +108,7 @@ public class EncryptionManager {
 	 */
 	public EncryptionManager(String cipherName, char[] key) throws NoSuchAlgorithmException{
 		this(cipherName, key, new byte[8], new byte[8]);
+		this.saltReusable = false;
 	}
 
 	/**
@@ -83,6 +120,7 @@ public class EncryptionManager {
 	 */
 	public EncryptionManager(String cipherName, char[] key, byte[] iv) throws NoSuchAlgorithmException{
 		this(cipherName, key, iv, new byte[8]);
+		this.saltReusable = false;
 	}
 
 	/**
@@ -99,6 +137,7 @@ public class EncryptionManager {
 			this.cipher = algorithms.get(cipherName);
 			this.iv = iv;
 			this.salt = salt;
+			this.saltReusable = salt.length > 0;
 		}
 		else{
 			throw new NoSuchAlgorithmException("Cipher not available: '" + cipherName + "'");
@@ -145,13 +184,46 @@ public class EncryptionManager {
 	}
 
 	/**
-	 * Encrypt a string using the assigned EncryptionCipher and generate a new IV and a new password salt
+	 * Get the number of iterations of the key derivation function
+	 * @return the iteration count
+	 */
+	public int getHashIterations(){
+		return hashIterations;
+	}
+
+	/**
+	 * Set the number of iterations of the key derivation function (only used by ciphers that support salted hashes)
+	 * @param iterations the new iteration count
+	 * @throws IllegalArgumentException if the iteration count is less than 1 or greater than {@link AES#MAX_HASH_ITERATION_COUNT}
+	 */
+	public void setHashIterations(int iterations){
+		if(iterations < 1){
+			throw new IllegalArgumentException("The iteration count must be greater than zero.");
+		}
+		if(iterations > AES.MAX_HASH_ITERATION_COUNT){
+			throw new IllegalArgumentException("The iteration count must not be greater than " + AES.MAX_HASH_ITERATION_COUNT + ".");
+		}
+		this.hashIterations = iterations;
+	}
+
+	/**
+	 * Defines if the password salt is kept as long as the password does not change. In this case saving the file again does not need to derive the key again.
+	 * This is enabled by default, a new IV is generated for every encryption anyway.
+	 * @param keepPasswordSalt use {@code false} to generate a new salt for each encryption
+	 */
+	public void setKeepPasswordSalt(boolean keepPasswordSalt){
+		this.keepPasswordSalt = keepPasswordSalt;
+	}
+
+	/**
+	 * Encrypt a string using the assigned EncryptionCipher and generate a new IV.
+	 * A new password salt will only be generated if there is none or if {@link #setKeepPasswordSalt(boolean)} has been disabled.
 	 * @param source The data that should be encrypted
 	 * @return the encrypted data
 	 * @throws InvalidKeySpecException if the key can't be used for encryption
 	 */
 	public String encrypt(String source) throws InvalidKeySpecException{
-		return encrypt(source, true, true);
+		return encrypt(source, !(keepPasswordSalt && saltReusable), true);
 	}
 
 	/**
@@ -166,7 +238,14 @@ public class EncryptionManager {
 		if(generateNewIV){iv = AES.generateIV();}
 
 		if(cipher.areSaltedHashesSupported()){
-			if(generateNewSalt){salt = AES.generatePasswordSalt(defaultSaltLengthInByte);}
+			if(generateNewSalt){
+				salt = AES.generatePasswordSalt(defaultSaltLengthInByte);
+				saltReusable = true;
+			}
+
+			if(cipher.isKeyDerivationSupported()){
+				return cipher.encrypt(source, getDerivedKey(), iv);
+			}
 			return cipher.encrypt(source, password, iv, salt);
 		}
 		else
@@ -183,6 +262,13 @@ public class EncryptionManager {
 	 */
 	public String decrypt(String source) throws InvalidKeyException{
 		if(cipher.areSaltedHashesSupported()){
+			if(cipher.isKeyDerivationSupported()){
+				try {
+					return cipher.decrypt(source, getDerivedKey(), iv);
+				} catch (InvalidKeySpecException e) {
+					throw new InvalidKeyException(e.getMessage(), e);
+				}
+			}
 			return cipher.decrypt(source, password, iv, salt);
 		}
 		else{
@@ -190,6 +276,164 @@ public class EncryptionManager {
 		}
 	}
 
+	/**
+	 * Returns a stream that encrypts all data written to it using the assigned {@link EncryptionCipher}.
+	 * The IV (and if necessary the password salt) is generated immediately, so it can be queried before the data is written.
+	 * @param out the target for the encrypted (binary) data, it will be closed if the returned stream is closed
+	 * @return the stream for the data that should be encrypted
+	 * @throws InvalidKeySpecException if the key can't be used for encryption
+	 * @see #encrypt(String)
+	 */
+	public OutputStream encrypt(OutputStream out) throws InvalidKeySpecException{
+		iv = AES.generateIV();
+
+		if(cipher.areSaltedHashesSupported()){
+			if(!(keepPasswordSalt && saltReusable)){
+				salt = AES.generatePasswordSalt(defaultSaltLengthInByte);
+				saltReusable = true;
+			}
+
+			if(cipher.isKeyDerivationSupported()){
+				return cipher.encrypt(out, getDerivedKey(), iv);
+			}
+			return cipher.encrypt(out, password, iv, salt);
+		}
+		else
+		{
+			return cipher.encrypt(out, password, iv, null);
+		}
+	}
+
+	/**
+	 * Returns a stream that decrypts the data of another stream using the assigned {@link EncryptionCipher}
+	 * Note: Depending on the cipher, a wrong password may be detected while reading the stream. In this case an {@link java.io.IOException} will be thrown.
+	 * @param in the encrypted (binary) data
+	 * @return the stream of the decrypted data
+	 * @throws InvalidKeyException if the given password (respectively the key) is not correct
+	 */
+	public InputStream decrypt(InputStream in) throws InvalidKeyException{
+		return decrypt(in, iv);
+	}
+
+	/**
+	 * Like {@link #decrypt(InputStream)}, but with the IV that has been used to encrypt this particular data
+	 * @param in the encrypted (binary) data
+	 * @param iv the initial vector which has been used for the encryption
+	 * @return the stream of the decrypted data
+	 * @throws InvalidKeyException if the given password (respectively the key) is not correct
+	 */
+	public InputStream decrypt(InputStream in, byte[] iv) throws InvalidKeyException{
+		if(cipher.areSaltedHashesSupported()){
+			if(cipher.isKeyDerivationSupported()){
+				try {
+					return cipher.decrypt(in, getDerivedKey(), iv);
+				} catch (InvalidKeySpecException e) {
+					throw new InvalidKeyException(e.getMessage(), e);
+				}
+			}
+			return cipher.decrypt(in, password, iv, salt);
+		}
+		else{
+			return cipher.decrypt(in, password, iv, null);
+		}
+	}
+
+	/**
+	 * Creates a copy of this encryption manager which can be used to encrypt data with the same password and settings.
+	 * The copy has its own IV and salt, so using it (or changing this instance) does not affect the other one.
+	 * Already derived keys are copied as well.
+	 * @return the copy, it has to be destroyed separately
+	 */
+	public synchronized EncryptionManager copy(){
+		EncryptionManager copy = new EncryptionManager(false);
+		copy.password = password.clone();
+		copy.cipher = cipher;
+		copy.salt = salt.clone();
+		copy.iv = iv.clone();
+		copy.hashIterations = hashIterations;
+		copy.keepPasswordSalt = keepPasswordSalt;
+		copy.saltReusable = saltReusable;
+
+		for(Map.Entry<String, SecretKey> entry: derivedKeys.entrySet()){
+			if(!entry.getValue().isDestroyed()){
+				copy.derivedKeys.put(entry.getKey(), new DerivedKey(entry.getValue().getEncoded(), entry.getValue().getAlgorithm()));
+			}
+		}
+		return copy;
+	}
+
+	/**
+	 * Computes a value which can be used to check the password before the data is decrypted. The value is a HMAC of a constant using the derived key.
+	 * Note: This value should be computed after the encryption has been started, because a new salt may be generated by the encryption.
+	 * @return the key check value as BASE64 string or {@code null} if the cipher does not support key derivation
+	 * @throws InvalidKeySpecException if the key cannot be derived
+	 */
+	public String getKeyCheckValueAsBase64() throws InvalidKeySpecException {
+		if(!cipher.isKeyDerivationSupported()){
+			return null;
+		}
+		return AES.bytesToBase64String(computeKeyCheckValue());
+	}
+
+	/**
+	 * Checks the password using a key check value. Only the key has to be derived for this, which is much faster than decrypting the data.
+	 * @param keyCheckValue the key check value as BASE64 string, see {@link #getKeyCheckValueAsBase64()}
+	 * @return {@code true} if the key check value matches (or the cipher does not support key derivation), {@code false} if the password is wrong
+	 * @throws InvalidKeySpecException if the key cannot be derived
+	 */
+	public boolean verifyKeyCheckValue(String keyCheckValue) throws InvalidKeySpecException {
+		if(!cipher.isKeyDerivationSupported()){
+			return true;
+		}
+		return MessageDigest.isEqual(computeKeyCheckValue(), AES.bytesFromBase64String(keyCheckValue));
+	}
+
+	private byte[] computeKeyCheckValue() throws InvalidKeySpecException {
+		byte[] key = getDerivedKey().getEncoded();
+		try{
+			Mac mac = Mac.getInstance("HmacSHA256");
+			mac.init(new SecretKeySpec(key, "HmacSHA256"));
+			byte[] result = mac.doFinal(KEY_CHECK_CONSTANT);
+			byte[] keyCheckValue = new byte[KEY_CHECK_VALUE_LENGTH];
+			System.arraycopy(result, 0, keyCheckValue, 0, KEY_CHECK_VALUE_LENGTH);
+			return keyCheckValue;
+		}
+		catch(NoSuchAlgorithmException | InvalidKeyException e){
+			throw new InvalidKeySpecException(e.getMessage(), e);
+		}
+		finally{
+			clearArray(key);
+		}
+	}
+
+	/**
+	 * Returns the key for the current cipher, salt and iteration count. The key will be derived only if it is not cached yet.
+	 */
+	private synchronized SecretKey getDerivedKey() throws InvalidKeySpecException {
+		String cacheKey = cipher.getCipherName() + ":" + hashIterations + ":" + AES.bytesToBase64String(salt);
+		SecretKey key = derivedKeys.get(cacheKey);
+		if(key == null){
+			key = cipher.deriveKey(password, salt, hashIterations);
+			derivedKeys.put(cacheKey, key);
+		}
+		return key;
+	}
+
+	private synchronized void clearKeyCache(){
+		for(Iterator<SecretKey> it = derivedKeys.values().iterator(); it.hasNext();){
+			destroyKey(it.next());
+			it.remove();
+		}
+	}
+
+	private static void destroyKey(SecretKey key){
+		try {
+			key.destroy();
+		} catch (DestroyFailedException e) {
+			// The key is not destroyable, it will be released by the garbage collector
+		}
+	}
+
 	/**
 	 * Initializes an update of the password which has been assigned to the encryption manager using the {@link ApplicationInstance#requestStringInput(String, String, String)} method of the application instance.
 	 * Furthermore the user has to input the password twice to avoid typing errors.
@@ -211,6 +455,10 @@ public class EncryptionManager {
 					clearArray(this.password); // clear the current password...
 					this.password = pw; // ...and set the new one
 
+					// the cached keys belong to the old password, furthermore a new salt should be used
+					clearKeyCache();
+					saltReusable = false;
+
 					if(cipher.getCipherName().equals("None")){cipher = algorithms.get(defaultCipher);}
 					return true;
 				}
@@ -274,6 +522,7 @@ public class EncryptionManager {
 	 * Set the cipher to "none" and clears the password, iv and salt
 	 */
 	public void destroy(){
+		clearKeyCache();
 		clearArray(this.password);
 		clearArray(this.iv);
 		clearArray(this.salt);
@@ -345,9 +594,176 @@ public class EncryptionManager {
 				public boolean areSaltedHashesSupported() {
 					return true;
 				}
+
+				@Override
+				public boolean isKeyDerivationSupported() {
+					return true;
+				}
+
+				@Override
+				public SecretKey deriveKey(char[] password, byte[] salt, int iterations) throws InvalidKeySpecException {
+					try {
+						return AES.getPBKDF2Key(password, salt, 256, iterations);
+					} catch (NoSuchAlgorithmException e) {
+						throw new InvalidKeySpecException("Algorithm not available: " + e.getMessage());
+					}
+				}
+
+				@Override
+				public String encrypt(String source, SecretKey key, byte[] iv) throws InvalidKeySpecException {
+					return AES.encryptAES(source, key, iv);
+				}
+
+				@Override
+				public String decrypt(String enc, SecretKey key, byte[] iv) throws InvalidKeyException {
+					return AES.decryptAES(enc, key, iv);
+				}
+
+				@Override
+				public OutputStream encrypt(OutputStream out, char[] password, byte[] iv, byte[] salt) throws InvalidKeySpecException {
+					SecretKey key = deriveKey(password, salt, AES.DEFAULT_HASH_ITERATION_COUNT);
+					try {
+						return encrypt(out, key, iv);
+					} finally {
+						destroyKey(key);
+					}
+				}
+
+				@Override
+				public InputStream decrypt(InputStream in, char[] password, byte[] iv, byte[] salt) throws InvalidKeyException {
+					try {
+						SecretKey key = deriveKey(password, salt, AES.DEFAULT_HASH_ITERATION_COUNT);
+						try {
+							return decrypt(in, key, iv);
+						} finally {
+							destroyKey(key);
+						}
+					} catch (InvalidKeySpecException e) {
+						throw new InvalidKeyException("Wrong password.");
+					}
+				}
+
+				@Override
+				public OutputStream encrypt(OutputStream out, SecretKey key, byte[] iv) throws InvalidKeySpecException {
+					return AES.encryptAES(out, key, iv);
+				}
+
+				@Override
+				public InputStream decrypt(InputStream in, SecretKey key, byte[] iv) throws InvalidKeyException {
+					return AES.decryptAES(in, key, iv);
+				}
 			});
 
 
+			addCipherAlgorithm(new EncryptionCipher() {
+				@Override
+				public String getCipherName() {
+					return "AES-256-GCM/PBKDF2";
+				}
+
+				@Override
+				public String encrypt(String source, char[] password, byte[] iv, byte[] salt) throws InvalidKeySpecException {
+					SecretKey key = deriveKey(password, salt, AES.DEFAULT_HASH_ITERATION_COUNT);
+					try {
+						return encrypt(source, key, iv);
+					} finally {
+						destroyKey(key);
+					}
+				}
+
+				@Override
+				public String decrypt(String enc, char[] password, byte[] iv, byte[] salt) throws InvalidKeyException {
+					try {
+						SecretKey key = deriveKey(password, salt, AES.DEFAULT_HASH_ITERATION_COUNT);
+						try {
+							return decrypt(enc, key, iv);
+						} finally {
+							destroyKey(key);
+						}
+					} catch (InvalidKeySpecException e) {
+						throw new InvalidKeyException("Wrong password.");
+					}
+				}
+
+				@Override
+				public boolean areSaltedHashesSupported() {
+					return true;
+				}
+
+				@Override
+				public boolean isKeyDerivationSupported() {
+					return true;
+				}
+
+				@Override
+				public SecretKey deriveKey(char[] password, byte[] salt, int iterations) throws InvalidKeySpecException {
+					try {
+						return AES.getPBKDF2Key(password, salt, 256, iterations);
+					} catch (NoSuchAlgorithmException e) {
+						throw new InvalidKeySpecException("Algorithm not available: " + e.getMessage());
+					}
+				}
+
+				@Override
+				public String encrypt(String source, SecretKey key, byte[] iv) throws InvalidKeySpecException {
+					ByteArrayOutputStream enc = new ByteArrayOutputStream();
+					try(OutputStream out = ChunkedAESGCM.encrypt(enc, key, iv)){
+						out.write(source.getBytes(StandardCharsets.UTF_8));
+					} catch (IOException e) {
+						throw new InvalidKeySpecException(e.getMessage(), e);
+					}
+					return AES.bytesToBase64String(enc.toByteArray());
+				}
+
+				@Override
+				public String decrypt(String enc, SecretKey key, byte[] iv) throws InvalidKeyException {
+					ByteArrayOutputStream src = new ByteArrayOutputStream();
+					try(InputStream in = ChunkedAESGCM.decrypt(new ByteArrayInputStream(AES.bytesFromBase64String(enc)), key, iv)){
+						byte[] buffer = new byte[8192];
+						for(int n = in.read(buffer); n != -1; n = in.read(buffer)){
+							src.write(buffer, 0, n);
+						}
+					} catch (IOException e) {
+						throw new InvalidKeyException(e.getMessage(), e);
+					}
+					return new String(src.toByteArray(), StandardCharsets.UTF_8);
+				}
+
+				@Override
+				public OutputStream encrypt(OutputStream out, char[] password, byte[] iv, byte[] salt) throws InvalidKeySpecException {
+					SecretKey key = deriveKey(password, salt, AES.DEFAULT_HASH_ITERATION_COUNT);
+					try {
+						return encrypt(out, key, iv);
+					} finally {
+						destroyKey(key);
+					}
+				}
+
+				@Override
+				public InputStream decrypt(InputStream in, char[] password, byte[] iv, byte[] salt) throws InvalidKeyException {
+					try {
+						SecretKey key = deriveKey(password, salt, AES.DEFAULT_HASH_ITERATION_COUNT);
+						try {
+							return decrypt(in, key, iv);
+						} finally {
+							destroyKey(key);
+						}
+					} catch (InvalidKeySpecException e) {
+						throw new InvalidKeyException("Wrong password.");
+					}
+				}
+
+				@Override
+				public OutputStream encrypt(OutputStream out, SecretKey key, byte[] iv) throws InvalidKeySpecException {
+					return ChunkedAESGCM.encrypt(out, key, iv);
+				}
+
+				@Override
+				public InputStream decrypt(InputStream in, SecretKey key, byte[] iv) throws InvalidKeyException {
+					return ChunkedAESGCM.decrypt(in, key, iv);
+				}
+			});
+
 			addCipherAlgorithm(new EncryptionCipher() {
 
 				@Override
@@ -371,6 +787,22 @@ public class EncryptionManager {
 					return src;
 				}
 
+				@Override
+				public OutputStream encrypt(OutputStream out, char[] password, byte[] iv, byte[] salt) throws InvalidKeySpecException {
+					byte[] key = AES.getSHA256Hash(new String(password));
+					OutputStream enc = AES.encryptAES(out, key, iv);
+					clearArray(key);
+					return enc;
+				}
+
+				@Override
+				public InputStream decrypt(InputStream in, char[] password, byte[] iv, byte[] salt) throws InvalidKeyException {
+					byte[] key = AES.getSHA256Hash(new String(password));
+					InputStream src = AES.decryptAES(in, key, iv);
+					clearArray(key);
+					return src;
+				}
+
 				@Override
 				public boolean areSaltedHashesSupported() {
 					return false;
@@ -404,6 +836,22 @@ public class EncryptionManager {
 				return src;
 			}
 
+			@Override
+			public OutputStream encrypt(OutputStream out, char[] password, byte[] iv, byte[] salt) throws InvalidKeySpecException {
+				byte[] key = AES.getMD5Hash(new String(password));
+				OutputStream enc = AES.encryptAES(out, key, iv);
+				clearArray(key);
+				return enc;
+			}
+
+			@Override
+			public InputStream decrypt(InputStream in, char[] password, byte[] iv, byte[] salt) throws InvalidKeyException {
+				byte[] key = AES.getMD5Hash(new String(password));
+				InputStream src = AES.decryptAES(in, key, iv);
+				clearArray(key);
+				return src;
+			}
+
 			@Override
 			public boolean areSaltedHashesSupported() {
 				return false;
@@ -420,6 +868,12 @@ public class EncryptionManager {
 			@Override
 			public String decrypt(String enc, char[] password, byte[] iv, byte[] salt) throws InvalidKeyException{return enc;}
 
+			@Override
+			public OutputStream encrypt(OutputStream out, char[] password, byte[] iv, byte[] salt) throws InvalidKeySpecException{return out;}
+
+			@Override
+			public InputStream decrypt(InputStream in, char[] password, byte[] iv, byte[] salt) throws InvalidKeyException{return in;}
+
 			@Override
 			public boolean areSaltedHashesSupported(){return false;}
 		});
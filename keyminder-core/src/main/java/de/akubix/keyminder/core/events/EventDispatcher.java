@@ -0,0 +1,175 @@
+package de.akubix.keyminder.core.events;
+
+import java.util.Arrays;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
+
+import de.akubix.keyminder.core.events.EventTypes.ComplianceEvent;
+import de.akubix.keyminder.core.events.EventTypes.DefaultEvent;
+import de.akubix.keyminder.core.events.EventTypes.TreeNodeEvent;
+import de.akubix.keyminder.core.events.EventTypes.TreeNodesEvent;
+import de.akubix.keyminder.core.tree.TreeNode;
+import de.akubix.keyminder.ui.UserInterface;
+
+/**
+ * Delivers the events of the application to their handlers.
+ *
+ * The handlers are stored in arrays indexed by the ordinal of the event, an array is replaced (and never modified) if a handler is added.
+ * This way an event can be delivered without any lock and without looking up the handlers by name.
+ *
+ * Events can either be fired directly by the thread of the user interface or they can be posted by any thread.
+ * Posted events are queued and delivered in batches by the thread of the user interface, in the order they have been posted.
+ */
+public final class EventDispatcher {
+
+	private final UserInterface ui;
+
+	private final HandlerTable<DefaultEventHandler> defaultEventHandlers = new HandlerTable<>(DefaultEvent.values().length);
+	private final HandlerTable<ComplianceEventHandler> complianceEventHandlers = new HandlerTable<>(ComplianceEvent.values().length);
+	private final HandlerTable<TreeNodeEventHandler> treeNodeEventHandlers = new HandlerTable<>(TreeNodeEvent.values().length);
+	private final HandlerTable<TreeNodesEventHandler> treeNodesEventHandlers = new HandlerTable<>(TreeNodesEvent.values().length);
+
+	private final Queue<Runnable> postedEvents = new ConcurrentLinkedQueue<>();
+	private final AtomicBoolean deliveryScheduled = new AtomicBoolean(false);
+
+	/**
+	 * @param ui the user interface which is used to deliver the posted events
+	 */
+	public EventDispatcher(UserInterface ui){
+		this.ui = ui;
+	}
+
+	public void addHandler(DefaultEvent event, DefaultEventHandler handler){
+		defaultEventHandlers.add(event.ordinal(), handler);
+	}
+
+	public void addHandler(ComplianceEvent event, ComplianceEventHandler handler){
+		complianceEventHandlers.add(event.ordinal(), handler);
+	}
+
+	public void addHandler(TreeNodeEvent event, TreeNodeEventHandler handler){
+		treeNodeEventHandlers.add(event.ordinal(), handler);
+	}
+
+	public void addHandler(TreeNodesEvent event, TreeNodesEventHandler handler){
+		treeNodesEventHandlers.add(event.ordinal(), handler);
+	}
+
+	/**
+	 * Calls all handlers of an event, this method has to be called by the thread of the user interface
+	 * @param event the event
+	 */
+	public void fire(DefaultEvent event){
+		defaultEventHandlers.forEach(event.ordinal(), (handler) -> handler.eventFired());
+	}
+
+	/**
+	 * Calls all handlers of an event, this method has to be called by the thread of the user interface
+	 * @param event the event
+	 * @return {@link Compliance#AGREE} if all handlers agree, {@link Compliance#CANCEL} if any handler has canceled the operation, otherwise {@link Compliance#DONT_AGREE}
+	 */
+	public Compliance fire(ComplianceEvent event){
+		Compliance returnValue = Compliance.AGREE;
+		for(Object handler: complianceEventHandlers.get(event.ordinal())){
+			Compliance c = ((ComplianceEventHandler) handler).eventFired();
+			if(c != Compliance.AGREE){
+				if(returnValue != Compliance.CANCEL){
+					returnValue = c;
+				}
+			}
+		}
+		return returnValue;
+	}
+
+	/**
+	 * Calls all handlers of an event, this method has to be called by the thread of the user interface
+	 * @param event the event
+	 * @param node the node that belongs to this event
+	 */
+	public void fire(TreeNodeEvent event, TreeNode node){
+		treeNodeEventHandlers.forEach(event.ordinal(), (handler) -> handler.eventFired(node));
+	}
+
+	/**
+	 * Calls all handlers of an event, this method has to be called by the thread of the user interface
+	 * @param event the event
+	 * @param nodes the nodes that belong to this event
+	 */
+	public void fire(TreeNodesEvent event, Set<TreeNode> nodes){
+		treeNodesEventHandlers.forEach(event.ordinal(), (handler) -> handler.eventFired(nodes));
+	}
+
+	/**
+	 * Queues an event, it will be delivered by the thread of the user interface. This method can be called by any thread.
+	 * @param event the event
+	 */
+	public void post(DefaultEvent event){
+		post(() -> fire(event));
+	}
+
+	/**
+	 * Queues an event, it will be delivered by the thread of the user interface. This method can be called by any thread.
+	 * @param event the event
+	 * @param node the node that belongs to this event
+	 */
+	public void post(TreeNodeEvent event, TreeNode node){
+		post(() -> fire(event, node));
+	}
+
+	/**
+	 * Queues an event, it will be delivered by the thread of the user interface. This method can be called by any thread.
+	 * @param event the event
+	 * @param nodes the nodes that belong to this event
+	 */
+	public void post(TreeNodesEvent event, Set<TreeNode> nodes){
+		post(() -> fire(event, nodes));
+	}
+
+	private void post(Runnable delivery){
+		postedEvents.add(delivery);
+
+		// All events that are posted until the delivery starts are delivered at once
+		if(deliveryScheduled.compareAndSet(false, true)){
+			ui.runInUserInterfaceThread(this::deliverPostedEvents);
+		}
+	}
+
+	private void deliverPostedEvents(){
+		deliveryScheduled.set(false);
+		for(Runnable delivery = postedEvents.poll(); delivery != null; delivery = postedEvents.poll()){
+			delivery.run();
+		}
+	}
+
+	/**
+	 * The handlers of all events of one type, indexed by the ordinal of the event (copy on write)
+	 */
+	private static final class HandlerTable<H> {
+		private volatile Object[][] handlers;
+
+		HandlerTable(int eventCount){
+			this.handlers = new Object[eventCount][0];
+		}
+
+		synchronized void add(int ordinal, H handler){
+			Object[][] table = handlers.clone();
+			table[ordinal] = Arrays.copyOf(table[ordinal], table[ordinal].length + 1);
+			table[ordinal][table[ordinal].length - 1] = handler;
+			handlers = table;
+		}
+
+		Object[] get(int ordinal){
+			return handlers[ordinal];
+		}
+
+		@SuppressWarnings("unchecked")
+		void forEach(int ordinal, Consumer<H> action){
+			for(Object handler: handlers[ordinal]){
+				action.accept((H) handler);
+			}
+		}
+	}
+}
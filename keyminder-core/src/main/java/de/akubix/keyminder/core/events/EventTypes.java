@@ -4,7 +4,9 @@ public class EventTypes {
 	public enum DefaultEvent {
 		// These events does not return any value
 		OnExit, OnFileOpened, OnFileClosed,
-		OnSettingsChanged, OnFileSettingsChanged, OnQuicklinksUpdated
+		OnSettingsChanged, OnFileSettingsChanged, OnQuicklinksUpdated,
+		// Fired when a save that has been started by 'saveFileInBackground()' has been completed respectively failed
+		OnFileSaved, OnFileSaveFailed
 	}
 
 	/**
@@ -30,4 +32,13 @@ public class EventTypes {
 		OnNodeReset,
 		OnSelectedItemChanged
 	}
+
+	/**
+	 * Inside of a transaction the events of type {@link TreeNodeEvent} (except of 'OnSelectedItemChanged') are not fired for each node.
+	 * Instead, a single 'OnNodesChanged' event is fired at the end of the transaction. It contains all nodes whose content or child nodes have been changed
+	 * and which are still part of the tree. The selection event is fired afterwards if the selected node has been changed.
+	 */
+	public enum TreeNodesEvent {
+		OnNodesChanged
+	}
 }
@@ -0,0 +1,7 @@
+package de.akubix.keyminder.core.events;
+
+import java.util.Set;
+
+public interface TreeNodesEventHandler {
+	public void eventFired(Set<de.akubix.keyminder.core.tree.TreeNode> nodes);
+}
@@ -0,0 +1,52 @@
+/* KeyMinder
+ * Copyright (C) 2016 Bastian Kraemer
+ *
+ * FileOpenProgress.java
+ *
+ * KeyMinder is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * KeyMinder is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with KeyMinder.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.akubix.keyminder.core.io;
+
+/**
+ * Receives the progress of a file that is opened by a {@link StorageHandler}.
+ * The methods are called by the thread that reads the file, which is usually not the thread of the user interface.
+ */
+public interface FileOpenProgress {
+
+	/**
+	 * Does not report anything and never cancels
+	 */
+	public static final FileOpenProgress NONE = new FileOpenProgress() {};
+
+	/**
+	 * Called while the file is read
+	 * @param bytesRead the number of bytes that have been read so far
+	 * @param fileSize the size of the file in bytes
+	 */
+	public default void bytesRead(long bytesRead, long fileSize){}
+
+	/**
+	 * Called while the nodes are created
+	 * @param nodeCount the number of nodes that have been created so far
+	 */
+	public default void nodesCreated(int nodeCount){}
+
+	/**
+	 * The storage handler checks this flag from time to time and stops reading the file if it is set
+	 * @return {@code true} if the operation should be canceled
+	 */
+	public default boolean isCanceled(){
+		return false;
+	}
+}
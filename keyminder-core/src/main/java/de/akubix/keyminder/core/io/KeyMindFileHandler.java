@@ -18,22 +18,46 @@
  */
 package de.akubix.keyminder.core.io;
 
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
 import java.io.File;
+import java.io.FileInputStream;
+import java.io.FilterInputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.Charset;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.DosFileAttributeView;
+import java.nio.file.attribute.DosFileAttributes;
+import java.nio.file.attribute.PosixFileAttributeView;
+import java.nio.file.attribute.PosixFileAttributes;
 import java.security.InvalidKeyException;
 import java.security.NoSuchAlgorithmException;
 import java.security.spec.InvalidKeySpecException;
+import java.util.ArrayDeque;
+import java.util.Base64;
+import java.util.Deque;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.TreeMap;
 
 import javax.management.modelmbean.XMLParseException;
-import javax.xml.parsers.ParserConfigurationException;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
 import javax.xml.transform.TransformerException;
+import javax.xml.transform.sax.TransformerHandler;
+import javax.xml.transform.stream.StreamResult;
 
-import org.w3c.dom.DOMException;
-import org.w3c.dom.Document;
-import org.w3c.dom.Node;
+import org.xml.sax.ContentHandler;
 import org.xml.sax.SAXException;
+import org.xml.sax.helpers.AttributesImpl;
 
 import de.akubix.keyminder.core.ApplicationInstance;
 import de.akubix.keyminder.core.FileConfiguration;
@@ -50,6 +74,10 @@ import de.akubix.keyminder.locale.LocaleLoader;
 public class KeyMindFileHandler implements StorageHandler {
 
 	private static final String latestFileFormatVersion = "1.2.0";
+
+	// The progress is reported (and the cancel flag is checked) whenever this number of nodes has been created
+	private static final int NODE_PROGRESS_INTERVAL = 500;
+
 	private String fileType;
 
 	// This flag is set to true if a a file with version 1.0 or 1.1 is opened
@@ -62,10 +90,15 @@ public class KeyMindFileHandler implements StorageHandler {
 
 	@Override
 	public FileConfiguration open(File xmlFile, String filePassword, Object tree, ApplicationInstance instance) throws StorageException {
+		return open(xmlFile, filePassword, instance.getTree(), instance, FileOpenProgress.NONE);
+	}
+
+	@Override
+	public FileConfiguration open(File xmlFile, String filePassword, TreeStore tree, ApplicationInstance instance, FileOpenProgress progress) throws StorageException {
 		if(!xmlFile.exists()){throw new StorageException(StorageExceptionType.FileNotFound, "File not found.");}
 
 		try {
-			return readXMLFrame(xmlFile, filePassword, instance.getTree(), instance);
+			return readXMLFrame(xmlFile, filePassword, tree, instance, progress);
 		} catch (UserCanceledOperationException e) {
 			throw new StorageException(StorageExceptionType.UserCancelation, e.getMessage());
 		} catch (XMLParseException e) {
@@ -75,8 +108,32 @@ public class KeyMindFileHandler implements StorageHandler {
 
 	@Override
 	public void save(FileConfiguration file, TreeStore tree, ApplicationInstance instance) throws StorageException {
+		// The data is written to a temporary file first, the existing file is only replaced if everything has been written successfully
+		Path target = file.getFilepath().getAbsoluteFile().toPath();
+		Path tempFile = null;
 		try {
-			XML.writeXmlDocumentToFile(file.getFilepath(), createXMLFrame(tree.getRootNode(), file));
+			// If the path is a symbolic link, the file it points to is replaced (and not the link itself)
+			boolean exists = Files.exists(target);
+			if(exists){
+				target = target.toRealPath();
+			}
+
+			tempFile = Files.createTempFile(target.getParent(), target.getFileName().toString(), ".tmp");
+			if(exists){
+				copyFileAttributes(target, tempFile);
+			}
+
+			try(Writer writer = new OutputStreamWriter(new BufferedOutputStream(Files.newOutputStream(tempFile)), Charset.forName("UTF-8").newEncoder())) {
+				writeXMLFrame(writer, tree.getRootNode(), file);
+			}
+
+			try{
+				Files.move(tempFile, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+			}
+			catch(AtomicMoveNotSupportedException e){
+				Files.move(tempFile, target, StandardCopyOption.REPLACE_EXISTING);
+			}
+
 			file.setFileFormatVersion(latestFileFormatVersion);
 		} catch (InvalidKeyException e) {
 			throw new StorageException(StorageExceptionType.UnknownException, e.getMessage());
@@ -84,9 +141,43 @@ public class KeyMindFileHandler implements StorageHandler {
 			throw new StorageException(StorageExceptionType.IOException, e.getMessage());
 		} catch (TransformerException e) {
 			throw new StorageException(StorageExceptionType.ParserException, e.getMessage());
-		} catch (XMLParseException e) {
+		} catch (SAXException e) {
 			throw new StorageException(StorageExceptionType.ParserException, e.getMessage());
 		}
+		finally {
+			if(tempFile != null){
+				try {
+					Files.deleteIfExists(tempFile);
+				} catch (IOException e) {
+					// The temporary file will remain, but the result of the save operation is not affected
+				}
+			}
+		}
+	}
+
+	/**
+	 * Copies the permissions of the existing file to the temporary file, otherwise the saved file would get the (restrictive) permissions of a temporary file
+	 */
+	private static void copyFileAttributes(Path source, Path target) throws IOException {
+		PosixFileAttributeView posixView = Files.getFileAttributeView(target, PosixFileAttributeView.class);
+		if(posixView != null){
+			PosixFileAttributes attributes = Files.readAttributes(source, PosixFileAttributes.class);
+			posixView.setPermissions(attributes.permissions());
+			try{
+				posixView.setGroup(attributes.group());
+			}
+			catch(IOException e){
+				// Only the owner of a file can change its group, the file keeps the default group in this case
+			}
+			return;
+		}
+
+		DosFileAttributeView dosView = Files.getFileAttributeView(target, DosFileAttributeView.class);
+		if(dosView != null){
+			DosFileAttributes attributes = Files.readAttributes(source, DosFileAttributes.class);
+			dosView.setHidden(attributes.isHidden());
+			dosView.setArchive(attributes.isArchive());
+		}
 	}
 
 	/*
@@ -95,219 +186,357 @@ public class KeyMindFileHandler implements StorageHandler {
 	 * ==============================================================================================================================================
 	 */
 
-	private FileConfiguration readXMLFrame(File xmlFile, String filepassword, TreeStore tree, ApplicationInstance app) throws XMLParseException, UserCanceledOperationException, StorageException {
+	private FileConfiguration readXMLFrame(File xmlFile, String filepassword, TreeStore tree, ApplicationInstance app, FileOpenProgress progress) throws XMLParseException, UserCanceledOperationException, StorageException {
 		String fileVersion = latestFileFormatVersion; // Will be overwritten by the value in the file (if available)
-		boolean fileIsEncrypted;
 		Map<String, String> fileAttributes = new HashMap<>();
 		Map<String, String> fileSettings = new HashMap<>();
 
-		try {
-			Document document = XML.loadXmlDocument(xmlFile);
+		// The file is read as stream, this avoids holding the whole document (and the decrypted data) as DOM tree in memory
+		try(InputStream in = new BufferedInputStream(new ProgressInputStream(new FileInputStream(xmlFile), xmlFile.length(), progress))){
+			XMLStreamReader reader = XML.createXmlInputFactory().createXMLStreamReader(in);
 
-			// Read the version from the XML root node
-			Map<String, String> rootAttribs = XML.getXmlAttributesAsMap(document.getDocumentElement());
-			if(rootAttribs.containsKey("version")){
-				String version = rootAttribs.get("version");
-				if(!version.matches("1.[0-2]($|.(.*))")){throw new StorageException(StorageExceptionType.UnsupportedVersion, "Document version not supported.");}
+			try{
+				if(!XML.nextChildElement(reader)){throw new XMLParseException("Completly empty file.");}
 
-				if(version.matches("1.[0-1]($|.(.*))")){
-					this.compatibilityRegenerateNodeIds = true;
-				}
-			}
+				// Read the version from the XML root node
+				String version = reader.getAttributeValue(null, "version");
+				if(version != null){
+					if(!version.matches("1.[0-2]($|.(.*))")){throw new StorageException(StorageExceptionType.UnsupportedVersion, "Document version not supported.");}
 
-			if(document.getDocumentElement().getChildNodes().getLength() >= 2){
-				int nodeCount = 0;
-				org.w3c.dom.Node headNode = null;
-				org.w3c.dom.Node dataNode = null;
-
-				for(int i = 0; i < document.getDocumentElement().getChildNodes().getLength(); i++)
-				{
-					org.w3c.dom.Node currentNode = document.getDocumentElement().getChildNodes().item(i);
-					if(currentNode.getNodeType() == Node.ELEMENT_NODE){
-						if(nodeCount == 0){
-							// This is the first node, which is NOT a TextNode
-							headNode = currentNode;
-							nodeCount++;
-						}
-						else{
-							// This is the second node, which is NOT a TextNode
-							// A correct KeyMind-XML File does not have more nodes (this case is not handled, all other nodes will be ignored)
-							dataNode = currentNode;
-							break;
-						}
+					if(version.matches("1.[0-1]($|.(.*))")){
+						this.compatibilityRegenerateNodeIds = true;
 					}
 				}
 
-				//if((headNode.getNodeName().toLowerCase().equals("head") || headNode.getNodeName().toLowerCase().equals("configuration")) && (dataNodeName.equals("keystore") || dataNodeName.equals("data")))
-				if(headNode.getNodeName().toLowerCase().equals("configuration") && dataNode.getNodeName().toLowerCase().equals("data")){
-					// Read file attributes
-					 XML.convertXmlToMap(headNode, fileAttributes, true);
-
-					// Load the node data from the XML file
-					int dateNodeChildCount = dataNode.getChildNodes().getLength();
-					if(dateNodeChildCount > 0){
-						int textNodeSkipper = 0;
-						if(dataNode.getChildNodes().getLength() > 1){
-							for(textNodeSkipper = 0; textNodeSkipper < dateNodeChildCount; textNodeSkipper++){
-								if(dataNode.getChildNodes().item(textNodeSkipper).getNodeType() == Node.ELEMENT_NODE){
-									break;
-								}
-							}
-						}
+				// A correct KeyMind-XML File consists of a "configuration" and a "data" element (all other elements will be ignored)
+				if(!XML.nextChildElement(reader) || !reader.getLocalName().toLowerCase().equals("configuration")){
+					throw new XMLParseException("Unsupported XML-File format.");
+				}
 
-						if(dataNode.getChildNodes().item(textNodeSkipper).getNodeType() == Node.ELEMENT_NODE){
-							// File is not encrypted
-							fileIsEncrypted = false;
+				// Read file attributes
+				XML.convertXmlToMap(reader, fileAttributes, true);
 
-							for(int i = 0; i < dataNode.getChildNodes().getLength(); i++){
-								switch(dataNode.getChildNodes().item(i).getNodeName()){
-									case "settings":
-										XML.convertXmlToMap(dataNode.getChildNodes().item(i), fileSettings, true);
-										break;
+				if(!XML.nextChildElement(reader) || !reader.getLocalName().toLowerCase().equals("data")){
+					throw new XMLParseException("Unsupported XML-File format.");
+				}
 
-									case "tree":
-										addChildNodes(dataNode.getChildNodes().item(i), tree.getRootNode());
-										break;
-								}
-							}
+				return readDataElement(reader, xmlFile, fileVersion, filepassword, tree, app, fileAttributes, fileSettings, progress);
+			}
+			finally{
+				reader.close();
+			}
+
+		} catch (XMLStreamException e) {
+			throw new XMLParseException("XMLStreamException, unable to parse XMLDoc");
+
+		} catch (IOException e) {
+			e.printStackTrace();
+			throw new XMLParseException("IOException, unable to parse XMLDoc");
+		}
+	}
+
+	private FileConfiguration readDataElement(XMLStreamReader reader, File xmlFile, String fileVersion, String filepassword, TreeStore tree, ApplicationInstance app,
+											  Map<String, String> fileAttributes, Map<String, String> fileSettings, FileOpenProgress progress) throws XMLStreamException, XMLParseException, UserCanceledOperationException, StorageException {
+
+		String ivAttribute = reader.getAttributeValue(null, "iv");
+		String encMethodAttribute = reader.getAttributeValue(null, "encryption");
+		String saltAttribute = reader.getAttributeValue(null, "salt");
+		String iterationsAttribute = reader.getAttributeValue(null, "iterations");
+		String keyCheckAttribute = reader.getAttributeValue(null, "key-check");
+
+		// The data element contains either the "settings" and "tree" elements or the encrypted data as text
+		StringBuilder encryptedData = new StringBuilder();
+		boolean hasContent = false;
+
+		while(reader.hasNext()){
+			int event = reader.next();
+			if(event == XMLStreamConstants.START_ELEMENT){
+				// File is not encrypted
+				readSettingsAndTree(reader, tree.getRootNode(), fileSettings, progress);
+
+				// file has been successfully opened
+				return new FileConfiguration(xmlFile, fileVersion, false, this.fileType, null, fileAttributes, fileSettings);
+			}
+			else if(event == XMLStreamConstants.END_ELEMENT){
+				break;
+			}
+			else if(event == XMLStreamConstants.CHARACTERS || event == XMLStreamConstants.CDATA || event == XMLStreamConstants.SPACE){
+				encryptedData.append(reader.getTextCharacters(), reader.getTextStart(), reader.getTextLength());
+			}
+			hasContent = true;
+		}
+
+		if(!hasContent){throw new XMLParseException("Completly empty file.");}
+		checkCanceled(progress);
+
+		// File is encrypted, the BASE64 encoded data is the only copy that is kept in memory completely
+		final CharSequence encryptedContent = encryptedData;
 
-							// file has been successfully opened
-							return new FileConfiguration(xmlFile, fileVersion, fileIsEncrypted, this.fileType, null, fileAttributes, fileSettings);
+		if(isBlank(encryptedContent)){throw new XMLParseException("XML-File is empty");}
+
+		if(ivAttribute == null){throw new XMLParseException("IV of encrypted file is not available.");}
+		byte[] aesIV = AES.bytesFromBase64String(ivAttribute);
+
+		String cipherName = "";
+
+		if(encMethodAttribute != null){
+			cipherName = encMethodAttribute;}
+		else{
+			throw new StorageException(StorageExceptionType.UnknownEncryptionCipher, "Cannot open file, the used encryption cipher is not mentioned.");
+		}
+
+		if(!EncryptionManager.getCipherAlgorithms().contains(cipherName)){
+			throw new StorageException(StorageExceptionType.UnknownEncryptionCipher, "Encryption with '" + cipherName + "' is not supported on this system.");
+		}
+
+		// Files without this attribute have been encrypted with the default iteration count
+		int hashIterations = AES.DEFAULT_HASH_ITERATION_COUNT;
+		if(iterationsAttribute != null){
+			try{
+				hashIterations = Integer.parseInt(iterationsAttribute);
+				if(hashIterations < 1 || hashIterations > AES.MAX_HASH_ITERATION_COUNT){throw new NumberFormatException();}
+			}
+			catch(NumberFormatException e){
+				throw new XMLParseException("Invalid iteration count: '" + iterationsAttribute + "'");
+			}
+		}
+
+		int attempts = 0;
+		while(attempts < 3){
+			attempts++;
+			// The encryption manager is destroyed unless it is handed over to the file configuration
+			EncryptionManager em = null;
+			try {
+				// Decrypt data...
+				char[] pw;
+				if(filepassword.equals("")){
+					String txt = LocaleLoader.getBundle(ApplicationInstance.CORE_LANGUAGE_BUNDLE).getString("encryption.input_password_label");
+					pw = app.requestPasswordInput(ApplicationInstance.APP_NAME, txt, fileAttributes.getOrDefault(FileConfiguration.PASSWORD_HINT_ATTRIBUTE_NAME, ""));
+
+					if(pw.length == 0){throw new UserCanceledOperationException("The user canceled the operation.");}
+				}
+				else{
+					pw = filepassword.toCharArray();
+					filepassword = "";
+				}
+
+				byte[] salt = new byte[0];
+				if(saltAttribute != null){salt = AES.bytesFromBase64String(saltAttribute);}
+
+				em = new EncryptionManager(cipherName, pw, aesIV, salt);
+				em.setHashIterations(hashIterations);
+
+				// Checking the password before the data is decrypted needs only the key derivation
+				boolean passwordVerified = false;
+				if(keyCheckAttribute != null && em.getCipher().isKeyDerivationSupported()){
+					try{
+						if(!em.verifyKeyCheckValue(keyCheckAttribute)){
+							throw new InvalidKeyException("Wrong password.");
 						}
-						else{
-							// File is encrypted
-							if(dataNode.getTextContent().trim().equals("")){throw new XMLParseException("XML-File is empty");}
-
-							Node ivAttribute = dataNode.getAttributes().getNamedItem("iv");
-							if(ivAttribute == null){throw new XMLParseException("IV of encrypted file is not available.");}
-							byte[] aesIV = AES.bytesFromBase64String(ivAttribute.getNodeValue());
-
-							String cipherName = "";
-
-							Node encMethodAttribute = dataNode.getAttributes().getNamedItem("encryption");
-							if(encMethodAttribute != null){
-								cipherName = encMethodAttribute.getNodeValue();}
-							else{
-								throw new StorageException(StorageExceptionType.UnknownEncryptionCipher, "Cannot open file, the used encryption cipher is not mentioned.");
-							}
-
-							if(!EncryptionManager.getCipherAlgorithms().contains(cipherName)){
-								throw new StorageException(StorageExceptionType.UnknownEncryptionCipher, "Encryption with '" + cipherName + "' is not supported on this system.");
-							}
-
-							int attempts = 0;
-							while(attempts < 3){
-								attempts++;
-								try {
-									// Decrypt data...
-									fileIsEncrypted = true;
-
-									char[] pw;
-									if(filepassword.equals("")){
-										String txt = LocaleLoader.getBundle(ApplicationInstance.CORE_LANGUAGE_BUNDLE).getString("encryption.input_password_label");
-										pw = app.requestPasswordInput(ApplicationInstance.APP_NAME, txt, fileAttributes.getOrDefault(FileConfiguration.PASSWORD_HINT_ATTRIBUTE_NAME, ""));
-
-										if(pw.length == 0){throw new UserCanceledOperationException("The user canceled the operation.");}
-									}
-									else{
-										pw = filepassword.toCharArray();
-										filepassword = "";
-									}
-
-									byte[] salt = new byte[0];
-									Node saltAttribute = dataNode.getAttributes().getNamedItem("salt");
-									if(saltAttribute != null){salt = AES.bytesFromBase64String(saltAttribute.getNodeValue());}
-
-									EncryptionManager em = new EncryptionManager(cipherName, pw, aesIV, salt);
-
-									Document xmldoc = XML.loadXmlDocument(em.decrypt(dataNode.getTextContent()));
-
-									for(int i = 0; i < xmldoc.getDocumentElement().getChildNodes().getLength(); i++){
-										switch(xmldoc.getDocumentElement().getChildNodes().item(i).getNodeName()){
-											case "settings":
-												XML.convertXmlToMap(xmldoc.getDocumentElement().getChildNodes().item(i), fileSettings, true);
-												break;
-
-											case "tree":
-												addChildNodes(xmldoc.getDocumentElement().getChildNodes().item(i), tree.getRootNode());
-												break;
-										}
-									}
-
-									// Encrypted file has been successfully opened
-									return new FileConfiguration(xmlFile, fileVersion, fileIsEncrypted, this.fileType, em, fileAttributes, fileSettings);
-
-								} catch (NoSuchAlgorithmException e) {
-									throw new StorageException(StorageExceptionType.UnknownEncryptionCipher, "Encryption with '" + cipherName + "' is not supported on this system.");
-								} catch (InvalidKeyException e) {
-									app.alert(LocaleLoader.getBundle(ApplicationInstance.CORE_LANGUAGE_BUNDLE).getString("encryption.incorrect_password"));
-								} catch (DOMException e) {
-									throw new XMLParseException(e.getMessage());
-								}
-							}
-
-							// The user entered a wrong password three times...
-							app.println("You entered a wrong password three times, canceling...");
-							throw new UserCanceledOperationException("The user entered a wrong password three times.");
+						passwordVerified = true;
+					}
+					catch(InvalidKeySpecException e){
+						throw new InvalidKeyException(e.getMessage(), e);
+					}
+				}
+
+				// The data is decoded, decrypted and parsed at once
+				try(InputStream decryptedData = em.decrypt(Base64.getMimeDecoder().wrap(new CharSequenceInputStream(encryptedContent)))){
+					XMLStreamReader decryptedDataReader = XML.createXmlInputFactory().createXMLStreamReader(decryptedData, "UTF-8");
+					try{
+						// Skip the root element of the decrypted document
+						if(XML.nextChildElement(decryptedDataReader) && XML.nextChildElement(decryptedDataReader)){
+							readSettingsAndTree(decryptedDataReader, tree.getRootNode(), fileSettings, progress);
 						}
 					}
-					else{
-						throw new XMLParseException("Completly empty file.");
+					finally{
+						decryptedDataReader.close();
 					}
 				}
-				else{
-					throw new XMLParseException("Unsupported XML-File format.");
+				catch(XMLStreamException | IOException e){
+					// Decrypting the data with a wrong key results in invalid XML (or a padding error), the nodes that have been read so far must be discarded
+					tree.reset();
+					fileSettings.clear();
+
+					if(passwordVerified){
+						// The password is correct, so the data must be damaged
+						throw new XMLParseException("Unable to decrypt the file, the encrypted data is damaged: " + e.getMessage());
+					}
+					throw new InvalidKeyException(e.getMessage(), e);
 				}
+
+				// Encrypted file has been successfully opened
+				FileConfiguration fileConfig = new FileConfiguration(xmlFile, fileVersion, true, this.fileType, em, fileAttributes, fileSettings);
+				em = null;
+				return fileConfig;
+
+			} catch (NoSuchAlgorithmException e) {
+				throw new StorageException(StorageExceptionType.UnknownEncryptionCipher, "Encryption with '" + cipherName + "' is not supported on this system.");
+			} catch (InvalidKeyException e) {
+				app.alert(LocaleLoader.getBundle(ApplicationInstance.CORE_LANGUAGE_BUNDLE).getString("encryption.incorrect_password"));
 			}
-			else{
-				throw new XMLParseException("Unsupported XML-File format.");
+			finally {
+				if(em != null){
+					em.destroy();
+				}
 			}
+		}
 
-		} catch (SAXException e) {
-			throw new XMLParseException("SAXException, unable to parse XMLDoc");
+		// The user entered a wrong password three times...
+		app.println("You entered a wrong password three times, canceling...");
+		throw new UserCanceledOperationException("The user entered a wrong password three times.");
+	}
 
-		} catch (IOException e) {
-			e.printStackTrace();
-			throw new XMLParseException("IOException, unable to parse XMLDoc");
+	private static boolean isBlank(CharSequence text){
+		for(int i = 0; i < text.length(); i++){
+			if(!Character.isWhitespace(text.charAt(i))){return false;}
 		}
+		return true;
 	}
 
-	private void addChildNodes(org.w3c.dom.Node parentXMLNode, TreeNode parentTreeNode){
-		addChildNodes(parentXMLNode, parentTreeNode, 0);
+	/**
+	 * Provides the characters of a BASE64 encoded text as byte stream without copying it
+	 */
+	private static final class CharSequenceInputStream extends InputStream {
+		private final CharSequence text;
+		private int position = 0;
+
+		CharSequenceInputStream(CharSequence text){
+			this.text = text;
+		}
+
+		@Override
+		public int read() {
+			return position < text.length() ? (text.charAt(position++) & 0xFF) : -1;
+		}
+
+		@Override
+		public int read(byte[] b, int off, int len) {
+			if(len == 0){return 0;}
+			if(position >= text.length()){return -1;}
+
+			int n = Math.min(len, text.length() - position);
+			for(int i = 0; i < n; i++){
+				b[off + i] = (byte) text.charAt(position++);
+			}
+			return n;
+		}
 	}
 
-	private void addChildNodes(org.w3c.dom.Node parentXMLNode, TreeNode parentTreeNode, int startindex){
-		for(int i = startindex; i < parentXMLNode.getChildNodes().getLength(); i++){
-			org.w3c.dom.Node childXMLNode = parentXMLNode.getChildNodes().item(i);
+	/**
+	 * Counts the bytes that are read from a file
+	 */
+	private static final class ProgressInputStream extends FilterInputStream {
+		private final long fileSize;
+		private final FileOpenProgress progress;
+		private long bytesRead = 0;
+
+		ProgressInputStream(InputStream in, long fileSize, FileOpenProgress progress){
+			super(in);
+			this.fileSize = fileSize;
+			this.progress = progress;
+		}
+
+		@Override
+		public int read() throws IOException {
+			int b = super.read();
+			if(b >= 0){
+				progress.bytesRead(++bytesRead, fileSize);
+			}
+			return b;
+		}
+
+		@Override
+		public int read(byte[] b, int off, int len) throws IOException {
+			int n = super.read(b, off, len);
+			if(n > 0){
+				bytesRead += n;
+				progress.bytesRead(bytesRead, fileSize);
+			}
+			return n;
+		}
+	}
 
-			if(childXMLNode.getNodeType() == Node.ELEMENT_NODE){
-				TreeNode newTreenode = createTreeNode(childXMLNode);
-				parentTreeNode.addChildNode(newTreenode);
+	private static void checkCanceled(FileOpenProgress progress) throws UserCanceledOperationException {
+		if(progress.isCanceled()){
+			throw new UserCanceledOperationException("The operation has been canceled.");
+		}
+	}
 
-				if(childXMLNode.getChildNodes().getLength() > 0){
-					addChildNodes(childXMLNode, newTreenode);
-				}
+	/**
+	 * Reads the "settings" and "tree" elements, the stream reader has to be positioned at the start of the first one.
+	 */
+	private void readSettingsAndTree(XMLStreamReader reader, TreeNode rootNode, Map<String, String> fileSettings, FileOpenProgress progress) throws XMLStreamException, UserCanceledOperationException {
+		do{
+			switch(reader.getLocalName()){
+				case "settings":
+					XML.convertXmlToMap(reader, fileSettings, true);
+					break;
+
+				case "tree":
+					readTree(reader, rootNode, progress);
+					break;
+
+				default:
+					XML.skipElement(reader);
+			}
+		} while(XML.nextChildElement(reader));
+	}
+
+	private void readTree(XMLStreamReader reader, TreeNode rootNode, FileOpenProgress progress) throws XMLStreamException, UserCanceledOperationException {
+		// The nodes are added to the tree as soon as their start element has been read, so there is no need for recursion
+		Deque<TreeNode> parentNodes = new ArrayDeque<>();
+		TreeNode parentTreeNode = rootNode;
+		int nodeCount = 0;
+
+		while(reader.hasNext()){
+			switch(reader.next()){
+				case XMLStreamConstants.START_ELEMENT:
+					TreeNode newTreenode = createTreeNode(reader);
+					parentTreeNode.addChildNode(newTreenode);
+					parentNodes.push(parentTreeNode);
+					parentTreeNode = newTreenode;
+
+					if(++nodeCount % NODE_PROGRESS_INTERVAL == 0){
+						progress.nodesCreated(nodeCount);
+						checkCanceled(progress);
+					}
+					break;
+
+				case XMLStreamConstants.END_ELEMENT:
+					if(parentNodes.isEmpty()){
+						progress.nodesCreated(nodeCount);
+						return; // End of the "tree" element
+					}
+					parentTreeNode = parentNodes.pop();
+					break;
 			}
 		}
 	}
 
-	private TreeNode createTreeNode(org.w3c.dom.Node xmlNode){
+	private TreeNode createTreeNode(XMLStreamReader reader){
 		String id = null;
+		boolean hasTextAttribute = false;
 
 		TreeNode newNode = new DefaultTreeNode();
 
-		for(int i = 0; i < xmlNode.getAttributes().getLength(); i++){
-			String name = xmlNode.getAttributes().item(i).getNodeName();
-			String value = xmlNode.getAttributes().item(i).getNodeValue();
+		for(int i = 0; i < reader.getAttributeCount(); i++){
+			String name = XML.getAttributeName(reader, i);
+			String value = reader.getAttributeValue(i);
 
 			switch(name){
 				case "id":
 					if (!this.compatibilityRegenerateNodeIds) {
 						id = value;
-						break;
 					}
+					else if(!hasTextAttribute){
+						// Old node identifiers are used as node text if there is no "text" attribute
+						newNode.setText(value);
+					}
+					break;
 
 				case "text":
+					hasTextAttribute = true;
 					newNode.setText(value);
 					break;
 
@@ -329,111 +558,107 @@ public class KeyMindFileHandler implements StorageHandler {
 	 * ==============================================================================================================================================
 	 */
 
-	private static Document createXMLFrame(TreeNode rootNode, FileConfiguration fileConfig) throws XMLParseException, InvalidKeyException{
-		try {
-			Document xmldoc = XML.createXmlDocument("KeyMind");
-
-			org.w3c.dom.Attr versionAttrib = xmldoc.createAttribute("version");
-			versionAttrib.setNodeValue(latestFileFormatVersion);
-			xmldoc.getDocumentElement().getAttributes().setNamedItem(versionAttrib);
-
-			org.w3c.dom.Node configNode = xmldoc.createElement("configuration");
-			org.w3c.dom.Node dataNode = xmldoc.createElement("data");
-
-			XML.convertMapToFlatXml(fileConfig.getFileAttributes(), configNode);
+	private static void writeXMLFrame(Writer writer, TreeNode rootNode, FileConfiguration fileConfig) throws TransformerException, SAXException, InvalidKeyException, IOException {
 
-			xmldoc.getDocumentElement().appendChild(configNode);
-			xmldoc.getDocumentElement().appendChild(dataNode);
+		// The document is written as stream, there is no need to build a DOM tree before
+		TransformerHandler xml = XML.createXmlSerializer(new StreamResult(writer));
 
-			if(fileConfig.isEncrypted()){
-				Document subxmldoc = XML.createXmlDocument("root");
+		xml.startDocument();
+		XML.startElement(xml, "KeyMind", "version", latestFileFormatVersion);
 
-				org.w3c.dom.Node settingsNode = subxmldoc.createElement("settings");
-				org.w3c.dom.Node treeNode = subxmldoc.createElement("tree");
+		XML.startElement(xml, "configuration");
+		XML.writeMapAsFlatXml(fileConfig.getFileAttributes(), xml);
+		XML.endElement(xml, "configuration");
 
-				XML.convertMapToXmlNodes(fileConfig.getFileSettings(), settingsNode);
-				appendChildNodesToXMLFile(subxmldoc, treeNode, rootNode);
+		if(fileConfig.isEncrypted()){
+			try{
+				// The inner document is encrypted and BASE64 encoded while it is written, neither the plain text nor the cipher text is kept in memory
+				OutputStream encryptedData = fileConfig.getEncryptionManager().encrypt(Base64.getEncoder().wrap(XML.createTextOutputStream(xml)));
 
-				subxmldoc.getDocumentElement().appendChild(settingsNode);
-				subxmldoc.getDocumentElement().appendChild(treeNode);
+				String cipherName = fileConfig.getEncryptionManager().getCipher().getCipherName();
+				String iv = fileConfig.getEncryptionManager().getIVasBase64();
 
-				try{
-					dataNode.setTextContent(fileConfig.getEncryptionManager().encrypt(XML.writeXmlDocumentToString(subxmldoc)));
-
-					org.w3c.dom.Attr ivAttrib = xmldoc.createAttribute("iv");
-					org.w3c.dom.Attr cipherName = xmldoc.createAttribute("encryption");
-
-					if(fileConfig.getEncryptionManager().getCipher().areSaltedHashesSupported()){
-						org.w3c.dom.Attr saltAttribute = xmldoc.createAttribute("salt");
-						saltAttribute.setNodeValue(fileConfig.getEncryptionManager().getPasswordSaltAsBase64());
-						dataNode.getAttributes().setNamedItem(saltAttribute);
-					}
-
-					ivAttrib.setNodeValue(fileConfig.getEncryptionManager().getIVasBase64());
-					cipherName.setNodeValue(fileConfig.getEncryptionManager().getCipher().getCipherName());
+				if(fileConfig.getEncryptionManager().getCipher().isKeyDerivationSupported()){
+					XML.startElement(xml, "data", "encryption", cipherName, "iv", iv, "salt", fileConfig.getEncryptionManager().getPasswordSaltAsBase64(),
+											  "iterations", Integer.toString(fileConfig.getEncryptionManager().getHashIterations()),
+											  "key-check", fileConfig.getEncryptionManager().getKeyCheckValueAsBase64());
+				}
+				else if(fileConfig.getEncryptionManager().getCipher().areSaltedHashesSupported()){
+					XML.startElement(xml, "data", "encryption", cipherName, "iv", iv, "salt", fileConfig.getEncryptionManager().getPasswordSaltAsBase64());
+				}
+				else{
+					XML.startElement(xml, "data", "encryption", cipherName, "iv", iv);
+				}
 
-					dataNode.getAttributes().setNamedItem(ivAttrib);
-					dataNode.getAttributes().setNamedItem(cipherName);
+				try(Writer data = new OutputStreamWriter(encryptedData, Charset.forName("UTF-8").newEncoder())){
+					TransformerHandler dataXml = XML.createXmlSerializer(new StreamResult(data));
 
-				} catch (InvalidKeySpecException e) {
-					e.printStackTrace();
-					throw new InvalidKeyException(e.getMessage());
+					dataXml.startDocument();
+					XML.startElement(dataXml, "root");
+					writeSettingsAndTree(dataXml, rootNode, fileConfig);
+					XML.endElement(dataXml, "root");
+					dataXml.endDocument();
 				}
-			}
-			else{
-				org.w3c.dom.Node settingsNode = xmldoc.createElement("settings");
-				org.w3c.dom.Node treeNode = xmldoc.createElement("tree");
 
-				XML.convertMapToXmlNodes(fileConfig.getFileSettings(), settingsNode);
-				appendChildNodesToXMLFile(xmldoc, treeNode, rootNode);
+				XML.endElement(xml, "data");
 
-				dataNode.appendChild(settingsNode);
-				dataNode.appendChild(treeNode);
+			} catch (InvalidKeySpecException e) {
+				e.printStackTrace();
+				throw new InvalidKeyException(e.getMessage());
 			}
+		}
+		else{
+			XML.startElement(xml, "data");
+			writeSettingsAndTree(xml, rootNode, fileConfig);
+			XML.endElement(xml, "data");
+		}
 
-			return xmldoc;
+		XML.endElement(xml, "KeyMind");
+		xml.endDocument();
+	}
 
-		} catch (ParserConfigurationException | DOMException | TransformerException e) {
-			throw new XMLParseException(e.getMessage());
-		}
+	private static void writeSettingsAndTree(ContentHandler xml, TreeNode rootNode, FileConfiguration fileConfig) throws SAXException {
+		XML.startElement(xml, "settings");
+		XML.writeMapAsXmlNodes(fileConfig.getFileSettings(), xml);
+		XML.endElement(xml, "settings");
+
+		XML.startElement(xml, "tree");
+		writeChildNodes(xml, rootNode);
+		XML.endElement(xml, "tree");
 	}
 
-	private static void appendChildNodesToXMLFile(Document xmldoc, org.w3c.dom.Node parentXMLNode, TreeNode parentTreeNode){
+	private static void writeChildNodes(ContentHandler xml, TreeNode parentTreeNode) throws SAXException {
 		for(int i = 0; i < parentTreeNode.countChildNodes(); i++){
 			TreeNode childNode = parentTreeNode.getChildNodeByIndex(i);
 
-			org.w3c.dom.Node xmlNode = xmldoc.createElement("Node");
-
-			org.w3c.dom.Attr attrib = xmldoc.createAttribute("text");
-			attrib.setNodeValue(childNode.getText());
-			xmlNode.getAttributes().setNamedItem(attrib);
-
-			attrib = xmldoc.createAttribute("id");
-			attrib.setNodeValue(childNode.getId());
-			xmlNode.getAttributes().setNamedItem(attrib);
+			// The attributes are sorted by their names, like in the files written by previous versions
+			Map<String, String> attributes = new TreeMap<>();
+			attributes.put("text", childNode.getText());
+			attributes.put("id", childNode.getId());
 
 			if(childNode.getColor() != null){
-				attrib = xmldoc.createAttribute("color");
-				attrib.setNodeValue(childNode.getColor());
-				xmlNode.getAttributes().setNamedItem(attrib);
+				attributes.put("color", childNode.getColor());
 			}
 
 			for(String key: childNode.listAttributes()){
 				String value = childNode.getAttribute(key);
 				if(value != null){
 					if(!value.equals("")){
-						org.w3c.dom.Attr attribute = xmldoc.createAttribute(key);
-						attribute.setNodeValue(value);
-						xmlNode.getAttributes().setNamedItem(attribute);
+						attributes.put(key, value);
 					}
 				}
 			}
 
+			AttributesImpl xmlAttributes = new AttributesImpl();
+			attributes.forEach((name, value) -> xmlAttributes.addAttribute("", "", name, "CDATA", value));
+
+			xml.startElement("", "", "Node", xmlAttributes);
+
 			if(childNode.countChildNodes() > 0){
-				appendChildNodesToXMLFile(xmldoc, xmlNode, childNode);
+				writeChildNodes(xml, childNode);
 			}
 
-			parentXMLNode.appendChild(xmlNode);
+			xml.endElement("", "", "Node");
 		}
 	}
 }
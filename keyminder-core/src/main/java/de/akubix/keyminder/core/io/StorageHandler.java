@@ -37,6 +37,22 @@ public interface StorageHandler {
 	 */
 	public FileConfiguration open(File file, String filePassword, Object tree, ApplicationInstance instance) throws StorageException;
 
+	/**
+	 * This method will be called if a file is opened in background. The nodes have to be added to the given tree (and not to the tree of the application instance),
+	 * which will replace the nodes of the application tree as soon as the file has been read completely.
+	 * The default implementation does not report any progress, storage handlers that ignore the "tree" parameter of {@link #open(File, String, Object, ApplicationInstance)} have to override it.
+	 * @param file The file that should be opened
+	 * @param filePassword The password of this file (may be "")
+	 * @param tree The (detached) tree the nodes should be added to
+	 * @param instance The application instance, for example to print some output
+	 * @param progress Receives the progress, the handler should stop with a {@link StorageException} of type "UserCancelation" if the operation has been canceled
+	 * @return the file configuration of this file
+	 * @throws StorageException Throw this exception if something went wrong
+	 */
+	public default FileConfiguration open(File file, String filePassword, TreeStore tree, ApplicationInstance instance, FileOpenProgress progress) throws StorageException {
+		return open(file, filePassword, (Object) tree, instance);
+	}
+
 	/**
 	 * This method will be called if the "Storage Handler" is requested to save the tree to a file
 	 * @param file The data should be stored in this file
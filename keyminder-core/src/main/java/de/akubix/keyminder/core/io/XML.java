@@ -25,27 +25,38 @@ import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.OutputStream;
 import java.io.OutputStreamWriter;
 import java.io.StringWriter;
 import java.nio.charset.Charset;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.Map;
 
 import javax.management.modelmbean.XMLParseException;
 import javax.xml.parsers.DocumentBuilder;
 import javax.xml.parsers.DocumentBuilderFactory;
 import javax.xml.parsers.ParserConfigurationException;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
 import javax.xml.transform.OutputKeys;
 import javax.xml.transform.Result;
 import javax.xml.transform.Transformer;
+import javax.xml.transform.TransformerConfigurationException;
 import javax.xml.transform.TransformerException;
 import javax.xml.transform.TransformerFactory;
 import javax.xml.transform.dom.DOMSource;
+import javax.xml.transform.sax.SAXTransformerFactory;
+import javax.xml.transform.sax.TransformerHandler;
 import javax.xml.transform.stream.StreamResult;
 
 import org.w3c.dom.Document;
 import org.w3c.dom.Node;
+import org.xml.sax.ContentHandler;
 import org.xml.sax.SAXException;
+import org.xml.sax.helpers.AttributesImpl;
 
 import de.akubix.keyminder.util.KeyValuePair;
 import de.akubix.keyminder.util.Utilities;
@@ -135,6 +146,73 @@ public final class XML{
 		return factory.newDocumentBuilder();
 	}
 
+	/* Streaming XML Parser
+	 * ==========================================================================================================================================================================
+	 */
+
+	/**
+	 * Creates a new {@link XMLInputFactory} for streaming XML parsers. Document type definitions and external entities are not supported.
+	 * @return the new factory
+	 */
+	public static XMLInputFactory createXmlInputFactory(){
+		XMLInputFactory factory = XMLInputFactory.newInstance();
+		factory.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+		factory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false);
+		factory.setProperty(XMLInputFactory.IS_COALESCING, true);
+		factory.setProperty(XMLInputFactory.IS_NAMESPACE_AWARE, false); // Element names like "keyminder:password-hint" are used without namespace declaration
+		return factory;
+	}
+
+	/**
+	 * Returns the qualified name (including the prefix) of an attribute of the current element
+	 * @param reader the stream reader
+	 * @param index the index of the attribute
+	 * @return the name of the attribute
+	 */
+	public static String getAttributeName(XMLStreamReader reader, int index){
+		String prefix = reader.getAttributePrefix(index);
+		return (prefix == null || prefix.isEmpty()) ? reader.getAttributeLocalName(index) : prefix + ":" + reader.getAttributeLocalName(index);
+	}
+
+	/**
+	 * Moves the stream reader to the next child element of the current element, text nodes and comments are skipped.
+	 * @param reader the stream reader
+	 * @return {@code true} if the reader has been moved to the start of the next child element, {@code false} if the end of the current element has been reached
+	 * @throws XMLStreamException if the XML document could not be parsed
+	 */
+	public static boolean nextChildElement(XMLStreamReader reader) throws XMLStreamException {
+		while(reader.hasNext()){
+			switch(reader.next()){
+				case XMLStreamConstants.START_ELEMENT:
+					return true;
+				case XMLStreamConstants.END_ELEMENT:
+				case XMLStreamConstants.END_DOCUMENT:
+					return false;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Skips the current element of the stream reader including all of its child nodes.
+	 * Afterwards, the reader is positioned at the end of this element.
+	 * @param reader the stream reader
+	 * @throws XMLStreamException if the XML document could not be parsed
+	 */
+	public static void skipElement(XMLStreamReader reader) throws XMLStreamException {
+		int depth = 1;
+		while(depth > 0 && reader.hasNext()){
+			switch(reader.next()){
+				case XMLStreamConstants.START_ELEMENT:
+					depth++;
+					break;
+				case XMLStreamConstants.END_ELEMENT:
+					depth--;
+					break;
+			}
+		}
+	}
+
 	/* XML Writer
 	 * ==========================================================================================================================================================================
 	 */
@@ -176,16 +254,108 @@ public final class XML{
 
 		TransformerFactory transformerFactory = TransformerFactory.newInstance();
 		Transformer transformer = transformerFactory.newTransformer();
+		configureTransformer(transformer);
 
+		xmldoc.setXmlStandalone(true);
+		transformer.transform(new DOMSource(xmldoc), result);
+	}
+
+	private static void configureTransformer(Transformer transformer){
 		//transformer.setOutputProperty(OutputKeys.OMIT_XML_DECLARATION, "yes");
 		transformer.setOutputProperty(OutputKeys.METHOD, "xml");
 		transformer.setOutputProperty(OutputKeys.ENCODING,"UTF-8");
 		transformer.setOutputProperty(OutputKeys.INDENT, "yes");
 		transformer.setOutputProperty(OutputKeys.STANDALONE, "yes");
 		transformer.setOutputProperty("{http://xml.apache.org/xslt}indent-amount", "4");
+	}
 
-		xmldoc.setXmlStandalone(true);
-		transformer.transform(new DOMSource(xmldoc), result);
+	/* Streaming XML Writer
+	 * ==========================================================================================================================================================================
+	 */
+
+	/**
+	 * Creates a serializer which writes all SAX events it receives directly to the result, without building a document in memory.
+	 * The output is formatted the same way as the output of {@link #writeXmlDocumentToFile(File, Document)}.
+	 * @param result the target of the serializer
+	 * @return the serializer
+	 * @throws TransformerConfigurationException if the serializer cannot be created
+	 */
+	public static TransformerHandler createXmlSerializer(Result result) throws TransformerConfigurationException {
+		TransformerHandler handler = ((SAXTransformerFactory) TransformerFactory.newInstance()).newTransformerHandler();
+		configureTransformer(handler.getTransformer());
+		handler.setResult(result);
+		return handler;
+	}
+
+	/**
+	 * Writes the start tag of an element
+	 * @param handler the content handler (or the serializer)
+	 * @param name the name of the element
+	 * @param attributes the attributes of this element as name value pairs
+	 * @throws SAXException if the element cannot be written
+	 */
+	public static void startElement(ContentHandler handler, String name, String... attributes) throws SAXException {
+		AttributesImpl attribs = new AttributesImpl();
+		for(int i = 0; i + 1 < attributes.length; i += 2){
+			attribs.addAttribute("", "", attributes[i], "CDATA", attributes[i + 1]);
+		}
+		handler.startElement("", "", name, attribs);
+	}
+
+	/**
+	 * Writes the end tag of an element
+	 * @param handler the content handler (or the serializer)
+	 * @param name the name of the element
+	 * @throws SAXException if the element cannot be written
+	 */
+	public static void endElement(ContentHandler handler, String name) throws SAXException {
+		handler.endElement("", "", name);
+	}
+
+	/**
+	 * Writes a text node
+	 * @param handler the content handler (or the serializer)
+	 * @param text the text
+	 * @throws SAXException if the text cannot be written
+	 */
+	public static void characters(ContentHandler handler, String text) throws SAXException {
+		handler.characters(text.toCharArray(), 0, text.length());
+	}
+
+	/**
+	 * Returns a stream which writes all bytes as text to the content handler, for example to write BASE64 encoded data without building a string.
+	 * Each byte is treated as one (ASCII) character. Closing the stream writes the remaining characters, the handler itself is not affected.
+	 * @param handler the content handler (or the serializer)
+	 * @return the output stream
+	 */
+	public static OutputStream createTextOutputStream(ContentHandler handler){
+		return new OutputStream() {
+			private final char[] buffer = new char[8192];
+			private int count = 0;
+
+			@Override
+			public void write(int b) throws IOException {
+				if(count == buffer.length){flush();}
+				buffer[count++] = (char) (b & 0xFF);
+			}
+
+			@Override
+			public void flush() throws IOException {
+				if(count > 0){
+					try {
+						handler.characters(buffer, 0, count);
+					} catch (SAXException e) {
+						throw new IOException(e.getMessage(), e);
+					}
+					count = 0;
+				}
+			}
+
+			@Override
+			public void close() throws IOException {
+				flush();
+			}
+		};
 	}
 
 	/* Working with XML documents or nodes
@@ -240,6 +410,24 @@ public final class XML{
 		}
 	}
 
+	/**
+	 * Writes a Map as flat XML with only one level, this is the streaming equivalent to {@link #convertMapToFlatXml(Map, Node)}
+	 * @param source the data source
+	 * @param handler the content handler (or the serializer)
+	 * @throws SAXException if the XML cannot be written
+	 */
+	public static void writeMapAsFlatXml(Map<String, String> source, ContentHandler handler) throws SAXException {
+
+		for(String key: source.keySet()){
+			String val = source.get(key);
+			if(!val.equals("")){
+				startElement(handler, key);
+				characters(handler, val);
+				endElement(handler, key);
+			}
+		}
+	}
+
 	/**
 	 * Converts a Map to an XML-Document
 	 * @param source the data source
@@ -281,6 +469,68 @@ public final class XML{
 		}
 	}
 
+	/**
+	 * Writes a Map as multiple XML-Nodes, this is the streaming equivalent to {@link #convertMapToXmlNodes(Map, Node)}
+	 * @param source the data source
+	 * @param handler the content handler (or the serializer)
+	 * @throws SAXException if the XML cannot be written
+	 */
+	public static void writeMapAsXmlNodes(Map<String, String> source, ContentHandler handler) throws SAXException {
+
+		// The keys have to be grouped by their prefixes at first, the map is usually small (e.g. the file settings)
+		MapElement root = new MapElement(null);
+
+		for(String key: source.keySet()){
+			MapElement element = root;
+			for(String part: key.split("\\.")){
+				element = element.getOrCreateChild(part);
+			}
+
+			element.value = source.get(key);
+		}
+
+		root.writeChildElements(handler);
+	}
+
+	private static final class MapElement {
+		private final String part;
+		private final Map<String, MapElement> childElements = new LinkedHashMap<>();
+		private String value = null;
+
+		private MapElement(String part){
+			this.part = part;
+		}
+
+		private MapElement getOrCreateChild(String part){
+			return childElements.computeIfAbsent(part, MapElement::new);
+		}
+
+		private void writeChildElements(ContentHandler handler) throws SAXException {
+			for(MapElement childElement: childElements.values()){
+				String name = childElement.part;
+				if(name.contains(":")){
+					KeyValuePair<String, String> pair = Utilities.splitKeyAndValue(name, ".+", ":", ".+");
+					name = pair.getKey();
+					startElement(handler, name, "name", pair.getValue());
+				}
+				else{
+					startElement(handler, name);
+				}
+
+				if(childElement.childElements.isEmpty()){
+					if(childElement.value != null){
+						characters(handler, childElement.value);
+					}
+				}
+				else{
+					childElement.writeChildElements(handler);
+				}
+
+				endElement(handler, name);
+			}
+		}
+	}
+
 	private static org.w3c.dom.Node getOrCreateXmlNode(Map<String, org.w3c.dom.Node> nodeMap, String prefix, String nodeName, org.w3c.dom.Node parentXmlNode)	{
 		if(nodeMap.containsKey(prefix + nodeName + ".")){
 			return nodeMap.get(prefix + nodeName + ".");
@@ -334,6 +584,52 @@ public final class XML{
 		convertXmlToMap(document.getDocumentElement(), targetMap, enableOverwrite);
 	}
 
+	/**
+	 * Restores an hash from an XML stream, the stream reader has to be positioned at the start of the parent element.
+	 * Afterwards, the reader is positioned at the end of this element.
+	 * @param reader the stream reader
+	 * @param targetMap the target map
+	 * @param enableOverwrite overwrite existing keys?
+	 * @throws XMLStreamException if the XML document could not be parsed
+	 * @see #convertXmlToMap(org.w3c.dom.Node, Map, boolean)
+	 */
+	public static void convertXmlToMap(XMLStreamReader reader, Map<String, String> targetMap, boolean enableOverwrite) throws XMLStreamException {
+		extractNodesFromXml(reader, "", targetMap, enableOverwrite ? (hash, key, value) -> hash.put(key, value) : (hash, key, value) -> hash.putIfAbsent(key, value));
+	}
+
+	private static void extractNodesFromXml(XMLStreamReader reader, String prefix, Map<String, String> targetHash, HashStorageFunction<String> storefunction) throws XMLStreamException {
+		while(nextChildElement(reader)){
+			extractElementFromXml(reader, prefix, targetHash, storefunction);
+		}
+	}
+
+	private static void extractElementFromXml(XMLStreamReader reader, String prefix, Map<String, String> targetHash, HashStorageFunction<String> storefunction) throws XMLStreamException {
+		String nameAttribute = reader.getAttributeValue(null, "name");
+		String key = (nameAttribute == null) ? prefix + reader.getLocalName() : prefix + reader.getLocalName() + ":" + nameAttribute;
+
+		// The element either contains a value or it has child elements (text nodes are ignored in this case)
+		StringBuilder text = new StringBuilder();
+		boolean hasChildElements = false;
+
+		while(reader.hasNext()){
+			int event = reader.next();
+			if(event == XMLStreamConstants.START_ELEMENT){
+				hasChildElements = true;
+				extractElementFromXml(reader, key + ".", targetHash, storefunction);
+			}
+			else if(event == XMLStreamConstants.END_ELEMENT){
+				break;
+			}
+			else if(event == XMLStreamConstants.CHARACTERS || event == XMLStreamConstants.CDATA || event == XMLStreamConstants.SPACE){
+				text.append(reader.getText());
+			}
+		}
+
+		if(!hasChildElements){
+			storefunction.store(targetHash, key, text.toString());
+		}
+	}
+
 	private static void extractNodesFromXml(org.w3c.dom.Node parentXMLNode, String prefix, Map<String, String> targetHash, HashStorageFunction<String> storefunction) {
 		for(int i = 0; i < parentXMLNode.getChildNodes().getLength(); i++){
 			Node currentNode = parentXMLNode.getChildNodes().item(i);
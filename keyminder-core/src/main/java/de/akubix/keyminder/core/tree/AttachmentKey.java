@@ -0,0 +1,42 @@
+/* KeyMinder
+ * Copyright (C) 2016 Bastian Kraemer
+ *
+ * AttachmentKey.java
+ *
+ * KeyMinder is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * KeyMinder is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with KeyMinder.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.akubix.keyminder.core.tree;
+
+/**
+ * Identifies an object that a user interface has attached to a {@link TreeNode}, for example the item which displays the node.
+ * Keys are compared by identity, so each user interface should create its own key.
+ * @param <T> the type of the attached objects
+ * @see TreeNode#setAttachment(AttachmentKey, Object)
+ */
+public final class AttachmentKey<T> {
+
+	private final String name;
+
+	/**
+	 * @param name a name for debugging purposes
+	 */
+	public AttachmentKey(String name){
+		this.name = name;
+	}
+
+	@Override
+	public String toString(){
+		return name;
+	}
+}
@@ -65,7 +65,9 @@ public class DefaultTreeNode extends TreeNode {
 
 	@Override
 	public TreeNode setText(String text) {
-		preNodeUpdate();
+		if(isUndoEnabled()){
+			getTree().getUndoBuilder().textChanged(this, this.nodeText).commit();
+		}
 
 		this.nodeText = text;
 		nodeUpdated();
@@ -79,7 +81,9 @@ public class DefaultTreeNode extends TreeNode {
 
 	@Override
 	public TreeNode setColor(String color) {
-		preNodeUpdate();
+		if(isUndoEnabled()){
+			getTree().getUndoBuilder().colorChanged(this, this.color).commit();
+		}
 
 		this.color = color;
 		nodeUpdated();
@@ -99,10 +103,6 @@ public class DefaultTreeNode extends TreeNode {
 	@Override
 	public void setAttribute(String name, String value, boolean silent) {
 
-		if(!silent){
-			preNodeUpdate();
-		}
-
 		if(name.equals("text")){
 			setText(value);
 		}
@@ -110,22 +110,77 @@ public class DefaultTreeNode extends TreeNode {
 			setColor(value);
 		}
 		else{
-			attributes.put(name, value);
+			// Silent changes (like the modification date) are not recorded for undo
+			if(!silent && isUndoEnabled()){
+				getTree().getUndoBuilder().attributeChanged(this, name, attributes.get(name)).commit();
+			}
+
+			String previousValue = attributes.put(name, value);
+			if(getTree() != null){
+				getTree().attributeSet(this, name, previousValue == null);
+			}
 		}
 
 		if(!silent){
 			nodeUpdated();
 		}
+		else if(getTree() != null){
+			getTree().updateSearchIndex(this);
+		}
 	}
 
 	@Override
 	public void removeAttribute(String name) {
-		preNodeUpdate();
+		if(isUndoEnabled() && attributes.containsKey(name)){
+			getTree().getUndoBuilder().attributeChanged(this, name, attributes.get(name)).commit();
+		}
 
-		attributes.remove(name);
+		if(attributes.remove(name) != null && getTree() != null){
+			getTree().attributeRemoved(this, name);
+		}
 		nodeUpdated();
 	}
 
+	/*
+	 * The following methods are used to undo a change, they restore a previous value without recording the change or notifying anyone
+	 */
+
+	void restoreText(String text){
+		this.nodeText = text;
+		restored();
+	}
+
+	void restoreColor(String color){
+		this.color = color;
+		restored();
+	}
+
+	/**
+	 * @param name the name of the attribute
+	 * @param value the previous value or {@code null} to remove the attribute
+	 */
+	void restoreAttribute(String name, String value){
+		if(value == null){
+			if(attributes.remove(name) != null && getTree() != null){
+				getTree().attributeRemoved(this, name);
+			}
+		}
+		else{
+			String previousValue = attributes.put(name, value);
+			if(getTree() != null){
+				getTree().attributeSet(this, name, previousValue == null);
+			}
+		}
+		restored();
+	}
+
+	private void restored(){
+		if(getTree() != null){
+			getTree().updateSearchIndex(this);
+			getTree().setTreeChangedStatus(true);
+		}
+	}
+
 	@Override
 	public Set<String> listAttributes() {
 		return Collections.unmodifiableSet(attributes.keySet());
@@ -139,6 +194,13 @@ public class DefaultTreeNode extends TreeNode {
 	@Override
 	public void onParentUpdate() {}
 
+	@Override
+	protected void releaseContent() {
+		this.nodeText = "";
+		this.color = "";
+		this.attributes.clear();
+	}
+
 	@Override
 	public TreeNode cloneNode() {
 		DefaultTreeNode clone = new DefaultTreeNode();
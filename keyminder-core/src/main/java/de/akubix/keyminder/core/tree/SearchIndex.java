@@ -0,0 +1,242 @@
+/* KeyMinder
+ * Copyright (C) 2016 Bastian Kraemer
+ *
+ * SearchIndex.java
+ *
+ * KeyMinder is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * KeyMinder is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with KeyMinder.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.akubix.keyminder.core.tree;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Consumer;
+
+/**
+ * An inverted index over the text and the attribute values of all nodes of a {@link TreeStore}.
+ * The values are split into words (sequences of letters and digits), each word references all nodes that contain it.
+ *
+ * The index is maintained by the {@link TreeStore} whenever a node is added, edited or removed.
+ * A lookup only returns candidates: every node that contains the search term is part of the result, but the candidates have to be confirmed by a matcher.
+ * The words that contain a part of a word are found by a second index, which maps all trigrams (three consecutive characters) to the words that contain them.
+ * @see TreeStore#getSearchIndex()
+ */
+public final class SearchIndex {
+
+	private static final int GRAM_LENGTH = 3;
+
+	// Most words are used by a single node only, in this case the node is stored directly instead of a set of nodes
+	private final Map<String, Object> postings = new HashMap<>();
+	private final Map<TreeNode, String[]> indexedWords = new IdentityHashMap<>();
+	private final Map<String, Set<String>> grams = new HashMap<>();
+
+	SearchIndex(){}
+
+	/**
+	 * Adds a node to the index or updates its entry if the node is already indexed
+	 * @param node the node
+	 */
+	synchronized void update(TreeNode node){
+		String[] words = getWords(node);
+		String[] previousWords = indexedWords.put(node, words);
+
+		if(previousWords != null){
+			for(String word: previousWords){
+				removePosting(word, node);
+			}
+		}
+
+		for(String word: words){
+			addPosting(word, node);
+		}
+	}
+
+	@SuppressWarnings("unchecked")
+	private void addPosting(String word, TreeNode node){
+		Object nodes = postings.putIfAbsent(word, node);
+		if(nodes == null){
+			forEachGram(word, (gram) -> grams.computeIfAbsent(gram, (key) -> new HashSet<>(4)).add(word));
+			return;
+		}
+		else if(nodes == node){
+			return;
+		}
+
+		if(nodes instanceof TreeNode){
+			Set<TreeNode> set = Collections.newSetFromMap(new IdentityHashMap<>(4));
+			set.add((TreeNode) nodes);
+			set.add(node);
+			postings.put(word, set);
+		}
+		else{
+			((Set<TreeNode>) nodes).add(node);
+		}
+	}
+
+	/**
+	 * Removes a node from the index
+	 * @param node the node
+	 */
+	synchronized void remove(TreeNode node){
+		String[] words = indexedWords.remove(node);
+		if(words != null){
+			for(String word: words){
+				removePosting(word, node);
+			}
+		}
+	}
+
+	@SuppressWarnings("unchecked")
+	private void removePosting(String word, TreeNode node){
+		Object nodes = postings.get(word);
+		if(nodes == node){
+			removeWord(word);
+		}
+		else if(nodes instanceof Set){
+			Set<TreeNode> set = (Set<TreeNode>) nodes;
+			set.remove(node);
+			if(set.isEmpty()){
+				removeWord(word);
+			}
+		}
+	}
+
+	private void removeWord(String word){
+		postings.remove(word);
+		forEachGram(word, (gram) -> {
+			Set<String> words = grams.get(gram);
+			if(words != null && words.remove(word) && words.isEmpty()){
+				grams.remove(gram);
+			}
+		});
+	}
+
+	private static void forEachGram(String word, Consumer<String> consumer){
+		for(int i = 0; i + GRAM_LENGTH <= word.length(); i++){
+			consumer.accept(word.substring(i, i + GRAM_LENGTH));
+		}
+	}
+
+	@SuppressWarnings("unchecked")
+	private static void addAll(Set<TreeNode> target, Object nodes){
+		if(nodes instanceof TreeNode){
+			target.add((TreeNode) nodes);
+		}
+		else if(nodes != null){
+			target.addAll((Set<TreeNode>) nodes);
+		}
+	}
+
+	synchronized void clear(){
+		postings.clear();
+		indexedWords.clear();
+		grams.clear();
+	}
+
+	/**
+	 * @return the number of indexed nodes
+	 */
+	public synchronized int size(){
+		return indexedWords.size();
+	}
+
+	/**
+	 * Looks up all nodes which may contain a search term in their text or in one of their attribute values.
+	 * The search is case insensitive, the term may contain any characters (a '*' is treated like any other separator).
+	 * @param term the search term
+	 * @return the candidates, or {@code null} if the index cannot be used because the term does not contain a word of at least three letters or digits.
+	 * Shorter words are part of too many other words, walking through the tree is not slower in this case.
+	 */
+	public synchronized Set<TreeNode> findCandidates(String term){
+
+		// Every node that contains the term has a word which contains the longest word of the term
+		String longestWord = null;
+		for(String word: split(term)){
+			if(longestWord == null || word.length() > longestWord.length()){
+				longestWord = word;
+			}
+		}
+
+		if(longestWord == null || longestWord.length() < GRAM_LENGTH){
+			return null;
+		}
+
+		// Every word that contains the longest word contains all of its trigrams, so it is sufficient to check the words of the rarest trigram
+		Set<TreeNode> candidates = Collections.newSetFromMap(new IdentityHashMap<>());
+		Set<String> words = null;
+		for(int i = 0; i + GRAM_LENGTH <= longestWord.length(); i++){
+			Set<String> wordsWithGram = grams.get(longestWord.substring(i, i + GRAM_LENGTH));
+			if(wordsWithGram == null){
+				return candidates;
+			}
+
+			if(words == null || wordsWithGram.size() < words.size()){
+				words = wordsWithGram;
+			}
+		}
+
+		for(String word: words){
+			if(word.contains(longestWord)){
+				addAll(candidates, postings.get(word));
+			}
+		}
+
+		return candidates;
+	}
+
+	private static String[] getWords(TreeNode node){
+		Set<String> words = new LinkedHashSet<>();
+		split(node.getText(), words);
+		node.getAttributes().forEach((attribute) -> split(attribute.getValue(), words));
+		return words.toArray(new String[words.size()]);
+	}
+
+	private static Set<String> split(String value){
+		Set<String> words = new LinkedHashSet<>();
+		split(value, words);
+		return words;
+	}
+
+	/**
+	 * Splits a value into lower case words and adds them to a set, so each word is added only once.
+	 * Each character is converted on its own, so the words of a text always contain the words of any substring of the text, even if the search ignores the case of the characters.
+	 */
+	private static void split(String value, Set<String> words){
+		if(value == null){return;}
+
+		StringBuilder word = new StringBuilder();
+		for(int i = 0; i < value.length(); i++){
+			char c = value.charAt(i);
+			if(Character.isLetterOrDigit(c)){
+				word.append(Character.toLowerCase(c));
+			}
+			else if(word.length() > 0){
+				addWord(word, words);
+			}
+		}
+
+		if(word.length() > 0){
+			addWord(word, words);
+		}
+	}
+
+	private static void addWord(StringBuilder word, Set<String> words){
+		words.add(word.toString());
+		word.setLength(0);
+	}
+}
@@ -0,0 +1,149 @@
+/* KeyMinder
+ * Copyright (C) 2016 Bastian Kraemer
+ *
+ * TimeIndex.java
+ *
+ * KeyMinder is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * KeyMinder is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with KeyMinder.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.akubix.keyminder.core.tree;
+
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Set;
+import java.util.TreeMap;
+
+/**
+ * A sorted index over an attribute which contains a timestamp (milliseconds since epoch), like the creation or the modification date of a node.
+ * Values which cannot be parsed are not part of any range, the nodes with such a value are kept separately (see {@link #getNodesWithInvalidValue()}).
+ *
+ * The index is maintained by the {@link TreeStore} whenever the attribute is set or removed, or a node is added or removed.
+ * @see TreeStore#getTimeIndex(String)
+ */
+public final class TimeIndex {
+
+	private final String attributeName;
+	private final TreeMap<Long, Set<TreeNode>> nodesByTime = new TreeMap<>();
+	private final Map<TreeNode, Long> indexedTimes = new IdentityHashMap<>();
+	private final Set<TreeNode> invalidNodes = Collections.newSetFromMap(new IdentityHashMap<>());
+
+	TimeIndex(String attributeName){
+		this.attributeName = attributeName;
+	}
+
+	/**
+	 * @return the name of the indexed attribute
+	 */
+	public String getAttributeName(){
+		return attributeName;
+	}
+
+	/**
+	 * Adds a node to the index or updates its entry, nodes without a valid timestamp are removed from the index
+	 * @param node the node
+	 */
+	synchronized void update(TreeNode node){
+		String value = node.hasAttribute(attributeName) ? node.getAttribute(attributeName) : null;
+		Long time = parse(value);
+		if(value != null && time == null){
+			invalidNodes.add(node);
+		}
+		else{
+			invalidNodes.remove(node);
+		}
+
+		Long previousTime = time == null ? indexedTimes.remove(node) : indexedTimes.put(node, time);
+
+		if(previousTime != null){
+			if(previousTime.equals(time)){
+				return;
+			}
+
+			Set<TreeNode> nodes = nodesByTime.get(previousTime);
+			if(nodes != null && nodes.remove(node) && nodes.isEmpty()){
+				nodesByTime.remove(previousTime);
+			}
+		}
+
+		if(time != null){
+			nodesByTime.computeIfAbsent(time, (key) -> Collections.newSetFromMap(new IdentityHashMap<>(4))).add(node);
+		}
+	}
+
+	/**
+	 * Removes a node from the index
+	 * @param node the node
+	 */
+	synchronized void remove(TreeNode node){
+		invalidNodes.remove(node);
+		Long time = indexedTimes.remove(node);
+		if(time != null){
+			Set<TreeNode> nodes = nodesByTime.get(time);
+			if(nodes != null && nodes.remove(node) && nodes.isEmpty()){
+				nodesByTime.remove(time);
+			}
+		}
+	}
+
+	synchronized void clear(){
+		nodesByTime.clear();
+		indexedTimes.clear();
+		invalidNodes.clear();
+	}
+
+	/**
+	 * @return the number of indexed nodes
+	 */
+	public synchronized int size(){
+		return indexedTimes.size();
+	}
+
+	/**
+	 * Returns all nodes which have a timestamp within a range, the lookup takes logarithmic time plus the number of matching nodes
+	 * @param from the lower bound (inclusive)
+	 * @param to the upper bound (inclusive)
+	 * @return a (modifiable) set of the matching nodes, use {@link TreePosition#sort(java.util.Collection)} to bring them into the order of the tree
+	 */
+	public synchronized Set<TreeNode> findNodes(long from, long to){
+		Set<TreeNode> result = Collections.newSetFromMap(new IdentityHashMap<>());
+		if(from <= to){
+			NavigableMap<Long, Set<TreeNode>> range = nodesByTime.subMap(from, true, to, true);
+			range.values().forEach(result::addAll);
+		}
+		return result;
+	}
+
+	/**
+	 * @return a (modifiable) set of the nodes which have the attribute, but whose value is not a valid timestamp
+	 */
+	public synchronized Set<TreeNode> getNodesWithInvalidValue(){
+		Set<TreeNode> result = Collections.newSetFromMap(new IdentityHashMap<>());
+		result.addAll(invalidNodes);
+		return result;
+	}
+
+	private static Long parse(String value){
+		if(value == null){
+			return null;
+		}
+
+		try{
+			return Long.parseLong(value);
+		}
+		catch(NumberFormatException e){
+			return null;
+		}
+	}
+}
@@ -18,30 +18,44 @@
  */
 package de.akubix.keyminder.core.tree;
 
+import java.lang.ref.WeakReference;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
+import java.util.Deque;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.function.Consumer;
-import java.util.stream.Collectors;
 
 import de.akubix.keyminder.core.ApplicationInstance;
 import de.akubix.keyminder.core.events.EventTypes.TreeNodeEvent;
 import de.akubix.keyminder.util.Utilities;
 
 /**
- * Base class for every tree node
+ * Base class for every tree node.
+ * The structure of the tree is described by direct references between the nodes, the {@link TreeStore} only uses the node identifiers as secondary index.
  */
 public abstract class TreeNode {
 
 	private String identifier;
-	private String parentNodeIdentifer;
+	private TreeNode parentNode;
 	private TreeStore tree;
-	private List<String> childNodes;
+	private List<TreeNode> childNodes;
 	private boolean isExpanded;
 
+	// Cached position of this node in the child node list of its parent, it is validated on each access (see getIndex())
+	private int siblingIndex = -1;
+
+	// Detached copies of a node (see clone(CloneMode)) are not linked to any other node, they only know the identifiers of their relatives
+	private String clonedParentNodeId;
+	private List<String> clonedChildNodeIds;
+
+	// Objects of the user interfaces, stored as pairs of an AttachmentKey and a WeakReference (copy on write)
+	private volatile Object[] attachments = null;
+
 	protected TreeNode(){
 		this.childNodes = canHaveChildNodes() ? new ArrayList<>() : null;
 		this.isExpanded = false;
@@ -59,14 +73,37 @@ public abstract class TreeNode {
 		this.identifier = id;
 	}
 
-	private final void setParentNodeId(String parentNodeId){
-		this.parentNodeIdentifer = parentNodeId;
+	private final void setParentNode(TreeNode parentNode){
+		this.parentNode = parentNode;
 	}
 
 	final void setTree(TreeStore tree){
 		this.tree = tree;
 	}
 
+	/**
+	 * Releases a node of a tree that has been reset. The links to other nodes, the attachments and the content of the node are dropped,
+	 * so a reference that is still held somewhere (for example by a user interface) does not keep the other nodes or the attribute values reachable.
+	 * Only the identifier is kept, it can still be used to look up the node of a new tree.
+	 */
+	final void release(){
+		this.parentNode = null;
+		this.tree = null;
+		this.attachments = null;
+		this.clonedParentNodeId = null;
+		this.clonedChildNodeIds = null;
+		if(this.childNodes != null){
+			this.childNodes.clear();
+		}
+		releaseContent();
+	}
+
+	/**
+	 * Drops the text and the attributes of a node that has been released, the node will not be used anymore
+	 * @see #release()
+	 */
+	protected void releaseContent(){}
+
 	public abstract boolean isGenerated();
 	public abstract boolean canHaveChildNodes();
 	public abstract boolean canHaveAttributes();
@@ -74,26 +111,32 @@ public abstract class TreeNode {
 	/**
 	 * Returns the current index of the TreeNode.
 	 * For example: The node is the second node below its parent, then the index will be "1" .
+	 * The index is cached, so this method runs in constant time unless the order of the sibling nodes has been changed by inserting or removing a node.
 	 * @return the current index of this TreeNode.
 	 */
 	public final int getIndex(){
 		if(this.identifier == null){
 			return -1;
 		}
-		if(!this.identifier.equals("0") && this.parentNodeIdentifer != null){
-			int index = 0;
-
-			for(String childNodeIdentifier: getParentNode().childNodes){
-				if(childNodeIdentifier.equals(this.identifier)){
-					return index;
-				}
-				index++;
+		if(!this.identifier.equals("0") && this.parentNode != null){
+			final List<TreeNode> siblings = this.parentNode.childNodes;
+			if(siblingIndex < 0 || siblingIndex >= siblings.size() || siblings.get(siblingIndex) != this){
+				// The cached index is outdated, this happens after a node has been inserted or removed in front of this node
+				this.parentNode.updateChildNodeIndices();
 			}
+			return siblingIndex;
 		}
 
 		return -1;
 	}
 
+	private void updateChildNodeIndices(){
+		int index = 0;
+		for(TreeNode childNode: this.childNodes){
+			childNode.siblingIndex = index++;
+		}
+	}
+
 	/**
 	 * @return the isExpanded
 	 */
@@ -108,6 +151,67 @@ public abstract class TreeNode {
 		this.isExpanded = isExpanded;
 	}
 
+	/**
+	 * Attaches an object of a user interface to this node, for example the item which displays the node.
+	 * The object is only weakly referenced, so the node does not keep it alive. Attachments are not copied if the node is cloned.
+	 * @param key the key of the attachment
+	 * @param value the object or {@code null} to remove the attachment
+	 */
+	public final synchronized <T> void setAttachment(AttachmentKey<T> key, T value){
+		final Object[] current = this.attachments;
+		int index = indexOfAttachment(current, key);
+
+		if(value == null){
+			if(index >= 0){
+				if(current.length == 2){
+					this.attachments = null;
+				}
+				else{
+					Object[] copy = new Object[current.length - 2];
+					System.arraycopy(current, 0, copy, 0, index);
+					System.arraycopy(current, index + 2, copy, index, current.length - index - 2);
+					this.attachments = copy;
+				}
+			}
+			return;
+		}
+
+		Object[] copy;
+		if(index >= 0){
+			copy = current.clone();
+		}
+		else{
+			index = current == null ? 0 : current.length;
+			copy = current == null ? new Object[2] : Arrays.copyOf(current, current.length + 2);
+			copy[index] = key;
+		}
+		copy[index + 1] = new WeakReference<>(value);
+		this.attachments = copy;
+	}
+
+	/**
+	 * @param key the key of the attachment
+	 * @return the attached object or {@code null} if there is none (or it has already been garbage collected)
+	 * @see #setAttachment(AttachmentKey, Object)
+	 */
+	@SuppressWarnings("unchecked")
+	public final <T> T getAttachment(AttachmentKey<T> key){
+		final Object[] current = this.attachments;
+		int index = indexOfAttachment(current, key);
+		return index >= 0 ? ((WeakReference<T>) current[index + 1]).get() : null;
+	}
+
+	private static int indexOfAttachment(Object[] attachments, AttachmentKey<?> key){
+		if(attachments != null){
+			for(int i = 0; i < attachments.length; i += 2){
+				if(attachments[i] == key){
+					return i;
+				}
+			}
+		}
+		return -1;
+	}
+
 	/**
 	 * Returns the current text of this node
 	 * @return the text of this node
@@ -142,7 +246,7 @@ public abstract class TreeNode {
 		requireRegisteredNode();
 		if(this.childNodes != null){
 			synchronized (childNodes) {
-				return this.childNodes.stream().map(tree::getNodeById).collect(Collectors.toList());
+				return new ArrayList<>(this.childNodes);
 			}
 		}
 		else{
@@ -172,7 +276,7 @@ public abstract class TreeNode {
 	public final TreeNode getChildNodeByIndex(int index) throws IndexOutOfBoundsException {
 		requireRegisteredNode();
 		if(this.childNodes != null){
-			return this.tree.getNodeById(this.childNodes.get(index));
+			return this.childNodes.get(index);
 		}
 		else{
 			throw new IndexOutOfBoundsException("This tree node does not have any child nodes.");
@@ -194,14 +298,11 @@ public abstract class TreeNode {
 	 */
 	public TreeNode getParentNode(){
 		requireRegisteredNode();
-		if(this.parentNodeIdentifer != null){
-			return tree.getNodeById(parentNodeIdentifer);
-		}
-		return null;
+		return this.parentNode;
 	}
 
 	final String getParentNodeIdentifier(){
-		return this.parentNodeIdentifer;
+		return this.parentNode != null ? this.parentNode.getId() : this.clonedParentNodeId;
 	}
 
 	public final void addChildNode(TreeNode treeNode) throws IllegalStateException, UnsupportedOperationException {
@@ -214,11 +315,12 @@ public abstract class TreeNode {
 			tree.registerNode(treeNode);
 
 			if(this.tree.isUndoEnabled()){
-				this.tree.getUndoBuilder().addNull(treeNode.getId()).addNode(this).commit();
+				this.tree.getUndoBuilder().nodeInserted(treeNode).commit();
 			}
 
-			treeNode.setParentNodeId(this.getId());
-			this.childNodes.add(treeNode.getId());
+			treeNode.setParentNode(this);
+			treeNode.siblingIndex = this.childNodes.size();
+			this.childNodes.add(treeNode);
 			this.tree.setTreeChangedStatus(true);
 			this.tree.fireNodeEvent(treeNode, TreeNodeEvent.OnNodeAdded);
 		}
@@ -233,11 +335,12 @@ public abstract class TreeNode {
 		synchronized (childNodes) {
 			tree.registerNode(treeNode);
 			if(this.tree.isUndoEnabled()){
-				this.tree.getUndoBuilder().addNull(treeNode.getId()).addNode(this).commit();
+				this.tree.getUndoBuilder().nodeInserted(treeNode).commit();
 			}
 
-			treeNode.setParentNodeId(this.getId());
-			this.childNodes.add(index, treeNode.getId());
+			treeNode.setParentNode(this);
+			treeNode.siblingIndex = index;
+			this.childNodes.add(index, treeNode);
 			this.tree.setTreeChangedStatus(true);
 			this.tree.fireNodeEvent(treeNode, TreeNodeEvent.OnNodeAdded);
 		}
@@ -248,13 +351,17 @@ public abstract class TreeNode {
 
 		requireRegisteredNode();
 
-		if(this.tree.isUndoEnabled()){
-			this.tree.getUndoBuilder().addNode(getParentNode()).addNodeIncludeChildNodes(this).commit();
-		}
+		// The step is committed when the node has been detached, so the undo history is able to move the removed subtree to the disk
+		UndoBuilder undo = this.tree.isUndoEnabled() ? this.tree.getUndoBuilder().nodeRemoved(getParentNode(), getIndex(), this) : null;
 
 		this.tree.fireNodeEvent(this, TreeNodeEvent.OnNodeRemoved);
 		unregister();
-		setParentNodeId(null);
+		setParentNode(null);
+		this.siblingIndex = -1;
+
+		if(undo != null){
+			undo.commit();
+		}
 	}
 
 	final void unregister(){
@@ -262,11 +369,17 @@ public abstract class TreeNode {
 
 		requireRegisteredNode();
 
+		final TreeStore tree = this.tree;
 		synchronized (childNodes) {
-			this.tree.unregisterNode(this);
-			getParentNode().childNodes.remove(getId());
+			tree.unregisterNode(this);
+			TreeNode parent = getParentNode();
+			int index = getIndex();
+			parent.childNodes.remove(index >= 0 ? index : parent.childNodes.indexOf(this));
 			this.tree = null;
 		}
+
+		// The node pointer may have been moved while the tree was locked
+		tree.firePendingSelectionEvent();
 	}
 
 	private void requireRegisteredNode() throws IllegalStateException {
@@ -282,19 +395,11 @@ public abstract class TreeNode {
 		if(!isRootNode()){
 			synchronized (childNodes) {
 
-				if(this.tree.isUndoEnabled()){
-					this.tree.getUndoBuilder().addNode(getParentNode()).commit();
-				}
-
 				final boolean reselectNode = (this.tree.getSelectedNode() == this);
 
 				TreeNode parentNode = this.getParentNode();
 
-				int index = 0;
-				for(String childNodeId: parentNode.childNodes){
-					if(childNodeId == this.identifier){break;}
-					index++;
-				}
+				int index = getIndex();
 
 				int newIndex = index + (dir == Direction.UP ? -1 : 1);
 				if(newIndex < 0){
@@ -309,8 +414,16 @@ public abstract class TreeNode {
 					}
 				}
 
-				parentNode.childNodes.set(index, parentNode.childNodes.get(newIndex));
-				parentNode.childNodes.set(newIndex, getId());
+				if(this.tree.isUndoEnabled()){
+					this.tree.getUndoBuilder().nodesSwapped(parentNode, index, newIndex).commit();
+				}
+
+				TreeNode swappedNode = parentNode.childNodes.get(newIndex);
+				parentNode.childNodes.set(index, swappedNode);
+				parentNode.childNodes.set(newIndex, this);
+				swappedNode.siblingIndex = index;
+				this.siblingIndex = newIndex;
+				tree.structureChanged();
 
 				nodeUpdated();
 				if(reselectNode){
@@ -396,9 +509,11 @@ public abstract class TreeNode {
 	private final void sortChildNodesAsTransaction(final boolean recursive){
 
 		if(countChildNodes() > 0){
-			this.tree.getUndoBuilder().addNode(this).commit();
+			if(this.tree.isUndoEnabled()){
+				this.tree.getUndoBuilder().childNodesReordered(this, this.childNodes.toArray(new TreeNode[this.childNodes.size()])).commit();
+			}
 
-			final Map<String, String> uniqueNodeTextMap = new HashMap<>();
+			final Map<String, TreeNode> uniqueNodeTextMap = new HashMap<>();
 			getChildNodes().forEach((node) -> {
 				String uniqueNodeText = node.getText().toLowerCase();
 				int ext = 0;
@@ -407,11 +522,13 @@ public abstract class TreeNode {
 					ext++;
 				}
 
-				uniqueNodeTextMap.put(uniqueNodeText, node.getId());
+				uniqueNodeTextMap.put(uniqueNodeText, node);
 			});
 
 			this.childNodes.clear();
 			Utilities.asSortedList(uniqueNodeTextMap.keySet()).stream().map(uniqueNodeTextMap::get).forEach(this.childNodes::add);
+			updateChildNodeIndices();
+			this.tree.structureChanged();
 
 			nodeUpdated();
 
@@ -425,20 +542,32 @@ public abstract class TreeNode {
 		}
 	}
 
+	/**
+	 * Records the current content of this node (text, color and attributes), so the following change can be reverted.
+	 * Nodes which record their changes in detail (like the {@link DefaultTreeNode}) do not have to call this method.
+	 */
 	protected void preNodeUpdate(){
 		if(this.tree != null && this.tree.isUndoEnabled()){
-			this.tree.getUndoBuilder().addNode(this).commit();
+			this.tree.getUndoBuilder().nodeChanged(this).commit();
 		}
 	}
 
+	/**
+	 * @return {@code true} if the changes of this node have to be recorded for undo
+	 */
+	final boolean isUndoEnabled(){
+		return this.tree != null && this.tree.isUndoEnabled();
+	}
+
 	protected void nodeUpdated(){
 		if(tree != null){
 			if(tree.areNodeTimestampsEnabled() && this.canHaveAttributes()){
 				this.setAttribute(ApplicationInstance.NODE_ATTRIBUTE_MODIFICATION_DATE, Long.toString(System.currentTimeMillis()), true);
 			}
-			notifyChildNodes();
+			this.tree.updateSearchIndex(this);
 			this.tree.setTreeChangedStatus(true);
-			this.tree.fireNodeEvent(this, TreeNodeEvent.OnNodeEdited);
+			// Inside of a transaction the child nodes are notified only once at the end
+			this.tree.nodeUpdated(this);
 		}
 	}
 
@@ -487,17 +616,98 @@ public abstract class TreeNode {
 		clone.setColor(this.getColor());
 		clone.setExpanded(isExpanded);
 
-		if(cloneMode != CloneMode.NODE_ONLY){
-			this.childNodes.forEach(clone.childNodes::add);
+		if(cloneMode != CloneMode.NODE_ONLY && this.childNodes != null){
+			clone.clonedChildNodeIds = getChildNodeIdentifiers();
 		}
 
 		if(cloneMode == CloneMode.IDENTICAL){
-			clone.setParentNodeId(this.parentNodeIdentifer);
+			clone.clonedParentNodeId = getParentNodeIdentifier();
 		}
 
 		return clone;
 	}
 
+	private List<String> getChildNodeIdentifiers(){
+		if(this.clonedChildNodeIds != null){
+			return new ArrayList<>(this.clonedChildNodeIds);
+		}
+
+		List<String> ids = new ArrayList<>(this.childNodes.size());
+		this.childNodes.forEach((childNode) -> ids.add(childNode.getId()));
+		return ids;
+	}
+
+	/**
+	 * Inserts a node that has been removed from this node before, including all of its child nodes (used to undo the removal)
+	 * @param node the removed node
+	 * @param index the previous index of the node
+	 */
+	final void restoreChildNode(TreeNode node, int index){
+		synchronized (childNodes) {
+			Deque<TreeNode> stack = new ArrayDeque<>();
+			stack.push(node);
+			while(!stack.isEmpty()){
+				TreeNode n = stack.pop();
+				tree.registerNode(n);
+				if(n.childNodes != null){
+					n.childNodes.forEach(stack::push);
+				}
+			}
+
+			node.setParentNode(this);
+			node.siblingIndex = Math.min(index, this.childNodes.size());
+			this.childNodes.add(node.siblingIndex, node);
+			this.tree.setTreeChangedStatus(true);
+		}
+	}
+
+	/**
+	 * Returns the internal list of child nodes without any checks, this also works for nodes that have been removed from the tree
+	 * @return the child nodes (the list must not be modified)
+	 */
+	final List<TreeNode> getChildNodeList(){
+		return this.childNodes != null ? this.childNodes : Collections.emptyList();
+	}
+
+	/**
+	 * Appends a child node to a node which is not part of any tree (used to rebuild a removed subtree)
+	 * @param childNode the child node
+	 */
+	final void appendDetachedChildNode(TreeNode childNode){
+		childNode.setParentNode(this);
+		childNode.siblingIndex = this.childNodes.size();
+		this.childNodes.add(childNode);
+	}
+
+	/**
+	 * Swaps two child nodes (used to undo a move)
+	 */
+	final void swapChildNodes(int index1, int index2){
+		synchronized (childNodes) {
+			Collections.swap(this.childNodes, index1, index2);
+			this.childNodes.get(index1).siblingIndex = index1;
+			this.childNodes.get(index2).siblingIndex = index2;
+			this.tree.structureChanged();
+			this.tree.setTreeChangedStatus(true);
+		}
+	}
+
+	/**
+	 * Restores a previous order of the child nodes (used to undo a sort)
+	 * @param order the child nodes in their previous order
+	 */
+	final void restoreChildNodeOrder(TreeNode[] order){
+		synchronized (childNodes) {
+			if(order.length == this.childNodes.size()){
+				this.childNodes.clear();
+				Collections.addAll(this.childNodes, order);
+				updateChildNodeIndices();
+				this.tree.structureChanged();
+				this.tree.setTreeChangedStatus(true);
+			}
+		}
+	}
+
 	protected abstract TreeNode cloneNode();
 
 	@Override
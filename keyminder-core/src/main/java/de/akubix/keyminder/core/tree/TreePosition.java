@@ -0,0 +1,95 @@
+/* KeyMinder
+ * Copyright (C) 2016 Bastian Kraemer
+ *
+ * TreePosition.java
+ *
+ * KeyMinder is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * KeyMinder is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with KeyMinder.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.akubix.keyminder.core.tree;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * The position of a node in the tree, positions are ordered like the nodes are visited by a (pre-order) tree walk.
+ * It is used to bring the unordered results of an index lookup into the order of the tree.
+ */
+public final class TreePosition implements Comparable<TreePosition> {
+
+	private final TreeNode node;
+	private final int[] path;
+
+	public TreePosition(TreeNode node){
+		this.node = node;
+
+		int depth = 0;
+		for(TreeNode n = node; !n.isRootNode(); n = n.getParentNode()){
+			depth++;
+		}
+
+		path = new int[depth];
+		for(TreeNode n = node; !n.isRootNode(); n = n.getParentNode()){
+			path[--depth] = n.getIndex();
+		}
+	}
+
+	public TreeNode getNode(){
+		return node;
+	}
+
+	@Override
+	public int compareTo(TreePosition other) {
+		int length = Math.min(path.length, other.path.length);
+		for(int i = 0; i < length; i++){
+			if(path[i] != other.path[i]){
+				return path[i] < other.path[i] ? -1 : 1;
+			}
+		}
+
+		// A parent node is visited before its child nodes
+		return Integer.compare(path.length, other.path.length);
+	}
+
+	/**
+	 * @param node the node
+	 * @param ancestor the possible ancestor
+	 * @return {@code true} if {@code node} is located (somewhere) below {@code ancestor}
+	 */
+	public static boolean isDescendant(TreeNode node, TreeNode ancestor){
+		for(TreeNode n = node; !n.isRootNode(); n = n.getParentNode()){
+			if(n.getParentNode() == ancestor){
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Sorts nodes in the order of the tree, the root node is ignored
+	 * @param nodes the nodes
+	 * @return the sorted positions of the nodes
+	 */
+	public static List<TreePosition> sort(Collection<TreeNode> nodes){
+		List<TreePosition> positions = new ArrayList<>(nodes.size());
+		for(TreeNode node: nodes){
+			if(!node.isRootNode()){
+				positions.add(new TreePosition(node));
+			}
+		}
+		Collections.sort(positions);
+		return positions;
+	}
+}
@@ -18,23 +18,33 @@
  */
 package de.akubix.keyminder.core.tree;
 
+import java.io.IOException;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
 import java.util.HashMap;
-import java.util.LinkedList;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.Map.Entry;
 import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.function.Consumer;
 
 import javax.xml.bind.DatatypeConverter;
 
 import de.akubix.keyminder.core.ApplicationInstance;
-import de.akubix.keyminder.core.events.EventTypes;
+import de.akubix.keyminder.core.FileConfiguration;
+import de.akubix.keyminder.core.encryption.EncryptionManager;
 import de.akubix.keyminder.core.events.EventTypes.TreeNodeEvent;
+import de.akubix.keyminder.core.events.EventTypes.TreeNodesEvent;
 
 /**
- * This class is the core of the whole database. All data stored in this applications will be assigned to the HashMap {@link TreeStore#treeNodeMap} in this class
+ * This class is the core of the whole database. The nodes are linked to each other by direct references,
+ * the HashMap {@link TreeStore#treeNodeMap} is only used as index to look up a node by its identifier
  * @see TreeStore
  * @see TreeNode
  */
@@ -44,30 +54,85 @@ public class TreeStore {
 
 	private static final String SETTINGS_KEY_MAX_UNDO_HISTORY =  "tree.undo.limit";
 	private static final int DEFAULT_MAX_UNDO_HINSTORY_SIZE = 20;
+	private static final String SETTINGS_KEY_UNDO_MEMORY_LIMIT = "tree.undo.memory_limit";
+	private static final int DEFAULT_UNDO_MEMORY_LIMIT_IN_MB = 64;
+	private static final String SETTINGS_KEY_UNDO_SPILL_TO_DISK = "tree.undo.spill_to_disk";
+
+	private static final String SETTINGS_KEY_DISABLE_SEARCH_INDEX = "tree.disable_search_index";
 
 	static final String ROOT_NODE_IDENTIFIER = "0";
 
 	private ApplicationInstance app;
 	private HashMap<String, TreeNode> treeNodeMap = new HashMap<>();
-	private TreeNode nodePointer;
+	private volatile TreeNode nodePointer;
 	private Random random;
 	private boolean hasUnsavedChanges = false;
 	private boolean enableEvents = false;
+	private EventBatch eventBatch = null;
+	private boolean selectionEventPending = false;
 	private boolean enableNodeTimestamps = false;
 
 	private boolean enableUndo = false;
 	private UndoBuilder undoBuilder;
-	private LinkedList<UndoStep> undoHistory;
+	private final UndoHistory undoHistory;
 	private int maxUndoHistorySize = DEFAULT_MAX_UNDO_HINSTORY_SIZE;
+	private int undoMemoryLimit = DEFAULT_UNDO_MEMORY_LIMIT_IN_MB;
+
+	private SearchIndex searchIndex = null;
+	private final Map<String, Set<TreeNode>> attributeIndex = new HashMap<>();
+	private final Map<String, TimeIndex> timeIndices = new ConcurrentHashMap<>();
+	// The versions are changed while the lock of the node map is held, but they are read by other threads without it
+	private final AtomicInteger structureVersion = new AtomicInteger(0);
+	private final AtomicInteger indexVersion = new AtomicInteger(0);
+	private final AtomicInteger contentVersion = new AtomicInteger(0);
 
 	public TreeStore(ApplicationInstance instance){
 		app = instance;
 		random = new Random();
 		createRoot();
-		undoHistory = new LinkedList<>();
+		undoHistory = new UndoHistory(() -> {
+			FileConfiguration file = app.getCurrentFile();
+			if(file == null || !file.isEncrypted()){
+				return null;
+			}
+
+			// The spill file is only used by this session, there is no need to derive a key for every step
+			EncryptionManager encryptionManager = file.getEncryptionManager().copy();
+			encryptionManager.setKeepPasswordSalt(true);
+			return encryptionManager;
+		}, maxUndoHistorySize, undoMemoryLimit * 1024L * 1024L);
+		enableTimeIndex(ApplicationInstance.NODE_ATTRIBUTE_CREATION_DATE);
+		enableTimeIndex(ApplicationInstance.NODE_ATTRIBUTE_MODIFICATION_DATE);
 		reloadConfig();
 	}
 
+	/**
+	 * Creates a detached tree, which is not used by the application itself. The settings are not applied (and therefore never reported as invalid) and there is no undo history.
+	 * @param instance the application instance
+	 * @param buildIndices use {@code true} to build the search and time indices, which are moved to the application tree by {@link #replaceNodes(TreeStore)}
+	 */
+	private TreeStore(ApplicationInstance instance, boolean buildIndices){
+		app = instance;
+		random = new Random();
+		createRoot();
+		undoHistory = new UndoHistory(() -> null, 0, 0);
+		if(buildIndices){
+			enableTimeIndex(ApplicationInstance.NODE_ATTRIBUTE_CREATION_DATE);
+			enableTimeIndex(ApplicationInstance.NODE_ATTRIBUTE_MODIFICATION_DATE);
+			enableSearchIndex(!app.getSettingsValueAsBoolean(SETTINGS_KEY_DISABLE_SEARCH_INDEX, false));
+		}
+	}
+
+	/**
+	 * Creates an empty tree which is not used by the application itself, for example to load a file in background.
+	 * The indices of the tree are built while the nodes are added, so they can be moved by {@link #replaceNodes(TreeStore)} as well.
+	 * @param instance the application instance
+	 * @return the detached tree
+	 */
+	public static TreeStore createDetachedTree(ApplicationInstance instance){
+		return new TreeStore(instance, true);
+	}
+
 	public void reloadConfig(){
 		try{
 			if(app.settingsContainsKey(SETTINGS_KEY_MAX_UNDO_HISTORY)){
@@ -78,6 +143,20 @@ public class TreeStore {
 			maxUndoHistorySize = DEFAULT_MAX_UNDO_HINSTORY_SIZE;
 			app.alert(String.format("Invalid value for setting '%s' (Integer): '%s'", SETTINGS_KEY_MAX_UNDO_HISTORY, app.getSettingsValue(SETTINGS_KEY_MAX_UNDO_HISTORY)));
 		}
+
+		try{
+			if(app.settingsContainsKey(SETTINGS_KEY_UNDO_MEMORY_LIMIT)){
+				undoMemoryLimit = Integer.parseInt(app.getSettingsValue(SETTINGS_KEY_UNDO_MEMORY_LIMIT));
+			}
+		}
+		catch(NumberFormatException e){
+			undoMemoryLimit = DEFAULT_UNDO_MEMORY_LIMIT_IN_MB;
+			app.alert(String.format("Invalid value for setting '%s' (Integer): '%s'", SETTINGS_KEY_UNDO_MEMORY_LIMIT, app.getSettingsValue(SETTINGS_KEY_UNDO_MEMORY_LIMIT)));
+		}
+
+		undoHistory.configure(maxUndoHistorySize, undoMemoryLimit * 1024L * 1024L, app.getSettingsValueAsBoolean(SETTINGS_KEY_UNDO_SPILL_TO_DISK, false));
+
+		enableSearchIndex(!app.getSettingsValueAsBoolean(SETTINGS_KEY_DISABLE_SEARCH_INDEX, false));
 	}
 
 	private void createRoot(){
@@ -123,7 +202,11 @@ public class TreeStore {
 				}
 
 				node.setTree(this);
-				treeNodeMap.put(id, node);
+				structureChanged();
+				TreeNode replacedNode = treeNodeMap.put(id, node);
+				if(replacedNode != null){
+					removeFromIndex(replacedNode);
+				}
 
 				if(enableNodeTimestamps && node.canHaveAttributes()){
 					if(!node.hasAttribute(ApplicationInstance.NODE_ATTRIBUTE_CREATION_DATE)){
@@ -135,6 +218,7 @@ public class TreeStore {
 					}
 				}
 
+				addToIndex(node);
 			}
 			else {
 				throw new IllegalStateException("The tree node is already assigned to the tree.");
@@ -145,14 +229,197 @@ public class TreeStore {
 
 	final void unregisterNode(TreeNode node){
 		synchronized (treeNodeMap) {
-			node.forEachChildNode(childNode -> childNode.unregister());
+			// The child nodes are only unregistered, but not removed from the node. This way a removed node can be restored by an undo operation.
+			List<TreeNode> childNodes = node.getChildNodes();
+			for(int i = childNodes.size() - 1; i >= 0; i--){
+				TreeNode childNode = childNodes.get(i);
+				unregisterNode(childNode);
+				childNode.setTree(null);
+			}
 
 			if(this.nodePointer == node){
 				moveNodePointerUpwards();
 			}
 
 			treeNodeMap.remove(node.getId());
+			structureChanged();
+			removeFromIndex(node);
+		}
+	}
+
+	private void addToIndex(TreeNode node){
+		indexVersion.incrementAndGet();
+		if(searchIndex != null){
+			searchIndex.update(node);
+		}
+
+		synchronized (attributeIndex) {
+			for(String name: node.listAttributes()){
+				attributeIndex.computeIfAbsent(name, (key) -> Collections.newSetFromMap(new IdentityHashMap<>())).add(node);
+			}
+		}
+
+		timeIndices.values().forEach((index) -> index.update(node));
+	}
+
+	private void removeFromIndex(TreeNode node){
+		indexVersion.incrementAndGet();
+		if(searchIndex != null){
+			searchIndex.remove(node);
+		}
+
+		synchronized (attributeIndex) {
+			for(String name: node.listAttributes()){
+				removeFromAttributeIndex(node, name);
+			}
+		}
+
+		timeIndices.values().forEach((index) -> index.remove(node));
+	}
+
+	private void removeFromAttributeIndex(TreeNode node, String attributeName){
+		Set<TreeNode> nodes = attributeIndex.get(attributeName);
+		if(nodes != null && nodes.remove(node) && nodes.isEmpty()){
+			attributeIndex.remove(attributeName);
+		}
+	}
+
+	/**
+	 * Has to be called whenever nodes are added, removed or moved
+	 */
+	final void structureChanged(){
+		structureVersion.incrementAndGet();
+	}
+
+	/**
+	 * Returns a number which is changed whenever a node is added, removed or moved. It can be used to detect if a cached position in the tree is still valid.
+	 * @return the current version of the tree structure
+	 */
+	public int getStructureVersion(){
+		return structureVersion.get();
+	}
+
+	/**
+	 * Updates the search index entry of a node after its text or one of its attributes has been changed
+	 * @param node the changed node
+	 */
+	final void updateSearchIndex(TreeNode node){
+		synchronized (treeNodeMap) {
+			if(treeNodeMap.get(node.getId()) == node){
+				contentVersion.incrementAndGet();
+				if(searchIndex != null){
+					indexVersion.incrementAndGet();
+					searchIndex.update(node);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Returns a number which is changed whenever the text or an attribute of a node is changed.
+	 * Together with {@link #getStructureVersion()} it can be used to detect if a copy of the tree is still up to date.
+	 * @return the current version of the content of the nodes
+	 */
+	public int getContentVersion(){
+		return contentVersion.get();
+	}
+
+	/**
+	 * Has to be called if the value of an attribute has been set
+	 * @param node the node
+	 * @param attributeName the name of the attribute
+	 * @param added {@code true} if the node did not have this attribute before
+	 */
+	final void attributeSet(TreeNode node, String attributeName, boolean added){
+		TimeIndex timeIndex = timeIndices.get(attributeName);
+		if(added || timeIndex != null){
+			synchronized (treeNodeMap) {
+				if(treeNodeMap.get(node.getId()) == node){
+					indexVersion.incrementAndGet();
+					if(added){
+						synchronized (attributeIndex) {
+							attributeIndex.computeIfAbsent(attributeName, (key) -> Collections.newSetFromMap(new IdentityHashMap<>())).add(node);
+						}
+					}
+
+					if(timeIndex != null){
+						timeIndex.update(node);
+					}
+				}
+			}
+		}
+	}
+
+	/**
+	 * Has to be called if an attribute has been removed from a node
+	 * @param node the node
+	 * @param attributeName the name of the removed attribute
+	 */
+	final void attributeRemoved(TreeNode node, String attributeName){
+		synchronized (treeNodeMap) {
+			if(treeNodeMap.get(node.getId()) == node){
+				indexVersion.incrementAndGet();
+				synchronized (attributeIndex) {
+					removeFromAttributeIndex(node, attributeName);
+				}
+
+				TimeIndex timeIndex = timeIndices.get(attributeName);
+				if(timeIndex != null){
+					timeIndex.remove(node);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Returns all nodes which have a specific attribute. The lookup uses an index, so it only depends on the number of matching nodes and not on the size of the tree.
+	 * @param attributeName the name of the attribute
+	 * @return a (modifiable) copy of the set of nodes, use {@link TreePosition#sort(java.util.Collection)} to bring them into the order of the tree
+	 */
+	public Set<TreeNode> nodesWithAttribute(String attributeName){
+		Set<TreeNode> result = Collections.newSetFromMap(new IdentityHashMap<>());
+		synchronized (attributeIndex) {
+			Set<TreeNode> nodes = attributeIndex.get(attributeName);
+			if(nodes != null){
+				result.addAll(nodes);
+			}
 		}
+		return result;
+	}
+
+	/**
+	 * Enables a sorted index for an attribute that contains a timestamp in milliseconds, which allows to look up all nodes within a time range.
+	 * The indices of the creation and the modification date are enabled by default.
+	 * @param attributeName the name of the attribute
+	 * @see #getTimeIndex(String)
+	 */
+	public void enableTimeIndex(String attributeName){
+		synchronized (treeNodeMap) {
+			if(!timeIndices.containsKey(attributeName)){
+				TimeIndex index = new TimeIndex(attributeName);
+				nodesWithAttribute(attributeName).forEach(index::update);
+				timeIndices.put(attributeName, index);
+				indexVersion.incrementAndGet();
+			}
+		}
+	}
+
+	/**
+	 * @param attributeName the name of the attribute
+	 * @return the time index of this attribute or {@code null} if the index has not been enabled
+	 * @see #enableTimeIndex(String)
+	 */
+	public TimeIndex getTimeIndex(String attributeName){
+		return timeIndices.get(attributeName);
+	}
+
+	/**
+	 * Returns a number which is changed whenever one of the indices of this tree is modified.
+	 * It can be used to detect if the result of an index lookup is still up to date.
+	 * @return the current version of the indices
+	 */
+	public int getIndexVersion(){
+		return indexVersion.get();
 	}
 
 	private String generateIdentifier(final TreeNode treeNode, final int length){
@@ -173,17 +440,92 @@ public class TreeStore {
 		return identifier;
 	}
 
+	/**
+	 * Removes all nodes from this tree. The nodes are released at once (see {@link #releaseNodes()}),
+	 * so their memory can be reclaimed by the next regular garbage collection.
+	 */
 	public void reset(){
 
 		synchronized (treeNodeMap) {
-			treeNodeMap.clear();
-			System.gc();
+			releaseNodes();
+			indexVersion.incrementAndGet();
+			if(searchIndex != null){
+				searchIndex.clear();
+			}
+			synchronized (attributeIndex) {
+				attributeIndex.clear();
+			}
+			timeIndices.values().forEach(TimeIndex::clear);
 			createRoot();
+			structureChanged();
 
 			hasUnsavedChanges = false;
 			enableEvents = false;
 			enableNodeTimestamps = false;
-			undoHistory = new LinkedList<>();
+			undoHistory.clear();
+		}
+	}
+
+	/**
+	 * Releases all nodes of this tree and removes them from the node map. The node map keeps its capacity, so it is reused by the next file.
+	 * A node that is still referenced somewhere neither keeps the other nodes nor its attribute values reachable (see {@link TreeNode#release()}).
+	 */
+	private void releaseNodes(){
+		treeNodeMap.values().forEach(TreeNode::release);
+		treeNodeMap.clear();
+	}
+
+	/**
+	 * Replaces all nodes of this tree by the nodes of another tree at once, for example by a tree that has been loaded in background.
+	 * The nodes and the indices that have been built for them are moved (and not copied), the other tree contains only its root node afterwards.
+	 * Like {@link #reset()} this method clears the undo history and disables events and timestamps, the node pointer is moved to the root node.
+	 * @param source the tree whose nodes should be moved, it must not be used by any other thread
+	 */
+	public void replaceNodes(TreeStore source){
+		synchronized (treeNodeMap) {
+			synchronized (source.treeNodeMap) {
+				releaseNodes();
+				source.treeNodeMap.values().forEach((node) -> node.setTree(this));
+				treeNodeMap.putAll(source.treeNodeMap);
+				nodePointer = getRootNode();
+				structureChanged();
+				contentVersion.incrementAndGet();
+
+				indexVersion.incrementAndGet();
+				if(searchIndex != null){
+					if(source.searchIndex != null){
+						searchIndex = source.searchIndex;
+					}
+					else{
+						searchIndex = new SearchIndex();
+						allNodes(searchIndex::update);
+					}
+				}
+
+				synchronized (attributeIndex) {
+					attributeIndex.clear();
+					attributeIndex.putAll(source.attributeIndex);
+				}
+
+				// Time indices that have only been enabled for this tree are built again
+				Set<String> timeIndexNames = new HashSet<>(timeIndices.keySet());
+				timeIndices.clear();
+				timeIndices.putAll(source.timeIndices);
+				timeIndexNames.forEach(this::enableTimeIndex);
+
+				hasUnsavedChanges = false;
+				enableEvents = false;
+				enableNodeTimestamps = false;
+				undoHistory.clear();
+
+				source.treeNodeMap.clear();
+				source.searchIndex = null;
+				synchronized (source.attributeIndex) {
+					source.attributeIndex.clear();
+				}
+				source.timeIndices.clear();
+				source.createRoot();
+			}
 		}
 	}
 
@@ -215,14 +557,135 @@ public class TreeStore {
 		return enableEvents;
 	}
 
+	/**
+	 * Enables or disables the full text index of this tree. Enabling the index builds it from all nodes of the tree,
+	 * afterwards it is updated whenever a node is added, edited or removed.
+	 * @param value {@code true} to enable the index
+	 * @see #getSearchIndex()
+	 */
+	public void enableSearchIndex(boolean value){
+		synchronized (treeNodeMap) {
+			indexVersion.incrementAndGet();
+			if(!value){
+				searchIndex = null;
+			}
+			else if(searchIndex == null){
+				searchIndex = new SearchIndex();
+				allNodes(searchIndex::update);
+			}
+		}
+	}
+
+	/**
+	 * @return the full text index of this tree or {@code null} if the index is disabled
+	 */
+	public SearchIndex getSearchIndex(){
+		return searchIndex;
+	}
+
+	/**
+	 * Fires a node event or adds it to the current event batch. The handlers are never called while the tree is locked,
+	 * an event which is fired within a locked section is posted and delivered as soon as the user interface thread is idle.
+	 * @param node the node
+	 * @param event the event
+	 */
 	final void fireNodeEvent(TreeNode node, TreeNodeEvent event){
 		if(enableEvents){
-			synchronized (treeNodeMap) {
+			if(eventBatch != null){
+				eventBatch.add(node, event);
+			}
+			else if(Thread.holdsLock(treeNodeMap)){
+				app.postEvent(event, node);
+			}
+			else{
 				app.fireEvent(event, node);
 			}
 		}
 	}
 
+	/**
+	 * Has to be called whenever the content of a node has been changed
+	 * @param node the node
+	 */
+	final void nodeUpdated(TreeNode node){
+		if(eventBatch != null){
+			eventBatch.updatedNodes.add(node);
+		}
+		else{
+			node.notifyChildNodes();
+		}
+		fireNodeEvent(node, TreeNodeEvent.OnNodeEdited);
+	}
+
+	/**
+	 * Collects the node events of a transaction, so they can be fired as a single event
+	 */
+	private static final class EventBatch {
+		private final Set<TreeNode> changedNodes = Collections.newSetFromMap(new IdentityHashMap<>());
+		private final Set<TreeNode> updatedNodes = Collections.newSetFromMap(new IdentityHashMap<>());
+		private boolean selectionChanged = false;
+
+		private void add(TreeNode node, TreeNodeEvent event){
+			switch(event){
+				case OnNodeEdited:
+					changedNodes.add(node);
+					break;
+
+				case OnNodeRemoved:
+					// The node itself will not be part of the tree anymore
+					changedNodes.add(node.getParentNode());
+					break;
+
+				default:
+					changedNodes.add(node);
+					if(node.getParentNode() != null){
+						changedNodes.add(node.getParentNode());
+					}
+			}
+		}
+	}
+
+	/**
+	 * Runs an action, all node events fired by the action are combined to a single {@link TreeNodesEvent#OnNodesChanged} event
+	 * @param action the action
+	 */
+	private void runAsEventBatch(Runnable action){
+		if(eventBatch != null){
+			// The events are already collected by an outer batch
+			action.run();
+			return;
+		}
+
+		eventBatch = new EventBatch();
+		try{
+			action.run();
+		}
+		finally{
+			final EventBatch batch = eventBatch;
+			eventBatch = null;
+
+			if(selectionEventPending){
+				selectionEventPending = false;
+				batch.selectionChanged = true;
+			}
+
+			batch.updatedNodes.stream().filter((node) -> node.getTree() == this).forEach(TreeNode::notifyChildNodes);
+
+			if(enableEvents){
+				Set<TreeNode> nodes = Collections.newSetFromMap(new IdentityHashMap<>());
+				batch.changedNodes.stream().filter((node) -> node.getTree() == this).forEach(nodes::add);
+
+				if(!nodes.isEmpty()){
+					app.fireEvent(TreeNodesEvent.OnNodesChanged, Collections.unmodifiableSet(nodes));
+				}
+
+				if(batch.selectionChanged){
+					app.fireEvent(TreeNodeEvent.OnSelectedItemChanged, nodePointer);
+				}
+			}
+		}
+	}
+
 	public int countAllNodes(){
 		return treeNodeMap.size();
 	}
@@ -241,17 +704,45 @@ public class TreeStore {
 		return nodePointer;
 	}
 
-	public synchronized void setSelectedNode(TreeNode node){
+	public void setSelectedNode(TreeNode node){
 		if(node.getId() != nodePointer.getId()){
 			setNodePointer(node);
 		}
 	}
 
 	// The functionality "setSelectedNode" has been split into two methods, because there has to be a private "setNodePointer()" method which will force firing an event, even if it is the same node
-	protected synchronized void setNodePointer(TreeNode node){
+	protected void setNodePointer(TreeNode node){
 		if(node != null){
 			nodePointer = node;
-			if(enableEvents){app.fireEvent(EventTypes.TreeNodeEvent.OnSelectedItemChanged, node);}
+			if(enableEvents){
+				if(eventBatch != null){
+					eventBatch.selectionChanged = true;
+				}
+				else if(Thread.holdsLock(treeNodeMap)){
+					// The node pointer may be moved several times while a node is unregistered, only the final node is reported
+					selectionEventPending = true;
+				}
+				else{
+					app.fireEvent(TreeNodeEvent.OnSelectedItemChanged, node);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Fires the selection event which has been deferred because the node pointer has been moved while the tree was locked
+	 */
+	final void firePendingSelectionEvent(){
+		if(selectionEventPending && !Thread.holdsLock(treeNodeMap)){
+			selectionEventPending = false;
+			if(enableEvents){
+				if(eventBatch != null){
+					eventBatch.selectionChanged = true;
+				}
+				else{
+					app.fireEvent(TreeNodeEvent.OnSelectedItemChanged, nodePointer);
+				}
+			}
 		}
 	}
 
@@ -290,7 +781,7 @@ public class TreeStore {
 	/**
 	 * Reset the NodePointer to its default position, this is the first node below the root node, or the root node if the tree is empty
 	 */
-	public synchronized void resetNodePointer(){
+	public void resetNodePointer(){
 		if(getRootNode().countChildNodes() > 0){
 			if(treeNodeMap.containsKey(getRootNode().getChildNodeByIndex(0).getId())){
 				// Selecting first node
@@ -364,9 +855,14 @@ public class TreeStore {
 	}
 
 	public void importNodeStructure(TreeNode defaultParentNode, List<TreeNode> importList, int insertAt){
+		transaction(() -> importNodeStructureAsTransaction(defaultParentNode, importList, insertAt));
+	}
+
+	private void importNodeStructureAsTransaction(TreeNode defaultParentNode, List<TreeNode> importList, int insertAt){
 
 		final Map<String, String> idTranslationMap = new HashMap<>();
 		final List<TreeNode> importedNodes = new ArrayList<>(importList.size());
+		int position = insertAt;
 
 		for(TreeNode node: importList){
 			TreeNode clone = node.clone(CloneMode.NODE_ONLY);
@@ -382,8 +878,8 @@ public class TreeStore {
 			}
 
 			if(parentNodeIdentifier == null){
-				if(insertAt >= 0){
-					defaultParentNode.insertChildNode(clone, insertAt++);
+				if(position >= 0){
+					defaultParentNode.insertChildNode(clone, position++);
 				}
 				else{
 					defaultParentNode.addChildNode(clone);
@@ -414,6 +910,85 @@ public class TreeStore {
 		}
 	}
 
+	/**
+	 * Creates a copy of the whole tree which is not affected by any further changes, for example to save the tree in background.
+	 * The copy has its own (detached) {@link TreeStore}, events, timestamps and undo are disabled for it.
+	 * @return the copy of the tree
+	 */
+	public TreeStore createSnapshot(){
+		SnapshotBuilder builder = new SnapshotBuilder();
+		builder.copyNext(Integer.MAX_VALUE);
+		return builder.getSnapshot();
+	}
+
+	/**
+	 * Creates a copy of the tree step by step (see {@link #createSnapshot()}), so the thread that modifies the tree is never blocked for a long time.
+	 * @return the builder of the copy
+	 */
+	public SnapshotBuilder createSnapshotBuilder(){
+		return new SnapshotBuilder();
+	}
+
+	/**
+	 * Copies a tree in several steps, which have to be executed by the thread that modifies the tree.
+	 * The copy is started again if the tree has been changed between two steps, so the complete copy is always consistent.
+	 */
+	public final class SnapshotBuilder {
+		private TreeStore snapshot;
+		// Pairs of an original node and its copy, the child nodes of these nodes have not been copied yet
+		private final Deque<TreeNode[]> pendingNodes = new ArrayDeque<>();
+		private int snapshotStructureVersion;
+		private int snapshotContentVersion;
+
+		private SnapshotBuilder(){
+			restart();
+		}
+
+		private void restart(){
+			snapshot = new TreeStore(app, false);
+			pendingNodes.clear();
+			pendingNodes.push(new TreeNode[]{getRootNode(), snapshot.getRootNode()});
+			snapshotStructureVersion = structureVersion.get();
+			snapshotContentVersion = contentVersion.get();
+		}
+
+		/**
+		 * Copies the next nodes of the tree
+		 * @param maxNodes the maximum number of nodes that should be copied by this step
+		 * @return {@code true} if the copy is complete
+		 */
+		public boolean copyNext(int maxNodes){
+			synchronized (treeNodeMap) {
+				if(snapshotStructureVersion != structureVersion.get() || snapshotContentVersion != contentVersion.get()){
+					restart();
+				}
+
+				int count = 0;
+				while(count < maxNodes && !pendingNodes.isEmpty()){
+					TreeNode[] pair = pendingNodes.pop();
+					for(TreeNode childNode: pair[0].getChildNodes()){
+						TreeNode copy = childNode.clone(CloneMode.NODE_ONLY);
+						pair[1].addChildNode(copy);
+						pendingNodes.push(new TreeNode[]{childNode, copy});
+						count++;
+					}
+				}
+				return pendingNodes.isEmpty();
+			}
+		}
+
+		/**
+		 * @return the copy of the tree
+		 * @throws IllegalStateException if the copy is not complete
+		 */
+		public TreeStore getSnapshot(){
+			if(!pendingNodes.isEmpty()){
+				throw new IllegalStateException("The snapshot is not complete.");
+			}
+			return snapshot;
+		}
+	}
+
 	public TreeNode getNodeByPath(String path){
 		TreeNode node = (path.charAt(0) == '/' ? getRootNode() : getSelectedNode());
 		for(String p: path.split("/")){
@@ -445,12 +1020,8 @@ public class TreeStore {
 
 	final void captureNodeState(UndoStep step){
 		synchronized (undoHistory) {
-			if(undoBuilder == null && !step.getChangedNodesMap().isEmpty() && isUndoEnabled()){
+			if(undoBuilder == null && !step.isEmpty() && isUndoEnabled()){
 				undoHistory.add(step);
-
-				if(undoHistory.size() > maxUndoHistorySize){
-					undoHistory.removeFirst();
-				}
 			}
 		}
 	}
@@ -467,6 +1038,13 @@ public class TreeStore {
 		return enableUndo;
 	}
 
+	/**
+	 * @return the undo history of this tree
+	 */
+	public final UndoHistory getUndoHistory(){
+		return undoHistory;
+	}
+
 	final UndoBuilder getUndoBuilder(){
 		return undoBuilder == null ? new UndoBuilder(this) : undoBuilder;
 	}
@@ -475,52 +1053,73 @@ public class TreeStore {
 		transaction(transaction, null);
 	}
 
+	/**
+	 * Runs a transaction: All changes of the transaction are reverted by a single undo step and the node events are combined to a single {@link TreeNodesEvent#OnNodesChanged} event.
+	 * A transaction which is started by another transaction is part of the outer one.
+	 * @param transaction the transaction
+	 * @param postUndoActions an action that will be executed after the transaction has been reverted (may be {@code null})
+	 */
 	public final void transaction(Runnable transaction, Runnable postUndoActions){
-		synchronized (treeNodeMap) {
-			this.undoBuilder = new UndoBuilder(this);
+		// The batched events are fired after the lock has been released
+		runAsEventBatch(() -> {
+			synchronized (treeNodeMap) {
+				if(this.undoBuilder != null){
+					this.undoBuilder.addPostUndoActions(postUndoActions);
+					transaction.run();
+					return;
+				}
 
-			transaction.run();
+				this.undoBuilder = new UndoBuilder(this);
+				this.undoBuilder.addPostUndoActions(postUndoActions);
 
-			final UndoBuilder undoData = this.undoBuilder;
-			this.undoBuilder = null;
-			undoData.commit(postUndoActions);
-		}
+				try{
+					transaction.run();
+				}
+				finally{
+					// The changes that have been made before an exception occurred can be reverted as well
+					final UndoBuilder undoData = this.undoBuilder;
+					this.undoBuilder = null;
+					undoData.commit();
+				}
+			}
+		});
 	}
 
 	public final boolean undo(boolean restoreSelectedNodeState){
-		synchronized (treeNodeMap) {
-			synchronized (undoHistory) {
-				if(undoHistory.size() > 0){
-					undo(undoHistory.getLast(), restoreSelectedNodeState);
-					undoHistory.getLast().clear();
-					undoHistory.removeLast();
-					return true;
-				}
+		final UndoStep step;
+		synchronized (undoHistory) {
+			try{
+				step = undoHistory.removeLast();
 			}
+			catch(IOException e){
+				app.alert("Cannot undo the latest changes: " + e.getMessage());
+				return false;
+			}
+		}
+
+		if(step == null){
+			return false;
 		}
-		return false;
+
+		// The batched events are fired after the lock has been released
+		runAsEventBatch(() -> {
+			synchronized (treeNodeMap) {
+				undoAsEventBatch(step, restoreSelectedNodeState);
+			}
+		});
+		step.clear();
+		return true;
 	}
 
-	private void undo(UndoStep step, boolean restoreSelectedNodeState){
+	private void undoAsEventBatch(UndoStep step, boolean restoreSelectedNodeState){
 
 		final boolean eventsEnabled = this.areEventsEnabled();
 		final boolean undoEnabled = this.isUndoEnabled();
 		this.enableEvents(false);
 		this.enableUndo = false;
 
-		final LinkedList<TreeNode> nodeResetEvents = new LinkedList<>();
-
-		for(Entry<String, TreeNode> entry: step.getChangedNodesMap().entrySet()){
-			if(entry.getValue() == null){
-				this.enableEvents(eventsEnabled);
-				getNodeById(entry.getKey()).remove();
-				this.enableEvents(false);
-			}
-			else{
-				registerNode(entry.getValue(), true);
-				nodeResetEvents.add(entry.getValue());
-			}
-		}
+		final UndoOperation.Changes changes = new UndoOperation.Changes(eventsEnabled);
+		step.undo(this, changes);
 
 		step.runPostUndoActions();
 
@@ -538,7 +1137,12 @@ public class TreeStore {
 		if(eventsEnabled){
 			this.enableEvents(eventsEnabled);
 
-			nodeResetEvents.stream().filter((node) -> !node.isRootNode()).forEach((node) -> {
+			// Nodes that have been restored and removed again by the same step are skipped
+			changes.reorderedNodes.stream().filter((node) -> node.getTree() == this && node.countChildNodes() > 0).forEach((node) -> {
+				fireNodeEvent(node.getChildNodeByIndex(0), TreeNodeEvent.OnNodeVerticallyMoved);
+			});
+
+			changes.resetNodes.stream().filter((node) -> node.getTree() == this && !node.isRootNode()).forEach((node) -> {
 				fireNodeEvent(node, TreeNodeEvent.OnNodeReset);
 			});
 		}
@@ -1,45 +1,75 @@
 package de.akubix.keyminder.core.tree;
 
-import java.util.HashMap;
-import java.util.Map;
+import java.util.ArrayList;
+import java.util.List;
 
+/**
+ * Collects the changes of the tree that belong to a single {@link UndoStep}
+ */
 public class UndoBuilder {
 	private TreeStore tree;
-	private Map<String, TreeNode> changedNodesMap;
+	private List<UndoOperation> operations;
+	private String previouslySelectedNodeId;
+	private Runnable postUndoActions = null;
 
 	UndoBuilder(TreeStore tree){
 		this.tree = tree;
-		this.changedNodesMap = new HashMap<>();
+		this.operations = new ArrayList<>();
+		this.previouslySelectedNodeId = tree.getSelectedNode().getId();
 	}
 
-	public UndoBuilder addNode(TreeNode node){
-		changedNodesMap.put(node.getId(), node.clone(CloneMode.IDENTICAL));
+	UndoBuilder nodeInserted(TreeNode node){
+		operations.add(new UndoOperation.NodeInserted(node));
 		return this;
 	}
 
-	public UndoBuilder addNodeIncludeChildNodes(TreeNode node){
-		changedNodesMap.put(node.getId(), node.clone(CloneMode.IDENTICAL));
-		captureEachChildNode(node);
+	UndoBuilder nodeRemoved(TreeNode parentNode, int index, TreeNode node){
+		operations.add(new UndoOperation.NodeRemoved(parentNode, index, node));
 		return this;
 	}
 
-	private final void captureEachChildNode(final TreeNode treeNode){
-		treeNode.forEachChildNode((childNode) -> {
-			changedNodesMap.put(childNode.getId(), childNode.clone(CloneMode.IDENTICAL));
-			captureEachChildNode(childNode);
-		});
+	UndoBuilder nodesSwapped(TreeNode parentNode, int index1, int index2){
+		operations.add(new UndoOperation.NodesSwapped(parentNode, index1, index2));
+		return this;
 	}
 
-	public UndoBuilder addNull(String id){
-		changedNodesMap.put(id, null);
+	UndoBuilder childNodesReordered(TreeNode parentNode, TreeNode[] previousOrder){
+		operations.add(new UndoOperation.ChildNodesReordered(parentNode, previousOrder));
 		return this;
 	}
 
-	public void commit(){
-		commit(null);
+	UndoBuilder textChanged(DefaultTreeNode node, String previousText){
+		operations.add(new UndoOperation.TextChanged(node, previousText));
+		return this;
+	}
+
+	UndoBuilder colorChanged(DefaultTreeNode node, String previousColor){
+		operations.add(new UndoOperation.ColorChanged(node, previousColor));
+		return this;
 	}
 
-	void commit(Runnable postUndoActions){
-		tree.captureNodeState(new UndoStep(changedNodesMap, tree.getSelectedNode().getId(), postUndoActions));
+	UndoBuilder attributeChanged(DefaultTreeNode node, String name, String previousValue){
+		operations.add(new UndoOperation.AttributeChanged(node, name, previousValue));
+		return this;
+	}
+
+	UndoBuilder nodeChanged(TreeNode node){
+		operations.add(new UndoOperation.NodeChanged(node));
+		return this;
+	}
+
+	/**
+	 * Adds an action that will be executed after the step has been reverted
+	 * @param action the action, may be {@code null}
+	 */
+	void addPostUndoActions(Runnable action){
+		if(action != null){
+			final Runnable previousActions = this.postUndoActions;
+			this.postUndoActions = previousActions == null ? action : () -> {action.run(); previousActions.run();};
+		}
+	}
+
+	public void commit(){
+		tree.captureNodeState(new UndoStep(operations, previouslySelectedNodeId, postUndoActions));
 	}
 }
@@ -0,0 +1,209 @@
+/* KeyMinder
+ * Copyright (C) 2016 Bastian Kraemer
+ *
+ * UndoHistory.java
+ *
+ * KeyMinder is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * KeyMinder is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with KeyMinder.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.akubix.keyminder.core.tree;
+
+import java.io.IOException;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.function.Supplier;
+
+import de.akubix.keyminder.core.encryption.EncryptionManager;
+
+/**
+ * The undo steps of a {@link TreeStore}. The history is limited by the number of steps and by the estimated memory of the steps.
+ *
+ * If the memory limit is exceeded, the oldest steps are discarded. Optionally, the removed subtrees of old steps are moved to an encrypted temporary file first,
+ * this is only done if the current file is encrypted, so the data is never written to the disk in plain text.
+ * @see TreeStore#getUndoHistory()
+ */
+public final class UndoHistory {
+
+	private final LinkedList<UndoStep> steps = new LinkedList<>();
+	private final Supplier<EncryptionManager> encryptionSupplier;
+
+	private int maxSteps;
+	private long memoryLimit;
+	private boolean spillToDisk = false;
+	private boolean spillFailed = false;
+
+	private long memoryUsage = 0;
+	// The number of (oldest) steps which have already been moved to the spill file
+	private int spilledSteps = 0;
+	private UndoSpillFile spillFile = null;
+
+	/**
+	 * @param encryptionSupplier returns a copy of the encryption manager of the current file, or {@code null} if the file is not encrypted
+	 * @param maxSteps the maximum number of steps
+	 * @param memoryLimit the memory limit in bytes
+	 */
+	UndoHistory(Supplier<EncryptionManager> encryptionSupplier, int maxSteps, long memoryLimit){
+		this.encryptionSupplier = encryptionSupplier;
+		this.maxSteps = maxSteps;
+		this.memoryLimit = memoryLimit;
+	}
+
+	/**
+	 * Changes the limits of the history, steps that exceed the new limits are discarded immediately
+	 * @param maxSteps the maximum number of steps
+	 * @param memoryLimit the memory limit in bytes
+	 * @param spillToDisk use {@code true} if old steps may be moved to an encrypted temporary file
+	 */
+	synchronized void configure(int maxSteps, long memoryLimit, boolean spillToDisk){
+		this.maxSteps = maxSteps;
+		this.memoryLimit = memoryLimit;
+		this.spillToDisk = spillToDisk;
+		this.spillFailed = false;
+		enforceLimits();
+	}
+
+	synchronized void add(UndoStep step){
+		steps.add(step);
+		memoryUsage += step.getEstimatedSize();
+		enforceLimits();
+	}
+
+	/**
+	 * Removes the latest step, its data is loaded from the spill file if necessary
+	 * @return the step or {@code null} if the history is empty
+	 * @throws IOException if the data of the step cannot be read, in this case the whole history is cleared
+	 */
+	synchronized UndoStep removeLast() throws IOException {
+		if(steps.isEmpty()){
+			return null;
+		}
+
+		UndoStep step = steps.removeLast();
+		memoryUsage -= step.getEstimatedSize();
+		spilledSteps = Math.min(spilledSteps, steps.size());
+
+		if(spillFile != null){
+			try{
+				step.load(spillFile);
+			}
+			catch(IOException e){
+				// The older steps cannot be reverted without this one
+				step.clear();
+				clear();
+				throw e;
+			}
+		}
+		return step;
+	}
+
+	synchronized void clear(){
+		steps.forEach(UndoStep::clear);
+		steps.clear();
+		memoryUsage = 0;
+		spilledSteps = 0;
+		spillFailed = false;
+
+		if(spillFile != null){
+			spillFile.delete();
+			spillFile = null;
+		}
+	}
+
+	private void enforceLimits(){
+		while(steps.size() > maxSteps){
+			removeFirst();
+		}
+
+		if(memoryUsage > memoryLimit && spillToDisk && !spillFailed){
+			spill();
+		}
+
+		// The latest step is always kept, even if it exceeds the limit on its own
+		while(memoryUsage > memoryLimit && steps.size() > 1){
+			removeFirst();
+		}
+	}
+
+	private void removeFirst(){
+		UndoStep step = steps.removeFirst();
+		memoryUsage -= step.getEstimatedSize();
+		if(spillFile != null){
+			try{
+				step.release(spillFile);
+			}
+			catch(IOException e){
+				// Do not write anything else to the file, the old steps will be discarded instead
+				spillFailed = true;
+			}
+		}
+		step.clear();
+
+		if(spilledSteps > 0){
+			spilledSteps--;
+		}
+	}
+
+	private void spill(){
+		try{
+			if(spillFile == null){
+				EncryptionManager encryption = encryptionSupplier.get();
+				if(encryption == null){
+					return;
+				}
+				spillFile = new UndoSpillFile(encryption);
+			}
+
+			Iterator<UndoStep> it = steps.listIterator(spilledSteps);
+			while(memoryUsage > memoryLimit && it.hasNext()){
+				UndoStep step = it.next();
+				long size = step.getEstimatedSize();
+				if(step.spill(spillFile)){
+					memoryUsage += step.getEstimatedSize() - size;
+				}
+				spilledSteps++;
+			}
+		}
+		catch(IOException e){
+			// Continue without the spill file, the old steps will be discarded instead
+			spillFailed = true;
+		}
+	}
+
+	/**
+	 * @return the number of steps
+	 */
+	public synchronized int size(){
+		return steps.size();
+	}
+
+	/**
+	 * @return the estimated memory used by all steps in bytes
+	 */
+	public synchronized long getMemoryUsage(){
+		return memoryUsage;
+	}
+
+	/**
+	 * @return the memory limit in bytes
+	 */
+	public synchronized long getMemoryLimit(){
+		return memoryLimit;
+	}
+
+	/**
+	 * @return the size of the encrypted temporary file in bytes, or {@code 0} if no steps have been moved to the disk
+	 */
+	public synchronized long getSpilledSize(){
+		return spillFile == null ? 0 : spillFile.length();
+	}
+}
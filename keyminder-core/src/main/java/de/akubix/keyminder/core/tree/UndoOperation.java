@@ -0,0 +1,430 @@
+/* KeyMinder
+ * Copyright (C) 2016 Bastian Kraemer
+ *
+ * UndoOperation.java
+ *
+ * KeyMinder is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * KeyMinder is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with KeyMinder.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.akubix.keyminder.core.tree;
+
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import de.akubix.keyminder.core.ApplicationInstance;
+
+/**
+ * A single entry of the undo journal. Each operation describes one change of the tree and is able to revert it,
+ * so the memory used by an {@link UndoStep} only depends on the size of the change and not on the size of the changed nodes.
+ */
+abstract class UndoOperation {
+
+	// Rough sizes of the JVM objects (64 bit, compressed references), used to estimate the memory of the undo history
+	private static final long OPERATION_SIZE = 32;
+	private static final long REFERENCE_SIZE = 8;
+	private static final long NODE_SIZE = 160;
+	private static final long ATTRIBUTE_SIZE = 48;
+
+	/**
+	 * Reverts the change
+	 * @param tree the tree
+	 * @param changes collects the nodes which have to be updated in the user interface
+	 */
+	abstract void undo(TreeStore tree, Changes changes);
+
+	/**
+	 * @return the estimated number of bytes retained by this operation
+	 */
+	abstract long estimateSize();
+
+	/**
+	 * Moves the data of this operation to a file to release its memory
+	 * @param file the file
+	 * @return {@code true} if the data has been written, {@code false} if the operation does not support this
+	 * @throws IOException if the data cannot be written
+	 */
+	boolean spill(UndoSpillFile file) throws IOException {
+		return false;
+	}
+
+	/**
+	 * Loads the data of this operation from the file, this has to be done before the operation is reverted
+	 * @param file the file
+	 * @throws IOException if the data cannot be read
+	 */
+	void load(UndoSpillFile file) throws IOException {}
+
+	/**
+	 * Releases the data of this operation in the file, this has to be done before the operation is discarded
+	 * @param file the file
+	 * @throws IOException if the file cannot be truncated or compacted
+	 */
+	void release(UndoSpillFile file) throws IOException {}
+
+	/**
+	 * Returns the node of the tree which is referenced by an operation.
+	 * If a removed subtree has been restored from a file, the tree contains a copy of the original node, in this case the copy is looked up by its id.
+	 * @param tree the tree
+	 * @param node the referenced node
+	 * @return the node of the tree or {@code null} if the node is not part of the tree
+	 */
+	static TreeNode resolve(TreeStore tree, TreeNode node){
+		return node.getTree() == tree ? node : tree.getNodeById(node.getId());
+	}
+
+	private static DefaultTreeNode resolveDefaultTreeNode(TreeStore tree, DefaultTreeNode node){
+		TreeNode n = resolve(tree, node);
+		return n instanceof DefaultTreeNode ? (DefaultTreeNode) n : null;
+	}
+
+	static long sizeOf(String value){
+		return value == null ? 0 : 40 + 2L * value.length();
+	}
+
+	/**
+	 * @return the estimated size of a node and all of its child nodes
+	 */
+	static long sizeOf(TreeNode node){
+		long size = 0;
+		Deque<TreeNode> stack = new ArrayDeque<>();
+		stack.push(node);
+		while(!stack.isEmpty()){
+			TreeNode n = stack.pop();
+			size += NODE_SIZE + sizeOf(n.getId()) + sizeOf(n.getText()) + sizeOf(n.getColor());
+			for(Map.Entry<String, String> attribute: n.getAttributes()){
+				size += ATTRIBUTE_SIZE + sizeOf(attribute.getKey()) + sizeOf(attribute.getValue());
+			}
+
+			List<TreeNode> childNodes = n.getChildNodeList();
+			size += REFERENCE_SIZE * childNodes.size();
+			childNodes.forEach(stack::push);
+		}
+		return size;
+	}
+
+	/**
+	 * The nodes that have been modified while an {@link UndoStep} is reverted
+	 */
+	static final class Changes {
+		final boolean eventsEnabled;
+		final Set<TreeNode> resetNodes = new LinkedHashSet<>();
+		final Set<TreeNode> reorderedNodes = new LinkedHashSet<>();
+
+		Changes(boolean eventsEnabled){
+			this.eventsEnabled = eventsEnabled;
+		}
+	}
+
+	static final class NodeInserted extends UndoOperation {
+		private final TreeNode node;
+
+		NodeInserted(TreeNode node){
+			this.node = node;
+		}
+
+		@Override
+		void undo(TreeStore tree, Changes changes){
+			TreeNode n = resolve(tree, node);
+			if(n != null){
+				// The removal event has to be fired while the node is still part of the tree
+				tree.enableEvents(changes.eventsEnabled);
+				n.remove();
+				tree.enableEvents(false);
+			}
+		}
+
+		@Override
+		long estimateSize(){
+			return OPERATION_SIZE;
+		}
+	}
+
+	/**
+	 * Holds the removed subtree, which is the only kind of operation that may retain a lot of memory. Therefore the subtree can be moved to a file.
+	 */
+	static final class NodeRemoved extends UndoOperation {
+		private final TreeNode parentNode;
+		private final int index;
+		private final String nodeId;
+		private TreeNode node;
+		private UndoSpillFile.Entry spilledNode = null;
+		private long size = -1;
+
+		/**
+		 * @param parentNode the parent node
+		 * @param index the index of the node
+		 * @param node the removed node, its child nodes are kept when it is unregistered
+		 */
+		NodeRemoved(TreeNode parentNode, int index, TreeNode node){
+			this.parentNode = parentNode;
+			this.index = index;
+			this.nodeId = node.getId();
+			this.node = node;
+		}
+
+		@Override
+		void undo(TreeStore tree, Changes changes){
+			TreeNode parent = resolve(tree, parentNode);
+			if(parent != null && node != null && node.getTree() == null && tree.getNodeById(nodeId) == null){
+				parent.restoreChildNode(node, index);
+				changes.resetNodes.add(node);
+			}
+		}
+
+		@Override
+		long estimateSize(){
+			if(node == null){
+				return OPERATION_SIZE + 64;
+			}
+			if(size < 0){
+				size = OPERATION_SIZE + sizeOf(node);
+			}
+			return size;
+		}
+
+		@Override
+		boolean spill(UndoSpillFile file) throws IOException {
+			if(node == null || node.getTree() != null || !UndoSpillFile.isSupported(node)){
+				return false;
+			}
+
+			spilledNode = file.write(node);
+			node = null;
+			return true;
+		}
+
+		@Override
+		void load(UndoSpillFile file) throws IOException {
+			if(node == null && spilledNode != null){
+				node = file.read(spilledNode);
+				release(file);
+				size = -1;
+			}
+		}
+
+		@Override
+		void release(UndoSpillFile file) throws IOException {
+			if(spilledNode != null){
+				file.release(spilledNode);
+				spilledNode = null;
+			}
+		}
+	}
+
+	static final class NodesSwapped extends UndoOperation {
+		private final TreeNode parentNode;
+		private final int index1;
+		private final int index2;
+
+		NodesSwapped(TreeNode parentNode, int index1, int index2){
+			this.parentNode = parentNode;
+			this.index1 = index1;
+			this.index2 = index2;
+		}
+
+		@Override
+		void undo(TreeStore tree, Changes changes){
+			TreeNode parent = resolve(tree, parentNode);
+			if(parent != null){
+				parent.swapChildNodes(index1, index2);
+				changes.reorderedNodes.add(parent);
+			}
+		}
+
+		@Override
+		long estimateSize(){
+			return OPERATION_SIZE;
+		}
+	}
+
+	static final class ChildNodesReordered extends UndoOperation {
+		private final TreeNode parentNode;
+		private final TreeNode[] previousOrder;
+
+		ChildNodesReordered(TreeNode parentNode, TreeNode[] previousOrder){
+			this.parentNode = parentNode;
+			this.previousOrder = previousOrder;
+		}
+
+		@Override
+		void undo(TreeStore tree, Changes changes){
+			TreeNode parent = resolve(tree, parentNode);
+			if(parent != null){
+				List<TreeNode> order = new ArrayList<>(previousOrder.length);
+				for(TreeNode node: previousOrder){
+					TreeNode n = resolve(tree, node);
+					if(n != null){
+						order.add(n);
+					}
+				}
+
+				parent.restoreChildNodeOrder(order.toArray(new TreeNode[order.size()]));
+				changes.reorderedNodes.add(parent);
+			}
+		}
+
+		@Override
+		long estimateSize(){
+			return OPERATION_SIZE + 16 + REFERENCE_SIZE * previousOrder.length;
+		}
+	}
+
+	/**
+	 * A change of a {@link DefaultTreeNode}, the modification date of the node is updated silently and has to be restored as well
+	 */
+	private abstract static class ContentChanged extends UndoOperation {
+		final DefaultTreeNode node;
+		private final String previousModificationDate;
+
+		ContentChanged(DefaultTreeNode node){
+			this.node = node;
+			this.previousModificationDate = node.hasAttribute(ApplicationInstance.NODE_ATTRIBUTE_MODIFICATION_DATE) ?
+												node.getAttribute(ApplicationInstance.NODE_ATTRIBUTE_MODIFICATION_DATE) : null;
+		}
+
+		void restoreModificationDate(DefaultTreeNode n){
+			n.restoreAttribute(ApplicationInstance.NODE_ATTRIBUTE_MODIFICATION_DATE, previousModificationDate);
+		}
+
+		@Override
+		long estimateSize(){
+			return OPERATION_SIZE + sizeOf(previousModificationDate);
+		}
+	}
+
+	static final class TextChanged extends ContentChanged {
+		private final String previousText;
+
+		TextChanged(DefaultTreeNode node, String previousText){
+			super(node);
+			this.previousText = previousText;
+		}
+
+		@Override
+		void undo(TreeStore tree, Changes changes){
+			DefaultTreeNode n = resolveDefaultTreeNode(tree, node);
+			if(n != null){
+				n.restoreText(previousText);
+				restoreModificationDate(n);
+				changes.resetNodes.add(n);
+			}
+		}
+
+		@Override
+		long estimateSize(){
+			return super.estimateSize() + sizeOf(previousText);
+		}
+	}
+
+	static final class ColorChanged extends ContentChanged {
+		private final String previousColor;
+
+		ColorChanged(DefaultTreeNode node, String previousColor){
+			super(node);
+			this.previousColor = previousColor;
+		}
+
+		@Override
+		void undo(TreeStore tree, Changes changes){
+			DefaultTreeNode n = resolveDefaultTreeNode(tree, node);
+			if(n != null){
+				n.restoreColor(previousColor);
+				restoreModificationDate(n);
+				changes.resetNodes.add(n);
+			}
+		}
+
+		@Override
+		long estimateSize(){
+			return super.estimateSize() + sizeOf(previousColor);
+		}
+	}
+
+	static final class AttributeChanged extends ContentChanged {
+		private final String name;
+		private final String previousValue;
+
+		/**
+		 * @param node the node
+		 * @param name the name of the attribute
+		 * @param previousValue the previous value or {@code null} if the attribute has been added
+		 */
+		AttributeChanged(DefaultTreeNode node, String name, String previousValue){
+			super(node);
+			this.name = name;
+			this.previousValue = previousValue;
+		}
+
+		@Override
+		void undo(TreeStore tree, Changes changes){
+			DefaultTreeNode n = resolveDefaultTreeNode(tree, node);
+			if(n != null){
+				n.restoreAttribute(name, previousValue);
+				restoreModificationDate(n);
+				changes.resetNodes.add(n);
+			}
+		}
+
+		@Override
+		long estimateSize(){
+			return super.estimateSize() + sizeOf(name) + sizeOf(previousValue);
+		}
+	}
+
+	/**
+	 * Fallback for nodes which do not record their changes in detail, the content of the node is restored from a copy
+	 */
+	static final class NodeChanged extends UndoOperation {
+		private final TreeNode node;
+		private final TreeNode copy;
+
+		NodeChanged(TreeNode node){
+			this.node = node;
+			this.copy = node.clone(CloneMode.NODE_ONLY);
+		}
+
+		@Override
+		void undo(TreeStore tree, Changes changes){
+			TreeNode n = resolve(tree, node);
+			if(n == null){
+				return;
+			}
+
+			n.setText(copy.getText());
+			n.setColor(copy.getColor());
+
+			for(String name: n.listAttributes().toArray(new String[0])){
+				if(!copy.hasAttribute(name)){
+					n.removeAttribute(name);
+				}
+			}
+
+			for(Map.Entry<String, String> attribute: copy.getAttributes()){
+				n.setAttribute(attribute.getKey(), attribute.getValue(), true);
+			}
+
+			changes.resetNodes.add(n);
+		}
+
+		@Override
+		long estimateSize(){
+			return OPERATION_SIZE + sizeOf(copy);
+		}
+	}
+}
@@ -0,0 +1,344 @@
+/* KeyMinder
+ * Copyright (C) 2016 Bastian Kraemer
+ *
+ * UndoSpillFile.java
+ *
+ * KeyMinder is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * KeyMinder is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with KeyMinder.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.akubix.keyminder.core.tree;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import de.akubix.keyminder.core.encryption.EncryptionManager;
+
+/**
+ * A temporary file which holds the removed subtrees of old undo steps. Each subtree is encrypted on its own and appended to the file.
+ * Entries that are not needed anymore are released: the file is truncated if they are at its end, otherwise it is compacted as soon as the released entries take more space than the remaining ones.
+ * The file is deleted as soon as the undo history is cleared.
+ */
+final class UndoSpillFile {
+
+	// The file is not compacted below this number of released bytes, because moving a few bytes is not worth it
+	private static final long MIN_COMPACTION_SIZE = 64 * 1024;
+
+	private final File file;
+	private final EncryptionManager encryption;
+
+	// The entries which are still needed, ordered by their offset
+	private final TreeMap<Long, Entry> entries = new TreeMap<>();
+	private long usedBytes = 0;
+
+	/**
+	 * Creates a new temporary file
+	 * @param encryption the encryption manager, the spill file takes the ownership and destroys it when the file is deleted
+	 * @throws IOException if the file cannot be created
+	 */
+	UndoSpillFile(EncryptionManager encryption) throws IOException {
+		this.encryption = encryption;
+		this.file = File.createTempFile("keyminder-undo-", ".tmp");
+		this.file.deleteOnExit();
+	}
+
+	/**
+	 * The position of an encrypted subtree within the file
+	 */
+	static final class Entry {
+		// The entry is moved if the file is compacted
+		private long offset;
+		private final long length;
+		private final byte[] iv;
+
+		private Entry(long offset, long length, byte[] iv){
+			this.offset = offset;
+			this.length = length;
+			this.iv = iv;
+		}
+	}
+
+	/**
+	 * Checks if a subtree can be written to the file (only {@link DefaultTreeNode}s are supported)
+	 * @param node the root of the subtree
+	 * @return {@code true} if the subtree can be written
+	 */
+	static boolean isSupported(TreeNode node){
+		Deque<TreeNode> stack = new ArrayDeque<>();
+		stack.push(node);
+		while(!stack.isEmpty()){
+			TreeNode n = stack.pop();
+			if(n.getClass() != DefaultTreeNode.class){
+				return false;
+			}
+			n.getChildNodeList().forEach(stack::push);
+		}
+		return true;
+	}
+
+	/**
+	 * Appends a subtree to the file
+	 * @param node the root of the subtree, the subtree must not be part of a tree
+	 * @return the entry which is required to read the subtree
+	 * @throws IOException if the subtree cannot be written
+	 */
+	synchronized Entry write(TreeNode node) throws IOException {
+		long offset = file.length();
+		byte[] iv;
+
+		try(FileOutputStream fileOutput = new FileOutputStream(file, true);
+			DataOutputStream out = new DataOutputStream(new BufferedOutputStream(encryption.encrypt(fileOutput)))){
+			iv = encryption.getIV();
+
+			Deque<TreeNode> stack = new ArrayDeque<>();
+			stack.push(node);
+			while(!stack.isEmpty()){
+				TreeNode n = stack.pop();
+				writeNode(out, n);
+
+				List<TreeNode> childNodes = n.getChildNodeList();
+				out.writeInt(childNodes.size());
+				for(int i = childNodes.size() - 1; i >= 0; i--){
+					stack.push(childNodes.get(i));
+				}
+			}
+		}
+		catch(GeneralSecurityException e){
+			throw new IOException("Cannot encrypt the undo history: " + e.getMessage(), e);
+		}
+
+		Entry entry = new Entry(offset, file.length() - offset, iv);
+		entries.put(offset, entry);
+		usedBytes += entry.length;
+		return entry;
+	}
+
+	/**
+	 * Releases an entry which is not needed anymore, afterwards it cannot be read again
+	 * @param entry the entry
+	 * @throws IOException if the file cannot be truncated or compacted
+	 */
+	synchronized void release(Entry entry) throws IOException {
+		if(entries.get(entry.offset) != entry){
+			return;
+		}
+
+		entries.remove(entry.offset);
+		usedBytes -= entry.length;
+
+		try(RandomAccessFile raf = new RandomAccessFile(file, "rw")){
+			// Released entries at the end of the file (usually the ones of the latest undo step) are simply cut off
+			long end = entries.isEmpty() ? 0 : entries.lastEntry().getValue().offset + entries.lastEntry().getValue().length;
+			if(end < raf.length()){
+				raf.setLength(end);
+			}
+
+			long releasedBytes = raf.length() - usedBytes;
+			if(releasedBytes >= MIN_COMPACTION_SIZE && releasedBytes > usedBytes){
+				compact(raf);
+			}
+		}
+	}
+
+	/**
+	 * Moves all entries to the beginning of the file, the entries are only moved towards the start of the file, so they can be copied in place
+	 */
+	private void compact(RandomAccessFile raf) throws IOException {
+		byte[] buffer = new byte[64 * 1024];
+		long position = 0;
+
+		for(Entry entry: new ArrayList<>(entries.values())){
+			if(entry.offset != position){
+				for(long copied = 0; copied < entry.length;){
+					int n = (int) Math.min(buffer.length, entry.length - copied);
+					raf.seek(entry.offset + copied);
+					raf.readFully(buffer, 0, n);
+					raf.seek(position + copied);
+					raf.write(buffer, 0, n);
+					copied += n;
+				}
+				entries.remove(entry.offset);
+				entry.offset = position;
+				entries.put(entry.offset, entry);
+			}
+			position += entry.length;
+		}
+
+		raf.setLength(position);
+	}
+
+	/**
+	 * Reads a subtree from the file
+	 * @param entry the entry of the subtree
+	 * @return the root node of the subtree, the subtree is not assigned to any tree
+	 * @throws IOException if the subtree cannot be read
+	 */
+	synchronized TreeNode read(Entry entry) throws IOException {
+		try(FileInputStream fileInput = new FileInputStream(file);
+			DataInputStream in = new DataInputStream(new BufferedInputStream(encryption.decrypt(new BoundedInputStream(fileInput, entry.offset, entry.length), entry.iv)))){
+			TreeNode root = readNode(in);
+
+			Deque<TreeNode> parents = new ArrayDeque<>();
+			Deque<int[]> remainingChildNodes = new ArrayDeque<>();
+			int count = in.readInt();
+			if(count > 0){
+				parents.push(root);
+				remainingChildNodes.push(new int[]{count});
+			}
+
+			while(!parents.isEmpty()){
+				if(remainingChildNodes.peek()[0] == 0){
+					parents.pop();
+					remainingChildNodes.pop();
+					continue;
+				}
+
+				remainingChildNodes.peek()[0]--;
+				TreeNode node = readNode(in);
+				parents.peek().appendDetachedChildNode(node);
+
+				count = in.readInt();
+				if(count > 0){
+					parents.push(node);
+					remainingChildNodes.push(new int[]{count});
+				}
+			}
+
+			return root;
+		}
+		catch(GeneralSecurityException e){
+			throw new IOException("Cannot decrypt the undo history: " + e.getMessage(), e);
+		}
+	}
+
+	/**
+	 * @return the current size of the file in bytes
+	 */
+	synchronized long length(){
+		return file.length();
+	}
+
+	/**
+	 * Deletes the file and destroys the encryption manager
+	 */
+	synchronized void delete(){
+		entries.clear();
+		usedBytes = 0;
+		file.delete();
+		encryption.destroy();
+	}
+
+	private static void writeNode(DataOutputStream out, TreeNode node) throws IOException {
+		writeString(out, node.getId());
+		writeString(out, node.getText());
+		writeString(out, node.getColor());
+		out.writeBoolean(node.isExpanded());
+
+		out.writeInt(node.getAttributes().size());
+		for(Map.Entry<String, String> attribute: node.getAttributes()){
+			writeString(out, attribute.getKey());
+			writeString(out, attribute.getValue());
+		}
+	}
+
+	private static TreeNode readNode(DataInputStream in) throws IOException {
+		TreeNode node = TreeStore.restoreNode(new DefaultTreeNode(), readString(in));
+		node.setText(readString(in));
+		node.setColor(readString(in));
+		node.setExpanded(in.readBoolean());
+
+		int count = in.readInt();
+		for(int i = 0; i < count; i++){
+			node.setAttribute(readString(in), readString(in), true);
+		}
+		return node;
+	}
+
+	// DataOutputStream.writeUTF() is limited to 64 KiB
+	private static void writeString(DataOutputStream out, String value) throws IOException {
+		byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+		out.writeInt(bytes.length);
+		out.write(bytes);
+	}
+
+	private static String readString(DataInputStream in) throws IOException {
+		byte[] bytes = new byte[in.readInt()];
+		in.readFully(bytes);
+		return new String(bytes, StandardCharsets.UTF_8);
+	}
+
+	/**
+	 * Reads a section of a stream
+	 */
+	private static final class BoundedInputStream extends FilterInputStream {
+		private long remaining;
+
+		BoundedInputStream(InputStream in, long offset, long length) throws IOException {
+			super(in);
+			long skipped = 0;
+			while(skipped < offset){
+				long n = in.skip(offset - skipped);
+				if(n <= 0){
+					throw new EOFException("Unexpected end of the undo history file.");
+				}
+				skipped += n;
+			}
+			this.remaining = length;
+		}
+
+		@Override
+		public int read() throws IOException {
+			if(remaining <= 0){return -1;}
+			int b = super.read();
+			if(b >= 0){remaining--;}
+			return b;
+		}
+
+		@Override
+		public int read(byte[] b, int off, int len) throws IOException {
+			if(remaining <= 0){return -1;}
+			int n = super.read(b, off, (int) Math.min(len, remaining));
+			if(n > 0){remaining -= n;}
+			return n;
+		}
+
+		@Override
+		public long skip(long n) throws IOException {
+			long skipped = super.skip(Math.min(n, remaining));
+			remaining -= skipped;
+			return skipped;
+		}
+
+		@Override
+		public int available() throws IOException {
+			return (int) Math.min(super.available(), remaining);
+		}
+	}
+}
@@ -1,25 +1,93 @@
 package de.akubix.keyminder.core.tree;
 
-import java.util.Map;
+import java.io.IOException;
+import java.util.List;
 
 public class UndoStep {
-	private Map<String, TreeNode> changedNodesMap;
+	private List<UndoOperation> operations;
 	private String previouslySelectedNodeId;
 	private Runnable postUndoActions;
+	private long estimatedSize = -1;
 
-	UndoStep(Map<String, TreeNode> changedNodesMap, String previouslySelectedNodeId, Runnable postUndoActions) {
+	UndoStep(List<UndoOperation> operations, String previouslySelectedNodeId, Runnable postUndoActions) {
 		super();
-		this.changedNodesMap = changedNodesMap;
+		this.operations = operations;
 		this.previouslySelectedNodeId = previouslySelectedNodeId;
 		this.postUndoActions = postUndoActions;
 	}
 
-	UndoStep(Map<String, TreeNode> changedNodesMap, String previouslySelectedNodeId) {
-		this(changedNodesMap, previouslySelectedNodeId, null);
+	UndoStep(List<UndoOperation> operations, String previouslySelectedNodeId) {
+		this(operations, previouslySelectedNodeId, null);
 	}
 
-	Map<String, TreeNode> getChangedNodesMap() {
-		return changedNodesMap;
+	boolean isEmpty(){
+		return operations.isEmpty();
+	}
+
+	/**
+	 * @return the estimated number of bytes retained by this step
+	 */
+	long getEstimatedSize(){
+		if(estimatedSize < 0){
+			long size = 64;
+			for(UndoOperation operation: operations){
+				size += operation.estimateSize();
+			}
+			estimatedSize = size;
+		}
+		return estimatedSize;
+	}
+
+	/**
+	 * Moves the data of this step to a file, as far as the operations support this
+	 * @param file the file
+	 * @return {@code true} if at least one operation has been written to the file
+	 * @throws IOException if the data cannot be written
+	 */
+	boolean spill(UndoSpillFile file) throws IOException {
+		boolean spilled = false;
+		for(UndoOperation operation: operations){
+			spilled |= operation.spill(file);
+		}
+
+		if(spilled){
+			estimatedSize = -1;
+		}
+		return spilled;
+	}
+
+	/**
+	 * Loads all data of this step that has been moved to a file
+	 * @param file the file
+	 * @throws IOException if the data cannot be read
+	 */
+	void load(UndoSpillFile file) throws IOException {
+		for(UndoOperation operation: operations){
+			operation.load(file);
+		}
+		estimatedSize = -1;
+	}
+
+	/**
+	 * Releases all data of this step that has been moved to a file, this has to be done before the step is discarded
+	 * @param file the file
+	 * @throws IOException if the file cannot be truncated or compacted
+	 */
+	void release(UndoSpillFile file) throws IOException {
+		for(UndoOperation operation: operations){
+			operation.release(file);
+		}
+	}
+
+	/**
+	 * Reverts all operations of this step in reverse order
+	 * @param tree the tree
+	 * @param changes collects the nodes which have to be updated in the user interface
+	 */
+	void undo(TreeStore tree, UndoOperation.Changes changes){
+		for(int i = operations.size() - 1; i >= 0; i--){
+			operations.get(i).undo(tree, changes);
+		}
 	}
 
 	String getPreviouslySelectedNodeId(){
@@ -33,7 +101,7 @@ public class UndoStep {
 	}
 
 	void clear(){
-		changedNodesMap.clear();
+		operations.clear();
 		postUndoActions = null;
 		previouslySelectedNodeId = null;
 	}
@@ -51,17 +51,20 @@ import de.akubix.keyminder.util.Utilities;
 								"  'info'\n" +
 								"  'types'\n" +
 								"  'set-cipher'\n" +
+								"  'set-iterations'\n" +
 								"  'set-password'\n" +
 								"  'reset-password'")
 @Option(name = FileCmd.OPTION_PATH, paramCnt = 1, alias={"-p", "--file", "-f"},   description = "FILE_PATH  Path of the file")
 @Option(name = FileCmd.OPTION_PASSWORD, paramCnt = 1, alias={"-p", "--password"}, description = "PASSWORD  The File password")
 @Option(name = FileCmd.OPTION_ENCRYPT,                                            description = "Encrypt the file (only in combination with 'create')")
 @Option(name = FileCmd.OPTION_CIPHER_NAME, paramCnt = 1,                          description = "Name of the encryption chipher (only in combination with 'set-cipher')")
+@Option(name = FileCmd.OPTION_ITERATIONS, paramCnt = 1,                           description = "COUNT  Number of key derivation iterations (only in combination with 'set-iterations')")
 @Option(name = FileCmd.OPTION_FILE_TYPE, paramCnt = 1,                            description = "FILE_TYPE  The new file type (only in combination with 'open' or 'saveas')")
 @Example({	"# Create a file:\n   file create --path \"/tmp/file.keymind\" --encrypt",
 			"# Open a file:\n  file open --path \"/tmp/file.keymind\" --pw test",
 			"# Save a file:\n  file save\n  file saveas --path \"/path/to/another/file.keymind\"",
-			"# Change the encryption cipher:\n  file set-cipher --name AES-256/PBKDF2"})
+			"# Change the encryption cipher:\n  file set-cipher --name AES-256/PBKDF2",
+			"# Raise the work factor of the key derivation:\n  file set-iterations --count 65536"})
 public final class FileCmd extends AbstractShellCommand {
 
 	static final String OPTION_PATH = "--path";
@@ -69,6 +72,7 @@ public final class FileCmd extends AbstractShellCommand {
 	static final String OPTION_ENCRYPT = "--encrypt";
 	static final String OPTION_CIPHER_NAME = "--name";
 	static final String OPTION_FILE_TYPE = "--type";
+	static final String OPTION_ITERATIONS = "--count";
 
 	@Override
 	public CommandOutput exec(ShellOutputWriter out, ApplicationInstance instance, CommandInput in) {
@@ -174,7 +178,11 @@ public final class FileCmd extends AbstractShellCommand {
 					out.println("Filepath:\t" + currentFile.getFilepath().getAbsolutePath());
 					out.println("File type:\t" + currentFile.getFileTypeIdentifier());
 					out.println("Format version:\t" + currentFile.getFileFormatVersion());
-					out.println("Encryption:\t" + (currentFile.isEncrypted() ? currentFile.getEncryptionManager().getCipher().getCipherName() : "Disabled") + "\n");
+					out.println("Encryption:\t" + (currentFile.isEncrypted() ? currentFile.getEncryptionManager().getCipher().getCipherName() : "Disabled"));
+					if(currentFile.isEncrypted() && currentFile.getEncryptionManager().getCipher().isKeyDerivationSupported()){
+						out.println("Iterations:\t" + currentFile.getEncryptionManager().getHashIterations());
+					}
+					out.println("");
 				}
 				else{
 					out.println("No file opened.");
@@ -222,6 +230,34 @@ public final class FileCmd extends AbstractShellCommand {
 
 				break;
 
+			case "set-iterations":
+				if(instance.isAnyFileOpened()){
+					if(!instance.getCurrentFile().isEncrypted() || !instance.getCurrentFile().getEncryptionManager().getCipher().isKeyDerivationSupported()){
+						out.println("The encryption cipher of this file does not use a key derivation function.");
+						return CommandOutput.error();
+					}
+
+					if(!requireKeys(out, in.getParameters(), OPTION_ITERATIONS)){return CommandOutput.error();}
+					String count = in.getParameters().get(OPTION_ITERATIONS)[0];
+					try {
+						instance.getCurrentFile().getEncryptionManager().setHashIterations(Integer.parseInt(count));
+						out.setColor(AnsiColor.GREEN);
+						out.printf("Number of iterations has been changed to %s\n", count);
+						out.setColor(AnsiColor.RESET);
+						out.println("The new value will be active as soon as you save your password file again.");
+
+					} catch (IllegalArgumentException e) {
+						out.printf("Invalid iteration count: '%s'.\n", count);
+						result = false;
+					}
+				}
+				else{
+					out.println("No file opened.");
+					return CommandOutput.error();
+				}
+
+				break;
+
 			case "set-password":
 			case "set-pw":
 				try{
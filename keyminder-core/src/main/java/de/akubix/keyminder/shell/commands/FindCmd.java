@@ -55,6 +55,7 @@ import de.akubix.keyminder.util.search.matcher.TimeMatcher;
 @Option(name = FindCmd.OPTION_TEXT_ONLY,      paramCnt = 0, alias = "-t", description = "Ignores the node attributes")
 @Option(name = FindCmd.OPTION_ATTRIBS_ONLY,   paramCnt = 0, alias = "-a", description = "Ignores the node text")
 @Option(name = FindCmd.OPTION_FILTER_ATTRIBS, paramCnt = 1, alias = "-f", description = "[regular expression] Ignores attribute that does not match the regex pattern")
+@Option(name = FindCmd.OPTION_PARALLEL,       paramCnt = 0, alias = "-p", description = "Searches the subtrees in parallel using all processor cores (cannot be combined with '--next')")
 @PipeInfo(out = "List of 'NodeMatchResult' or a single 'NodeMatchResult' object when using '--next'")
 @Example({"find /some/node \"Hello world\" --next", "find / Hello(.*) --case-sensitive --regex | replace -r \"Hello, $1\""})
 public final class FindCmd extends AbstractShellCommand {
@@ -67,6 +68,7 @@ public final class FindCmd extends AbstractShellCommand {
 	static final String OPTION_TEXT_ONLY= "--text-only";
 	static final String OPTION_ATTRIBS_ONLY = "--attributes-only";
 	static final String OPTION_FILTER_ATTRIBS = "--attribute-filter";
+	static final String OPTION_PARALLEL = "--parallel";
 
 	@Override
 	public CommandOutput exec(ShellOutputWriter out, ApplicationInstance instance, CommandInput in){
@@ -83,6 +85,11 @@ public final class FindCmd extends AbstractShellCommand {
 				out.printf("You cannot use the parameters '%s' and '%s' at the same time.\n", OPTION_TEXT_ONLY, OPTION_ATTRIBS_ONLY);
 				return CommandOutput.error();
 			}
+			else if(parameters.containsKey(OPTION_NEXT) && parameters.containsKey(OPTION_PARALLEL)){
+				out.setColor(AnsiColor.RED);
+				out.printf("You cannot use the parameters '%s' and '%s' at the same time.\n", OPTION_NEXT, OPTION_PARALLEL);
+				return CommandOutput.error();
+			}
 			else{
 				if(parameters.containsKey(OPTION_TEXT_ONLY)){
 					option = NodeMatcherOption.TEXT_ONLY;
@@ -141,7 +148,9 @@ public final class FindCmd extends AbstractShellCommand {
 
 				// Search using the 'NodeFinder'
 
-				List<NodeMatchResult> resultList = NodeFinder.findNodes(in.getTreeNode(), conditions);
+				List<NodeMatchResult> resultList = parameters.containsKey(OPTION_PARALLEL) ?
+						NodeFinder.findNodesParallel(in.getTreeNode(), conditions) :
+						NodeFinder.findNodes(in.getTreeNode(), conditions);
 				if(resultList.size() == 0){
 					out.println("No matching node found.");
 				}
@@ -70,21 +70,24 @@ public final class ReplaceCmd extends AbstractShellCommand {
 			}
 		}
 
-		int replaceCount = 0;
+		final List<NodeMatchResult> matches = results;
+		final int[] replaceCount = {0};
 		try{
-			for(NodeMatchResult match: results){
-				if(MatchReplace.replaceContent(match, in.getParameters().get("$0")[0], in.getParameters().containsKey(OPTION_REGEX))){
-					replaceCount++;
+			// All replacements are reverted by a single undo step, the user interface is updated only once
+			instance.getTree().transaction(() -> {
+				for(NodeMatchResult match: matches){
+					if(MatchReplace.replaceContent(match, in.getParameters().get("$0")[0], in.getParameters().containsKey(OPTION_REGEX))){
+						replaceCount[0]++;
+					}
 				}
-			}
-
+			});
 		}
 		catch(IllegalArgumentException e){
 			out.printf("ERROR: %s\n", e.getMessage());
 			return CommandOutput.error();
 		}
 
-		out.println("Replaced values: " + replaceCount);
+		out.println("Replaced values: " + replaceCount[0]);
 		return CommandOutput.success();
 	}
 }
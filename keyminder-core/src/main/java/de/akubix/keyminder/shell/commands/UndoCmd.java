@@ -1,23 +1,35 @@
 package de.akubix.keyminder.shell.commands;
 
 import de.akubix.keyminder.core.ApplicationInstance;
+import de.akubix.keyminder.core.tree.UndoHistory;
 import de.akubix.keyminder.shell.AbstractShellCommand;
 import de.akubix.keyminder.shell.annotations.Command;
 import de.akubix.keyminder.shell.annotations.Description;
-import de.akubix.keyminder.shell.annotations.NoArgs;
+import de.akubix.keyminder.shell.annotations.Option;
 import de.akubix.keyminder.shell.annotations.RequireOpenedFile;
 import de.akubix.keyminder.shell.io.CommandInput;
 import de.akubix.keyminder.shell.io.CommandOutput;
 import de.akubix.keyminder.shell.io.ShellOutputWriter;
 
 @Command("undo")
-@NoArgs
 @RequireOpenedFile
 @Description("Undo the latest changes")
+@Option(name = UndoCmd.OPTION_STATUS, paramCnt = 0, alias = "-s", description = "Shows the size of the undo history instead of reverting any changes")
 public class UndoCmd extends AbstractShellCommand {
+
+	static final String OPTION_STATUS = "--status";
+
 	@Override
 	public CommandOutput exec(ShellOutputWriter out, ApplicationInstance instance, CommandInput in) {
 
+		if(in.getParameters().containsKey(OPTION_STATUS)){
+			UndoHistory history = instance.getTree().getUndoHistory();
+			out.printf("Undo steps:   %d\n", history.size());
+			out.printf("Memory usage: %s of %s\n", formatSize(history.getMemoryUsage()), formatSize(history.getMemoryLimit()));
+			out.printf("On disk:      %s\n", formatSize(history.getSpilledSize()));
+			return CommandOutput.success();
+		}
+
 		if(!instance.getTree().undo(false)){
 			out.println("Cannot undo more operations.");
 			return CommandOutput.error();
@@ -26,4 +38,13 @@ public class UndoCmd extends AbstractShellCommand {
 		return CommandOutput.success();
 	}
 
+	private static String formatSize(long bytes){
+		if(bytes < 1024){
+			return bytes + " B";
+		}
+		else if(bytes < 1024 * 1024){
+			return String.format("%.1f KiB", bytes / 1024d);
+		}
+		return String.format("%.1f MiB", bytes / (1024d * 1024d));
+	}
 }
@@ -78,4 +78,13 @@ public interface UserInterface {
 	 * @return {@code true} if the current thread is the UI thread (or if there is no special UI thread, {@code false} if not
 	 */
 	public boolean isUserInterfaceThread();
+
+	/**
+	 * Executes something with the UI thread, for example to fire an event when a background task has been completed.
+	 * The default implementation runs it directly, this is suitable for all user interfaces without a special UI thread.
+	 * @param runnable the code that should be executed
+	 */
+	public default void runInUserInterfaceThread(Runnable runnable){
+		runnable.run();
+	}
 }
@@ -0,0 +1,311 @@
+package de.akubix.keyminder.util.search;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import de.akubix.keyminder.core.tree.TreeNode;
+import de.akubix.keyminder.core.tree.TreePosition;
+import de.akubix.keyminder.core.tree.TreeStore;
+import de.akubix.keyminder.util.search.matcher.NodeMatcher;
+
+/**
+ * Searches the tree in background, for example while the user is typing the search term.
+ *
+ * A search is started after a short delay, which is restarted by every new search, so only the last of several fast requests is executed.
+ * Starting a new search cancels the previous one. If the search index can resolve the match condition, only its candidates are matched, this is done in small steps by the result executor.
+ * Otherwise the search runs on a snapshot of the tree, which is copied in small steps by the result executor, so the user interface is not blocked.
+ * The snapshot is only referenced by the search itself, it is dropped as soon as the search has finished.
+ * The results are delivered in small chunks by the result executor (usually the thread of the user interface), results of canceled searches are dropped.
+ */
+public final class BackgroundSearch {
+
+	/**
+	 * Receives the results of a search, all methods are called by the result executor
+	 */
+	public interface ResultHandler {
+		/**
+		 * Called when the search has been started (after the delay)
+		 */
+		void searchStarted();
+
+		/**
+		 * Called for each chunk of results
+		 * @param results the results in the order of the tree, the nodes belong to the tree (nodes that have been removed during the search are left out)
+		 */
+		void resultsFound(List<NodeMatchResult> results);
+
+		/**
+		 * Called when the search is complete
+		 * @param resultCount the number of results that have been delivered
+		 */
+		void searchFinished(int resultCount);
+	}
+
+	private static final int MAX_CHUNK_SIZE = 100;
+	private static final long MAX_CHUNK_DELAY = 50;
+	private static final int SNAPSHOT_STEP_SIZE = 2000;
+
+	private final TreeStore tree;
+	private final Executor resultExecutor;
+	private final long delay;
+	private final ScheduledExecutorService executor;
+
+	// Each search gets a new id, a search is canceled as soon as its id is not the current one anymore
+	private final AtomicInteger currentSearchId = new AtomicInteger(0);
+	private ScheduledFuture<?> pendingSearch = null;
+
+	// The number of results that have been delivered by the current search, only used by the result executor
+	private int deliveredResultCount = 0;
+
+	/**
+	 * @param tree the tree
+	 * @param resultExecutor the executor which delivers the results, it has to run the tasks on the thread that modifies the tree
+	 * @param delay the delay in milliseconds before a search is started
+	 */
+	public BackgroundSearch(TreeStore tree, Executor resultExecutor, long delay){
+		this.tree = tree;
+		this.resultExecutor = resultExecutor;
+		this.delay = delay;
+		this.executor = Executors.newSingleThreadScheduledExecutor((runnable) -> {
+			Thread thread = new Thread(runnable, "KeyMinder background search");
+			thread.setDaemon(true);
+			return thread;
+		});
+	}
+
+	/**
+	 * Starts a new search after the delay, a search which has been started before is canceled
+	 * @param matcher the match condition, it has to be thread safe
+	 * @param handler the handler which receives the results
+	 */
+	public synchronized void search(NodeMatcher matcher, ResultHandler handler){
+		final int searchId = cancel();
+		pendingSearch = executor.schedule(() -> {
+			// The snapshot has to be created by the thread that modifies the tree
+			resultExecutor.execute(() -> {
+				if(isCurrent(searchId)){
+					deliveredResultCount = 0;
+					handler.searchStarted();
+					start(matcher, handler, searchId);
+				}
+			});
+		}, delay, TimeUnit.MILLISECONDS);
+	}
+
+	/**
+	 * Starts the search with the candidates of the search index if possible, otherwise with a snapshot of the tree
+	 */
+	private void start(NodeMatcher matcher, ResultHandler handler, int searchId){
+		Set<TreeNode> candidates = matcher.findCandidates(tree);
+		if(candidates != null){
+			matchCandidates(new CandidateSearch(new ArrayList<>(candidates)), matcher, handler, searchId);
+		}
+		else{
+			copySnapshot(tree.createSnapshotBuilder(), matcher, handler, searchId);
+		}
+	}
+
+	/**
+	 * Matches the next part of the candidates with the nodes of the tree and schedules the next step, each step is a separate task of the result executor.
+	 * The search is restarted if the tree has been modified between two steps, because the candidates may be outdated.
+	 */
+	private void matchCandidates(CandidateSearch search, NodeMatcher matcher, ResultHandler handler, int searchId){
+		if(!isCurrent(searchId)){
+			return;
+		}
+
+		if(search.structureVersion != tree.getStructureVersion() || search.contentVersion != tree.getContentVersion()){
+			start(matcher, handler, searchId);
+			return;
+		}
+
+		int end = Math.min(search.next + SNAPSHOT_STEP_SIZE, search.candidates.size());
+		for(; search.next < end; search.next++){
+			TreeNode node = search.candidates.get(search.next);
+			if(!node.isRootNode()){
+				NodeMatchResult result = matcher.matches(node);
+				if(result.nodeMatches()){
+					search.matches.add(new CandidateMatch(new TreePosition(node), result));
+				}
+			}
+		}
+
+		if(search.next < search.candidates.size()){
+			resultExecutor.execute(() -> matchCandidates(search, matcher, handler, searchId));
+		}
+		else{
+			// The positions are immutable, so they can be sorted by the background thread
+			executor.execute(() -> {
+				Collections.sort(search.matches);
+				List<NodeMatchResult> chunk = new ArrayList<>(MAX_CHUNK_SIZE);
+				for(CandidateMatch match: search.matches){
+					chunk.add(match.result);
+					if(chunk.size() >= MAX_CHUNK_SIZE){
+						deliver(chunk, handler, searchId);
+						chunk = new ArrayList<>(MAX_CHUNK_SIZE);
+					}
+				}
+				finish(chunk, handler, searchId);
+			});
+		}
+	}
+
+	/**
+	 * Copies the next part of the tree and schedules the next step, each step is a separate task of the result executor
+	 */
+	private void copySnapshot(TreeStore.SnapshotBuilder builder, NodeMatcher matcher, ResultHandler handler, int searchId){
+		if(!isCurrent(searchId)){
+			return;
+		}
+
+		if(builder.copyNext(SNAPSHOT_STEP_SIZE)){
+			final TreeStore snapshot = builder.getSnapshot();
+			executor.execute(() -> run(snapshot, matcher, handler, searchId));
+		}
+		else{
+			resultExecutor.execute(() -> copySnapshot(builder, matcher, handler, searchId));
+		}
+	}
+
+	/**
+	 * Cancels the current search
+	 * @return the id for the next search
+	 */
+	public synchronized int cancel(){
+		if(pendingSearch != null){
+			pendingSearch.cancel(false);
+			pendingSearch = null;
+		}
+		return currentSearchId.incrementAndGet();
+	}
+
+	/**
+	 * Cancels the current search, for example because the file has been closed
+	 */
+	public synchronized void reset(){
+		cancel();
+	}
+
+	/**
+	 * Cancels the current search and stops the background thread, the search cannot be used anymore
+	 */
+	public synchronized void shutdown(){
+		reset();
+		executor.shutdownNow();
+	}
+
+	private boolean isCurrent(int searchId){
+		return currentSearchId.get() == searchId;
+	}
+
+	private void run(TreeStore snapshot, NodeMatcher matcher, ResultHandler handler, int searchId){
+		List<NodeMatchResult> chunk = new ArrayList<>();
+		long chunkStartTime = System.currentTimeMillis();
+
+		Deque<TreeNode> stack = new ArrayDeque<>();
+		pushChildNodes(stack, snapshot.getRootNode());
+
+		while(!stack.isEmpty()){
+			if(!isCurrent(searchId)){
+				return;
+			}
+
+			TreeNode node = stack.pop();
+			NodeMatchResult result = matcher.matches(node);
+			if(result.nodeMatches()){
+				chunk.add(result);
+			}
+			pushChildNodes(stack, node);
+
+			if(chunk.size() >= MAX_CHUNK_SIZE || (!chunk.isEmpty() && System.currentTimeMillis() - chunkStartTime >= MAX_CHUNK_DELAY)){
+				deliver(chunk, handler, searchId);
+				chunk = new ArrayList<>();
+				chunkStartTime = System.currentTimeMillis();
+			}
+		}
+
+		finish(chunk, handler, searchId);
+	}
+
+	/**
+	 * Delivers the last chunk of results and completes the search
+	 */
+	private void finish(List<NodeMatchResult> chunk, ResultHandler handler, int searchId){
+		if(!chunk.isEmpty()){
+			deliver(chunk, handler, searchId);
+		}
+
+		// The tasks of the result executor are executed in order, so all results have been delivered at this point
+		resultExecutor.execute(() -> {
+			if(isCurrent(searchId)){
+				handler.searchFinished(deliveredResultCount);
+			}
+		});
+	}
+
+	/**
+	 * Delivers a chunk of results, the nodes of the snapshot are replaced by the nodes of the tree, so the results do not keep the snapshot alive.
+	 * Nodes that have been removed from the tree in the meantime are left out.
+	 */
+	private void deliver(List<NodeMatchResult> chunk, ResultHandler handler, int searchId){
+		resultExecutor.execute(() -> {
+			if(isCurrent(searchId)){
+				List<NodeMatchResult> results = new ArrayList<>(chunk.size());
+				for(NodeMatchResult result: chunk){
+					TreeNode node = tree.getNodeById(result.getNode().getId());
+					if(node != null){
+						results.add(result.forNode(node));
+					}
+				}
+				deliveredResultCount += results.size();
+				handler.resultsFound(results);
+			}
+		});
+	}
+
+	private static void pushChildNodes(Deque<TreeNode> stack, TreeNode node){
+		for(int i = node.countChildNodes() - 1; i >= 0; i--){
+			stack.push(node.getChildNodeByIndex(i));
+		}
+	}
+
+	/**
+	 * The state of a search that matches the candidates of the search index
+	 */
+	private final class CandidateSearch {
+		private final List<TreeNode> candidates;
+		private final List<CandidateMatch> matches = new ArrayList<>();
+		private final int structureVersion = tree.getStructureVersion();
+		private final int contentVersion = tree.getContentVersion();
+		private int next = 0;
+
+		private CandidateSearch(List<TreeNode> candidates){
+			this.candidates = candidates;
+		}
+	}
+
+	private static final class CandidateMatch implements Comparable<CandidateMatch> {
+		private final TreePosition position;
+		private final NodeMatchResult result;
+
+		private CandidateMatch(TreePosition position, NodeMatchResult result){
+			this.position = position;
+			this.result = result;
+		}
+
+		@Override
+		public int compareTo(CandidateMatch other){
+			return position.compareTo(other.position);
+		}
+	}
+}
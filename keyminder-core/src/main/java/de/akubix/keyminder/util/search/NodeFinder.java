@@ -3,12 +3,19 @@ package de.akubix.keyminder.util.search;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
 
 import de.akubix.keyminder.core.tree.TreeNode;
+import de.akubix.keyminder.core.tree.TreePosition;
+import de.akubix.keyminder.core.tree.TreeStore;
 import de.akubix.keyminder.util.search.matcher.NodeMatcher;
 
 public class NodeFinder {
 
+	private static final int MAX_SORTED_CANDIDATES_RATIO = 16;
+
 	private final List<NodeMatchResult> resultList;
 	private final List<NodeMatcher> matchConditions;
 
@@ -24,31 +31,200 @@ public class NodeFinder {
 		});
 	}
 
+	private void findNodes(TreeNode parentNode, Set<TreeNode> candidates){
+		parentNode.forEachChildNode((node) -> {
+			if(candidates.contains(node)){
+				applyMatcher(node);
+			}
+			findNodes(node, candidates);
+		});
+	}
+
 	private void applyMatcher(TreeNode node){
+		NodeMatchResult result = match(node);
+		if(result != null){
+			resultList.add(result);
+		}
+	}
+
+	/**
+	 * @return the result of the first matcher in the list, or {@code null} if the node does not match all conditions
+	 */
+	private NodeMatchResult match(TreeNode node){
 		NodeMatchResult result = null;
 		for(NodeMatcher m: matchConditions){
 			NodeMatchResult tmpResult = m.matches(node);
 			if(!tmpResult.nodeMatches()){
-				return;
+				return null;
 			}
 			else if(result == null){
 				result = tmpResult;
 			}
 		}
 
-		// The first matcher in the list is stored in the result list
-		resultList.add(result);
+		return result;
+	}
+
+	/**
+	 * Asks each match condition for its candidates, a node has to be a candidate of every condition which is able to use the indices of the tree
+	 * @param tree the tree
+	 * @param matchConditions the match conditions
+	 * @return a modifiable set of candidates or {@code null} if none of the conditions supports the indices
+	 */
+	static Set<TreeNode> findCandidates(TreeStore tree, List<NodeMatcher> matchConditions){
+		if(tree == null){
+			return null;
+		}
+
+		Set<TreeNode> candidates = null;
+		for(NodeMatcher m: matchConditions){
+			Set<TreeNode> c = m.findCandidates(tree);
+			if(c == null){
+				continue;
+			}
+
+			if(candidates == null){
+				candidates = c;
+			}
+			else{
+				// Iterate over the smaller set
+				if(c.size() < candidates.size()){
+					Set<TreeNode> tmp = candidates;
+					candidates = c;
+					c = tmp;
+				}
+				candidates.retainAll(c);
+			}
+		}
+
+		return candidates;
+	}
+
+	private boolean useSortedCandidates(TreeNode parentNode, Set<TreeNode> candidates){
+		// Sorting a large number of candidates is more expensive than walking through the tree
+		return candidates != null && candidates.size() <= parentNode.getTree().countAllNodes() / MAX_SORTED_CANDIDATES_RATIO;
+	}
+
+	private List<TreeNode> sortCandidates(TreeNode parentNode, Set<TreeNode> candidates){
+		if(!parentNode.isRootNode()){
+			candidates.removeIf((node) -> !TreePosition.isDescendant(node, parentNode));
+		}
+
+		List<TreePosition> positions = TreePosition.sort(candidates);
+		List<TreeNode> nodes = new ArrayList<>(positions.size());
+		positions.forEach((position) -> nodes.add(position.getNode()));
+		return nodes;
+	}
+
+	private List<NodeMatchResult> find(TreeNode parentNode){
+		Set<TreeNode> candidates = findCandidates(parentNode.getTree(), matchConditions);
+		if(candidates == null){
+			findNodes(parentNode);
+		}
+		else if(!useSortedCandidates(parentNode, candidates)){
+			findNodes(parentNode, candidates);
+		}
+		else{
+			sortCandidates(parentNode, candidates).forEach(this::applyMatcher);
+		}
+
+		return resultList;
+	}
+
+	private List<NodeMatchResult> findParallel(TreeNode parentNode, ForkJoinPool pool){
+		Set<TreeNode> candidates = findCandidates(parentNode.getTree(), matchConditions);
+		if(useSortedCandidates(parentNode, candidates)){
+			return pool.invoke(new SearchTask(sortCandidates(parentNode, candidates), null, false));
+		}
+
+		return pool.invoke(new SearchTask(parentNode.getChildNodes(), candidates, true));
+	}
+
+	/**
+	 * Searches a range of sibling nodes (and their child nodes). Large ranges are split into two tasks as long as there are idle threads,
+	 * the results are concatenated in the order of the nodes, so the result is the same as the result of the sequential search.
+	 */
+	private final class SearchTask extends RecursiveTask<List<NodeMatchResult>> {
+
+		private static final long serialVersionUID = 1L;
+		private static final int MAX_SURPLUS_TASKS = 2;
+
+		private final List<TreeNode> nodes;
+		private final int from;
+		private final int to;
+		private final Set<TreeNode> candidates;
+		private final boolean includeChildNodes;
+
+		SearchTask(List<TreeNode> nodes, Set<TreeNode> candidates, boolean includeChildNodes){
+			this(nodes, 0, nodes.size(), candidates, includeChildNodes);
+		}
+
+		private SearchTask(List<TreeNode> nodes, int from, int to, Set<TreeNode> candidates, boolean includeChildNodes){
+			this.nodes = nodes;
+			this.from = from;
+			this.to = to;
+			this.candidates = candidates;
+			this.includeChildNodes = includeChildNodes;
+		}
+
+		@Override
+		protected List<NodeMatchResult> compute() {
+			if(to - from > 1 && getSurplusQueuedTaskCount() < MAX_SURPLUS_TASKS){
+				int middle = (from + to) >>> 1;
+				SearchTask secondHalf = new SearchTask(nodes, middle, to, candidates, includeChildNodes);
+				secondHalf.fork();
+
+				List<NodeMatchResult> results = new SearchTask(nodes, from, middle, candidates, includeChildNodes).compute();
+				results.addAll(secondHalf.join());
+				return results;
+			}
+
+			List<NodeMatchResult> results = new ArrayList<>();
+			for(int i = from; i < to; i++){
+				TreeNode node = nodes.get(i);
+				if(candidates == null || candidates.contains(node)){
+					NodeMatchResult result = match(node);
+					if(result != null){
+						results.add(result);
+					}
+				}
+
+				if(includeChildNodes && node.countChildNodes() > 0){
+					results.addAll(new SearchTask(node.getChildNodes(), candidates, true).compute());
+				}
+			}
+			return results;
+		}
 	}
 
 	public static List<NodeMatchResult> findNodes(TreeNode parentNode, List<NodeMatcher> matchConditions){
-		NodeFinder finder = new NodeFinder(matchConditions);
-		finder.findNodes(parentNode);
-		return finder.resultList;
+		return new NodeFinder(matchConditions).find(parentNode);
 	}
 
 	public static List<NodeMatchResult> findNodes(TreeNode parentNode, NodeMatcher... matchConditions){
-		NodeFinder finder = new NodeFinder(Arrays.asList(matchConditions));
-		finder.findNodes(parentNode);
-		return finder.resultList;
+		return new NodeFinder(Arrays.asList(matchConditions)).find(parentNode);
+	}
+
+	/**
+	 * Finds all matching nodes like {@link #findNodes(TreeNode, List)}, but the subtrees are searched in parallel using the common {@link ForkJoinPool}.
+	 * The tree must not be changed while the search is running, this is the case if the search is started by the thread which modifies the tree (usually the user interface thread).
+	 * @param parentNode the node whose child nodes are searched
+	 * @param matchConditions the match conditions, they have to be thread safe
+	 * @return the matching nodes in the order of the tree
+	 */
+	public static List<NodeMatchResult> findNodesParallel(TreeNode parentNode, List<NodeMatcher> matchConditions){
+		return findNodesParallel(parentNode, matchConditions, ForkJoinPool.commonPool());
+	}
+
+	/**
+	 * Finds all matching nodes in parallel using a specific {@link ForkJoinPool}
+	 * @param parentNode the node whose child nodes are searched
+	 * @param matchConditions the match conditions, they have to be thread safe
+	 * @param pool the pool that runs the search
+	 * @return the matching nodes in the order of the tree
+	 * @see #findNodesParallel(TreeNode, List)
+	 */
+	public static List<NodeMatchResult> findNodesParallel(TreeNode parentNode, List<NodeMatcher> matchConditions, ForkJoinPool pool){
+		return new NodeFinder(matchConditions).findParallel(parentNode, pool);
 	}
 }
@@ -3,6 +3,7 @@ package de.akubix.keyminder.util.search;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.regex.Matcher;
+import java.util.regex.Pattern;
 
 import de.akubix.keyminder.core.tree.TreeNode;
 
@@ -29,6 +30,29 @@ public class NodeMatchResult {
 		return this;
 	}
 
+	/**
+	 * Adds a match of the node text that has been found without using a {@link Matcher}, it will be created if it is requested
+	 * @param pattern the pattern that matches the whole text
+	 * @param text the text of the node
+	 * @return this result
+	 */
+	public NodeMatchResult addTextMatch(Pattern pattern, String text){
+		matchList.add(new MatchElement(null, pattern, text));
+		return this;
+	}
+
+	/**
+	 * Adds a match of an attribute value that has been found without using a {@link Matcher}, it will be created if it is requested
+	 * @param attributeName the name of the attribute
+	 * @param pattern the pattern that matches the whole value
+	 * @param value the value of the attribute
+	 * @return this result
+	 */
+	public NodeMatchResult addAttributeMatch(String attributeName, Pattern pattern, String value){
+		matchList.add(new MatchElement(attributeName, pattern, value));
+		return this;
+	}
+
 	/**
 	 * @return Specifies whether the node matches or not
 	 */
@@ -50,6 +74,17 @@ public class NodeMatchResult {
 		return this.matchList;
 	}
 
+	/**
+	 * Creates a result with the same matches for another node, for example for the original of a copied node
+	 * @param node the other node
+	 * @return the new result
+	 */
+	public NodeMatchResult forNode(TreeNode node){
+		NodeMatchResult result = new NodeMatchResult(node);
+		result.matchList = this.matchList;
+		return result;
+	}
+
 	/**
 	 * Creates a {@link NodeMatchResult} that represents 'no match'
 	 * @return
@@ -59,7 +94,9 @@ public class NodeMatchResult {
 	}
 
 	public static final class MatchElement {
-		private final Matcher matcher;
+		private Matcher matcher;
+		private final Pattern pattern;
+		private final String value;
 		private final String attribName;
 		private final boolean isTextMatch;
 
@@ -67,6 +104,8 @@ public class NodeMatchResult {
 			super();
 			this.attribName = attribName;
 			this.matcher = matcher;
+			this.pattern = null;
+			this.value = null;
 			this.isTextMatch = false;
 		}
 
@@ -74,13 +113,28 @@ public class NodeMatchResult {
 			super();
 			this.attribName = null;
 			this.matcher = matcher;
+			this.pattern = null;
+			this.value = null;
 			this.isTextMatch = true;
 		}
 
+		private MatchElement(String attribName, Pattern pattern, String value){
+			super();
+			this.attribName = attribName;
+			this.matcher = null;
+			this.pattern = pattern;
+			this.value = value;
+			this.isTextMatch = attribName == null;
+		}
+
 		/**
-		 * @return the matcher
+		 * @return the matcher, it has already been matched against the whole value
 		 */
 		public Matcher getMatcher() {
+			if(matcher == null && pattern != null){
+				matcher = pattern.matcher(value);
+				matcher.matches();
+			}
 			return matcher;
 		}
 
@@ -102,7 +156,7 @@ public class NodeMatchResult {
 		 * @return Specifies if the matchResult contains a {@link Matcher}
 		 */
 		public boolean hasMatcher(){
-			return matcher != null;
+			return matcher != null || pattern != null;
 		}
 	}
 }
@@ -1,9 +1,12 @@
 package de.akubix.keyminder.util.search;
 
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
+import java.util.Set;
 
 import de.akubix.keyminder.core.tree.TreeNode;
+import de.akubix.keyminder.core.tree.TreePosition;
 import de.akubix.keyminder.core.tree.TreeStore;
 import de.akubix.keyminder.util.search.matcher.NodeMatcher;
 
@@ -12,6 +15,9 @@ public final class NodeWalker {
 	private List<NodeMatcher> matchConditions;
 	private TreeNode startNode;
 
+	// "Find next" is usually repeated with the same query, so the sorted candidates of the last query are kept
+	private static volatile SortedCandidates lastCandidates = null;
+
 	private NodeWalker(TreeNode startNode, List<NodeMatcher> matchConditions){
 		super();
 		this.matchConditions = matchConditions;
@@ -29,7 +35,8 @@ public final class NodeWalker {
 	}
 
 	/**
-	 * Find a node in a tree that contains a specified text (the search includes node attributes)
+	 * Find a node in a tree that contains a specified text (the search includes node attributes).
+	 * Use a {@link SearchCursor} to step through several matches.
 	 * @param tree the tree you want to search in
 	 * @param matchConditions the match conditions
 	 * @return the search result
@@ -39,7 +46,11 @@ public final class NodeWalker {
 		NodeWalker walker = new NodeWalker(tree.getSelectedNode(), matchConditions);
 
 		if(tree.getRootNode().countChildNodes() > 0){
-			return walker.findNext(tree.getSelectedNode(), true, true);
+			Set<TreeNode> candidates = NodeFinder.findCandidates(tree, matchConditions);
+			if(candidates != null){
+				return walker.findNext(sort(tree, candidates));
+			}
+			return new SearchCursor(tree, matchConditions).findNext();
 		}
 		else{
 			return SearchResult.none();
@@ -66,81 +77,63 @@ public final class NodeWalker {
 		return result;
 	}
 
-	private SearchResult findNext(TreeNode parentNode, boolean init, boolean enableParentSearch) {
-
-		if(parentNode.getId() == startNode.getId() && !init){
-			return SearchResult.endReached();
-		}
-
-		if(!init){
-			NodeMatchResult result = nodeMatches(parentNode, matchConditions);
-			if(result != null){
-				startNode.getTree().setSelectedNode(parentNode);
-				return SearchResult.match(result);
-			}
+	/**
+	 * Sorts the candidates of an index lookup in the order of the tree. The result of the last call is reused if the candidates and the structure of the tree are the same.
+	 */
+	private static List<TreePosition> sort(TreeStore tree, Set<TreeNode> candidates){
+		final SortedCandidates last = lastCandidates;
+		if(last != null && last.tree == tree && last.structureVersion == tree.getStructureVersion() && last.nodes.equals(candidates)){
+			return last.positions;
 		}
 
-		init = false;
-
-		for(int i = 0; i < parentNode.countChildNodes(); i++){
-			TreeNode childNode = parentNode.getChildNodeByIndex(i);
-
-			if(childNode.getId() == startNode.getId() && !init){return SearchResult.endReached();}
+		SortedCandidates sorted = new SortedCandidates(tree, tree.getStructureVersion(), candidates, TreePosition.sort(candidates));
+		lastCandidates = sorted;
+		return sorted.positions;
+	}
 
-			if(childNode.countChildNodes() == 0){
-				NodeMatchResult result = nodeMatches(childNode, matchConditions);
-				if(result != null){
-					parentNode.getTree().setSelectedNode(childNode);
-					return SearchResult.match(result);
-				}
+	/**
+	 * Finds the next match using the (sorted) candidates of an index lookup, the result is the same as the result of a tree walk
+	 */
+	private SearchResult findNext(List<TreePosition> candidates){
+		int index = Collections.binarySearch(candidates, new TreePosition(startNode));
+		int next = index >= 0 ? index + 1 : -index - 1;
+		int previous = index >= 0 ? index : next;
+
+		// Nodes after the start node first, then continue at the beginning of the tree
+		SearchResult result = findFirst(candidates.subList(next, candidates.size()));
+		if(result == null){
+			if(startNode.isRootNode()){
+				return SearchResult.none();
 			}
-			else{
-				SearchResult searchResult = findNext(childNode, false, false);
 
-				// Cancel search if the a node has been found or the end of the document has been reached
-				if(searchResult.getState() != SearchState.NOT_FOUND){
-					return searchResult;
-				}
-			}
+			result = findFirst(candidates.subList(0, previous));
 		}
 
-		if(!parentNode.isRootNode() && enableParentSearch){
-			TreeNode parentParentNode = parentNode.getParentNode();
-			int nextIndex = parentNode.getIndex() + 1;
-
-			if(parentParentNode.countChildNodes() > nextIndex){
-				return findNext(parentParentNode.getChildNodeByIndex(nextIndex), false, enableParentSearch);
-			}
-			else{
-				return findNextUsingParentNode(parentNode);
-			}
-		}
-		else{
-			return SearchResult.none();
-		}
+		return result == null ? SearchResult.endReached() : result;
 	}
 
-	private SearchResult findNextUsingParentNode(TreeNode childNode){
-		TreeNode nextitem = childNode.getParentNode();
-		if(nextitem.isRootNode()){ // Verify that it is not the root node
-			if(startNode.getTree().getRootNode().countChildNodes() > 0){
-				return findNext(startNode.getTree().getRootNode().getChildNodeByIndex(0), false, true);
-			}
-			else{
-				return SearchResult.none();
+	private SearchResult findFirst(List<TreePosition> candidates){
+		for(TreePosition position: candidates){
+			NodeMatchResult result = nodeMatches(position.getNode(), matchConditions);
+			if(result != null){
+				startNode.getTree().setSelectedNode(position.getNode());
+				return SearchResult.match(result);
 			}
 		}
-		else{
-			TreeNode parentParentNode = nextitem.getParentNode();
+		return null;
+	}
 
-			int nextIndex = nextitem.getIndex() + 1;
+	private static final class SortedCandidates {
+		private final TreeStore tree;
+		private final int structureVersion;
+		private final Set<TreeNode> nodes;
+		private final List<TreePosition> positions;
 
-			if(parentParentNode.countChildNodes() > nextIndex){
-				return findNext(parentParentNode.getChildNodeByIndex(nextIndex), false, true);
-			}
-			else{
-				return findNextUsingParentNode(nextitem);
-			}
+		private SortedCandidates(TreeStore tree, int structureVersion, Set<TreeNode> nodes, List<TreePosition> positions){
+			this.tree = tree;
+			this.structureVersion = structureVersion;
+			this.nodes = nodes;
+			this.positions = Collections.unmodifiableList(positions);
 		}
 	}
 
@@ -172,15 +165,15 @@ public final class NodeWalker {
 			return matchResult;
 		}
 
-		private static SearchResult match(NodeMatchResult matchResult){
+		static SearchResult match(NodeMatchResult matchResult){
 			return new SearchResult(SearchState.FOUND, matchResult);
 		}
 
-		private static SearchResult none(){
+		static SearchResult none(){
 			return new SearchResult(SearchState.NOT_FOUND, null);
 		}
 
-		private static SearchResult endReached(){
+		static SearchResult endReached(){
 			return new SearchResult(SearchState.END_REACHED, null);
 		}
 	}
@@ -0,0 +1,185 @@
+package de.akubix.keyminder.util.search;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Set;
+
+import de.akubix.keyminder.core.tree.TreeNode;
+import de.akubix.keyminder.core.tree.TreeStore;
+import de.akubix.keyminder.util.search.NodeWalker.SearchResult;
+import de.akubix.keyminder.util.search.matcher.NodeMatcher;
+
+/**
+ * A search cursor that steps through all matching nodes of a tree, forwards ("find next") or backwards ("find previous").
+ * Each search starts at the selected node and selects the next match, just like {@link NodeWalker#find(TreeStore, List)}.
+ *
+ * The cursor keeps its position in the tree between two searches, so stepping through all matches visits each node only once.
+ * The position is only rebuilt if the structure of the tree has been changed or if another node has been selected.
+ * The tree is walked without recursion, the path to the current node is kept on an explicit stack.
+ */
+public final class SearchCursor {
+
+	private final TreeStore tree;
+	private final List<NodeMatcher> matchConditions;
+
+	// The path from the root node to the current node, an empty path represents the root node
+	private final List<Frame> path = new ArrayList<>();
+	private TreeNode current = null;
+	private int structureVersion;
+
+	private Set<TreeNode> candidates = null;
+	private boolean hasCandidates = false;
+	private int candidatesVersion;
+
+	public SearchCursor(TreeStore tree, NodeMatcher... matchConditions){
+		this(tree, Arrays.asList(matchConditions));
+	}
+
+	public SearchCursor(TreeStore tree, List<NodeMatcher> matchConditions){
+		this.tree = tree;
+		this.matchConditions = matchConditions;
+	}
+
+	/**
+	 * Finds the next matching node after the selected node and selects it
+	 * @return the search result
+	 */
+	public SearchResult findNext(){
+		return find(true);
+	}
+
+	/**
+	 * Finds the previous matching node before the selected node and selects it
+	 * @return the search result
+	 */
+	public SearchResult findPrevious(){
+		return find(false);
+	}
+
+	private SearchResult find(boolean forward){
+		synchronizePosition();
+		updateCandidates();
+
+		final TreeNode origin = current;
+
+		while(true){
+			if(forward){
+				moveForward();
+			}
+			else{
+				moveBackward();
+			}
+
+			if(current == origin){
+				return origin.isRootNode() ? SearchResult.none() : SearchResult.endReached();
+			}
+
+			if(!current.isRootNode() && (candidates == null || candidates.contains(current))){
+				NodeMatchResult result = NodeWalker.nodeMatches(current, matchConditions);
+				if(result != null){
+					tree.setSelectedNode(current);
+					return SearchResult.match(result);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Rebuilds the path to the selected node if the cursor is not located at the selected node or the tree has been changed
+	 */
+	private void synchronizePosition(){
+		TreeNode selectedNode = tree.getSelectedNode();
+		if(current == selectedNode && structureVersion == tree.getStructureVersion()){
+			return;
+		}
+
+		path.clear();
+		for(TreeNode node = selectedNode; !node.isRootNode(); node = node.getParentNode()){
+			path.add(0, new Frame(node.getParentNode(), node.getIndex()));
+		}
+
+		current = selectedNode;
+		structureVersion = tree.getStructureVersion();
+	}
+
+	/**
+	 * The candidates of the index lookup are reused as long as the indices of the tree have not been modified
+	 */
+	private void updateCandidates(){
+		int version = tree.getIndexVersion();
+		if(!hasCandidates || version != candidatesVersion){
+			hasCandidates = true;
+			candidatesVersion = version;
+			candidates = NodeFinder.findCandidates(tree, matchConditions);
+		}
+	}
+
+	/**
+	 * Moves to the next node in pre-order, after the last node of the tree the root node follows
+	 */
+	private void moveForward(){
+		if(current.countChildNodes() > 0){
+			path.add(new Frame(current, 0));
+		}
+		else{
+			while(!path.isEmpty()){
+				Frame frame = path.get(path.size() - 1);
+				if(++frame.index < frame.parent.countChildNodes()){
+					break;
+				}
+				path.remove(path.size() - 1);
+			}
+		}
+
+		updateCurrentNode();
+	}
+
+	/**
+	 * Moves to the previous node in pre-order, the root node is followed by the last node of the tree
+	 */
+	private void moveBackward(){
+		if(path.isEmpty()){
+			descendToLastNode(current);
+		}
+		else{
+			Frame frame = path.get(path.size() - 1);
+			if(--frame.index >= 0){
+				descendToLastNode(frame.parent.getChildNodeByIndex(frame.index));
+			}
+			else{
+				path.remove(path.size() - 1);
+			}
+		}
+
+		updateCurrentNode();
+	}
+
+	private void descendToLastNode(TreeNode node){
+		while(node.countChildNodes() > 0){
+			int lastIndex = node.countChildNodes() - 1;
+			path.add(new Frame(node, lastIndex));
+			node = node.getChildNodeByIndex(lastIndex);
+		}
+	}
+
+	private void updateCurrentNode(){
+		if(path.isEmpty()){
+			current = tree.getRootNode();
+		}
+		else{
+			Frame frame = path.get(path.size() - 1);
+			current = frame.parent.getChildNodeByIndex(frame.index);
+		}
+	}
+
+	private static final class Frame {
+		private final TreeNode parent;
+		private int index;
+
+		Frame(TreeNode parent, int index){
+			this.parent = parent;
+			this.index = index;
+		}
+	}
+}
@@ -0,0 +1,136 @@
+package de.akubix.keyminder.util.search.matcher;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A fast replacement for the regular expression {@code (?i).*term.*} that is used by a simple search, a '*' in the term matches any characters.
+ * The segments of the term are located using the Boyer-Moore-Horspool algorithm.
+ *
+ * The result is the same as the result of {@link java.util.regex.Matcher#matches()}: the case of US-ASCII characters is ignored (like {@code (?i)} does),
+ * and a '*' does not match line terminators.
+ */
+final class LiteralPattern {
+
+	private static final int SHIFT_TABLE_SIZE = 256;
+
+	private final Segment[] segments;
+	private final boolean ignoreCase;
+
+	private LiteralPattern(Segment[] segments, boolean ignoreCase){
+		this.segments = segments;
+		this.ignoreCase = ignoreCase;
+	}
+
+	/**
+	 * Creates the pattern for a simple search term
+	 * @param term the search term
+	 * @param ignoreCase ignore the case of US-ASCII characters
+	 * @return the pattern or {@code null} if the term can only be handled by a regular expression
+	 */
+	static LiteralPattern compile(String term, boolean ignoreCase){
+		List<Segment> segments = new ArrayList<>();
+		StringBuilder segment = new StringBuilder();
+
+		for(int i = 0; i < term.length(); i++){
+			char c = term.charAt(i);
+			if(c == '|' || isLineTerminator(c)){
+				// '|' is not escaped by the simple search, it is still an alternation
+				return null;
+			}
+			else if(c == '*'){
+				if(segment.length() > 0){
+					segments.add(new Segment(segment.toString(), ignoreCase));
+					segment.setLength(0);
+				}
+			}
+			else{
+				segment.append(ignoreCase ? toLowerCase(c) : c);
+			}
+		}
+
+		if(segment.length() > 0){
+			segments.add(new Segment(segment.toString(), ignoreCase));
+		}
+
+		return new LiteralPattern(segments.toArray(new Segment[segments.size()]), ignoreCase);
+	}
+
+	/**
+	 * @param value the value
+	 * @return {@code true} if the whole value is matched by the pattern
+	 */
+	boolean matches(String value){
+		int position = 0;
+		for(Segment segment: segments){
+			int index = segment.indexIn(value, position, ignoreCase);
+			if(index < 0){
+				return false;
+			}
+			position = index + segment.length();
+		}
+
+		// The segments do not contain line terminators, so all of them are part of a wildcard
+		for(int i = 0; i < value.length(); i++){
+			if(isLineTerminator(value.charAt(i))){
+				return false;
+			}
+		}
+
+		return true;
+	}
+
+	private static boolean isLineTerminator(char c){
+		return c == '\n' || c == '\r' || c == '\u0085' || c == '\u2028' || c == '\u2029';
+	}
+
+	private static char toLowerCase(char c){
+		return c >= 'A' && c <= 'Z' ? (char) (c + ('a' - 'A')) : c;
+	}
+
+	private static final class Segment {
+		private final char[] needle;
+		private final int[] shift = new int[SHIFT_TABLE_SIZE];
+
+		Segment(String needle, boolean ignoreCase){
+			this.needle = needle.toCharArray();
+
+			// Characters which share a slot of the table get the smallest shift, this keeps the search correct
+			final int last = this.needle.length - 1;
+			for(int i = 0; i < SHIFT_TABLE_SIZE; i++){
+				shift[i] = this.needle.length;
+			}
+			for(int i = 0; i < last; i++){
+				shift[this.needle[i] % SHIFT_TABLE_SIZE] = last - i;
+			}
+		}
+
+		int length(){
+			return needle.length;
+		}
+
+		int indexIn(String value, int fromIndex, boolean ignoreCase){
+			final int last = needle.length - 1;
+			int position = fromIndex;
+
+			while(position + last < value.length()){
+				char c = value.charAt(position + last);
+				if(ignoreCase){c = toLowerCase(c);}
+
+				if(c == needle[last]){
+					int i = last - 1;
+					while(i >= 0 && (ignoreCase ? toLowerCase(value.charAt(position + i)) : value.charAt(position + i)) == needle[i]){
+						i--;
+					}
+					if(i < 0){
+						return position;
+					}
+				}
+
+				position += shift[c % SHIFT_TABLE_SIZE];
+			}
+
+			return -1;
+		}
+	}
+}
@@ -1,8 +1,20 @@
 package de.akubix.keyminder.util.search.matcher;
 
+import java.util.Set;
+
 import de.akubix.keyminder.core.tree.TreeNode;
+import de.akubix.keyminder.core.tree.TreeStore;
 import de.akubix.keyminder.util.search.NodeMatchResult;
 
 public interface NodeMatcher {
 	public NodeMatchResult matches(TreeNode treeNode);
+
+	/**
+	 * Uses the indices of a tree to find all nodes that may match this condition. The candidates are confirmed using {@link #matches(TreeNode)}.
+	 * @param tree the tree
+	 * @return a modifiable set of candidates or {@code null} if the indices cannot be used for this condition
+	 */
+	public default Set<TreeNode> findCandidates(TreeStore tree){
+		return null;
+	}
 }
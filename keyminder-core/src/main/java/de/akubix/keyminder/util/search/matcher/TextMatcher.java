@@ -1,11 +1,14 @@
 package de.akubix.keyminder.util.search.matcher;
 
 import java.util.Map;
+import java.util.Set;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 import java.util.regex.PatternSyntaxException;
 
+import de.akubix.keyminder.core.tree.SearchIndex;
 import de.akubix.keyminder.core.tree.TreeNode;
+import de.akubix.keyminder.core.tree.TreeStore;
 import de.akubix.keyminder.util.search.NodeMatchResult;
 
 public class TextMatcher implements NodeMatcher {
@@ -13,6 +16,8 @@ public class TextMatcher implements NodeMatcher {
 	private Pattern pattern;
 	private Pattern attributeRegExFilter;
 	private NodeMatcherOption option;
+	private String simpleSearchTerm = null;
+	private LiteralPattern literalPattern = null;
 
 	public TextMatcher(String regEx, boolean simpleSearching, boolean ignoreCase) throws PatternSyntaxException {
 		this(regEx, simpleSearching, NodeMatcherOption.ALL, null, ignoreCase);
@@ -26,6 +31,8 @@ public class TextMatcher implements NodeMatcher {
 	public TextMatcher(String regEx, boolean simpleSearching, NodeMatcherOption option, Pattern attributeRegExFilter, boolean ignoreCase) throws PatternSyntaxException {
 
 		if(simpleSearching){
+			simpleSearchTerm = regEx;
+			literalPattern = LiteralPattern.compile(regEx, ignoreCase);
 			regEx = ".*" + regularExpressionSpecialCharacterEscaping(regEx) + ".*";
 		}
 
@@ -40,6 +47,9 @@ public class TextMatcher implements NodeMatcher {
 
 	@Override
 	public NodeMatchResult matches(TreeNode node) {
+		if(literalPattern != null){
+			return matchesLiteral(node);
+		}
 
 		NodeMatchResult result = null;
 		Matcher m;
@@ -67,6 +77,42 @@ public class TextMatcher implements NodeMatcher {
 		return result == null ? NodeMatchResult.noMatch() : result;
 	}
 
+	/**
+	 * The same as {@link #matches(TreeNode)}, but without using regular expressions. The pattern is only used if the {@link Matcher} of the result is requested.
+	 */
+	private NodeMatchResult matchesLiteral(TreeNode node) {
+
+		NodeMatchResult result = null;
+
+		if(this.option != NodeMatcherOption.ATTRIBUTES_ONLY){
+			String text = node.getText();
+			if(literalPattern.matches(text)){
+				result = new NodeMatchResult(node);
+				result.addTextMatch(pattern, text);
+			}
+		}
+
+		if(this.option != NodeMatcherOption.TEXT_ONLY){
+			for(Map.Entry<String, String> attrib: node.getAttributes()){
+				if(attributeRegExFilter == null || attributeRegExFilter.matcher(attrib.getKey()).matches()){
+					if(literalPattern.matches(attrib.getValue())){
+						if(result == null){result = new NodeMatchResult(node);}
+						result.addAttributeMatch(attrib.getKey(), pattern, attrib.getValue());
+					}
+				}
+			}
+		}
+
+		return result == null ? NodeMatchResult.noMatch() : result;
+	}
+
+	@Override
+	public Set<TreeNode> findCandidates(TreeStore tree) {
+		// Regular expressions cannot be resolved using the index, this includes simple search terms with a '|' (which is still an alternation)
+		SearchIndex index = tree.getSearchIndex();
+		return literalPattern == null || index == null ? null : index.findCandidates(simpleSearchTerm);
+	}
+
 	public static String regularExpressionSpecialCharacterEscaping(String str){
 		return str.replaceAll("(\\.|\\[|\\]|\\(|\\)|\\{|\\}|\\^|\\$|\\?|\\+|\\-|\\\\)", "\\\\$0").replace("*", ".*");
 	}
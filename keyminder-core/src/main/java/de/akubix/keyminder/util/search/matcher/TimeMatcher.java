@@ -24,8 +24,11 @@ import java.time.DateTimeException;
 import java.time.Instant;
 import java.time.ZoneId;
 import java.time.ZonedDateTime;
+import java.util.Set;
 
+import de.akubix.keyminder.core.tree.TimeIndex;
 import de.akubix.keyminder.core.tree.TreeNode;
+import de.akubix.keyminder.core.tree.TreeStore;
 import de.akubix.keyminder.util.search.NodeMatchResult;
 
 /**
@@ -95,6 +98,26 @@ public class TimeMatcher implements NodeMatcher {
 		return NodeMatchResult.noMatch();
 	}
 
+	@Override
+	public Set<TreeNode> findCandidates(TreeStore tree) {
+		TimeIndex index = tree.getTimeIndex(attributeName);
+		if(index == null){
+			// Nodes without the attribute never match
+			return tree.nodesWithAttribute(attributeName);
+		}
+
+		if(compareType == CompareType.Before){
+			return index.findNodes(Long.MIN_VALUE, milliSeconds);
+		}
+		else if(compareType == CompareType.After){
+			return index.findNodes(milliSeconds, Long.MAX_VALUE);
+		}
+		else{
+			ZonedDateTime startOfDay = referenceDate.atZone(ZoneId.systemDefault()).toLocalDate().atStartOfDay(ZoneId.systemDefault());
+			return index.findNodes(startOfDay.toInstant().toEpochMilli(), startOfDay.plusDays(1).toInstant().toEpochMilli() - 1);
+		}
+	}
+
 	enum CompareType {
 		Before, After, AtSameDay
 	}
@@ -1,19 +1,39 @@
 package de.akubix.keyminder.core;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertTrue;
 
 import java.io.File;
+import java.io.IOException;
 import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.PosixFileAttributeView;
+import java.nio.file.attribute.PosixFilePermission;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
 import org.junit.After;
+import org.junit.Assume;
 import org.junit.Before;
 import org.junit.Test;
 
+import de.akubix.keyminder.core.encryption.EncryptionManager;
 import de.akubix.keyminder.core.events.EventTypes.DefaultEvent;
 import de.akubix.keyminder.core.events.EventTypes.TreeNodeEvent;
 import de.akubix.keyminder.core.exceptions.UserCanceledOperationException;
+import de.akubix.keyminder.core.io.FileOpenProgress;
+import de.akubix.keyminder.core.io.StorageManager;
+import de.akubix.keyminder.core.tree.TreeNode;
 import de.akubix.keyminder.core.tree.TreeStore;
 import de.akubix.keyminder.shell.CommandException;
 
@@ -157,6 +177,171 @@ public class AppTest {
 		assertTrue(app.closeFile());
 	}
 
+	@Test
+	public void testEncryptedFile() throws Exception {
+		URL url = this.getClass().getResource("/de/akubix/keyminder/keyminder_testfile.xml");
+		autoGeneratedTestFile = new File(url.getFile().replace("keyminder_testfile.xml", "keyminder_encryption_test.xml"));
+
+		app.createNewFile(autoGeneratedTestFile, false);
+		app.getCurrentFile().encryptFile(new EncryptionManager("test".toCharArray()));
+		app.getShell().runShellCommand("add 'Hello world'");
+		TreeNode node = app.getTree().getRootNode().getChildNodeByIndex(0).getChildNodeByIndex(0);
+		node.setAttribute("password", "secret");
+
+		assertTrue(app.saveFileInBackground().get(10, TimeUnit.SECONDS));
+		assertFalse(app.getTree().hasUnsavedChanges());
+		assertTrue(app.closeFile());
+
+		assertFalse("Open file with wrong password", app.openFile(autoGeneratedTestFile, "wrong"));
+		assertEquals(0, app.getTree().getRootNode().countChildNodes());
+
+		assertTrue("Open encrypted file", app.openFile(autoGeneratedTestFile, "test"));
+		node = app.getTree().getNodeById(node.getId());
+		assertEquals("Hello world", node.getText());
+		assertEquals("secret", node.getAttribute("password"));
+		assertTrue(app.closeFile());
+	}
+
+	@Test
+	public void testFailedBackgroundSave() throws Exception {
+		URL url = this.getClass().getResource("/de/akubix/keyminder/keyminder_testfile.xml");
+		File file = new File(url.getFile().replace("keyminder_testfile.xml", "keyminder_save_test.xml"));
+
+		app.createNewFile(file, false);
+		app.getShell().runShellCommand("add 'Hello world'");
+		app.getCurrentFile().changeFilepath(new File(file.getParentFile(), "missing-directory/keyminder_save_test.xml"));
+
+		assertFalse(app.saveFileInBackground().get(10, TimeUnit.SECONDS));
+		assertTrue("Failed save keeps the unsaved changes", app.getTree().hasUnsavedChanges());
+
+		app.getTree().setTreeChangedStatus(false);
+		assertTrue(app.closeFile());
+	}
+
+	@Test
+	public void testBackgroundSaveIsCoalesced() throws Exception {
+		URL url = this.getClass().getResource("/de/akubix/keyminder/keyminder_testfile.xml");
+		File file = new File(url.getFile().replace("keyminder_testfile.xml", "keyminder_save_test.xml"));
+		AtomicInteger saveCount = new AtomicInteger(0);
+		app.addEventHandler(DefaultEvent.OnFileSaved, () -> saveCount.incrementAndGet());
+
+		try{
+			app.createNewFile(file, false);
+			CompletableFuture<Boolean> firstSave;
+
+			// The first save cannot be completed while the instance is locked, so the following requests are made while it is running
+			synchronized (app) {
+				firstSave = app.saveFileInBackground();
+				app.getShell().runShellCommand("add 'Hello world'");
+				assertSame(firstSave, app.saveFileInBackground());
+				app.getShell().runShellCommand("add 'Hello again'");
+				assertSame(firstSave, app.saveFileInBackground());
+				assertSame(firstSave, app.getPendingBackgroundSave());
+			}
+
+			assertTrue(firstSave.get(10, TimeUnit.SECONDS));
+			assertEquals("Requests during a save result in one more save", 2, saveCount.get());
+			assertNull(app.getPendingBackgroundSave());
+			assertFalse(app.getTree().hasUnsavedChanges());
+			assertTrue(app.closeFile());
+
+			assertTrue(app.openFile(file));
+			assertEquals(2, app.getTree().getRootNode().getChildNodeByIndex(0).countChildNodes());
+			assertTrue(app.closeFile());
+		}
+		finally{
+			file.delete();
+		}
+	}
+
+	@Test
+	public void testSaveKeepsPermissionsAndSymbolicLinks() throws IOException, CommandException, UserCanceledOperationException {
+		URL url = this.getClass().getResource("/de/akubix/keyminder/keyminder_testfile.xml");
+		Path directory = new File(url.getFile()).getParentFile().toPath();
+		Path file = directory.resolve("keyminder_permission_test.xml");
+		Path link = directory.resolve("keyminder_link_test.xml");
+		Assume.assumeNotNull(Files.getFileAttributeView(directory, PosixFileAttributeView.class));
+
+		try{
+			app.createNewFile(file.toFile(), false);
+			assertTrue(app.saveFile());
+			Set<PosixFilePermission> permissions = PosixFilePermissions.fromString("rw-r-----");
+			Files.setPosixFilePermissions(file, permissions);
+			Files.deleteIfExists(link);
+			Files.createSymbolicLink(link, file);
+
+			app.getCurrentFile().changeFilepath(link.toFile());
+			app.getShell().runShellCommand("add 'Hello world'");
+			assertTrue(app.saveFile());
+
+			assertTrue("The link is kept", Files.isSymbolicLink(link));
+			assertEquals(permissions, Files.getPosixFilePermissions(file));
+			assertTrue(new String(Files.readAllBytes(file), StandardCharsets.UTF_8).contains("Hello world"));
+			assertTrue(app.closeFile());
+		}
+		finally{
+			Files.deleteIfExists(link);
+			Files.deleteIfExists(file);
+		}
+	}
+
+	@Test
+	public void testOpenFileInBackground() throws Exception {
+		URL url = this.getClass().getResource("/de/akubix/keyminder/keyminder_testfile.xml");
+		File file = new File(url.getFile());
+
+		final AtomicLong bytesRead = new AtomicLong(0);
+		final AtomicInteger nodesCreated = new AtomicInteger(0);
+		FileOpenProgress progress = new FileOpenProgress() {
+			@Override
+			public void bytesRead(long bytes, long fileSize){
+				bytesRead.set(bytes);
+			}
+
+			@Override
+			public void nodesCreated(int nodeCount){
+				nodesCreated.set(nodeCount);
+			}
+		};
+
+		assertTrue("Open file in background", app.openFileInBackground(file, "", StorageManager.DEFAULT_FILE_TYPE, progress).get(10, TimeUnit.SECONDS));
+		assertTrue(app.isAnyFileOpened());
+		assertEquals(file.length(), bytesRead.get());
+
+		TreeStore tree = app.getTree();
+		assertEquals(tree.countAllNodes() - 1, nodesCreated.get());
+
+		// The nodes and their indices have been moved into the tree of the application
+		TreeNode node = tree.getNodeByPath("/My Passwords/E-Mail/example@somedomain.com");
+		assertTrue(node.getTree() == tree);
+		assertEquals("secret_password", node.getAttribute("password"));
+		assertTrue(tree.nodesWithAttribute("password").contains(node));
+		assertFalse(tree.hasUnsavedChanges());
+		assertTrue(app.closeFile());
+
+		FileOpenProgress canceled = new FileOpenProgress() {
+			@Override
+			public boolean isCanceled(){
+				return true;
+			}
+		};
+
+		assertFalse("Cancel opening the file", app.openFileInBackground(file, "", StorageManager.DEFAULT_FILE_TYPE, canceled).get(10, TimeUnit.SECONDS));
+		assertFalse(app.isAnyFileOpened());
+		assertEquals(1, tree.countAllNodes());
+
+		// Unexpected errors of the worker complete the task as well
+		FileOpenProgress failing = new FileOpenProgress() {
+			@Override
+			public void bytesRead(long bytes, long fileSize){
+				throw new IllegalStateException("Progress failed");
+			}
+		};
+
+		assertFalse("Open file with an unexpected error", app.openFileInBackground(file, "", StorageManager.DEFAULT_FILE_TYPE, failing).get(10, TimeUnit.SECONDS));
+		assertFalse(app.isAnyFileOpened());
+	}
+
 	@After
 	public void after() {
 		// Cleanup
@@ -0,0 +1,86 @@
+package de.akubix.keyminder.core;
+
+import java.time.Instant;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.IntSupplier;
+
+import de.akubix.keyminder.core.tree.DefaultTreeNode;
+import de.akubix.keyminder.core.tree.TreeNode;
+import de.akubix.keyminder.core.tree.TreeStore;
+import de.akubix.keyminder.util.search.NodeFinder;
+import de.akubix.keyminder.util.search.matcher.NodeMatcher;
+import de.akubix.keyminder.util.search.matcher.TextMatcher;
+import de.akubix.keyminder.util.search.matcher.TimeMatcher;
+
+/**
+ * Measures the parallel search of the {@link NodeFinder} using one thread up to the number of available processors.
+ * A regular expression and a time condition are used (like "find --regex --modified after ..."), the search index is disabled.
+ * It is not executed by the test suite, run it using its main method.
+ */
+public class ParallelSearchBenchmark {
+
+	private static final int FOLDERS = 1000;
+	private static final int ENTRIES_PER_FOLDER = 99;
+	private static final int ROUNDS = 10;
+
+	public static void main(String[] args) throws Exception {
+		ApplicationInstance app = KeyMinderInstanceBuilder.getNewInstance();
+		TreeStore tree = app.getTree();
+		createTree(tree);
+		tree.enableSearchIndex(false);
+
+		List<NodeMatcher> conditions = Arrays.asList(
+			new TextMatcher("(?i).*(admin|root)[0-9]+@.*\\.org", false, false),
+			new TimeMatcher("modified", TimeMatcher.getCompareTypeFromString("after"), Instant.ofEpochMilli(500000)));
+
+		int expected = NodeFinder.findNodes(tree.getRootNode(), conditions).size();
+		long sequential = measure(() -> NodeFinder.findNodes(tree.getRootNode(), conditions).size(), expected);
+		System.out.println(String.format("%d nodes, %d matches", tree.countAllNodes() - 1, expected));
+		System.out.println(String.format("  sequential: %8.3f ms", sequential / 1000000d));
+
+		final int processors = Runtime.getRuntime().availableProcessors();
+		for(int threads = 1; threads < processors * 2; threads *= 2){
+			int poolSize = Math.min(threads, processors);
+			ForkJoinPool pool = new ForkJoinPool(poolSize);
+			long parallel = measure(() -> NodeFinder.findNodesParallel(tree.getRootNode(), conditions, pool).size(), expected);
+			System.out.println(String.format("  %2d thread(s): %8.3f ms (speedup %.2f)", poolSize, parallel / 1000000d, (double) sequential / parallel));
+			pool.shutdown();
+		}
+	}
+
+	private static void createTree(TreeStore tree){
+		Random random = new Random(42);
+		String[] words = new String[]{"mail", "bank", "admin", "root", "user", "shop"};
+		for(int i = 0; i < FOLDERS; i++){
+			TreeNode folder = new DefaultTreeNode("Folder " + i);
+			tree.getRootNode().addChildNode(folder);
+			for(int j = 0; j < ENTRIES_PER_FOLDER; j++){
+				TreeNode entry = new DefaultTreeNode("Entry " + j);
+				entry.setAttribute("username", words[random.nextInt(words.length)] + random.nextInt(1000) + "@example." + (random.nextBoolean() ? "org" : "com"));
+				entry.setAttribute("url", "https://host" + random.nextInt(100000) + ".example.org/login");
+				entry.setAttribute("modified", Long.toString(random.nextInt(1000000)));
+				folder.addChildNode(entry);
+			}
+		}
+	}
+
+	/**
+	 * @return the average duration of a search in nanoseconds
+	 */
+	private static long measure(IntSupplier search, int expected){
+		for(int i = 0; i < ROUNDS; i++){
+			if(search.getAsInt() != expected){
+				throw new IllegalStateException("The search returned a different result.");
+			}
+		}
+
+		long start = System.nanoTime();
+		for(int i = 0; i < ROUNDS; i++){
+			search.getAsInt();
+		}
+		return (System.nanoTime() - start) / ROUNDS;
+	}
+}
@@ -0,0 +1,87 @@
+package de.akubix.keyminder.core;
+
+import java.util.Random;
+
+import de.akubix.keyminder.core.tree.DefaultTreeNode;
+import de.akubix.keyminder.core.tree.TreeNode;
+import de.akubix.keyminder.core.tree.TreeStore;
+import de.akubix.keyminder.util.search.NodeFinder;
+import de.akubix.keyminder.util.search.matcher.TextMatcher;
+
+/**
+ * Compares the search using the full text index with a search that visits every node of a tree with 100.000 nodes.
+ * It is not executed by the test suite, run it using its main method.
+ */
+public class SearchIndexBenchmark {
+
+	private static final int FOLDERS = 1000;
+	private static final int ENTRIES_PER_FOLDER = 99;
+	private static final int ROUNDS = 20;
+	private static final String[] QUERIES = new String[]{"host4711", "admin", "example.org", "xyz"};
+	private static final String[] WORDS = new String[]{"mail", "bank", "shop", "server", "router", "admin", "user", "forum", "cloud", "backup"};
+
+	public static void main(String[] args){
+		ApplicationInstance app = KeyMinderInstanceBuilder.getNewInstance();
+		TreeStore tree = app.getTree();
+
+		long start = System.nanoTime();
+		createTree(tree);
+		System.out.println(String.format("Created %d nodes in %d ms", tree.countAllNodes() - 1, (System.nanoTime() - start) / 1000000));
+
+		tree.enableSearchIndex(false);
+		start = System.nanoTime();
+		tree.enableSearchIndex(true);
+		System.out.println(String.format("Built the search index in %d ms", (System.nanoTime() - start) / 1000000));
+
+		for(String query: QUERIES){
+			tree.enableSearchIndex(false);
+			int expected = search(tree, query);
+			long bruteForce = measure(tree, query);
+
+			tree.enableSearchIndex(true);
+			if(search(tree, query) != expected){
+				throw new IllegalStateException("The indexed search returned a different result.");
+			}
+			long indexed = measure(tree, query);
+
+			System.out.println(String.format("  '%s' (%d matches): brute force %7.3f ms, indexed %7.3f ms",
+											 query, expected, bruteForce / 1000000d, indexed / 1000000d));
+		}
+	}
+
+	private static void createTree(TreeStore tree){
+		Random random = new Random(42);
+		int number = 0;
+		for(int i = 0; i < FOLDERS; i++){
+			TreeNode folder = new DefaultTreeNode("Folder " + i);
+			tree.getRootNode().addChildNode(folder);
+			for(int j = 0; j < ENTRIES_PER_FOLDER; j++, number++){
+				String word = WORDS[random.nextInt(WORDS.length)];
+				TreeNode entry = new DefaultTreeNode(word + " host" + number);
+				entry.setAttribute("username", word + random.nextInt(1000) + "@example.org");
+				entry.setAttribute("password", Long.toHexString(random.nextLong()));
+				entry.setAttribute("url", "https://" + word + number + ".example.org/login");
+				folder.addChildNode(entry);
+			}
+		}
+	}
+
+	private static int search(TreeStore tree, String query){
+		return NodeFinder.findNodes(tree.getRootNode(), new TextMatcher(query, true, true)).size();
+	}
+
+	/**
+	 * @return the average duration of a search in nanoseconds
+	 */
+	private static long measure(TreeStore tree, String query){
+		for(int i = 0; i < ROUNDS; i++){
+			search(tree, query);
+		}
+
+		long start = System.nanoTime();
+		for(int i = 0; i < ROUNDS; i++){
+			search(tree, query);
+		}
+		return (System.nanoTime() - start) / ROUNDS;
+	}
+}
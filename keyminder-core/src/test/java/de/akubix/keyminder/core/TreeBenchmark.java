@@ -0,0 +1,60 @@
+package de.akubix.keyminder.core;
+
+import de.akubix.keyminder.core.tree.DefaultTreeNode;
+import de.akubix.keyminder.core.tree.Direction;
+import de.akubix.keyminder.core.tree.TreeNode;
+import de.akubix.keyminder.core.tree.TreeStore;
+
+/**
+ * Simple benchmark for the tree operations that are used while loading a file into the user interface.
+ * It is not executed by the test suite, run it using its main method.
+ */
+public class TreeBenchmark {
+
+	private static final int[] SIBLING_COUNTS = new int[]{12500, 25000, 50000};
+	private static final int WARMUP_ROUNDS = 3;
+
+	public static void main(String[] args){
+		ApplicationInstance app = KeyMinderInstanceBuilder.getNewInstance();
+
+		for(int i = 0; i < WARMUP_ROUNDS; i++){
+			wideFolder(app, SIBLING_COUNTS[0]);
+		}
+
+		System.out.println("Wide folder (add all siblings, then look up the index of each one like the user interface does):");
+		for(int siblings: SIBLING_COUNTS){
+			long duration = wideFolder(app, siblings);
+			System.out.println(String.format("  %6d siblings: %5d ms (%.3f us per node)", siblings, duration / 1000000, duration / 1000d / siblings));
+		}
+	}
+
+	private static long wideFolder(ApplicationInstance app, int siblings){
+		TreeStore tree = app.getTree();
+		tree.reset();
+
+		long start = System.nanoTime();
+
+		TreeNode folder = new DefaultTreeNode("folder");
+		tree.getRootNode().addChildNode(folder);
+		for(int i = 0; i < siblings; i++){
+			folder.addChildNode(new DefaultTreeNode("node" + i));
+		}
+
+		long checksum = 0;
+		for(TreeNode node: folder.getChildNodes()){
+			checksum += node.getIndex();
+		}
+
+		// Move a node through the first part of the folder
+		TreeNode node = folder.getChildNodeByIndex(0);
+		for(int i = 0; i < siblings / 10; i++){
+			node.move(Direction.DOWN);
+		}
+
+		if(checksum != (long) siblings * (siblings - 1) / 2 || node.getIndex() != siblings / 10){
+			throw new IllegalStateException("Unexpected node index.");
+		}
+
+		return System.nanoTime() - start;
+	}
+}
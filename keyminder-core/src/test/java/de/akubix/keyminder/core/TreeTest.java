@@ -1,15 +1,53 @@
 package de.akubix.keyminder.core;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
 
+import java.io.File;
+import java.security.NoSuchAlgorithmException;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
 import org.junit.Before;
 import org.junit.Test;
 
+import de.akubix.keyminder.core.encryption.EncryptionManager;
+import de.akubix.keyminder.core.events.EventTypes.DefaultEvent;
+import de.akubix.keyminder.core.events.EventTypes.TreeNodeEvent;
+import de.akubix.keyminder.core.events.EventTypes.TreeNodesEvent;
+import de.akubix.keyminder.core.tree.AttachmentKey;
 import de.akubix.keyminder.core.tree.DefaultTreeNode;
+import de.akubix.keyminder.core.tree.Direction;
+import de.akubix.keyminder.core.tree.TimeIndex;
 import de.akubix.keyminder.core.tree.TreeNode;
+import de.akubix.keyminder.core.tree.TreePosition;
 import de.akubix.keyminder.core.tree.TreeStore;
+import de.akubix.keyminder.util.Utilities;
+import de.akubix.keyminder.util.search.BackgroundSearch;
+import de.akubix.keyminder.util.search.NodeFinder;
+import de.akubix.keyminder.util.search.NodeMatchResult;
+import de.akubix.keyminder.util.search.NodeWalker;
+import de.akubix.keyminder.util.search.NodeWalker.SearchState;
+import de.akubix.keyminder.util.search.SearchCursor;
+import de.akubix.keyminder.util.search.NodeWalker.SearchResult;
+import de.akubix.keyminder.util.search.matcher.NodeMatcher;
+import de.akubix.keyminder.util.search.matcher.TextMatcher;
+import de.akubix.keyminder.util.search.matcher.TimeMatcher;
 
 public class TreeTest {
 
@@ -25,6 +63,783 @@ public class TreeTest {
 		runSimpleTreeTest(app.getTree());
 	}
 
+	@Test
+	public void testUndoRestoresNodeReferences() {
+		TreeStore tree = app.getTree();
+		tree.enableUndo(true);
+
+		TreeNode parent = new DefaultTreeNode("parent");
+		tree.getRootNode().addChildNode(parent);
+		TreeNode child = new DefaultTreeNode("child");
+		parent.addChildNode(child);
+		child.addChildNode(new DefaultTreeNode("grandchild"));
+
+		final String parentId = parent.getId();
+		final String childId = child.getId();
+
+		parent.remove();
+		assertEquals(0, tree.getRootNode().countChildNodes());
+
+		assertTrue("Undoing last action", tree.undo(false));
+
+		TreeNode restoredParent = tree.getNodeById(parentId);
+		TreeNode restoredChild = tree.getNodeById(childId);
+		assertSame(restoredParent, tree.getRootNode().getChildNodeByIndex(0));
+		assertSame(restoredChild, restoredParent.getChildNodeByIndex(0));
+		assertSame(restoredParent, restoredChild.getParentNode());
+		assertEquals("grandchild", restoredChild.getChildNodeByIndex(0).getText());
+		assertSame(restoredChild, restoredChild.getChildNodeByIndex(0).getParentNode());
+		assertEquals("/parent/child/grandchild", restoredChild.getChildNodeByIndex(0).getNodePath());
+
+		// Editing a node replaces it by a restored copy, its child nodes have to follow
+		restoredChild.setText("renamed");
+		assertTrue("Undoing last action", tree.undo(false));
+		TreeNode child2 = tree.getNodeById(childId);
+		assertEquals("child", child2.getText());
+		assertSame(child2, tree.getNodeById(parentId).getChildNodeByIndex(0));
+		assertSame(child2, child2.getChildNodeByIndex(0).getParentNode());
+	}
+
+	@Test
+	public void testUndoJournal() {
+		TreeStore tree = app.getTree();
+		tree.enableUndo(true);
+
+		for(int i = 0; i < 3; i++){
+			TreeNode folder = new DefaultTreeNode("Folder " + (3 - i));
+			tree.getRootNode().addChildNode(folder);
+			for(int j = 0; j < 4; j++){
+				TreeNode entry = new DefaultTreeNode("Entry " + (4 - j));
+				folder.addChildNode(entry);
+				entry.setAttribute("username", "user" + j);
+				entry.addChildNode(new DefaultTreeNode("Note " + j));
+			}
+		}
+
+		final TreeNode folder = tree.getRootNode().getChildNodeByIndex(1);
+		final TreeNode entry = folder.getChildNodeByIndex(2);
+		final List<Runnable> changes = Arrays.asList(
+			() -> entry.setText("Renamed"),
+			() -> entry.setColor("#ff0000"),
+			() -> entry.setAttribute("password", "secret"),
+			() -> entry.setAttribute("username", "changed"),
+			() -> entry.removeAttribute("username"),
+			() -> entry.move(Direction.UP),
+			() -> folder.sortChildNodes(true),
+			() -> entry.insertChildNode(new DefaultTreeNode("Inserted"), 0),
+			() -> folder.remove(),
+			() -> tree.transaction(() -> {
+				TreeNode other = tree.getRootNode().getChildNodeByIndex(0);
+				other.setText("Changed in transaction");
+				other.getChildNodeByIndex(0).remove();
+				other.addChildNode(new DefaultTreeNode("Added in transaction"));
+			}));
+
+		List<String> states = new ArrayList<>();
+		for(Runnable change: changes){
+			states.add(dumpTree(tree));
+			change.run();
+		}
+
+		for(int i = states.size() - 1; i >= 0; i--){
+			assertTrue("Undoing last action", tree.undo(false));
+			assertEquals("State before change " + i, states.get(i), dumpTree(tree));
+		}
+
+		// The indices have to be up to date after the nodes have been restored
+		List<TreeNode> nodes = new ArrayList<>();
+		tree.allNodes(nodes::add);
+		assertEquals(nodes.stream().filter((node) -> node.hasAttribute("username")).count(), tree.nodesWithAttribute("username").size());
+		assertSearchResultsEqual(tree, new String[]{"entry", "note 3", "user2", "renamed"});
+	}
+
+	@Test
+	public void testUndoMemoryLimit() throws NoSuchAlgorithmException {
+		app.createNewFile(new File(System.getProperty("java.io.tmpdir"), "keyminder_undo_test.xml"), false);
+		app.setSettingsValue("tree.undo.memory_limit", "1");
+		app.getTree().reloadConfig();
+		TreeStore tree = app.getTree();
+
+		// Without the spill file the history keeps only the latest step if it exceeds the limit on its own
+		tree.enableUndo(true);
+		TreeNode folder = addLargeFolder(tree);
+		folder.remove();
+		assertEquals(1, tree.getUndoHistory().size());
+		assertTrue(tree.getUndoHistory().getMemoryUsage() > tree.getUndoHistory().getMemoryLimit());
+
+		tree.getRootNode().getChildNodeByIndex(0).setText("Changed");
+		assertEquals(1, tree.getUndoHistory().size());
+		assertTrue(tree.getUndoHistory().getMemoryUsage() < tree.getUndoHistory().getMemoryLimit());
+
+		// With an encrypted file the removed subtree is moved to the disk instead
+		tree.enableUndo(false);
+		app.getCurrentFile().encryptFile(new EncryptionManager("test".toCharArray()));
+		app.setSettingsValue("tree.undo.spill_to_disk", "yes");
+		app.getTree().reloadConfig();
+
+		folder = addLargeFolder(tree);
+		tree.enableUndo(true);
+
+		List<String> states = new ArrayList<>();
+		states.add(dumpTree(tree));
+		folder.getChildNodeByIndex(7).setText("Renamed");
+		states.add(dumpTree(tree));
+		folder.remove();
+		states.add(dumpTree(tree));
+		tree.getRootNode().addChildNode(new DefaultTreeNode("Added"));
+
+		assertEquals(3, tree.getUndoHistory().size());
+		assertTrue(tree.getUndoHistory().getSpilledSize() > 0);
+		assertTrue(tree.getUndoHistory().getMemoryUsage() < tree.getUndoHistory().getMemoryLimit());
+
+		for(int i = states.size() - 1; i >= 0; i--){
+			assertTrue("Undoing last action", tree.undo(false));
+			assertEquals("State before change " + i, states.get(i), dumpTree(tree));
+		}
+
+		tree.setTreeChangedStatus(false);
+		assertTrue(app.closeFile());
+		assertEquals(0, tree.getUndoHistory().getSpilledSize());
+	}
+
+	/**
+	 * Adds a folder whose nodes use more than one megabyte
+	 */
+	@Test
+	public void testUndoSpillFileSize() throws NoSuchAlgorithmException {
+		app.createNewFile(new File(System.getProperty("java.io.tmpdir"), "keyminder_undo_test.xml"), false);
+		app.getCurrentFile().encryptFile(new EncryptionManager("test".toCharArray()));
+		app.setSettingsValue("tree.undo.memory_limit", "1");
+		app.setSettingsValue("tree.undo.limit", "2");
+		app.setSettingsValue("tree.undo.spill_to_disk", "yes");
+		app.getTree().reloadConfig();
+		TreeStore tree = app.getTree();
+		tree.enableUndo(true);
+
+		// The removed folders are moved to the disk, the older ones are discarded when the next folder is added
+		long maxSize = 0;
+		for(int i = 0; i < 10; i++){
+			addLargeFolder(tree).remove();
+			long size = tree.getUndoHistory().getSpilledSize();
+			assertTrue(size > 0);
+			if(i == 0){
+				maxSize = 3 * size;
+			}
+			assertTrue("Size of the spill file after " + (i + 1) + " folders: " + size, size <= maxSize);
+		}
+
+		// The latest entry is cut off when it is loaded again
+		long size = tree.getUndoHistory().getSpilledSize();
+		assertTrue(tree.undo(false));
+		assertTrue(tree.getUndoHistory().getSpilledSize() < size);
+
+		tree.setTreeChangedStatus(false);
+		assertTrue(app.closeFile());
+	}
+
+	private static TreeNode addLargeFolder(TreeStore tree){
+		char[] value = new char[1500];
+		Arrays.fill(value, 'x');
+
+		TreeNode folder = new DefaultTreeNode("Large folder");
+		tree.getRootNode().addChildNode(folder);
+		for(int i = 0; i < 500; i++){
+			TreeNode entry = new DefaultTreeNode("Entry " + i);
+			folder.addChildNode(entry);
+			entry.setAttribute("notes", new String(value));
+			entry.addChildNode(new DefaultTreeNode("Note " + i));
+		}
+		return folder;
+	}
+
+	@Test
+	public void testUndoRestoresModificationDate() {
+		TreeStore tree = app.getTree();
+		tree.enableUndo(true);
+
+		TreeNode node = new DefaultTreeNode("Node");
+		tree.getRootNode().addChildNode(node);
+		tree.enableNodeTimestamps(false);
+		node.setAttribute(ApplicationInstance.NODE_ATTRIBUTE_MODIFICATION_DATE, "1000");
+		tree.enableNodeTimestamps(true);
+
+		final List<Runnable> changes = Arrays.asList(
+			() -> node.setText("Renamed"),
+			() -> node.setColor("#ff0000"),
+			() -> node.setAttribute("password", "secret"));
+
+		for(Runnable change: changes){
+			change.run();
+			assertTrue("Undoing last action", tree.undo(false));
+			assertEquals("1000", node.getAttribute(ApplicationInstance.NODE_ATTRIBUTE_MODIFICATION_DATE));
+		}
+	}
+
+	/**
+	 * Describes the structure and the content of all nodes of a tree
+	 */
+	private static String dumpTree(TreeStore tree){
+		StringBuilder sb = new StringBuilder();
+		tree.allNodes((node) -> {
+			assertSame(node, tree.getNodeById(node.getId()));
+			sb.append(node.getNodePath()).append('|').append(node.getIndex()).append('|').append(node.getColor());
+			Utilities.asSortedList(node.listAttributes()).forEach((name) -> sb.append('|').append(name).append('=').append(node.getAttribute(name)));
+			sb.append('\n');
+		});
+		return sb.toString();
+	}
+
+	@Test
+	public void testSnapshotIsIndependent() {
+		TreeStore tree = app.getTree();
+
+		TreeNode parent = new DefaultTreeNode("parent");
+		tree.getRootNode().addChildNode(parent);
+		parent.addChildNode(new DefaultTreeNode("child"));
+		parent.setAttribute("username", "user");
+
+		TreeStore snapshot = tree.createSnapshot();
+
+		parent.setText("renamed");
+		parent.setAttribute("username", "changed");
+		parent.getChildNodeByIndex(0).remove();
+		tree.getRootNode().addChildNode(new DefaultTreeNode("new"));
+
+		assertEquals(1, snapshot.getRootNode().countChildNodes());
+		TreeNode copy = snapshot.getRootNode().getChildNodeByIndex(0);
+		assertEquals(parent.getId(), copy.getId());
+		assertEquals("parent", copy.getText());
+		assertEquals("user", copy.getAttribute("username"));
+		assertEquals("/parent/child", copy.getChildNodeByIndex(0).getNodePath());
+
+		assertNull("A snapshot does not need a search index", snapshot.getSearchIndex());
+		assertFalse(snapshot.isUndoEnabled());
+		assertEquals(0, snapshot.getUndoHistory().size());
+
+		// A snapshot that is copied step by step is started again if the tree is changed in between
+		TreeStore.SnapshotBuilder builder = tree.createSnapshotBuilder();
+		assertFalse(builder.copyNext(1));
+		parent.addChildNode(new DefaultTreeNode("added"));
+		while(!builder.copyNext(1)){}
+		assertEquals(tree.countAllNodes(), builder.getSnapshot().countAllNodes());
+		assertEquals("/renamed/added", builder.getSnapshot().getNodeById(parent.getId()).getChildNodeByIndex(0).getNodePath());
+	}
+
+	@Test
+	public void testSearchIndex() {
+		TreeStore tree = app.getTree();
+		tree.enableUndo(true);
+		assertNotNull("The search index should be enabled by default", tree.getSearchIndex());
+
+		for(int i = 0; i < 5; i++){
+			TreeNode folder = new DefaultTreeNode("Folder " + i);
+			tree.getRootNode().addChildNode(folder);
+			for(int j = 0; j < 5; j++){
+				TreeNode entry = new DefaultTreeNode("Entry " + i + "." + j);
+				entry.setAttribute("username", (j % 2 == 0 ? "Alice" : "bob") + "@example.com");
+				folder.addChildNode(entry);
+				entry.addChildNode(new DefaultTreeNode("Note-" + j));
+			}
+		}
+
+		final String[] queries = new String[]{"alice", "LIC", "bob@example", "Entry 3", "ntry 2.1", "note-4", "xample.c", "Fol*4", "@", "missing", "a|b", "alice|bob"};
+		assertSearchResultsEqual(tree, queries);
+
+		TreeNode entry = tree.getRootNode().getChildNodeByIndex(2).getChildNodeByIndex(3);
+		entry.setText("Renamed");
+		entry.setAttribute("username", "carol");
+		tree.getRootNode().getChildNodeByIndex(4).remove();
+		assertSearchResultsEqual(tree, queries);
+		assertEquals(0, NodeFinder.findNodes(tree.getRootNode(), new TextMatcher("Folder 4", true, true)).size());
+		assertEquals(1, NodeFinder.findNodes(tree.getRootNode(), new TextMatcher("carol", true, true)).size());
+
+		assertTrue("Undoing last action", tree.undo(false));
+		assertTrue("Undoing last action", tree.undo(false));
+		assertSearchResultsEqual(tree, queries);
+		assertEquals(0, NodeFinder.findNodes(tree.getRootNode(), new TextMatcher("carol", true, true)).size());
+		assertEquals(1, NodeFinder.findNodes(tree.getRootNode(), new TextMatcher("Folder 4", true, true)).size());
+
+		// Only the nodes that contain the word are candidates
+		assertEquals(10, tree.getSearchIndex().findCandidates("bob").size());
+		assertEquals(25, tree.getSearchIndex().findCandidates("XAMPL").size());
+		assertEquals(0, tree.getSearchIndex().findCandidates("bobx").size());
+		assertNull("Short words are resolved without index", tree.getSearchIndex().findCandidates("bo"));
+	}
+
+	@Test
+	public void testAttributeIndex() {
+		TreeStore tree = app.getTree();
+		tree.enableUndo(true);
+
+		for(int i = 0; i < 3; i++){
+			TreeNode folder = new DefaultTreeNode("Folder " + i);
+			tree.getRootNode().addChildNode(folder);
+			for(int j = 0; j < 3; j++){
+				TreeNode entry = new DefaultTreeNode("Entry " + i + "." + j);
+				folder.addChildNode(entry);
+				if(j != 1){
+					entry.setAttribute("expiration", Long.toString(i * 10 + j));
+				}
+			}
+		}
+
+		assertEquals(6, tree.nodesWithAttribute("expiration").size());
+		assertEquals(0, tree.nodesWithAttribute("missing").size());
+
+		// The nodes can be brought into the order of the tree
+		List<String> texts = new ArrayList<>();
+		TreePosition.sort(tree.nodesWithAttribute("expiration")).forEach((position) -> texts.add(position.getNode().getText()));
+		assertEquals(Arrays.asList("Entry 0.0", "Entry 0.2", "Entry 1.0", "Entry 1.2", "Entry 2.0", "Entry 2.2"), texts);
+
+		TreeNode entry = tree.getRootNode().getChildNodeByIndex(1).getChildNodeByIndex(0);
+		entry.removeAttribute("expiration");
+		assertEquals(5, tree.nodesWithAttribute("expiration").size());
+		tree.getRootNode().getChildNodeByIndex(2).remove();
+		assertEquals(3, tree.nodesWithAttribute("expiration").size());
+
+		assertTrue("Undoing last action", tree.undo(false));
+		assertTrue("Undoing last action", tree.undo(false));
+		Set<TreeNode> nodes = tree.nodesWithAttribute("expiration");
+		assertEquals(6, nodes.size());
+		for(TreeNode node: nodes){
+			assertSame(node, tree.getNodeById(node.getId()));
+		}
+
+		// The time matcher only checks nodes that have the attribute
+		assertEquals(0, NodeFinder.findNodes(tree.getRootNode(), new TimeMatcher(ApplicationInstance.NODE_ATTRIBUTE_CREATION_DATE, TimeMatcher.getCompareTypeFromString("after"), Instant.EPOCH)).size());
+		tree.enableNodeTimestamps(true);
+		tree.getRootNode().addChildNode(new DefaultTreeNode("new"));
+		assertEquals(1, NodeFinder.findNodes(tree.getRootNode(), new TimeMatcher(ApplicationInstance.NODE_ATTRIBUTE_CREATION_DATE, TimeMatcher.getCompareTypeFromString("after"), Instant.EPOCH), new TextMatcher("new", true, true)).size());
+
+		tree.reset();
+		assertEquals(0, tree.nodesWithAttribute("expiration").size());
+	}
+
+	@Test
+	public void testTimeIndex() {
+		TreeStore tree = app.getTree();
+		tree.enableUndo(true);
+		final long day = 24 * 60 * 60 * 1000;
+		final long start = Instant.parse("2016-01-01T12:00:00Z").toEpochMilli();
+
+		for(int i = 0; i < 20; i++){
+			TreeNode node = new DefaultTreeNode("Node " + i);
+			tree.getRootNode().addChildNode(node);
+			node.setAttribute(ApplicationInstance.NODE_ATTRIBUTE_MODIFICATION_DATE, Long.toString(start + (i / 2) * day));
+			node.setAttribute("expiration", i % 5 == 0 ? "invalid" : Long.toString(start + i * day));
+		}
+
+		tree.enableTimeIndex("expiration");
+		TimeIndex index = tree.getTimeIndex("expiration");
+		assertEquals(16, index.size());
+		assertEquals(4, index.getNodesWithInvalidValue().size());
+		assertEquals(3, index.findNodes(start, start + 3 * day).size());
+
+		TreeNode node = tree.getRootNode().getChildNodeByIndex(1);
+		node.setAttribute("expiration", Long.toString(start + 100 * day));
+		assertEquals(2, index.findNodes(start, start + 3 * day).size());
+		assertEquals(1, index.findNodes(start + 100 * day, Long.MAX_VALUE).size());
+		tree.getRootNode().getChildNodeByIndex(2).removeAttribute("expiration");
+		tree.getRootNode().getChildNodeByIndex(3).remove();
+		assertEquals(0, index.findNodes(start, start + 3 * day).size());
+
+		assertTrue("Undoing last action", tree.undo(false));
+		assertTrue("Undoing last action", tree.undo(false));
+		assertTrue("Undoing last action", tree.undo(false));
+		assertEquals(3, index.findNodes(start, start + 3 * day).size());
+		assertEquals(0, index.findNodes(start + 100 * day, Long.MAX_VALUE).size());
+
+		tree.getRootNode().getChildNodeByIndex(0).setAttribute("expiration", Long.toString(start));
+		tree.getRootNode().getChildNodeByIndex(1).setAttribute("expiration", "invalid");
+		tree.getRootNode().getChildNodeByIndex(5).remove();
+		assertEquals(3, index.getNodesWithInvalidValue().size());
+		assertTrue(index.getNodesWithInvalidValue().contains(tree.getRootNode().getChildNodeByIndex(1)));
+
+		// The candidates of the index have to produce the same results as a check of every node
+		List<TreeNode> nodes = new ArrayList<>();
+		tree.allNodes(nodes::add);
+		for(String compareType: new String[]{"before", "after", "at"}){
+			for(int i = -1; i <= 11; i++){
+				Instant date = Instant.ofEpochMilli(start + i * day);
+				TimeMatcher matcher = new TimeMatcher(ApplicationInstance.NODE_ATTRIBUTE_MODIFICATION_DATE, TimeMatcher.getCompareTypeFromString(compareType), date);
+				long expected = nodes.stream().filter((n) -> matcher.matches(n).nodeMatches()).count();
+				assertEquals(compareType + " " + date, expected, NodeFinder.findNodes(tree.getRootNode(), matcher).size());
+			}
+		}
+	}
+
+	@Test
+	public void testSearchCursor() {
+		TreeStore tree = app.getTree();
+		tree.enableSearchIndex(false);
+
+		// A deep chain of nodes, every tenth node matches
+		List<TreeNode> matches = new ArrayList<>();
+		TreeNode parent = tree.getRootNode();
+		for(int i = 0; i < 20000; i++){
+			TreeNode node = new DefaultTreeNode((i % 10 == 0 ? "Match " : "Node ") + i);
+			parent.addChildNode(node);
+			if(i % 10 == 0){matches.add(node);}
+			parent = node;
+		}
+		TreeNode last = new DefaultTreeNode("last match");
+		tree.getRootNode().addChildNode(last);
+		matches.add(last);
+
+		tree.setSelectedNode(tree.getRootNode());
+		SearchCursor cursor = new SearchCursor(tree, new TextMatcher("match", true, true));
+		for(TreeNode node: matches){
+			assertSame(node, cursor.findNext().getMatchResult().getNode());
+			assertSame(node, tree.getSelectedNode());
+		}
+
+		// The search continues at the beginning of the tree, and it can be reversed
+		assertSame(matches.get(0), cursor.findNext().getMatchResult().getNode());
+		assertSame(last, cursor.findPrevious().getMatchResult().getNode());
+		for(int i = matches.size() - 2; i >= 0; i--){
+			assertSame(matches.get(i), cursor.findPrevious().getMatchResult().getNode());
+		}
+
+		// Structural changes and selecting another node are recognized
+		TreeNode inserted = new DefaultTreeNode("inserted match");
+		matches.get(0).insertChildNode(inserted, 0);
+		assertSame(inserted, cursor.findNext().getMatchResult().getNode());
+		tree.setSelectedNode(matches.get(5));
+		assertSame(matches.get(6), cursor.findNext().getMatchResult().getNode());
+		assertSame(matches.get(5), cursor.findPrevious().getMatchResult().getNode());
+
+		SearchCursor single = new SearchCursor(tree, new TextMatcher("inserted", true, true));
+		assertSame(inserted, single.findNext().getMatchResult().getNode());
+		assertEquals(SearchState.END_REACHED, single.findNext().getState());
+		assertEquals(SearchState.END_REACHED, single.findPrevious().getState());
+
+		tree.setSelectedNode(tree.getRootNode());
+		assertEquals(SearchState.NOT_FOUND, new SearchCursor(tree, new TextMatcher("missing", true, true)).findPrevious().getState());
+	}
+
+	@Test
+	public void testTransactionEvents() {
+		TreeStore tree = app.getTree();
+		tree.enableEvents(true);
+		tree.enableUndo(true);
+
+		final int[] nodeEvents = {0};
+		final List<Set<TreeNode>> batches = new ArrayList<>();
+		for(TreeNodeEvent event: new TreeNodeEvent[]{TreeNodeEvent.OnNodeAdded, TreeNodeEvent.OnNodeEdited, TreeNodeEvent.OnNodeRemoved, TreeNodeEvent.OnNodeVerticallyMoved}){
+			app.addEventHandler(event, (node) -> nodeEvents[0]++);
+		}
+		app.addEventHandler(TreeNodesEvent.OnNodesChanged, batches::add);
+
+		TreeNode folder = new DefaultTreeNode("Folder");
+		tree.getRootNode().addChildNode(folder);
+		assertEquals(1, nodeEvents[0]);
+		assertEquals(0, batches.size());
+
+		tree.transaction(() -> {
+			for(int i = 0; i < 100; i++){
+				TreeNode node = new DefaultTreeNode("Node " + (100 - i));
+				folder.addChildNode(node);
+				node.setAttribute("username", "user" + i);
+			}
+			folder.setText("Changed");
+			folder.getChildNodeByIndex(0).remove();
+
+			// A nested transaction is part of the outer one
+			folder.sortChildNodes(false);
+		});
+
+		assertEquals(1, nodeEvents[0]);
+		assertEquals(1, batches.size());
+		// The folder, its child nodes and the root node (because of the sort)
+		assertEquals(101, batches.get(0).size());
+		assertTrue(batches.get(0).contains(folder));
+		assertTrue(batches.get(0).stream().allMatch((node) -> node.getTree() == tree));
+
+		assertTrue(tree.undo(false));
+		assertEquals(0, folder.countChildNodes());
+		assertEquals("Folder", folder.getText());
+		assertEquals(2, batches.size());
+		assertTrue(batches.get(1).contains(folder));
+
+		tree.importNodeStructure(folder, tree.exportNodeStructure(tree.getRootNode().getChildNodeByIndex(0)));
+		assertEquals(1, folder.countChildNodes());
+		assertEquals(3, batches.size());
+		assertEquals(1, nodeEvents[0]);
+
+		assertTrue(tree.undo(false));
+		assertEquals(0, folder.countChildNodes());
+	}
+
+	@Test
+	public void testPostedEvents() throws InterruptedException {
+		final AtomicInteger savedEvents = new AtomicInteger(0);
+		app.addEventHandler(DefaultEvent.OnFileSaved, savedEvents::incrementAndGet);
+
+		Thread[] threads = new Thread[4];
+		for(int i = 0; i < threads.length; i++){
+			threads[i] = new Thread(() -> {
+				for(int j = 0; j < 100; j++){
+					app.postEvent(DefaultEvent.OnFileSaved);
+				}
+			});
+			threads[i].start();
+		}
+
+		for(Thread thread: threads){
+			thread.join();
+		}
+		assertEquals(400, savedEvents.get());
+
+		// Removing the selected node moves the node pointer while the tree is locked, the event is fired afterwards
+		TreeStore tree = app.getTree();
+		tree.enableEvents(true);
+		TreeNode first = new DefaultTreeNode("First");
+		TreeNode second = new DefaultTreeNode("Second");
+		tree.getRootNode().addChildNode(first);
+		tree.getRootNode().addChildNode(second);
+		tree.setSelectedNode(second);
+
+		final List<TreeNode> selectedNodes = new ArrayList<>();
+		app.addEventHandler(TreeNodeEvent.OnSelectedItemChanged, selectedNodes::add);
+		second.remove();
+
+		assertEquals(1, selectedNodes.size());
+		assertSame(first, selectedNodes.get(0));
+		assertSame(first, tree.getSelectedNode());
+	}
+
+	@Test
+	public void testNodeAttachments() {
+		AttachmentKey<StringBuilder> key1 = new AttachmentKey<>("first");
+		AttachmentKey<StringBuilder> key2 = new AttachmentKey<>("second");
+		StringBuilder value1 = new StringBuilder("1");
+		StringBuilder value2 = new StringBuilder("2");
+
+		TreeNode node = new DefaultTreeNode("Node");
+		app.getTree().getRootNode().addChildNode(node);
+		assertNull(node.getAttachment(key1));
+
+		node.setAttachment(key1, value1);
+		node.setAttachment(key2, value2);
+		assertSame(value1, node.getAttachment(key1));
+		assertSame(value2, node.getAttachment(key2));
+
+		node.setAttachment(key1, null);
+		assertNull(node.getAttachment(key1));
+		assertSame(value2, node.getAttachment(key2));
+
+		assertNull(node.clone().getAttachment(key2));
+	}
+
+	@Test
+	public void testResetReleasesNodes() {
+		TreeStore tree = app.getTree();
+		AttachmentKey<StringBuilder> key = new AttachmentKey<>("key");
+
+		TreeNode parent = new DefaultTreeNode("Parent");
+		tree.getRootNode().addChildNode(parent);
+		TreeNode node = new DefaultTreeNode("Node");
+		parent.addChildNode(node);
+		node.setAttribute("password", "secret");
+		node.setAttachment(key, new StringBuilder());
+		String id = node.getId();
+
+		tree.reset();
+
+		assertEquals(1, tree.countAllNodes());
+		assertNull(tree.getNodeById(id));
+
+		// A node that is still referenced does not keep the other nodes or its content reachable
+		assertNull(node.getTree());
+		assertEquals(0, parent.countChildNodes());
+		assertFalse(node.hasAttribute("password"));
+		assertEquals("", node.getText());
+		assertNull(node.getAttachment(key));
+		assertEquals(id, node.getId());
+
+		// The tree can be used again
+		tree.getRootNode().addChildNode(new DefaultTreeNode("New node"));
+		assertEquals(2, tree.countAllNodes());
+	}
+
+	@Test
+	public void testBackgroundSearch() throws InterruptedException {
+		TreeStore tree = app.getTree();
+		for(int i = 0; i < 50; i++){
+			TreeNode folder = new DefaultTreeNode("Folder " + i);
+			tree.getRootNode().addChildNode(folder);
+			for(int j = 0; j < 20; j++){
+				folder.addChildNode(new DefaultTreeNode("Entry " + i + "." + j));
+			}
+		}
+
+		final List<String> results = Collections.synchronizedList(new ArrayList<>());
+		final int[] resultCount = {-1};
+
+		// The first pass matches the candidates of the search index, the second one searches a snapshot of the tree
+		for(int pass = 0; pass < 2; pass++){
+			tree.enableSearchIndex(pass == 0);
+			final CountDownLatch finished = new CountDownLatch(1);
+
+			BackgroundSearch search = new BackgroundSearch(tree, Runnable::run, 10);
+			try{
+				// The first search is replaced by the second one before it has been started
+				search.search(new TextMatcher("Folder", true, true), new CollectingResultHandler(tree, results, finished, resultCount));
+				search.search(new TextMatcher("entry 1.1", true, true), new CollectingResultHandler(tree, results, finished, resultCount));
+
+				assertTrue(finished.await(10, TimeUnit.SECONDS));
+				assertEquals(11, resultCount[0]);
+				assertEquals(11, results.size());
+				assertEquals("Entry 1.1", results.get(0));
+				assertTrue(results.stream().allMatch((text) -> text.startsWith("Entry 1.1")));
+			}
+			finally{
+				search.shutdown();
+			}
+		}
+	}
+
+	@Test
+	public void testBackgroundSearchDropsRemovedNodes() throws InterruptedException {
+		TreeStore tree = app.getTree();
+		tree.enableSearchIndex(true);
+		for(int i = 0; i < 20; i++){
+			tree.getRootNode().addChildNode(new DefaultTreeNode("Entry " + i));
+		}
+
+		final List<String> results = Collections.synchronizedList(new ArrayList<>());
+		final CountDownLatch finished = new CountDownLatch(1);
+		final int[] resultCount = {-1};
+
+		// The tasks of the result executor are run by the test, so the tree can be modified between them
+		final BlockingQueue<Runnable> tasks = new LinkedBlockingQueue<>();
+		BackgroundSearch search = new BackgroundSearch(tree, tasks::add, 0);
+		try{
+			search.search(new TextMatcher("entry 1", true, true), new CollectingResultHandler(tree, results, finished, resultCount));
+
+			// Start the search and match the candidates
+			tasks.poll(10, TimeUnit.SECONDS).run();
+
+			// The results are delivered after the node has been removed
+			Runnable delivery = tasks.poll(10, TimeUnit.SECONDS);
+			tree.getRootNode().getChildNodeByIndex(10).remove();
+			delivery.run();
+
+			tasks.poll(10, TimeUnit.SECONDS).run();
+			assertTrue(finished.await(0, TimeUnit.SECONDS));
+			assertEquals(10, results.size());
+			assertEquals(10, resultCount[0]);
+			assertFalse(results.contains("Entry 10"));
+		}
+		finally{
+			search.shutdown();
+		}
+	}
+
+	private static class CollectingResultHandler implements BackgroundSearch.ResultHandler {
+		private final TreeStore tree;
+		private final List<String> results;
+		private final CountDownLatch finished;
+		private final int[] resultCount;
+
+		CollectingResultHandler(TreeStore tree, List<String> results, CountDownLatch finished, int[] resultCount){
+			this.tree = tree;
+			this.results = results;
+			this.finished = finished;
+			this.resultCount = resultCount;
+		}
+
+		@Override
+		public void searchStarted(){
+			results.clear();
+		}
+
+		@Override
+		public void resultsFound(List<NodeMatchResult> chunk){
+			// The results have to reference the nodes of the tree, not the nodes of the snapshot
+			chunk.forEach((result) -> results.add((result.getNode().getTree() == tree ? "" : "snapshot:") + result.getNode().getText()));
+		}
+
+		@Override
+		public void searchFinished(int count){
+			resultCount[0] = count;
+			finished.countDown();
+		}
+	}
+
+	@Test
+	public void testParallelSearch() {
+		TreeStore tree = app.getTree();
+
+		for(int i = 0; i < 20; i++){
+			TreeNode folder = new DefaultTreeNode("Folder " + i);
+			tree.getRootNode().addChildNode(folder);
+			TreeNode parent = folder;
+			for(int j = 0; j < 50; j++){
+				TreeNode entry = new DefaultTreeNode("Entry " + i + "." + j);
+				entry.setAttribute("username", j % 3 == 0 ? "match" : "other");
+				// Some entries are nested deeply, the others are siblings
+				(j % 10 == 0 ? folder : parent).addChildNode(entry);
+				parent = entry;
+			}
+		}
+
+		ForkJoinPool pool = new ForkJoinPool(4);
+		try{
+			for(String query: new String[]{"match", "Entry 1", "ntry 1*.4", "*"}){
+				for(boolean useIndex: new boolean[]{false, true}){
+					tree.enableSearchIndex(useIndex);
+					for(TreeNode parentNode: Arrays.asList(tree.getRootNode(), tree.getRootNode().getChildNodeByIndex(3))){
+						List<NodeMatcher> conditions = Arrays.asList(new TextMatcher(query, true, true));
+						assertEquals("Search results for '" + query + "'",
+								getNodeIds(NodeFinder.findNodes(parentNode, conditions)),
+								getNodeIds(NodeFinder.findNodesParallel(parentNode, conditions, pool)));
+					}
+				}
+			}
+		}
+		finally{
+			pool.shutdown();
+		}
+	}
+
+	private static List<String> getNodeIds(List<NodeMatchResult> results){
+		List<String> ids = new ArrayList<>(results.size());
+		results.forEach((result) -> ids.add(result.getNode().getId()));
+		return ids;
+	}
+
+	/**
+	 * Compares the results of the indexed search with the results of a search without index, starting a search at each node of the tree
+	 */
+	private void assertSearchResultsEqual(TreeStore tree, String[] queries){
+		List<TreeNode> nodes = new ArrayList<>();
+		nodes.add(tree.getRootNode());
+		tree.allNodes(nodes::add);
+
+		for(String query: queries){
+			List<String> expected = new ArrayList<>();
+			List<String> actual = new ArrayList<>();
+
+			for(int pass = 0; pass < 2; pass++){
+				tree.enableSearchIndex(pass == 1);
+				List<String> results = (pass == 0 ? expected : actual);
+
+				NodeFinder.findNodes(tree.getRootNode(), new TextMatcher(query, true, true)).forEach((result) -> results.add(result.getNode().getId()));
+				NodeFinder.findNodes(tree.getRootNode().getChildNodeByIndex(1), new TextMatcher(query, true, true)).forEach((result) -> results.add(result.getNode().getId()));
+
+				for(TreeNode start: nodes){
+					tree.setSelectedNode(start);
+					SearchResult result = NodeWalker.find(tree, new TextMatcher(query, true, true));
+					NodeMatchResult match = result.getMatchResult();
+					results.add(result.getState() + ":" + (match == null ? "" : match.getNode().getId()));
+				}
+			}
+
+			assertEquals("Search results for '" + query + "'", expected, actual);
+		}
+	}
+
 	private void runSimpleTreeTest(TreeStore tree){
 
 		app.getTree().enableEvents(true);
@@ -1,10 +1,23 @@
 package de.akubix.keyminder.core.encryption;
 
+import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
 import java.security.InvalidKeyException;
 import java.security.NoSuchAlgorithmException;
 import java.security.spec.InvalidKeySpecException;
+import java.util.Arrays;
+
+import javax.crypto.SecretKey;
+import javax.crypto.spec.SecretKeySpec;
 
 import org.junit.Test;
 
@@ -47,4 +60,127 @@ public class AES_Test {
 		}
 	}
 
+	@Test
+	public void testEncryptionManagerKeyDerivation() throws InvalidKeySpecException, InvalidKeyException, NoSuchAlgorithmException {
+		EncryptionManager.loadDefaultCiphers();
+		if(!AES.isAES256Supported()){
+			System.out.println("WARNING: Cannot run PBKDF2 test. AES-256 is not supported on this System.");
+			return;
+		}
+
+		final String src = "This text will be encrypted using AES";
+		EncryptionManager em = new EncryptionManager("AES-256/PBKDF2", "my_password".toCharArray(), new byte[16], new byte[0]);
+		em.setHashIterations(1000);
+
+		String enc1 = em.encrypt(src);
+		byte[] salt = em.getPasswordSalt().clone();
+		byte[] iv1 = em.getIV().clone();
+
+		// The salt is kept for the session, but each encryption uses a new IV
+		String enc2 = em.encrypt(src);
+		assertArrayEquals(salt, em.getPasswordSalt());
+		assertFalse(Arrays.equals(iv1, em.getIV()));
+
+		EncryptionManager em2 = new EncryptionManager("AES-256/PBKDF2", "my_password".toCharArray(), iv1, salt);
+		em2.setHashIterations(1000);
+		assertEquals(src, em2.decrypt(enc1));
+
+		EncryptionManager em3 = new EncryptionManager("AES-256/PBKDF2", "my_password".toCharArray(), em.getIV(), salt);
+		em3.setHashIterations(1000);
+		assertEquals(src, em3.decrypt(enc2));
+
+		// The key check value allows to verify the password without decrypting the data
+		String keyCheckValue = em.getKeyCheckValueAsBase64();
+		assertTrue(em2.verifyKeyCheckValue(keyCheckValue));
+		EncryptionManager wrongPassword = new EncryptionManager("AES-256/PBKDF2", "wrong_password".toCharArray(), iv1, salt);
+		wrongPassword.setHashIterations(1000);
+		assertFalse(wrongPassword.verifyKeyCheckValue(keyCheckValue));
+
+		// The iteration count is part of the key
+		EncryptionManager em4 = new EncryptionManager("AES-256/PBKDF2", "my_password".toCharArray(), em.getIV(), salt);
+		try{
+			assertFalse(src.equals(em4.decrypt(enc2)));
+		}
+		catch(InvalidKeyException e){
+			// expected, the padding is usually invalid
+		}
+
+		try{
+			em4.setHashIterations(AES.MAX_HASH_ITERATION_COUNT + 1);
+			fail("The iteration count is limited");
+		}
+		catch(IllegalArgumentException e){
+			// expected
+		}
+
+		em.setKeepPasswordSalt(false);
+		em.encrypt(src);
+		assertFalse(Arrays.equals(salt, em.getPasswordSalt()));
+	}
+
+	@Test
+	public void testChunkedAESGCM() throws IOException, InvalidKeyException, InvalidKeySpecException, NoSuchAlgorithmException {
+		SecretKey key = new SecretKeySpec(AES.generatePasswordSalt(16), "AES");
+		byte[] iv = AES.generateIV();
+
+		for(int size: new int[]{0, 100, ChunkedAESGCM.CHUNK_SIZE * 2, ChunkedAESGCM.CHUNK_SIZE * 7 / 2}){
+			byte[] data = AES.generatePasswordSalt(size);
+			byte[] enc = encryptChunked(data, key, iv);
+			assertArrayEquals("Size " + size, data, decryptChunked(enc, key, iv));
+
+			// Truncating the data at the end of a chunk must be detected
+			if(size >= ChunkedAESGCM.CHUNK_SIZE){
+				try{
+					decryptChunked(Arrays.copyOf(enc, ChunkedAESGCM.CHUNK_SIZE + 16), key, iv);
+					fail("Truncated data has not been detected.");
+				}
+				catch(IOException | InvalidKeyException e){}
+			}
+		}
+
+		byte[] enc = encryptChunked(AES.generatePasswordSalt(ChunkedAESGCM.CHUNK_SIZE * 3), key, iv);
+
+		// A wrong key is detected by the first chunk
+		try{
+			ChunkedAESGCM.decrypt(new ByteArrayInputStream(enc), new SecretKeySpec(AES.generatePasswordSalt(16), "AES"), iv);
+			fail("Wrong key has not been detected.");
+		}
+		catch(InvalidKeyException e){}
+
+		// Modified data
+		enc[enc.length - 20] ^= 1;
+		try{
+			decryptChunked(enc, key, iv);
+			fail("Modified data has not been detected.");
+		}
+		catch(IOException e){}
+
+		EncryptionManager.loadDefaultCiphers();
+		if(AES.isAES256Supported()){
+			EncryptionManager em = new EncryptionManager("AES-256-GCM/PBKDF2", "my_password".toCharArray(), new byte[16], new byte[0]);
+			em.setHashIterations(1000);
+			final String src = "This text will be encrypted using AES-GCM";
+			String encrypted = em.encrypt(src);
+			assertEquals(src, em.decrypt(encrypted));
+		}
+	}
+
+	private static byte[] encryptChunked(byte[] data, SecretKey key, byte[] iv) throws IOException {
+		ByteArrayOutputStream enc = new ByteArrayOutputStream();
+		try(OutputStream out = ChunkedAESGCM.encrypt(enc, key, iv)){
+			out.write(data);
+		}
+		return enc.toByteArray();
+	}
+
+	private static byte[] decryptChunked(byte[] enc, SecretKey key, byte[] iv) throws IOException, InvalidKeyException {
+		ByteArrayOutputStream data = new ByteArrayOutputStream();
+		try(InputStream in = ChunkedAESGCM.decrypt(new ByteArrayInputStream(enc), key, iv)){
+			byte[] buffer = new byte[5000];
+			for(int n = in.read(buffer); n != -1; n = in.read(buffer)){
+				data.write(buffer, 0, n);
+			}
+		}
+		return data.toByteArray();
+	}
 }
@@ -1,11 +1,17 @@
 package de.akubix.keyminder.core.io;
 
 import java.io.IOException;
+import java.io.StringReader;
+import java.io.StringWriter;
 import java.util.HashMap;
 import java.util.Map;
 
 import javax.xml.parsers.ParserConfigurationException;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
 import javax.xml.transform.TransformerException;
+import javax.xml.transform.sax.TransformerHandler;
+import javax.xml.transform.stream.StreamResult;
 
 import org.junit.Assert;
 import org.junit.Test;
@@ -53,6 +59,49 @@ public class XML_Test {
 		compareMaps(map2, result);
 	}
 
+	@Test
+	public void testStreamXml2Map() throws ParserConfigurationException, TransformerException, XMLStreamException {
+
+		final Map<String, String> map = new HashMap<>();
+		map.put("hello", "world");
+		map.put("abc.xyz", "...");
+		map.put("abc.def.ghi", "123.456");
+		map.put("abc123:456", "<abc> & \"def\"");
+		map.put("any.name:with_a_colon", "Hello world!");
+		map.put("keyminder:password-hint", "hint");
+
+		XMLStreamReader reader = XML.createXmlInputFactory().createXMLStreamReader(new StringReader(XML.writeXmlDocumentToString(XML.convertMapToXmlDocument(map, "test"))));
+		Assert.assertTrue(XML.nextChildElement(reader));
+
+		Map<String, String> result = new HashMap<>();
+		XML.convertXmlToMap(reader, result, false);
+		compareMaps(map, result);
+		Assert.assertFalse(XML.nextChildElement(reader));
+	}
+
+	@Test
+	public void testStreamMap2Xml() throws SAXException, IOException, TransformerException {
+
+		final Map<String, String> map = new HashMap<>();
+		map.put("hello", "world");
+		map.put("abc.xyz", "...");
+		map.put("abc.def.ghi", "123.456");
+		map.put("abc123:456", "abc");
+		map.put("any.name:with_a_colon", "Hello world!");
+
+		StringWriter writer = new StringWriter();
+		TransformerHandler xml = XML.createXmlSerializer(new StreamResult(writer));
+		xml.startDocument();
+		XML.startElement(xml, "test");
+		XML.writeMapAsXmlNodes(map, xml);
+		XML.endElement(xml, "test");
+		xml.endDocument();
+
+		Map<String, String> result = new HashMap<>();
+		XML.convertXmlToMap(XML.loadXmlDocument(writer.toString()), result, false);
+		compareMaps(map, result);
+	}
+
 	private static <K, V> void compareMaps(Map<K, V> original, Map<K, V> copy){
 
 		Assert.assertTrue(original.keySet().containsAll(copy.keySet()));
@@ -0,0 +1,61 @@
+package de.akubix.keyminder.util.search;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+
+import de.akubix.keyminder.core.tree.DefaultTreeNode;
+import de.akubix.keyminder.core.tree.TreeNode;
+import de.akubix.keyminder.util.search.NodeMatchResult.MatchElement;
+import de.akubix.keyminder.util.search.matcher.TextMatcher;
+import de.akubix.keyminder.util.search.matcher.TextMatcher.NodeMatcherOption;
+
+public class TextMatcherTest {
+
+	private static final String[] VALUES = new String[]{
+		"", "Hello World", "hello world", "HELLO", "user@example.com", "a.b(c)[d]", "Line 1\nLine 2", "Straße", "STRASSE",
+		"aaaaab", "abababc", "path\\to\\file", "x-y+z?", "hellohello", "tab\there", "Ärger", "ärger"};
+
+	private static final String[] TERMS = new String[]{
+		"", "hello", "HELLO", "o w", "World", "@example.", "a.b(c)[d]", "Line", "1", "straße", "ss", "aab", "abc", "ababc",
+		"\\to\\", "x-y+z?", "*", "h*o", "hel*wor", "l*l*l", "he*", "*ld", "ärger", "Ärger", "a|b", "missing"};
+
+	@Test
+	public void testLiteralMatchesLikeRegularExpression() {
+		List<TreeNode> nodes = new ArrayList<>();
+		for(String value: VALUES){
+			TreeNode node = new DefaultTreeNode(value);
+			node.setAttribute("value", value);
+			node.setAttribute("other", "other");
+			nodes.add(node);
+		}
+
+		for(String term: TERMS){
+			for(boolean ignoreCase: new boolean[]{true, false}){
+				for(NodeMatcherOption option: NodeMatcherOption.values()){
+					// The regular expression that has been used by the simple search before
+					TextMatcher regEx = new TextMatcher(".*" + TextMatcher.regularExpressionSpecialCharacterEscaping(term) + ".*", false, option, ignoreCase);
+					TextMatcher literal = new TextMatcher(term, true, option, ignoreCase);
+
+					for(TreeNode node: nodes){
+						String message = String.format("'%s' in '%s' (ignore case: %b, %s)", term, node.getText(), ignoreCase, option);
+						assertEquals(message, describe(regEx.matches(node)), describe(literal.matches(node)));
+					}
+				}
+			}
+		}
+	}
+
+	private static List<String> describe(NodeMatchResult result){
+		List<String> description = new ArrayList<>();
+		if(result.nodeMatches()){
+			for(MatchElement match: result.getMatchElements()){
+				description.add((match.isTextMatch() ? "text" : match.getAttributeName()) + ": " + match.getMatcher().group() + " -> " + match.getMatcher().replaceAll("*"));
+			}
+		}
+		return description;
+	}
+}
@@ -26,6 +26,7 @@ import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
 import java.util.ResourceBundle;
+import java.util.Set;
 import java.util.function.Consumer;
 
 import de.akubix.keyminder.core.ApplicationInstance;
@@ -33,7 +34,9 @@ import de.akubix.keyminder.core.KeyMinder;
 import de.akubix.keyminder.core.events.Compliance;
 import de.akubix.keyminder.core.events.EventTypes.ComplianceEvent;
 import de.akubix.keyminder.core.events.EventTypes.DefaultEvent;
+import de.akubix.keyminder.core.tree.TimeIndex;
 import de.akubix.keyminder.core.tree.TreeNode;
+import de.akubix.keyminder.core.tree.TreePosition;
 import de.akubix.keyminder.core.tree.TreeStore;
 import de.akubix.keyminder.locale.LocaleLoader;
 import de.akubix.keyminder.ui.fx.JavaFxUserInterface;
@@ -85,7 +88,7 @@ public class Deadline {
 		this.app = instance;
 		this.locale = LocaleLoader.loadLanguagePack("plugins", "deadline", app.getLocale());
 		this.javaFxUserInterfaceLoaded = JavaFxUserInterface.isLoaded(instance);
-
+		instance.getTree().enableTimeIndex(NODE_EXPIRATION_ATTRIBUTE);
 
 		// Initiate a node check if a new file is opened
 		instance.addEventHandler(DefaultEvent.OnFileOpened, () -> {
@@ -287,7 +290,19 @@ public class Deadline {
 	}
 
 	private void checkForExpiredNodes(TreeStore tree, long now, List<ExpiredNodeData> expiredNodes, List<ExpiredNodeData> nearlyExpiredNodes, boolean enableLiveLog){
-		tree.allNodes((TreeNode node) -> {
+		// Only the nodes which will expire before the end of the warning period are of interest (and the invalid ones, to report them)
+		TimeIndex index = tree.getTimeIndex(NODE_EXPIRATION_ATTRIBUTE);
+		Set<TreeNode> nodes;
+		if(index != null){
+			nodes = index.findNodes(Long.MIN_VALUE, now + warningDifferenceInMilliseconds - 1);
+			nodes.addAll(index.getNodesWithInvalidValue());
+		}
+		else{
+			nodes = tree.nodesWithAttribute(NODE_EXPIRATION_ATTRIBUTE);
+		}
+
+		for(TreePosition position: TreePosition.sort(nodes)){
+			TreeNode node = position.getNode();
 			if(Thread.interrupted()){return;}
 			if(node.hasAttribute(NODE_EXPIRATION_ATTRIBUTE)){
 				try{
@@ -308,7 +323,7 @@ public class Deadline {
 					if(KeyMinder.verbose_mode){app.println("Plugin \"Expiration\": Unable to parse expiration date of node '" + node.getText() + "'");}
 				}
 			}
-		});
+		}
 	}
 
 	private void printExpireNodeList(List<ExpiredNodeData> list, boolean printExpiredNodes){
@@ -20,12 +20,17 @@ package de.akubix.keyminder.ui.fx;
 
 import java.io.File;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.ResourceBundle;
 import java.util.Set;
 import java.util.Timer;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
 import java.util.function.BiConsumer;
 import java.util.function.BooleanSupplier;
 
@@ -36,10 +41,12 @@ import de.akubix.keyminder.core.events.Compliance;
 import de.akubix.keyminder.core.events.EventTypes.ComplianceEvent;
 import de.akubix.keyminder.core.events.EventTypes.DefaultEvent;
 import de.akubix.keyminder.core.events.EventTypes.TreeNodeEvent;
+import de.akubix.keyminder.core.events.EventTypes.TreeNodesEvent;
 import de.akubix.keyminder.core.events.TreeNodeEventHandler;
 import de.akubix.keyminder.core.exceptions.UserCanceledOperationException;
 import de.akubix.keyminder.core.io.FileExtension;
 import de.akubix.keyminder.core.io.StorageManager;
+import de.akubix.keyminder.core.tree.AttachmentKey;
 import de.akubix.keyminder.core.tree.DefaultTreeNode;
 import de.akubix.keyminder.core.tree.Direction;
 import de.akubix.keyminder.core.tree.TreeNode;
@@ -48,6 +55,8 @@ import de.akubix.keyminder.locale.LocaleLoader;
 import de.akubix.keyminder.shell.CommandException;
 import de.akubix.keyminder.ui.KeyMinderUserInterface;
 import de.akubix.keyminder.ui.fx.components.AbstractEditableTreeCell;
+import de.akubix.keyminder.ui.fx.components.FileOpenProgressPanel;
+import de.akubix.keyminder.ui.fx.components.SearchResultCell;
 import de.akubix.keyminder.ui.fx.components.TreeNodeItem;
 import de.akubix.keyminder.ui.fx.components.TreeNodeReference;
 import de.akubix.keyminder.ui.fx.components.VisibleTreeNodesSkin;
@@ -64,9 +73,11 @@ import de.akubix.keyminder.ui.fx.sidebar.FxSidebar;
 import de.akubix.keyminder.ui.fx.utils.ImageMap;
 import de.akubix.keyminder.ui.fx.utils.StylesheetMap;
 import de.akubix.keyminder.util.Utilities;
-import de.akubix.keyminder.util.search.NodeWalker;
+import de.akubix.keyminder.util.search.BackgroundSearch;
+import de.akubix.keyminder.util.search.NodeMatchResult;
 import de.akubix.keyminder.util.search.NodeWalker.SearchResult;
 import de.akubix.keyminder.util.search.NodeWalker.SearchState;
+import de.akubix.keyminder.util.search.SearchCursor;
 import de.akubix.keyminder.util.search.matcher.TextMatcher;
 import javafx.application.Application;
 import javafx.application.Platform;
@@ -92,9 +103,11 @@ import javafx.scene.control.ButtonType;
 import javafx.scene.control.CheckMenuItem;
 import javafx.scene.control.ContextMenu;
 import javafx.scene.control.Label;
+import javafx.scene.control.ListView;
 import javafx.scene.control.Menu;
 import javafx.scene.control.MenuBar;
 import javafx.scene.control.MenuItem;
+import javafx.scene.control.ProgressBar;
 import javafx.scene.control.ScrollPane;
 import javafx.scene.control.ScrollPane.ScrollBarPolicy;
 import javafx.scene.control.SeparatorMenuItem;
@@ -118,6 +131,7 @@ import javafx.scene.layout.BorderPane;
 import javafx.scene.layout.GridPane;
 import javafx.scene.layout.HBox;
 import javafx.scene.layout.Pane;
+import javafx.scene.layout.Priority;
 import javafx.scene.layout.VBox;
 import javafx.stage.FileChooser;
 import javafx.stage.Stage;
@@ -130,7 +144,23 @@ import javafx.util.Callback;
 )
 public class MainWindow extends Application implements JavaFxUserInterfaceApi {
 
-	private HashMap<String, TreeItem<TreeNodeReference>> treeNodeTranslator = new HashMap<>();
+	// Each node knows the tree item which displays it (if the item has already been created, see TreeNodeItem)
+	private final AttachmentKey<TreeNodeItem> treeItemAttachment = new AttachmentKey<>("fx.treeitem");
+	private final TreeNodeItem.Registry treeItemRegistry = new TreeNodeItem.Registry() {
+		@Override
+		public void register(TreeNode node, TreeNodeItem item) {
+			node.setAttachment(treeItemAttachment, item);
+		}
+
+		@Override
+		public void unregister(TreeNodeItem item) {
+			// The attachment is only removed if it still belongs to the tree item, a new tree item may already display the node
+			TreeNode node = item.getValue().getTreeNode();
+			if(node != null && node.getAttachment(treeItemAttachment) == item){
+				node.setAttachment(treeItemAttachment, null);
+			}
+		}
+	};
 
 	private ApplicationInstance app;
 	private TreeStore dataTree;
@@ -140,8 +170,10 @@ public class MainWindow extends Application implements JavaFxUserInterfaceApi {
 	}
 
 	private boolean nextSelectedItemChangeEventWasFiredByMe = false;
+	private boolean treeItemsUpdateInProgress = false;
 
 	private boolean treeEditModeActive = false;
+	private boolean closeAfterBackgroundSave = false;
 
 	private TreeView<TreeNodeReference> fxtree;
 	private Stage me;
@@ -158,6 +190,9 @@ public class MainWindow extends Application implements JavaFxUserInterfaceApi {
 	private final Pane notificationArea = new HBox();
 	private final Pane panelStack = new VBox();
 	private	TextField searchInput;
+	private ListView<NodeMatchResult> searchResultList;
+	private BackgroundSearch backgroundSearch;
+	private String searchResultTerm = "";
 	private Label statusLabel;
 
 	private MenuBar menuBar;
@@ -226,13 +261,20 @@ public class MainWindow extends Application implements JavaFxUserInterfaceApi {
 
 		app.addEventHandler(TreeNodeEvent.OnNodeAdded, (node) -> displayNewTreePart(node));
 		app.addEventHandler(TreeNodeEvent.OnNodeEdited,(node) -> fxtree.refresh());
-		app.addEventHandler(TreeNodeEvent.OnNodeVerticallyMoved, (node) -> rebuildTreePart(node.getParentNode(), node.getId()));
+		app.addEventHandler(TreeNodeEvent.OnNodeVerticallyMoved, (node) -> applyTreeChanges(Collections.singleton(node.getParentNode())));
 		app.addEventHandler(TreeNodeEvent.OnNodeReset, (node) -> resetNode(node));
 		app.addEventHandler(TreeNodeEvent.OnNodeRemoved, (node) -> {
-			TreeItem<TreeNodeReference> treeitem = getTreeItemOfTreeNode(node);
-			treeitem.getParent().getChildren().remove(treeitem);
-			deleteTranslatorHashItems(treeitem, true);
+			TreeNodeItem treeitem = getLoadedTreeItem(node);
+			if(treeitem != null){
+				treeitem.getParent().getChildren().remove(treeitem);
+				treeitem.release();
+			}
+			else{
+				// The item of the parent node might have become a leaf
+				fxtree.refresh();
+			}
 		});
+		app.addEventHandler(TreeNodesEvent.OnNodesChanged, (nodes) -> applyTreeChanges(nodes));
 
 		app.addEventHandler(DefaultEvent.OnFileOpened, () -> {
 			onFileOpenedHandler();
@@ -250,9 +292,10 @@ public class MainWindow extends Application implements JavaFxUserInterfaceApi {
 				assignedNotificationsItems.clear();
 			}
 
-			fxtree.getRoot().getChildren().clear();
-			treeNodeTranslator.clear();
+			getRootTreeItem().releaseChildItems();
 			treeDependentElementsDisableProperty.set(true);
+			hideSearchResults();
+			backgroundSearch.reset();
 			clearQuicklinkList(true);
 
 			updateWindowTitle();
@@ -287,6 +330,23 @@ public class MainWindow extends Application implements JavaFxUserInterfaceApi {
 		}
 
 		me.setOnCloseRequest((WindowEvent event) -> {
+			// A failed background save marks the tree as changed again, so the window is closed as soon as the save has been completed
+			CompletableFuture<Boolean> pendingSave = app.getPendingBackgroundSave();
+			if(pendingSave != null){
+				event.consume();
+				if(!closeAfterBackgroundSave){
+					closeAfterBackgroundSave = true;
+					Node progressPanel = createBackgroundSaveProgressPanel();
+					addTreePanel(progressPanel, false);
+					pendingSave.thenRun(() -> Platform.runLater(() -> {
+						removeTreePanel(progressPanel);
+						closeAfterBackgroundSave = false;
+						me.fireEvent(new WindowEvent(me, WindowEvent.WINDOW_CLOSE_REQUEST));
+					}));
+				}
+				return;
+			}
+
 			// These following four lines are needed to make sure that the user can select "Cancel"
 			// at the "SaveChangesDialog". The method "ApplicationInstance.closeFile()" provides only true and false as return value,
 			// but for this functionality a third state for "cancel" is required.
@@ -394,6 +454,11 @@ public class MainWindow extends Application implements JavaFxUserInterfaceApi {
 		return Platform.isFxApplicationThread();
 	}
 
+	@Override
+	public void runInUserInterfaceThread(Runnable runnable){
+		runAsFXThread(runnable);
+	}
+
 	@Override
 	public void addEventListener(FxSettingsEvent eventName, BiConsumer<TabPane, Map<String, String>> eventListener){
 		app.addEventHandler(eventName.toString(), eventListener);
@@ -433,7 +498,7 @@ public class MainWindow extends Application implements JavaFxUserInterfaceApi {
 
 		menu_File.getItems().add(createMenuItem(localeBundle.getString("mainwindow.menu.file.save"),
 												ImageMap.getIcon("icon_save"),
-												(event) -> app.saveFile(), true));
+												(event) -> app.saveFileInBackground(), true));
 
 		menu_File.getItems().add(createMenuItem(localeBundle.getString("mainwindow.menu.file.saveas"), "",
 												(event) -> initalizeSaveFileAs(), true));
@@ -452,7 +517,7 @@ public class MainWindow extends Application implements JavaFxUserInterfaceApi {
 			String[] myFiles = app.getSettingsValue("ui.filelist").split(";");
 			for(int i = 0; i < myFiles.length; i++){
 				File f = new File(myFiles[i]);
-				MenuItem item = createMenuItem(f.getName(), "", (event) -> app.openFile((File) ((MenuItem) event.getSource()).getUserData()), false);
+				MenuItem item = createMenuItem(f.getName(), "", (event) -> openFileInBackground((File) ((MenuItem) event.getSource()).getUserData()), false);
 				item.setUserData(f);
 				openFileMenu.getItems().add( item);
 			}
@@ -575,7 +640,7 @@ public class MainWindow extends Application implements JavaFxUserInterfaceApi {
 		 * ===================================================================================
 		 */
 
-		TreeNodeItem rootItem = new TreeNodeItem(new TreeNodeReference(dataTree.getRootNode()));
+		TreeNodeItem rootItem = new TreeNodeItem(new TreeNodeReference(dataTree.getRootNode()), treeItemRegistry);
 		rootItem.setExpanded(true);
 		fxtree = new TreeView<> (rootItem);
 		fxtree.setId("Tree");
@@ -587,7 +652,7 @@ public class MainWindow extends Application implements JavaFxUserInterfaceApi {
 		fxtree.getSelectionModel().selectedItemProperty().addListener(new ChangeListener<TreeItem<TreeNodeReference>>() {
 			@Override
 			public void changed(ObservableValue<? extends TreeItem<TreeNodeReference>> observable, TreeItem<TreeNodeReference> oldValue, TreeItem<TreeNodeReference> newValue) {
-				if(newValue != null){
+				if(newValue != null && !treeItemsUpdateInProgress){
 					if(!nextSelectedItemChangeEventWasFiredByMe){
 						TreeNode n = newValue.getValue().getTreeNode();
 						nextSelectedItemChangeEventWasFiredByMe = true;
@@ -758,27 +823,37 @@ public class MainWindow extends Application implements JavaFxUserInterfaceApi {
 		searchInput = new TextField("");
 		searchInput.setPromptText(localeBundle.getString("mainwindow.find.prompt_text"));
 		Button startSearch = new Button(localeBundle.getString("mainwindow.find.button_text"));
-		startSearch.setOnAction((event) -> {
-			if(!searchInput.getText().equals("")){
-				SearchResult result = NodeWalker.find(dataTree, new TextMatcher(searchInput.getText(), true, true));
+		startSearch.setOnAction((event) -> findUsingSearchBar(true));
 
-				if(result.getState() == SearchState.END_REACHED){
-					updateStatus(localeBundle.getString("mainwindow.find.end_of_document_reached"));
-				}
-				else if(result.getState() == SearchState.NOT_FOUND){
-					updateStatus(localeBundle.getString("mainwindow.find.text_not_found"));
-				}
-			}
-		});
+		Button findPrevious = new Button(localeBundle.getString("mainwindow.find.previous_button_text"));
+		findPrevious.setOnAction((event) -> findUsingSearchBar(false));
 
 		searchInput.addEventFilter(KeyEvent.KEY_RELEASED, (event) -> {
 			if(event.getCode() == KeyCode.ENTER){
-				startSearch.fire();
+				findUsingSearchBar(!event.isShiftDown());
 			}
 		});
 
 		searchBoard.setCenter(searchInput);
-		searchBoard.setRight(startSearch);
+		searchBoard.setRight(new HBox(findPrevious, startSearch));
+
+		// Search as you type: the results are collected in background and shown in a list next to the tree
+		backgroundSearch = new BackgroundSearch(dataTree, Platform::runLater, SEARCH_AS_YOU_TYPE_DELAY);
+		searchInput.textProperty().addListener((observable, oldValue, newValue) -> searchAsYouType(newValue));
+
+		searchResultList = new ListView<>();
+		searchResultList.setId("SearchResults");
+		searchResultList.setPrefWidth(260);
+		searchResultList.setCellFactory((listView) -> new SearchResultCell(() -> searchResultTerm));
+		searchResultList.getSelectionModel().selectedItemProperty().addListener((observable, oldValue, newValue) -> {
+			if(newValue != null){
+				// The node may have been removed since the search has finished
+				TreeNode node = newValue.getNode();
+				if(node.getTree() == dataTree){
+					dataTree.setSelectedNode(node);
+				}
+			}
+		});
 
 		/* ===================================================================================
 		 * 	Status (bottom panel)
@@ -1048,7 +1123,7 @@ public class MainWindow extends Application implements JavaFxUserInterfaceApi {
 		addApplicationHotKey(KeyCode.S, true, false, false, new HotKeyEvent(condition_FileOpened) {
 			@Override
 			public void onKeyDown() {
-				app.saveFile();
+				app.saveFileInBackground();
 			}
 		});
 
@@ -1142,111 +1217,90 @@ public class MainWindow extends Application implements JavaFxUserInterfaceApi {
 	 */
 
 	private void buildTree(){
-		treeNodeTranslator.clear();
-		fxtree.getRoot().getChildren().clear();
 		fxtree.getRoot().setValue(new TreeNodeReference(dataTree.getRootNode()));
-		addChildNodes2FxTree(fxtree.getRoot());
+		getRootTreeItem().reloadChildItems();
 	}
 
-	private void addChildNodes2FxTree(TreeItem<TreeNodeReference> parentNode){
+	private TreeNodeItem getRootTreeItem(){
+		return (TreeNodeItem) fxtree.getRoot();
+	}
 
-		parentNode.getValue().getTreeNode().forEachChildNode((childNode) -> {
-			if(!treeNodeTranslator.containsKey(childNode.getId())){
-				TreeNodeItem node = new TreeNodeItem(new TreeNodeReference(childNode));
-				treeNodeTranslator.put(childNode.getId(), node);
-				parentNode.getChildren().add(childNode.getIndex(), node);
-				addChildNodes2FxTree(node);
-			}
-			else{
-				addChildNodes2FxTree(treeNodeTranslator.get(childNode.getId()));
-			}
-		});
+	/**
+	 * @return the tree item of a node or {@code null} if the item has not been created yet
+	 */
+	private TreeNodeItem getLoadedTreeItem(TreeNode node){
+		if(node.isRootNode()){
+			return getRootTreeItem();
+		}
+
+		// A node that has been removed and restored may still know a released item
+		TreeNodeItem treeItem = node.getAttachment(treeItemAttachment);
+		return treeItem != null && !treeItem.isReleased() ? treeItem : null;
+	}
+
+	/**
+	 * Inserts the tree item for a node, if the item of its parent node has already created its child items.
+	 * Otherwise the item will be created along with the other child items of the parent node.
+	 */
+	private void insertTreeItem(TreeNode node){
+		TreeNodeItem parentTreeItem = getLoadedTreeItem(node.getParentNode());
+		if(parentTreeItem != null && parentTreeItem.areChildItemsLoaded()){
+			parentTreeItem.getChildren().add(node.getIndex(), new TreeNodeItem(new TreeNodeReference(node), treeItemRegistry));
+		}
+		else{
+			// The item of the parent node might not be a leaf anymore
+			fxtree.refresh();
+		}
 	}
 
 	private void resetNode(TreeNode node){
 
-		if(treeNodeTranslator.containsKey(node.getId())){
-			treeNodeTranslator.get(node.getId()).setExpanded(node.isExpanded());
+		TreeNodeItem treeItem = getLoadedTreeItem(node);
+		if(treeItem != null){
+			treeItem.setExpanded(node.isExpanded());
 			fxtree.refresh();
 		}
 		else {
-
-			TreeNode parentNode = node.getParentNode();
-			TreeItem<TreeNodeReference> parentTreeItem = null;
 			// this method will be called for every reset node.
 			// If a node is more than one level "away" it will be added when its parent node is reset.
-
-			if(treeNodeTranslator.containsKey(parentNode.getId())){
-				parentTreeItem = treeNodeTranslator.get(parentNode.getId());
-			}
-			else if(parentNode.isRootNode()){
-				parentTreeItem = fxtree.getRoot();
-			}
-
-			if(parentTreeItem != null){
-				TreeNodeItem treeNodeItem = new TreeNodeItem(new TreeNodeReference(node));
-				treeNodeTranslator.put(node.getId(), treeNodeItem);
-				parentTreeItem.getChildren().add(node.getIndex(), treeNodeItem);
-				addChildNodes2FxTree(treeNodeItem);
-			}
+			insertTreeItem(node);
 		}
 	}
 
-	private void rebuildTreePart(TreeNode parentNode, String childNodeId) {
-
-		if(!parentNode.isRootNode()){
-
-			TreeItem<TreeNodeReference> fxTreeNode = treeNodeTranslator.get(parentNode.getId());
-
-			deleteTranslatorHashItems(fxTreeNode, false);
-			fxTreeNode.getChildren().clear();
-			addChildNodes2FxTree(fxTreeNode);
-
-			if(childNodeId != null){
-
-				if(treeNodeTranslator.containsKey(childNodeId)){
-
-					TreeNode changedNode = dataTree.getNodeById(childNodeId);
-					if(changedNode != null){
-						dataTree.setSelectedNode(changedNode);
+	/**
+	 * Applies changes of the tree to the tree view, the existing tree items are kept and only moved if necessary
+	 * @param nodes the nodes whose content or child nodes have been changed
+	 */
+	private void applyTreeChanges(Set<TreeNode> nodes){
+		// Replacing the child items may change the selection of the tree view, but this must not affect the selected node of the tree
+		treeItemsUpdateInProgress = true;
+		try{
+			for(TreeNode node: nodes){
+				TreeNodeItem treeItem = getLoadedTreeItem(node);
+
+				// Nodes without a tree item are created along with their parent node
+				if(treeItem != null){
+					if(!node.isRootNode()){
+						treeItem.setExpanded(node.isExpanded());
 					}
 
-					TreeItem<TreeNodeReference> ti = treeNodeTranslator.get(childNodeId);
-					ti.setExpanded(true);
+					treeItem.reconcileChildItems();
 				}
 			}
-		}
-		else{
-			int selectedIndex = fxtree.getSelectionModel().getSelectedIndex();
-			buildTree();
-			fxtree.getSelectionModel().select(selectedIndex);
-		}
-	}
 
-	private void deleteTranslatorHashItems(TreeItem<TreeNodeReference> parentNode, boolean includeParentNode){
-		if(includeParentNode){
-			treeNodeTranslator.remove(parentNode.getValue().getNodeId());
+			TreeItem<TreeNodeReference> selectedItem = getLoadedTreeItem(dataTree.getSelectedNode());
+			if(selectedItem != null && selectedItem != getSelectedTreeItem()){
+				fxtree.getSelectionModel().select(selectedItem);
+			}
 		}
-
-		parentNode.getChildren().forEach((node) -> {
-			treeNodeTranslator.remove(node.getValue().getNodeId());
-			deleteTranslatorHashItems(node, false);
-		});
+		finally{
+			treeItemsUpdateInProgress = false;
+		}
+		fxtree.refresh();
 	}
 
 	private void displayNewTreePart(TreeNode newNode) {
-		TreeNodeItem node = new TreeNodeItem(new TreeNodeReference(newNode));
-		treeNodeTranslator.put(newNode.getId(), node);
-
-		TreeNode parentNode = newNode.getParentNode();
-		if(parentNode.isRootNode()){
-			fxtree.getRoot().getChildren().add(newNode.getIndex(), node);
-		}
-		else{
-			treeNodeTranslator.get(parentNode.getId()).getChildren().add(newNode.getIndex(), node);
-		}
-
-		if(newNode.countChildNodes() != 0){addChildNodes2FxTree(node);}
+		insertTreeItem(newNode);
 	}
 
 	public TreeItem<TreeNodeReference> getSelectedTreeItem(){
@@ -1272,8 +1326,21 @@ public class MainWindow extends Application implements JavaFxUserInterfaceApi {
 			return fxtree.getRoot();
 		}
 
-		if(treeNodeTranslator.containsKey(node.getId())){
-			return treeNodeTranslator.get(node.getId());
+		TreeNodeItem treeItem = getLoadedTreeItem(node);
+		if(treeItem != null){
+			return treeItem;
+		}
+
+		// The item is created on demand, by loading the child items of its parent item
+		if(node.getTree() == dataTree){
+			TreeItem<TreeNodeReference> parentTreeItem = getTreeItemOfTreeNode(node.getParentNode());
+			if(parentTreeItem instanceof TreeNodeItem && !((TreeNodeItem) parentTreeItem).areChildItemsLoaded()){
+				parentTreeItem.getChildren();
+				treeItem = getLoadedTreeItem(node);
+				if(treeItem != null){
+					return treeItem;
+				}
+			}
 		}
 
 		alert(String.format("Internal application error: View is out of sync with data model.\nUnable to lookup node '%s' (id: '%s')",  node.getText(), node.getId()));
@@ -1351,10 +1418,40 @@ public class MainWindow extends Application implements JavaFxUserInterfaceApi {
 
 		File f = showOpenFileDialog(localeBundle.getString("mainwindow.dialogs.open_file.title"), "", "", getFileChooserExtensionFilter());
 		if(f != null){
-			app.openFile(f);
+			openFileInBackground(f);
+		}
+	}
+
+	/**
+	 * Opens a file with a worker thread, a progress bar is shown above the tree until the file has been opened
+	 * @param file the file
+	 */
+	private void openFileInBackground(File file){
+		FileOpenProgressPanel progressPanel = new FileOpenProgressPanel(String.format(localeBundle.getString("mainwindow.open_file.progress"), file.getName()),
+																		localeBundle.getString("mainwindow.open_file.node_count"), localeBundle.getString("cancel"));
+
+		CompletableFuture<Boolean> task = app.openFileInBackground(file, "", app.getStorageManager().getIdentifierByExtension(file.getName(), StorageManager.DEFAULT_FILE_TYPE), progressPanel);
+		if(!task.isDone()){
+			addTreePanel(progressPanel, false);
+			task.thenRun(() -> removeTreePanel(progressPanel));
 		}
 	}
 
+	/**
+	 * Creates the panel which is shown above the tree while the window waits for a background save before it is closed
+	 */
+	private Node createBackgroundSaveProgressPanel(){
+		ProgressBar progressBar = new ProgressBar(ProgressBar.INDETERMINATE_PROGRESS);
+		progressBar.setMaxWidth(Double.MAX_VALUE);
+		HBox.setHgrow(progressBar, Priority.ALWAYS);
+
+		String fileName = app.getCurrentFile() == null ? "" : app.getCurrentFile().getFilepath().getName();
+		HBox panel = new HBox(6, new Label(String.format(localeBundle.getString("mainwindow.close.saving"), fileName)), progressBar);
+		panel.setAlignment(Pos.CENTER_LEFT);
+		panel.setPadding(new Insets(4));
+		return panel;
+	}
+
 	private void initalizeSaveFileAs(){
 		File f = showSaveFileDialog(localeBundle.getString("mainwindow.dialogs.save_file.title"), app.getCurrentFile().getFilepath().getAbsolutePath(), "", getFileChooserExtensionFilter());
 		if(f != null){
@@ -1791,14 +1888,38 @@ public class MainWindow extends Application implements JavaFxUserInterfaceApi {
 
 	@Override
 	public String getStringInput(String windowTitle, String labelText, String defaultValue) throws UserCanceledOperationException{
-		InputDialog id = new InputDialog(me, this, windowTitle, labelText, defaultValue, false);
-		return id.getInput();
+		return callAsFXThread(() -> new InputDialog(me, this, windowTitle, labelText, defaultValue, false).getInput());
 	}
 
 	@Override
 	public char[] getPasswordInput(String title, String text, String passwordHint) throws UserCanceledOperationException {
-		InputDialog id = new InputDialog(me, this, title, text, passwordHint, true);
-		return id.getInput().toCharArray();
+		// A password may be requested by a file that is opened in background
+		return callAsFXThread(() -> new InputDialog(me, this, title, text, passwordHint, true).getInput().toCharArray());
+	}
+
+	/**
+	 * Calls a dialog with the JavaFX thread and waits for its result, this allows worker threads to ask the user for input
+	 */
+	private <T> T callAsFXThread(Callable<T> dialog) throws UserCanceledOperationException {
+		FutureTask<T> task = new FutureTask<>(dialog);
+		if(Platform.isFxApplicationThread()){
+			task.run();
+		}
+		else{
+			Platform.runLater(task);
+		}
+
+		try {
+			return task.get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new UserCanceledOperationException("The input has been interrupted.");
+		} catch (ExecutionException e) {
+			if(e.getCause() instanceof UserCanceledOperationException){
+				throw (UserCanceledOperationException) e.getCause();
+			}
+			throw new RuntimeException(e.getCause());
+		}
 	}
 
 	/*
@@ -1868,16 +1989,90 @@ public class MainWindow extends Application implements JavaFxUserInterfaceApi {
 		}
 	}
 
+	private SearchCursor searchBarCursor = null;
+	private String searchBarCursorText = null;
+
+	/**
+	 * Selects the next (or previous) node that matches the text of the search bar. The search cursor is kept as long as the text is not changed,
+	 * so stepping through all matches does not walk through the tree again and again.
+	 * @param forward {@code true} to find the next node, {@code false} to find the previous one
+	 */
+	private void findUsingSearchBar(boolean forward){
+		final String text = searchInput.getText();
+		if(text.equals("")){return;}
+
+		if(searchBarCursor == null || !text.equals(searchBarCursorText)){
+			searchBarCursor = new SearchCursor(dataTree, new TextMatcher(text, true, true));
+			searchBarCursorText = text;
+		}
+
+		SearchResult result = forward ? searchBarCursor.findNext() : searchBarCursor.findPrevious();
+
+		if(result.getState() == SearchState.END_REACHED){
+			updateStatus(localeBundle.getString("mainwindow.find.end_of_document_reached"));
+		}
+		else if(result.getState() == SearchState.NOT_FOUND){
+			updateStatus(localeBundle.getString("mainwindow.find.text_not_found"));
+		}
+	}
+
+	private static final long SEARCH_AS_YOU_TYPE_DELAY = 250;
+
+	/**
+	 * Starts a background search for the text of the search bar, the results are shown in the result list as soon as they are found
+	 * @param text the search text, the result list is hidden if the text is empty
+	 */
+	private void searchAsYouType(String text){
+		if(text.equals("") || !searchBoardIsVisible){
+			hideSearchResults();
+			return;
+		}
+
+		backgroundSearch.search(new TextMatcher(text, true, true), new BackgroundSearch.ResultHandler() {
+			@Override
+			public void searchStarted(){
+				searchResultTerm = text;
+				searchResultList.getItems().clear();
+				if(centerPane.getRight() == null){
+					centerPane.setRight(searchResultList);
+				}
+			}
+
+			@Override
+			public void resultsFound(List<NodeMatchResult> results){
+				searchResultList.getItems().addAll(results);
+			}
+
+			@Override
+			public void searchFinished(int resultCount){
+				if(resultCount == 0){
+					updateStatus(localeBundle.getString("mainwindow.find.text_not_found"));
+				}
+				else{
+					updateStatus(String.format(localeBundle.getString("mainwindow.find.result_count"), resultCount));
+				}
+			}
+		});
+	}
+
+	private void hideSearchResults(){
+		backgroundSearch.cancel();
+		searchResultList.getItems().clear();
+		centerPane.setRight(null);
+	}
+
 	private boolean searchBoardIsVisible = false;
 	private void showSearchBar(boolean show){
 		if(show){
 			centerPane.setBottom(searchBoard);
 			searchInput.requestFocus();
 			searchBoardIsVisible = true;
+			searchAsYouType(searchInput.getText());
 		}
 		else{
 			centerPane.setBottom(null);
 			searchBoardIsVisible = false;
+			hideSearchResults();
 		}
 	}
 
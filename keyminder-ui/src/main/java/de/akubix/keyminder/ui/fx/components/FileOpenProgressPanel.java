@@ -0,0 +1,105 @@
+/* KeyMinder
+ * Copyright (C) 2016 Bastian Kraemer
+ *
+ * FileOpenProgressPanel.java
+ *
+ * KeyMinder is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * KeyMinder is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with KeyMinder.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.akubix.keyminder.ui.fx.components;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import de.akubix.keyminder.core.io.FileOpenProgress;
+import javafx.application.Platform;
+import javafx.geometry.Insets;
+import javafx.geometry.Pos;
+import javafx.scene.control.Button;
+import javafx.scene.control.Label;
+import javafx.scene.control.ProgressBar;
+import javafx.scene.layout.HBox;
+import javafx.scene.layout.Priority;
+
+/**
+ * Shows the progress of a file that is opened in background and allows to cancel it.
+ * The progress is reported by the thread that reads the file, the panel is updated at most once per pulse of the JavaFX thread.
+ */
+public class FileOpenProgressPanel extends HBox implements FileOpenProgress {
+
+	private final ProgressBar progressBar = new ProgressBar(ProgressBar.INDETERMINATE_PROGRESS);
+	private final Label nodeCountLabel = new Label("");
+	private final String nodeCountText;
+
+	private volatile long bytesRead = 0;
+	private volatile long fileSize = 0;
+	private volatile int nodeCount = 0;
+	private volatile boolean canceled = false;
+	private final AtomicBoolean updateScheduled = new AtomicBoolean(false);
+
+	/**
+	 * @param text the text in front of the progress bar
+	 * @param nodeCountText the format of the node count, for example "%d nodes"
+	 * @param cancelButtonText the text of the cancel button
+	 */
+	public FileOpenProgressPanel(String text, String nodeCountText, String cancelButtonText) {
+		this.nodeCountText = nodeCountText;
+
+		Button cancelButton = new Button(cancelButtonText);
+		cancelButton.setOnAction((event) -> {
+			canceled = true;
+			cancelButton.setDisable(true);
+		});
+
+		progressBar.setMaxWidth(Double.MAX_VALUE);
+		HBox.setHgrow(progressBar, Priority.ALWAYS);
+
+		setAlignment(Pos.CENTER_LEFT);
+		setSpacing(6);
+		setPadding(new Insets(4));
+		getChildren().addAll(new Label(text), progressBar, nodeCountLabel, cancelButton);
+	}
+
+	@Override
+	public void bytesRead(long bytesRead, long fileSize) {
+		this.bytesRead = bytesRead;
+		this.fileSize = fileSize;
+		scheduleUpdate();
+	}
+
+	@Override
+	public void nodesCreated(int nodeCount) {
+		this.nodeCount = nodeCount;
+		scheduleUpdate();
+	}
+
+	@Override
+	public boolean isCanceled() {
+		return canceled;
+	}
+
+	private void scheduleUpdate() {
+		if(updateScheduled.compareAndSet(false, true)){
+			Platform.runLater(this::update);
+		}
+	}
+
+	private void update() {
+		updateScheduled.set(false);
+		if(fileSize > 0){
+			progressBar.setProgress(Math.min(1.0, (double) bytesRead / fileSize));
+		}
+		if(nodeCount > 0){
+			nodeCountLabel.setText(String.format(nodeCountText, nodeCount));
+		}
+	}
+}
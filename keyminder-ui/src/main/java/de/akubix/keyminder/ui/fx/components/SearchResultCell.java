@@ -0,0 +1,113 @@
+/* KeyMinder
+ * Copyright (C) 2016 Bastian Kraemer
+ *
+ * SearchResultCell.java
+ *
+ * KeyMinder is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * KeyMinder is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with KeyMinder.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.akubix.keyminder.ui.fx.components;
+
+import java.util.List;
+import java.util.function.Supplier;
+
+import de.akubix.keyminder.util.search.NodeMatchResult;
+import de.akubix.keyminder.util.search.NodeMatchResult.MatchElement;
+import javafx.scene.Node;
+import javafx.scene.control.ListCell;
+import javafx.scene.text.Text;
+import javafx.scene.text.TextFlow;
+
+/**
+ * Displays a search result: the text of the node with all occurrences of the search term highlighted,
+ * followed by the names of the attributes that match (the values are not shown, they may contain passwords).
+ */
+public class SearchResultCell extends ListCell<NodeMatchResult> {
+
+	private final Supplier<String> searchTerm;
+
+	/**
+	 * @param searchTerm supplies the search term of the displayed results
+	 */
+	public SearchResultCell(Supplier<String> searchTerm) {
+		this.searchTerm = searchTerm;
+	}
+
+	@Override
+	protected void updateItem(NodeMatchResult item, boolean empty) {
+		super.updateItem(item, empty);
+		setText(null);
+
+		if(empty || item == null){
+			setGraphic(null);
+			return;
+		}
+
+		TextFlow textFlow = new TextFlow();
+		addHighlightedText(textFlow, item.getNode().getText(), searchTerm.get());
+
+		StringBuilder attributes = new StringBuilder();
+		for(MatchElement element: item.getMatchElements()){
+			if(!element.isTextMatch()){
+				attributes.append(attributes.length() == 0 ? "  (" : ", ").append(element.getAttributeName());
+			}
+		}
+
+		if(attributes.length() > 0){
+			Text attributeText = new Text(attributes.append(")").toString());
+			attributeText.getStyleClass().add("search-result-attributes");
+			textFlow.getChildren().add(attributeText);
+		}
+
+		setGraphic(textFlow);
+	}
+
+	/**
+	 * Splits the text into plain and highlighted segments. The search term may contain "*" as wildcard, each part of the term is highlighted separately.
+	 */
+	private static void addHighlightedText(TextFlow textFlow, String text, String term) {
+		List<Node> children = textFlow.getChildren();
+		int start = 0;
+		int position = 0;
+		while(position < text.length()){
+			int length = matchLength(text, position, term);
+			if(length > 0){
+				if(position > start){
+					children.add(new Text(text.substring(start, position)));
+				}
+
+				Text highlighted = new Text(text.substring(position, position + length));
+				highlighted.getStyleClass().add("search-result-highlight");
+				children.add(highlighted);
+				position += length;
+				start = position;
+			}
+			else{
+				position++;
+			}
+		}
+
+		if(start < text.length()){
+			children.add(new Text(text.substring(start)));
+		}
+	}
+
+	private static int matchLength(String text, int position, String term) {
+		for(String part: term.split("\\*")){
+			if(!part.isEmpty() && text.regionMatches(true, position, part, 0, part.length())){
+				return part.length();
+			}
+		}
+		return 0;
+	}
+}
@@ -18,20 +18,50 @@
  */
 package de.akubix.keyminder.ui.fx.components;
 
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Collectors;
+
 import de.akubix.keyminder.core.tree.TreeNode;
 import javafx.beans.value.ObservableValue;
+import javafx.collections.ObservableList;
 import javafx.scene.control.TreeItem;
 
+/**
+ * A tree item which creates the items of its child nodes when they are needed for the first time, usually when the item is expanded.
+ * The child items are released as soon as the item is collapsed, so only the visible part of a large tree is kept in memory.
+ */
 public class TreeNodeItem extends TreeItem<TreeNodeReference> {
 
-	public TreeNodeItem(TreeNodeReference ref) {
+	/**
+	 * Keeps track of the tree items which have been created for the nodes of the tree
+	 */
+	public interface Registry {
+		void register(TreeNode node, TreeNodeItem item);
+		void unregister(TreeNodeItem item);
+	}
+
+	private final Registry registry;
+	private boolean childItemsLoaded = false;
+	private boolean released = false;
+
+	public TreeNodeItem(TreeNodeReference ref, Registry registry) {
 		super(ref);
+		this.registry = registry;
+
+		TreeNode node = ref.getTreeNode();
+		registry.register(node, this);
 
 		this.expandedProperty().addListener((ObservableValue<? extends Boolean> observable, Boolean oldValue, Boolean newValue) -> {
 			expandChanged(newValue);
 		});
 
-		setExpanded(ref.getTreeStore().getNodeById(ref.getNodeId()).isExpanded());
+		setExpanded(node.isExpanded());
 	}
 
 	private void expandChanged(boolean value) {
@@ -39,5 +69,195 @@ public class TreeNodeItem extends TreeItem<TreeNodeReference> {
 		if(node != null){
 			node.setExpanded(value);
 		}
+
+		if(!value){
+			releaseChildItems();
+		}
+	}
+
+	@Override
+	public boolean isLeaf() {
+		if(childItemsLoaded){
+			return super.getChildren().isEmpty();
+		}
+
+		TreeNode node = getValue().getTreeNode();
+		return node == null || node.countChildNodes() == 0;
+	}
+
+	@Override
+	public ObservableList<TreeItem<TreeNodeReference>> getChildren() {
+		if(!childItemsLoaded){
+			childItemsLoaded = true;
+			super.getChildren().setAll(createChildItems());
+		}
+		return super.getChildren();
+	}
+
+	/**
+	 * @return {@code true} if the child items have been created
+	 */
+	public boolean areChildItemsLoaded() {
+		return childItemsLoaded;
+	}
+
+	/**
+	 * Replaces all child items by new ones, which reflect the current child nodes of the node
+	 */
+	public void reloadChildItems() {
+		super.getChildren().forEach((childItem) -> ((TreeNodeItem) childItem).release());
+		childItemsLoaded = true;
+		super.getChildren().setAll(createChildItems());
+	}
+
+	/**
+	 * Brings the child items in line with the current child nodes of the node. The items of nodes which are still child nodes are kept
+	 * (including their expanded state and their child items), the items of new nodes are inserted and the items of removed nodes are released.
+	 *
+	 * The kept items that are already in the right order (the longest increasing subsequence of their current positions) are not touched,
+	 * only the remaining items are moved. Nothing is done if the child items have not been created yet.
+	 */
+	public void reconcileChildItems() {
+		TreeNode node = getValue().getTreeNode();
+		if(!childItemsLoaded || node == null){
+			return;
+		}
+
+		ObservableList<TreeItem<TreeNodeReference>> items = super.getChildren();
+		Map<String, TreeItem<TreeNodeReference>> existingItems = new HashMap<>(items.size() * 2);
+		items.forEach((item) -> existingItems.put(item.getValue().getNodeId(), item));
+
+		List<TreeItem<TreeNodeReference>> targetItems = new ArrayList<>(node.countChildNodes());
+		node.forEachChildNode((childNode) -> {
+			TreeItem<TreeNodeReference> item = existingItems.remove(childNode.getId());
+			if(item != null){
+				// The node may have been replaced by a restored copy with the same id
+				registry.register(childNode, (TreeNodeItem) item);
+			}
+			else{
+				item = new TreeNodeItem(new TreeNodeReference(childNode), registry);
+			}
+			targetItems.add(item);
+		});
+
+		if(targetItems.equals(items)){
+			return;
+		}
+
+		// Items of nodes that are not child nodes anymore
+		if(!existingItems.isEmpty()){
+			existingItems.values().forEach((item) -> ((TreeNodeItem) item).release());
+			items.removeAll(existingItems.values());
+		}
+
+		Map<TreeItem<TreeNodeReference>, Integer> currentIndex = new IdentityHashMap<>(items.size() * 2);
+		for(int i = 0; i < items.size(); i++){
+			currentIndex.put(items.get(i), i);
+		}
+
+		Set<TreeItem<TreeNodeReference>> stableItems = findItemsInOrder(items, targetItems, currentIndex);
+		int movedItems = items.size() - stableItems.size();
+		int insertedItems = targetItems.size() - stableItems.size();
+
+		if(movedItems + insertedItems > targetItems.size() / 2){
+			// Most of the items have changed, a single replacement is cheaper than many small modifications
+			items.setAll(targetItems);
+			return;
+		}
+
+		if(movedItems > 0){
+			items.removeAll(targetItems.stream().filter((item) -> currentIndex.containsKey(item) && !stableItems.contains(item)).collect(Collectors.toList()));
+		}
+
+		for(int i = 0; i < targetItems.size(); i++){
+			TreeItem<TreeNodeReference> item = targetItems.get(i);
+			if(!stableItems.contains(item)){
+				items.add(i, item);
+			}
+		}
+	}
+
+	/**
+	 * Finds the largest set of existing items whose relative order does not change (longest increasing subsequence of the current indices)
+	 */
+	private static Set<TreeItem<TreeNodeReference>> findItemsInOrder(List<TreeItem<TreeNodeReference>> items, List<TreeItem<TreeNodeReference>> targetItems, Map<TreeItem<TreeNodeReference>, Integer> currentIndex) {
+		int[] indices = new int[targetItems.size()];
+		int count = 0;
+		for(TreeItem<TreeNodeReference> item: targetItems){
+			Integer index = currentIndex.get(item);
+			if(index != null){
+				indices[count++] = index;
+			}
+		}
+
+		// tails[k] is the position (in "indices") of the smallest tail of all increasing subsequences of length k + 1
+		int[] tails = new int[count];
+		int[] predecessors = new int[count];
+		int length = 0;
+		for(int i = 0; i < count; i++){
+			int lo = 0;
+			int hi = length;
+			while(lo < hi){
+				int mid = (lo + hi) >>> 1;
+				if(indices[tails[mid]] < indices[i]){
+					lo = mid + 1;
+				}
+				else{
+					hi = mid;
+				}
+			}
+
+			predecessors[i] = lo > 0 ? tails[lo - 1] : -1;
+			tails[lo] = i;
+			if(lo == length){
+				length++;
+			}
+		}
+
+		Set<TreeItem<TreeNodeReference>> stableItems = Collections.newSetFromMap(new IdentityHashMap<>(length * 2));
+		for(int i = length > 0 ? tails[length - 1] : -1; i >= 0; i = predecessors[i]){
+			stableItems.add(items.get(indices[i]));
+		}
+		return stableItems;
+	}
+
+	/**
+	 * Removes all child items, they will be created again when they are needed
+	 */
+	public void releaseChildItems() {
+		if(childItemsLoaded){
+			childItemsLoaded = false;
+			super.getChildren().forEach((childItem) -> ((TreeNodeItem) childItem).release());
+			super.getChildren().clear();
+		}
+	}
+
+	/**
+	 * Unregisters this item and all of its child items, this has to be done if the item is removed from the tree view
+	 */
+	public void release() {
+		released = true;
+		registry.unregister(this);
+		if(childItemsLoaded){
+			super.getChildren().forEach((childItem) -> ((TreeNodeItem) childItem).release());
+		}
+	}
+
+	/**
+	 * @return {@code true} if this item has been removed from the tree view
+	 */
+	public boolean isReleased() {
+		return released;
+	}
+
+	private List<TreeItem<TreeNodeReference>> createChildItems() {
+		TreeNode node = getValue().getTreeNode();
+		if(node == null){
+			return new ArrayList<>(0);
+		}
+
+		List<TreeItem<TreeNodeReference>> childItems = new ArrayList<>(node.countChildNodes());
+		node.forEachChildNode((childNode) -> childItems.add(new TreeNodeItem(new TreeNodeReference(childNode), registry)));
+		return childItems;
 	}
 }
@@ -28,6 +28,7 @@ import de.akubix.keyminder.ui.fx.utils.StylesheetMap;
 import de.akubix.keyminder.util.search.MatchReplace;
 import de.akubix.keyminder.util.search.NodeMatchResult;
 import de.akubix.keyminder.util.search.NodeWalker;
+import de.akubix.keyminder.util.search.SearchCursor;
 import de.akubix.keyminder.util.search.matcher.NodeMatcher;
 import de.akubix.keyminder.util.search.matcher.TextMatcher;
 import de.akubix.keyminder.util.search.matcher.TimeMatcher;
@@ -42,6 +43,8 @@ import javafx.scene.control.DatePicker;
 import javafx.scene.control.Label;
 import javafx.scene.control.Separator;
 import javafx.scene.control.TextField;
+import javafx.scene.input.KeyCode;
+import javafx.scene.input.KeyEvent;
 import javafx.scene.layout.BorderPane;
 import javafx.scene.layout.HBox;
 import javafx.scene.layout.Pane;
@@ -62,6 +65,9 @@ public final class FindAndReplaceDialog {
 	private Button findButton;
 	private Button replaceButton;
 
+	private SearchCursor searchCursor = null;
+	private String searchCursorConditions = null;
+
 	private JavaFxUserInterfaceApi fxUI;
 
 	private FindAndReplaceDialog(Stage primaryStage, TreeStore tree, JavaFxUserInterfaceApi fxUI){
@@ -71,6 +77,14 @@ public final class FindAndReplaceDialog {
 		Scene myScene = new Scene(createSceneContent(), 300, 270);
 		StylesheetMap.assignStylesheets(myScene);
 
+		// Shift + Enter searches backwards
+		myScene.addEventFilter(KeyEvent.KEY_PRESSED, (event) -> {
+			if(event.getCode() == KeyCode.ENTER && event.isShiftDown()){
+				event.consume();
+				findNode(false);
+			}
+		});
+
 		me = new Stage();
 		me.setTitle(ApplicationInstance.APP_NAME + " - " + fxUI.getLocaleBundleString("dialogs.findreplace.title"));
 		me.setScene(myScene);
@@ -174,8 +188,21 @@ public final class FindAndReplaceDialog {
 	}
 
 	private void findNextNode(){
+		findNode(true);
+	}
+
+	private void findNode(boolean forward){
+
+		// The search cursor is reused until one of the search conditions has been changed
+		final String conditions = String.join("\n", findTextField.getText(), Boolean.toString(isCaseSensitive.isSelected()),
+											  String.valueOf(datePicker.getValue()), nodeAttribSelector.getValue(), compareType.getValue());
+
+		if(searchCursor == null || !conditions.equals(searchCursorConditions)){
+			searchCursor = new SearchCursor(tree, getNodeMatchConditions());
+			searchCursorConditions = conditions;
+		}
 
-		final NodeWalker.SearchResult result = NodeWalker.find(tree, getNodeMatchConditions());
+		final NodeWalker.SearchResult result = forward ? searchCursor.findNext() : searchCursor.findPrevious();
 
 		if(result.getState() == NodeWalker.SearchState.NOT_FOUND){
 			fxUI.updateStatus(fxUI.getLocaleBundleString("mainwindow.find.text_not_found"));